@@ -0,0 +1,149 @@
+package com.filesync.bench;
+
+import com.filesync.transfer.Durability;
+import com.filesync.transfer.GroupCommit;
+import com.filesync.transfer.LocalCopyEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous local copy path (exists/mkdirs, Files.copy, then a separate
+ * get/setLastModified) with {@link LocalCopyEngine} for small, medium and multi-GB files,
+ * both without durability, like the baseline, and with the defaults of a sync run.
+ * Each invocation copies the whole set into a fresh directory, which is deleted after
+ * the iteration; divide the set size by the time for the throughput.
+ * <p>
+ * The work directory ({@code -Djsync.bench.dir}) should be on the file system under test
+ * and needs room for twice the large file. Page cache is not dropped between runs, so
+ * compare relative numbers from a quiet machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CopyThroughputBenchmark {
+    /** Set of files to copy: "small" is 2000 x 4 KB, "medium" 32 x 8 MB, "large" 1 x 2 GB. */
+    @Param({"small", "medium", "large"})
+    public String files;
+
+    private Path sourceDir;
+    private Path targetDir;
+    private List<Path> sources;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        int count;
+        long size;
+        switch (files) {
+            case "small":
+                count = 2000;
+                size = 4L * 1024;
+                break;
+            case "medium":
+                count = 32;
+                size = 8L * 1024 * 1024;
+                break;
+            case "large":
+                count = 1;
+                size = 2048L * 1024 * 1024;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown file set: " + files);
+        }
+
+        sourceDir = SyntheticTree.workDirectory().resolve("copy-source-" + files);
+        SyntheticTree.deleteRecursively(sourceDir);
+        Files.createDirectories(sourceDir);
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+
+        sources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = sourceDir.resolve("file-" + i);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                for (long written = 0; written < size; written += chunk.length) {
+                    out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+                }
+            }
+            sources.add(file);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void chooseTarget() {
+        targetDir = SyntheticTree.workDirectory().resolve("copy-target-" + System.nanoTime());
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteTarget() throws IOException {
+        SyntheticTree.deleteRecursively(targetDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        SyntheticTree.deleteRecursively(sourceDir);
+    }
+
+    @Benchmark
+    public void baseline() throws IOException {
+        for (Path source : sources) {
+            Path target = targetDir.resolve("nested").resolve(source.getFileName());
+            File parent = target.getParent().toFile();
+            if (!parent.exists()) {
+                parent.mkdirs();
+            }
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            target.toFile().setLastModified(source.toFile().lastModified());
+        }
+    }
+
+    /**
+     * The engine as the baseline uses the disk: no resumable partial files and no forcing,
+     * but every copy installed over its target before the invocation ends.
+     */
+    @Benchmark
+    public void engine() throws IOException {
+        copyAll(new LocalCopyEngine(true, 8L * 1024 * 1024, 0L, new GroupCommit(Durability.NONE, 1)));
+    }
+
+    /**
+     * The engine with a sync run's defaults: files from 64 MB on are copied through a partial
+     * file forced at every checkpoint, and the batch is forced before it is installed. The
+     * difference to {@link #engine} is the price of crash safety, which the baseline never pays.
+     */
+    @Benchmark
+    public void engineDurable() throws IOException {
+        copyAll(new LocalCopyEngine(true, 8L * 1024 * 1024));
+    }
+
+    private void copyAll(LocalCopyEngine engine) throws IOException {
+        for (Path source : sources) {
+            engine.copy(source, targetDir.resolve("nested").resolve(source.getFileName()), true);
+        }
+        engine.getGroupCommit().flush();
+    }
+}
@@ -0,0 +1,102 @@
+package com.filesync.bench;
+
+import com.filesync.core.MergeJoinDiff;
+import com.filesync.core.Registry;
+import com.filesync.core.SyncEngine;
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.ScanEntry;
+import com.filesync.filesystem.TreeSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The diff of two in-memory scans against the registry, without any file system access:
+ * building the snapshots, merge-joining them in path order and classifying every file.
+ * Side B has every n-th file modified ({@code modifiedEvery}), the registry holds the
+ * state of side A.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DiffBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int files;
+
+    @Param({"8", "64"})
+    public int fanOut;
+
+    @Param({"0", "100"})
+    public int modifiedEvery;
+
+    private List<ScanEntry> entriesA;
+    private TreeSnapshot snapshotA;
+    private TreeSnapshot snapshotB;
+    private Registry registry;
+
+    @Setup
+    public void createScans() {
+        entriesA = SyntheticTree.entries(files, fanOut, 0);
+        snapshotA = TreeSnapshot.capture(entriesA.iterator());
+        snapshotB = TreeSnapshot.capture(SyntheticTree.entries(files, fanOut, modifiedEvery).iterator());
+
+        registry = new Registry();
+        for (ScanEntry entry : entriesA) {
+            FileSystemNode node = entry.getNode();
+            if (!node.isDirectory()) {
+                registry.addEntry(entry.getPath(), node.getLastModified(), node.getSize(), null);
+            }
+        }
+    }
+
+    @Benchmark
+    public TreeSnapshot capture() {
+        return TreeSnapshot.capture(entriesA.iterator());
+    }
+
+    /**
+     * Merge-join of both snapshots with every file classified, i.e. the diff of a run
+     * in which no directory summary lets a subtree be skipped.
+     */
+    @Benchmark
+    public void mergeJoin(Blackhole blackhole) throws IOException {
+        MergeJoinDiff.join(snapshotA.iterator(), snapshotB.iterator(), (path, nodeA, nodeB) -> {
+            if (!(nodeA != null ? nodeA : nodeB).isDirectory()) {
+                blackhole.consume(SyncEngine.determineSyncStatus(nodeA, nodeB, registry.getEntry(path)));
+            }
+            return true;
+        });
+    }
+
+    /**
+     * The same join, with the identical subtrees skipped by their summaries.
+     */
+    @Benchmark
+    public void mergeJoinSkippingUnchanged(Blackhole blackhole) throws IOException {
+        MergeJoinDiff.join(snapshotA.iterator(), snapshotB.iterator(), (path, nodeA, nodeB) -> {
+            if (nodeA != null && nodeB != null && nodeA.isDirectory() && nodeB.isDirectory()) {
+                return nodeA.getSummary() != nodeB.getSummary();
+            }
+            if (!(nodeA != null ? nodeA : nodeB).isDirectory()) {
+                blackhole.consume(SyncEngine.determineSyncStatus(nodeA, nodeB, registry.getEntry(path)));
+            }
+            return true;
+        });
+    }
+}
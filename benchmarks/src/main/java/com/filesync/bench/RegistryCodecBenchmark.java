@@ -0,0 +1,102 @@
+package com.filesync.bench;
+
+import com.filesync.core.Profile;
+import com.filesync.core.Registry;
+import com.filesync.core.registry.BinaryRegistryBuilder;
+import com.filesync.core.registry.JSONRegistryBuilder;
+import com.filesync.core.registry.PropertiesRegistryBuilder;
+import com.filesync.core.registry.RegistryBuilder;
+import com.filesync.core.registry.XMLRegistryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and saving a registry in each format. Loading includes reading every entry
+ * back, so formats that load lazily (bin) pay for the entries they would serve to a
+ * full diff.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RegistryCodecBenchmark {
+    @Param({"xml", "json", "properties", "bin"})
+    public String format;
+
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    private RegistryBuilder builder;
+    private Profile profile;
+    private Registry registry;
+    private Path loadFile;
+    private Path saveFile;
+
+    @Setup
+    public void createRegistry() throws IOException {
+        builder = createBuilder(format);
+        Path directory = SyntheticTree.workDirectory();
+        Files.createDirectories(directory);
+        profile = new Profile("bench", directory.resolve("a").toString(), directory.resolve("b").toString());
+
+        registry = new Registry();
+        List<String> paths = SyntheticTree.filePaths(entries, 64);
+        for (int i = 0; i < entries; i++) {
+            registry.addEntry(paths.get(i), SyntheticTree.lastModified(i), SyntheticTree.size(i),
+                    String.format("%064x", i));
+        }
+
+        loadFile = directory.resolve("registry-" + entries + "." + format);
+        saveFile = directory.resolve("registry-" + entries + "-save." + format);
+        builder.saveRegistry(registry, loadFile.toString(), profile);
+    }
+
+    @TearDown
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(loadFile);
+        Files.deleteIfExists(saveFile);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        return builder.buildRegistry(loadFile.toString(), profile).getEntries().size();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        builder.saveRegistry(registry, saveFile.toString(), profile);
+    }
+
+    private static RegistryBuilder createBuilder(String format) {
+        switch (format) {
+            case "xml":
+                return new XMLRegistryBuilder();
+            case "json":
+                return new JSONRegistryBuilder();
+            case "properties":
+                return new PropertiesRegistryBuilder();
+            case "bin":
+                return new BinaryRegistryBuilder();
+            default:
+                throw new IllegalArgumentException("Unknown registry format: " + format);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.filesync.bench;
+
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.filesystem.TreeSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan of a local tree into a {@link TreeSnapshot}, the first phase of every sync.
+ * The trees are created once below {@link SyntheticTree#workDirectory()} and reused by
+ * later runs; after the first iteration the directory metadata is in the page cache,
+ * so this measures the walk and snapshot building rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScanBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int files;
+
+    @Param({"8", "64"})
+    public int fanOut;
+
+    @Param({"1", "4"})
+    public int scanParallelism;
+
+    private LocalFileSystemHandler handler;
+
+    @Setup
+    public void createTree() throws IOException {
+        handler = new LocalFileSystemHandler(SyntheticTree.materialize(files, fanOut).toString(), scanParallelism);
+    }
+
+    @Benchmark
+    public TreeSnapshot snapshot() throws IOException {
+        return handler.snapshot();
+    }
+}
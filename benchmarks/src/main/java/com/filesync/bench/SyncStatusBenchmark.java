@@ -0,0 +1,66 @@
+package com.filesync.bench;
+
+import com.filesync.core.Registry;
+import com.filesync.core.SyncEngine;
+import com.filesync.filesystem.FileSystemNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classification of a single path by {@link SyncEngine#determineSyncStatus}, over a
+ * fixed random mix of the cases a diff meets: unchanged, new, modified on one or both
+ * sides and deleted, with and without a registry entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SyncStatusBenchmark {
+    private static final int CASES = 4096;
+
+    private final FileSystemNode[] nodesA = new FileSystemNode[CASES];
+    private final FileSystemNode[] nodesB = new FileSystemNode[CASES];
+    private final Registry.Entry[] entries = new Registry.Entry[CASES];
+
+    @Setup
+    public void createCases() {
+        Random random = new Random(42);
+        for (int i = 0; i < CASES; i++) {
+            long time = SyntheticTree.lastModified(i);
+            boolean synced = random.nextInt(4) != 0;
+            entries[i] = synced ? new Registry.Entry("f" + i, time, SyntheticTree.size(i), null) : null;
+            nodesA[i] = node(i, random.nextInt(10) == 0 ? null : time + (random.nextInt(20) == 0 ? 1000L : 0L));
+            nodesB[i] = node(i, random.nextInt(10) == 0 ? null : time + (random.nextInt(20) == 0 ? 2000L : 0L));
+            if (nodesA[i] == null && nodesB[i] == null) {
+                nodesA[i] = node(i, time);
+            }
+        }
+    }
+
+    private static FileSystemNode node(int i, Long lastModified) {
+        return lastModified != null ? new FileSystemNode("f" + i, false, lastModified, SyntheticTree.size(i)) : null;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CASES)
+    public void determineSyncStatus(Blackhole blackhole) {
+        for (int i = 0; i < CASES; i++) {
+            blackhole.consume(SyncEngine.determineSyncStatus(nodesA[i], nodesB[i], entries[i]));
+        }
+    }
+}
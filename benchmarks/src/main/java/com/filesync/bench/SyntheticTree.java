@@ -0,0 +1,135 @@
+package com.filesync.bench;
+
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.ScanEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic trees for the benchmarks. Every directory holds up to fan-out files
+ * and up to fan-out subdirectories, so the depth grows with log(files) / log(fan-out):
+ * 10k files are 2 levels deep with a fan-out of 64 and 4 levels deep with a fan-out of 8.
+ * File i lives in the directory named by the base fan-out digits of i / fan-out,
+ * e.g. "d12/d01/f0012345.dat".
+ */
+public final class SyntheticTree {
+    /** Timestamp of file 0; file i is i milliseconds newer. */
+    public static final long BASE_TIME = 1_600_000_000_000L;
+
+    private SyntheticTree() {}
+
+    /**
+     * @return Relative paths of the files, in index order
+     */
+    public static List<String> filePaths(int files, int fanOut) {
+        List<String> paths = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            String directory = directoryOf(i / fanOut, fanOut);
+            String name = String.format("f%07d.dat", i);
+            paths.add(directory.isEmpty() ? name : directory + "/" + name);
+        }
+        return paths;
+    }
+
+    /**
+     * Builds the scan of a tree in walk order, as a handler would return it.
+     *
+     * @param modifiedEvery Every n-th file gets a later timestamp, 0 for none
+     */
+    public static List<ScanEntry> entries(int files, int fanOut, int modifiedEvery) {
+        List<ScanEntry> entries = new ArrayList<>();
+        Set<String> directories = new LinkedHashSet<>();
+        List<String> paths = filePaths(files, fanOut);
+        for (int i = 0; i < files; i++) {
+            String path = paths.get(i);
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                String directory = path.substring(0, slash);
+                if (directories.add(directory)) {
+                    entries.add(new ScanEntry(directory, new FileSystemNode(nameOf(directory), true, BASE_TIME)));
+                }
+            }
+            long lastModified = lastModified(i) + (modifiedEvery > 0 && i % modifiedEvery == 0 ? 60_000L : 0L);
+            entries.add(new ScanEntry(path, new FileSystemNode(nameOf(path), false, lastModified, size(i))));
+        }
+        entries.sort((a, b) -> ScanEntry.comparePaths(a.getPath(), b.getPath()));
+        return entries;
+    }
+
+    public static long lastModified(int file) {
+        return BASE_TIME + file;
+    }
+
+    public static long size(int file) {
+        return file % 65536;
+    }
+
+    /**
+     * Creates the tree on disk below the benchmark work directory, or reuses it if an
+     * earlier trial completed it. Files are empty: scanning only reads metadata.
+     *
+     * @return Root of the tree
+     */
+    public static Path materialize(int files, int fanOut) throws IOException {
+        Path root = workDirectory().resolve("tree-" + files + "-" + fanOut);
+        Path marker = workDirectory().resolve("tree-" + files + "-" + fanOut + ".complete");
+        if (Files.exists(marker)) {
+            return root;
+        }
+
+        deleteRecursively(root);
+        Path lastDirectory = null;
+        List<String> paths = filePaths(files, fanOut);
+        for (int i = 0; i < files; i++) {
+            Path file = root.resolve(paths.get(i));
+            if (!file.getParent().equals(lastDirectory)) {
+                lastDirectory = file.getParent();
+                Files.createDirectories(lastDirectory);
+            }
+            Files.createFile(file);
+        }
+        Files.createFile(marker);
+        return root;
+    }
+
+    public static void deleteRecursively(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+    
+    /**
+     * @return Directory for generated data, set with -Djsync.bench.dir; it should be on
+     *         the file system under test
+     */
+    public static Path workDirectory() {
+        return Paths.get(System.getProperty("jsync.bench.dir", System.getProperty("java.io.tmpdir")), "jsync-bench");
+    }
+
+    private static String directoryOf(int chunk, int fanOut) {
+        // Most significant digit first, so the parent of a chunk's directory is the directory of chunk / fanOut
+        StringBuilder path = new StringBuilder();
+        for (int rest = chunk; rest > 0; rest /= fanOut) {
+            String segment = String.format("d%02d", rest % fanOut);
+            path.insert(0, path.length() > 0 ? segment + "/" : segment);
+        }
+        return path.toString();
+    }
+    
+    private static String nameOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
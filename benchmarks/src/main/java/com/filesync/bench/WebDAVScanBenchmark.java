@@ -0,0 +1,65 @@
+package com.filesync.bench;
+
+import com.filesync.filesystem.LocalWebDAVServer;
+import com.filesync.filesystem.TreeSnapshot;
+import com.filesync.filesystem.WebDAVFileSystemHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan of a WebDAV share into a {@link TreeSnapshot}. The share is a synthetic tree
+ * served by {@link LocalWebDAVServer}; its per-request delay stands in for the round trip
+ * to a real server, which is what the parallel PROPFIND fan-out hides.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class WebDAVScanBenchmark {
+    @Param({"10000", "100000"})
+    public int files;
+
+    @Param({"16"})
+    public int fanOut;
+
+    @Param({"0", "5"})
+    public long latencyMillis;
+
+    @Param({"1", "8"})
+    public int parallelism;
+
+    private LocalWebDAVServer server;
+    private WebDAVFileSystemHandler handler;
+
+    @Setup
+    public void startServer() throws IOException {
+        server = LocalWebDAVServer.start(SyntheticTree.materialize(files, fanOut), 16, latencyMillis);
+        handler = new WebDAVFileSystemHandler(server.url(), parallelism,
+                WebDAVFileSystemHandler.DEFAULT_TIMEOUT_MILLIS, null, null);
+    }
+
+    @TearDown
+    public void stopServer() {
+        server.close();
+    }
+
+    @Benchmark
+    public TreeSnapshot snapshot() throws IOException {
+        return handler.snapshot();
+    }
+}
@@ -1,9 +1,13 @@
 package com.filesync;
 
 import com.filesync.cli.CommandLineParser;
+import com.filesync.cli.DaemonCommand;
 import com.filesync.cli.NewProfileCommand;
+import com.filesync.cli.RegistryCommand;
+import com.filesync.cli.ResolveCommand;
 import com.filesync.cli.SyncCommand;
 import com.filesync.cli.SyncStatCommand;
+import com.filesync.cli.WatchCommand;
 
 public class Main {
     public static void main(String[] args) {
@@ -11,11 +15,15 @@ public class Main {
             printUsage();
             return;
         }
-
+        
         CommandLineParser parser = new CommandLineParser();
         parser.registerCommand("new-profile", new NewProfileCommand());
         parser.registerCommand("sync", new SyncCommand());
         parser.registerCommand("syncstat", new SyncStatCommand());
+        parser.registerCommand("resolve", new ResolveCommand());
+        parser.registerCommand("registry", new RegistryCommand());
+        parser.registerCommand("watch", new WatchCommand());
+        parser.registerCommand("daemon", new DaemonCommand());
         
         try {
             parser.parse(args);
@@ -24,11 +32,17 @@ public class Main {
             printUsage();
         }
     }
-
+    
     private static void printUsage() {
         System.out.println("Usage:");
-        System.out.println("  new-profile <profile-name> <path-to-folder-A> <path-to-folder-B>");
-        System.out.println("  sync <profile-name>");
-        System.out.println("  syncstat <profile-name>");
+        System.out.println("  new-profile <profile-name> <path-to-folder-A> <path-to-folder-B>"
+                + " [<path-to-folder-C>...]");
+        System.out.println("  sync <profile-name> [--plan] [--full-rescan]");
+        System.out.println("  syncstat <profile-name> [--runs N]");
+        System.out.println("  resolve <profile-name>");
+        System.out.println("  watch <profile-name>");
+        System.out.println("  daemon [format] [--device-slots N] [--status-file F]");
+        System.out.println("  daemon status [--status-file F]");
+        System.out.println("  registry convert <profile-name> <from-format> <to-format>");
     }
 }
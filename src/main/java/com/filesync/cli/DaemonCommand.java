@@ -0,0 +1,71 @@
+package com.filesync.cli;
+
+import com.filesync.core.Profile;
+import com.filesync.core.ProfileManager;
+import com.filesync.daemon.IoScheduler;
+import com.filesync.daemon.SyncDaemon;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class DaemonCommand implements Command {
+    private static final String DEFAULT_STATUS_FILE = "jsync-daemon.status";
+    private static final int DEFAULT_DEVICE_SLOTS = 1;
+    
+    @Override
+    public void execute(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>();
+        Path statusFile = Paths.get(DEFAULT_STATUS_FILE);
+        int deviceSlots = DEFAULT_DEVICE_SLOTS;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--status-file") && i + 1 < args.length) {
+                statusFile = Paths.get(args[++i]);
+            } else if (args[i].equals("--device-slots") && i + 1 < args.length) {
+                deviceSlots = Integer.parseInt(args[++i]);
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+        
+        if (!arguments.isEmpty() && arguments.get(0).equals("status")) {
+            if (!Files.exists(statusFile)) {
+                System.out.println("No daemon is running (no " + statusFile + ").");
+                return;
+            }
+            System.out.println(new String(Files.readAllBytes(statusFile), StandardCharsets.UTF_8));
+            return;
+        }
+        
+        String format = !arguments.isEmpty() ? arguments.get(0) : "xml";
+        
+        ProfileManager profileManager = ProfileManager.getInstance();
+        List<Profile> profiles = new ArrayList<>();
+        for (String name : profileManager.listProfiles()) {
+            Profile profile = profileManager.loadProfile(name);
+            if (profile != null && profile.getBooleanOption("daemon.enabled", true)) {
+                profiles.add(profile);
+            }
+        }
+        if (profiles.isEmpty()) {
+            throw new IllegalArgumentException("No profiles to synchronize in the working directory");
+        }
+        
+        SyncDaemon daemon = new SyncDaemon(profiles, format, new IoScheduler(deviceSlots), statusFile);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Ctrl+C: let running synchronizations finish, start no new ones
+            daemon.close();
+            stopped.countDown();
+        }, "daemon-shutdown"));
+        
+        System.out.println("Synchronizing " + profiles.size() + " profiles (Ctrl+C to stop), status in "
+                + statusFile + ".");
+        daemon.start();
+        stopped.await();
+    }
+}
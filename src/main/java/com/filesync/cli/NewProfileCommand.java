@@ -3,19 +3,22 @@ package com.filesync.cli;
 import com.filesync.core.Profile;
 import com.filesync.core.ProfileManager;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class NewProfileCommand implements Command {
     @Override
     public void execute(String[] args) throws Exception {
         if (args.length < 3) {
-            throw new IllegalArgumentException("Usage: new-profile <profile-name> <path-to-folder-A> <path-to-folder-B>");
+            throw new IllegalArgumentException(
+                    "Usage: new-profile <profile-name> <path-to-folder-A> <path-to-folder-B> [<path-to-folder-C>...]");
         }
         
         String profileName = args[0];
-        String pathA = args[1];
-        String pathB = args[2];
+        List<String> paths = Arrays.asList(args).subList(1, args.length);
         
         ProfileManager profileManager = ProfileManager.getInstance();
-        Profile profile = new Profile(profileName, pathA, pathB);
+        Profile profile = new Profile(profileName, paths);
         profileManager.saveProfile(profile);
         
         System.out.println("Profile '" + profileName + "' created successfully.");
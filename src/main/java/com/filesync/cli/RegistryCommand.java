@@ -0,0 +1,33 @@
+package com.filesync.cli;
+
+import com.filesync.core.Profile;
+import com.filesync.core.ProfileManager;
+import com.filesync.core.Registry;
+import com.filesync.core.RegistryManager;
+
+public class RegistryCommand implements Command {
+    @Override
+    public void execute(String[] args) throws Exception {
+        if (args.length < 4 || !args[0].equals("convert")) {
+            throw new IllegalArgumentException("Usage: registry convert <profile-name> <from-format> <to-format>");
+        }
+        
+        String profileName = args[1];
+        String fromFormat = args[2];
+        String toFormat = args[3];
+        
+        ProfileManager profileManager = ProfileManager.getInstance();
+        Profile profile = profileManager.loadProfile(profileName);
+        
+        if (profile == null) {
+            throw new IllegalArgumentException("Profile not found: " + profileName);
+        }
+        
+        RegistryManager registryManager = RegistryManager.getInstance();
+        Registry registry = registryManager.loadRegistry(profile, fromFormat);
+        registryManager.saveRegistry(registry, profile, toFormat);
+        
+        System.out.println("Registry of profile '" + profileName + "' converted from " + fromFormat + " to " + toFormat
+                + " (" + registry.getEntries().size() + " entries).");
+    }
+}
@@ -0,0 +1,51 @@
+package com.filesync.cli;
+
+import com.filesync.conflict.InteractiveResolver;
+import com.filesync.core.ConflictQueue;
+import com.filesync.core.Profile;
+import com.filesync.core.ProfileManager;
+import com.filesync.core.Registry;
+import com.filesync.core.RegistryManager;
+import com.filesync.core.SyncEngine;
+import com.filesync.observer.ConsoleSyncObserver;
+
+import java.util.List;
+
+public class ResolveCommand implements Command {
+    @Override
+    public void execute(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: resolve <profile-name> [format]");
+        }
+        
+        String profileName = args[0];
+        String format = args.length > 1 ? args[1] : "xml";
+        
+        ProfileManager profileManager = ProfileManager.getInstance();
+        Profile profile = profileManager.loadProfile(profileName);
+        
+        if (profile == null) {
+            throw new IllegalArgumentException("Profile not found: " + profileName);
+        }
+        
+        List<String> paths = ConflictQueue.load(profile).getPaths();
+        if (paths.isEmpty()) {
+            System.out.println("No deferred conflicts for profile '" + profileName + "'.");
+            return;
+        }
+        System.out.println(paths.size() + " deferred conflict(s) for profile '" + profileName + "'.");
+        
+        RegistryManager registryManager = RegistryManager.getInstance();
+        Registry registry = registryManager.loadRegistry(profile, format);
+        
+        // Re-examine only the queued paths; conflicts skipped again stay queued
+        SyncEngine syncEngine = new SyncEngine(profile, registry, format);
+        syncEngine.setConflictResolver(new InteractiveResolver());
+        syncEngine.registerObserver(new ConsoleSyncObserver());
+        syncEngine.synchronizePaths(paths);
+        
+        int remaining = ConflictQueue.load(profile).getPaths().size();
+        System.out.println("Resolution completed for profile '" + profileName + "': " + remaining
+                + " conflict(s) left.");
+    }
+}
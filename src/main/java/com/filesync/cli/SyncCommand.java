@@ -6,16 +6,34 @@ import com.filesync.core.Registry;
 import com.filesync.core.RegistryManager;
 import com.filesync.core.SyncEngine;
 import com.filesync.observer.ConsoleSyncObserver;
+import com.filesync.observer.LogSyncObserver;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SyncCommand implements Command {
     @Override
     public void execute(String[] args) throws Exception {
-        if (args.length < 1) {
-            throw new IllegalArgumentException("Usage: sync <profile-name> [format]");
+        List<String> arguments = new ArrayList<>();
+        boolean planOnly = false;
+        boolean fullRescan = false;
+        for (String arg : args) {
+            if (arg.equals("--plan")) {
+                planOnly = true;
+            } else if (arg.equals("--full-rescan")) {
+                fullRescan = true;
+            } else {
+                arguments.add(arg);
+            }
+        }
+        
+        if (arguments.size() < 1) {
+            throw new IllegalArgumentException("Usage: sync <profile-name> [format] [--plan] [--full-rescan]");
         }
         
-        String profileName = args[0];
-        String format = args.length > 1 ? args[1] : "xml"; // Changed default to xml
+        String profileName = arguments.get(0);
+        String format = arguments.size() > 1 ? arguments.get(1) : "xml"; // Changed default to xml
         
         ProfileManager profileManager = ProfileManager.getInstance();
         Profile profile = profileManager.loadProfile(profileName);
@@ -28,12 +46,29 @@ public class SyncCommand implements Command {
         Registry registry = registryManager.loadRegistry(profile, format);
         
         SyncEngine syncEngine = new SyncEngine(profile, registry, format); // Pass registry and format to SyncEngine
+        syncEngine.setFullRescan(fullRescan);
+        
+        if (planOnly) {
+            // Show what would be done without touching any file
+            System.out.println("Plan for profile '" + profileName + "':");
+            if (profile.isReplicated()) {
+                syncEngine.planReplicas().print(System.out);
+            } else {
+                syncEngine.plan().print(System.out);
+            }
+            return;
+        }
         
         // Register observer for console output (Observer pattern)
         syncEngine.registerObserver(new ConsoleSyncObserver());
+        String logFile = profile.getOption("log.file", null);
+        if (logFile != null) {
+            syncEngine.registerObserver(new LogSyncObserver(Paths.get(logFile)));
+        }
         
         syncEngine.synchronize();
         
-        System.out.println("Synchronization completed for profile '" + profileName + "'.");
+        System.out.println("Synchronization completed for profile '" + profileName + "': "
+                + syncEngine.getTransferStats() + ".");
     }
 }
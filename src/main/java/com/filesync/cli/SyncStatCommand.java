@@ -4,16 +4,37 @@ import com.filesync.core.Profile;
 import com.filesync.core.ProfileManager;
 import com.filesync.core.Registry;
 import com.filesync.core.RegistryManager;
+import com.filesync.metrics.MetricsManager;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 public class SyncStatCommand implements Command {
+    private static final int DEFAULT_RUNS = 10;
+    
     @Override
     public void execute(String[] args) throws Exception {
-        if (args.length < 1) {
-            throw new IllegalArgumentException("Usage: syncstat <profile-name> [format]");
+        List<String> arguments = new ArrayList<>();
+        int runs = DEFAULT_RUNS;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--runs") && i + 1 < args.length) {
+                runs = Integer.parseInt(args[++i]);
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+        
+        if (arguments.size() < 1) {
+            throw new IllegalArgumentException("Usage: syncstat <profile-name> [format] [--runs N]");
         }
         
-        String profileName = args[0];
-        String format = args.length > 1 ? args[1] : "xml"; // Default to properties
+        String profileName = arguments.get(0);
+        String format = arguments.size() > 1 ? arguments.get(1) : "xml"; // Default to properties
         
         ProfileManager profileManager = ProfileManager.getInstance();
         Profile profile = profileManager.loadProfile(profileName);
@@ -23,8 +44,10 @@ public class SyncStatCommand implements Command {
         }
         
         System.out.println("Profile: " + profile.getName());
-        System.out.println("Folder A: " + profile.getPathA());
-        System.out.println("Folder B: " + profile.getPathB());
+        List<String> paths = profile.getReplicaPaths();
+        for (int i = 0; i < paths.size(); i++) {
+            System.out.println("Folder " + Profile.replicaName(i) + ": " + paths.get(i));
+        }
         System.out.println("Format: " + format);
         
         RegistryManager registryManager = RegistryManager.getInstance();
@@ -38,5 +61,61 @@ public class SyncStatCommand implements Command {
                 System.out.println("  " + entry.getPath() + " (Last modified: " + entry.getLastModified() + ")");
             }
         }
+        
+        printRuns(MetricsManager.getInstance().loadHistory(profile.getName(), runs), System.out);
+    }
+    
+    /**
+     * Prints the recorded runs, oldest first, and compares the latest one with the runs before it.
+     */
+    static void printRuns(List<Map<String, Long>> history, PrintStream out) {
+        out.println("\nRecent runs:");
+        if (history.isEmpty()) {
+            out.println("  No runs recorded yet");
+            return;
+        }
+        
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        out.println(String.format("  %-19s %9s %8s %8s %8s %8s %8s %12s %9s %6s",
+                "Started", "Total ms", "Scan", "Diff", "Renames", "Execute", "Registry", "Bytes", "MB/s", "Errors"));
+        for (Map<String, Long> run : history) {
+            out.println(String.format("  %-19s %9d %8d %8d %8d %8d %8d %12d %9.1f %6d%s",
+                    dateFormat.format(new Date(value(run, "timestamp"))), value(run, "durationMs"),
+                    value(run, "scanMs"), value(run, "diffMs"), value(run, "renamesMs"), value(run, "executeMs"),
+                    value(run, "registryMs"), value(run, "bytes"), value(run, "bytesPerSecond") / 1e6,
+                    value(run, "errors"), value(run, "succeeded") == 1 ? "" : "  FAILED"));
+        }
+        
+        if (history.size() < 2) {
+            return;
+        }
+        // The latest run against the median of the earlier ones, which a single outlier cannot skew
+        Map<String, Long> latest = history.get(history.size() - 1);
+        List<Map<String, Long>> earlier = history.subList(0, history.size() - 1);
+        out.println("\nLatest run against the median of the " + earlier.size() + " runs before it:");
+        String[][] trends = {
+                {"durationMs", "Total time"}, {"scanMs", "Scan"}, {"diffMs", "Diff"}, {"executeMs", "Execute"},
+                {"registryMs", "Registry"}, {"bytesPerSecond", "Throughput"}, {"filesPerSecond", "Files/s"}
+        };
+        for (String[] trend : trends) {
+            long median = median(earlier, trend[0]);
+            long current = value(latest, trend[0]);
+            String change = median > 0 ? String.format("%+.0f%%", (current - median) * 100.0 / median) : "n/a";
+            out.println(String.format("  %-12s %12d (median %d, %s)", trend[1], current, median, change));
+        }
+    }
+    
+    static long median(List<Map<String, Long>> runs, String key) {
+        List<Long> values = new ArrayList<>();
+        for (Map<String, Long> run : runs) {
+            values.add(value(run, key));
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+    
+    private static long value(Map<String, Long> run, String key) {
+        Long value = run.get(key);
+        return value != null ? value : 0L;
     }
 }
@@ -0,0 +1,45 @@
+package com.filesync.cli;
+
+import com.filesync.core.Profile;
+import com.filesync.core.ProfileManager;
+import com.filesync.core.Registry;
+import com.filesync.core.RegistryManager;
+import com.filesync.core.SyncEngine;
+import com.filesync.core.SyncWatcher;
+import com.filesync.observer.ConsoleSyncObserver;
+import com.filesync.observer.LogSyncObserver;
+
+import java.nio.file.Paths;
+
+public class WatchCommand implements Command {
+    @Override
+    public void execute(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: watch <profile-name> [format]");
+        }
+        
+        String profileName = args[0];
+        String format = args.length > 1 ? args[1] : "xml";
+        
+        ProfileManager profileManager = ProfileManager.getInstance();
+        Profile profile = profileManager.loadProfile(profileName);
+        
+        if (profile == null) {
+            throw new IllegalArgumentException("Profile not found: " + profileName);
+        }
+        
+        RegistryManager registryManager = RegistryManager.getInstance();
+        Registry registry = registryManager.loadRegistry(profile, format);
+        
+        SyncEngine syncEngine = new SyncEngine(profile, registry, format);
+        syncEngine.setMetricsExported(true);
+        syncEngine.registerObserver(new ConsoleSyncObserver());
+        String logFile = profile.getOption("log.file", null);
+        if (logFile != null) {
+            syncEngine.registerObserver(new LogSyncObserver(Paths.get(logFile)));
+        }
+        
+        System.out.println("Watching profile '" + profileName + "' (Ctrl+C to stop).");
+        new SyncWatcher(profile, syncEngine).run();
+    }
+}
@@ -0,0 +1,27 @@
+package com.filesync.conflict;
+
+import com.filesync.filesystem.FileSystemNode;
+
+// Strategy pattern for conflict resolution policies
+public interface ConflictResolver {
+    
+    /**
+     * Outcome of a conflict.
+     */
+    enum Resolution {
+        USE_A,
+        USE_B,
+        KEEP_BOTH,
+        DEFER
+    }
+    
+    /**
+     * Decides a conflict on a file changed on both sides.
+     * 
+     * @param path Relative path of the file
+     * @param nodeA State on side A, or null if it was deleted there
+     * @param nodeB State on side B, or null if it was deleted there
+     * @return How to resolve the conflict
+     */
+    Resolution resolve(String path, FileSystemNode nodeA, FileSystemNode nodeB);
+}
@@ -0,0 +1,34 @@
+package com.filesync.conflict;
+
+// Factory Method pattern for conflict policies
+public class ConflictResolverFactory {
+    public static final String DEFAULT_POLICY = "ask";
+    
+    /**
+     * Creates the resolver for a policy name.
+     * "ask" prompts on the console when one is attached and defers otherwise,
+     * so unattended runs (cron, services) never wait for input.
+     * 
+     * @param policy One of ask, newest-wins, prefer-a, prefer-b, keep-both, defer
+     * @return Resolver implementing the policy
+     * @throws IllegalArgumentException If the policy is unknown
+     */
+    public static ConflictResolver createConflictResolver(String policy) {
+        switch (policy) {
+            case "ask":
+                return System.console() != null ? new InteractiveResolver() : new DeferResolver();
+            case "newest-wins":
+                return new NewestWinsResolver();
+            case "prefer-a":
+                return new PreferSideResolver(true);
+            case "prefer-b":
+                return new PreferSideResolver(false);
+            case "keep-both":
+                return new KeepBothResolver();
+            case "defer":
+                return new DeferResolver();
+            default:
+                throw new IllegalArgumentException("Unknown conflict policy: " + policy);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.filesync.conflict;
+
+import com.filesync.filesystem.FileSystemNode;
+
+// Strategy pattern implementation: conflicts are left untouched for the resolve command
+public class DeferResolver implements ConflictResolver {
+    
+    @Override
+    public Resolution resolve(String path, FileSystemNode nodeA, FileSystemNode nodeB) {
+        return Resolution.DEFER;
+    }
+}
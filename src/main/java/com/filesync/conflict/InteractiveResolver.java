@@ -0,0 +1,54 @@
+package com.filesync.conflict;
+
+import com.filesync.filesystem.FileSystemNode;
+
+import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+// Strategy pattern implementation: asks the user on the console
+public class InteractiveResolver implements ConflictResolver {
+    private final Scanner scanner = new Scanner(System.in);
+    
+    @Override
+    public Resolution resolve(String path, FileSystemNode nodeA, FileSystemNode nodeB) {
+        System.out.println("CONFLICT detected for: " + path);
+        System.out.println("  A: " + describe(nodeA));
+        System.out.println("  B: " + describe(nodeB));
+        System.out.println("Choose direction:");
+        System.out.println("1. A -> B (use version from A)");
+        System.out.println("2. B -> A (use version from B)");
+        System.out.println("3. Keep both (older version is renamed)");
+        System.out.println("4. Skip (resolve later)");
+        
+        int choice;
+        do {
+            System.out.print("Enter choice (1-4): ");
+            try {
+                choice = Integer.parseInt(scanner.nextLine().trim());
+            } catch (NumberFormatException e) {
+                choice = 0;
+            } catch (NoSuchElementException e) {
+                return Resolution.DEFER; // Input closed
+            }
+        } while (choice < 1 || choice > 4);
+        
+        switch (choice) {
+            case 1:
+                return Resolution.USE_A;
+            case 2:
+                return Resolution.USE_B;
+            case 3:
+                return Resolution.KEEP_BOTH;
+            default:
+                return Resolution.DEFER;
+        }
+    }
+    
+    private static String describe(FileSystemNode node) {
+        if (node == null) {
+            return "deleted";
+        }
+        return node.getSize() + " bytes, modified " + new Date(node.getLastModified());
+    }
+}
@@ -0,0 +1,12 @@
+package com.filesync.conflict;
+
+import com.filesync.filesystem.FileSystemNode;
+
+// Strategy pattern implementation: the older version is kept next to the newer one under a new name
+public class KeepBothResolver implements ConflictResolver {
+    
+    @Override
+    public Resolution resolve(String path, FileSystemNode nodeA, FileSystemNode nodeB) {
+        return Resolution.KEEP_BOTH;
+    }
+}
@@ -0,0 +1,16 @@
+package com.filesync.conflict;
+
+import com.filesync.filesystem.FileSystemNode;
+
+// Strategy pattern implementation: the most recently modified version wins
+public class NewestWinsResolver implements ConflictResolver {
+    
+    @Override
+    public Resolution resolve(String path, FileSystemNode nodeA, FileSystemNode nodeB) {
+        // A modification always beats a deletion
+        if (nodeA == null || nodeB == null) {
+            return nodeA != null ? Resolution.USE_A : Resolution.USE_B;
+        }
+        return nodeA.getLastModified() >= nodeB.getLastModified() ? Resolution.USE_A : Resolution.USE_B;
+    }
+}
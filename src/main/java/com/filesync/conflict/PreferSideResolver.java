@@ -0,0 +1,17 @@
+package com.filesync.conflict;
+
+import com.filesync.filesystem.FileSystemNode;
+
+// Strategy pattern implementation: one side always wins, including its deletions
+public class PreferSideResolver implements ConflictResolver {
+    private final boolean preferA;
+    
+    public PreferSideResolver(boolean preferA) {
+        this.preferA = preferA;
+    }
+    
+    @Override
+    public Resolution resolve(String path, FileSystemNode nodeA, FileSystemNode nodeB) {
+        return preferA ? Resolution.USE_A : Resolution.USE_B;
+    }
+}
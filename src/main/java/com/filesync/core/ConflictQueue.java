@@ -0,0 +1,95 @@
+package com.filesync.core;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Conflicts deferred by the conflict policy of a profile, kept in
+ * "&lt;profile&gt;.conflicts" until the resolve command works through them.
+ * Each path is stored with the time it was first deferred.
+ */
+public class ConflictQueue {
+    private final File file;
+    private final Map<String, Long> conflicts = new LinkedHashMap<>();
+    
+    private ConflictQueue(File file) {
+        this.file = file;
+    }
+    
+    /**
+     * @return Queue of the profile, empty if nothing was deferred yet
+     * @throws IOException If the queue file cannot be read
+     */
+    public static ConflictQueue load(Profile profile) throws IOException {
+        ConflictQueue queue = new ConflictQueue(new File(profile.getName() + ".conflicts"));
+        if (queue.file.exists()) {
+            Properties properties = new Properties();
+            try (FileReader reader = new FileReader(queue.file)) {
+                properties.load(reader);
+            }
+            for (String path : properties.stringPropertyNames()) {
+                queue.conflicts.put(path, Long.parseLong(properties.getProperty(path)));
+            }
+        }
+        return queue;
+    }
+    
+    /**
+     * Writes the queue back, or removes the file once the queue is empty.
+     */
+    public void save() throws IOException {
+        if (conflicts.isEmpty()) {
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Cannot delete " + file);
+            }
+            return;
+        }
+        
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> conflict : conflicts.entrySet()) {
+            properties.setProperty(conflict.getKey(), String.valueOf(conflict.getValue()));
+        }
+        try (FileWriter writer = new FileWriter(file)) {
+            properties.store(writer, "Deferred conflicts");
+        }
+    }
+    
+    public void add(String path) {
+        conflicts.putIfAbsent(path, System.currentTimeMillis());
+    }
+    
+    /**
+     * Removes a path and every queued path below it.
+     */
+    public void removeUnder(String path) {
+        String prefix = path + "/";
+        conflicts.keySet().removeIf(queued -> queued.equals(path) || queued.startsWith(prefix));
+    }
+    
+    public void clear() {
+        conflicts.clear();
+    }
+    
+    public boolean isEmpty() {
+        return conflicts.isEmpty();
+    }
+    
+    public List<String> getPaths() {
+        return new ArrayList<>(conflicts.keySet());
+    }
+    
+    /**
+     * @return Time the path was first deferred, or 0 if it is not queued
+     */
+    public long getDeferredAt(String path) {
+        Long deferredAt = conflicts.get(path);
+        return deferredAt != null ? deferredAt : 0L;
+    }
+}
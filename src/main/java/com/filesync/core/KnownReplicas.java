@@ -0,0 +1,91 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Folders of a profile that took part in its last full synchronization, kept in
+ * "&lt;profile&gt;.replicas". The registry only describes files as they were left on
+ * these folders: a folder added to the profile since is missing files because it was
+ * never seeded, not because they were deleted from it.
+ */
+public class KnownReplicas {
+    private final Set<String> roots = new HashSet<>();
+    
+    private KnownReplicas() {
+    }
+    
+    /**
+     * Reads the folders of the last full synchronization. Without a file, the profile
+     * was synchronized as a pair, if at all, so its first two folders are known.
+     * 
+     * @throws IOException If the file cannot be read
+     */
+    public static KnownReplicas load(Profile profile) throws IOException {
+        KnownReplicas known = new KnownReplicas();
+        Path file = file(profile);
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    known.roots.add(key(line));
+                }
+            }
+        } else {
+            known.roots.add(key(profile.getPathA()));
+            known.roots.add(key(profile.getPathB()));
+        }
+        return known;
+    }
+    
+    /**
+     * Records every folder of the profile as known, after a full synchronization. A pair
+     * needs no file, so that of a profile that went back to two folders is removed.
+     */
+    public static void save(Profile profile) throws IOException {
+        Path file = file(profile).toAbsolutePath();
+        if (!profile.isReplicated()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        List<String> roots = profile.getReplicaPaths();
+        Files.write(temp, roots, StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * @return True if the folder took part in the last full synchronization
+     */
+    public boolean contains(String root) {
+        return roots.contains(key(root));
+    }
+    
+    private static Path file(Profile profile) {
+        return Paths.get(profile.getName() + ".replicas");
+    }
+    
+    /**
+     * Folders given with different spellings of the same path are the same replica;
+     * URLs are compared as given, without a trailing slash.
+     */
+    private static String key(String root) {
+        if (FileSystemFactory.isRemote(root)) {
+            return root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+        }
+        return Paths.get(root).toAbsolutePath().normalize().toString();
+    }
+}
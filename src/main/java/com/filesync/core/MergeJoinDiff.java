@@ -0,0 +1,131 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.ScanEntry;
+import com.filesync.filesystem.TreeSnapshot;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Merge-join of two path-sorted scans.
+ * Both inputs must be ordered by {@link ScanEntry#comparePaths}; each path is
+ * reported once, with the node from each side (or null when missing), as soon
+ * as both cursors have moved past it. The listener may skip the contents of a
+ * directory found on both sides. {@link #joinAll} does the same for any number
+ * of scans, reading each of them once.
+ */
+public class MergeJoinDiff {
+    
+    /**
+     * Receives each path of the join together with its node on each side.
+     */
+    public interface Listener {
+        /**
+         * @return false to skip the contents of a directory present on both sides, true otherwise
+         */
+        boolean onPath(String path, FileSystemNode nodeA, FileSystemNode nodeB) throws IOException;
+    }
+    
+    /**
+     * Receives each path of an N-way join together with its node in each scan.
+     */
+    public interface ReplicaListener {
+        /**
+         * @param nodes Node of the path in each scan, null where it is missing; only valid during the call
+         * @return false to skip the contents of a directory in every scan holding it, true otherwise
+         */
+        boolean onPath(String path, FileSystemNode[] nodes) throws IOException;
+    }
+    
+    public static void join(Iterator<ScanEntry> sideA, Iterator<ScanEntry> sideB, Listener listener) throws IOException {
+        ScanEntry a = sideA.hasNext() ? sideA.next() : null;
+        ScanEntry b = sideB.hasNext() ? sideB.next() : null;
+        
+        while (a != null || b != null) {
+            int order;
+            if (a == null) {
+                order = 1;
+            } else if (b == null) {
+                order = -1;
+            } else {
+                order = ScanEntry.comparePaths(a.getPath(), b.getPath());
+            }
+            
+            if (order < 0) {
+                listener.onPath(a.getPath(), a.getNode(), null);
+                a = sideA.hasNext() ? sideA.next() : null;
+            } else if (order > 0) {
+                listener.onPath(b.getPath(), null, b.getNode());
+                b = sideB.hasNext() ? sideB.next() : null;
+            } else {
+                if (listener.onPath(a.getPath(), a.getNode(), b.getNode())) {
+                    a = sideA.hasNext() ? sideA.next() : null;
+                    b = sideB.hasNext() ? sideB.next() : null;
+                } else {
+                    a = nextOutside(sideA, a);
+                    b = nextOutside(sideB, b);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Joins any number of scans. Each step reports the smallest path among the
+     * current entries and advances every scan positioned on it.
+     */
+    public static void joinAll(List<? extends Iterator<ScanEntry>> sides, ReplicaListener listener)
+            throws IOException {
+        int count = sides.size();
+        ScanEntry[] current = new ScanEntry[count];
+        for (int i = 0; i < count; i++) {
+            current[i] = sides.get(i).hasNext() ? sides.get(i).next() : null;
+        }
+        FileSystemNode[] nodes = new FileSystemNode[count];
+        
+        while (true) {
+            String path = null;
+            for (ScanEntry entry : current) {
+                if (entry != null && (path == null || ScanEntry.comparePaths(entry.getPath(), path) < 0)) {
+                    path = entry.getPath();
+                }
+            }
+            if (path == null) {
+                return;
+            }
+            
+            for (int i = 0; i < count; i++) {
+                nodes[i] = current[i] != null && current[i].getPath().equals(path) ? current[i].getNode() : null;
+            }
+            boolean descend = listener.onPath(path, nodes);
+            for (int i = 0; i < count; i++) {
+                if (nodes[i] != null) {
+                    Iterator<ScanEntry> side = sides.get(i);
+                    boolean skip = !descend && nodes[i].isDirectory();
+                    current[i] = skip ? nextOutside(side, current[i]) : side.hasNext() ? side.next() : null;
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return The next entry that is not below the given one, or null at the end
+     */
+    private static ScanEntry nextOutside(Iterator<ScanEntry> side, ScanEntry directory) {
+        if (side instanceof TreeSnapshot.Cursor) {
+            // Snapshots know where each subtree ends
+            ((TreeSnapshot.Cursor) side).skipSubtree();
+            return side.hasNext() ? side.next() : null;
+        }
+        
+        String prefix = directory.getPath() + "/";
+        while (side.hasNext()) {
+            ScanEntry entry = side.next();
+            if (!entry.getPath().startsWith(prefix)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -1,14 +1,33 @@
 package com.filesync.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class Profile {
+    /** Most replicas a profile can have: one per letter, pathA to pathZ. */
+    public static final int MAX_REPLICAS = 26;
+    
     private final String name;
-    private final String pathA;
-    private final String pathB;
+    private final List<String> paths;
+    private final Map<String, String> options = new LinkedHashMap<>();
     
     public Profile(String name, String pathA, String pathB) {
+        this(name, Arrays.asList(pathA, pathB));
+    }
+    
+    /**
+     * @param paths Folders kept identical, at least two; the first ones are A and B
+     */
+    public Profile(String name, List<String> paths) {
+        if (paths.size() < 2 || paths.size() > MAX_REPLICAS) {
+            throw new IllegalArgumentException("A profile needs 2 to " + MAX_REPLICAS + " folders: " + paths.size());
+        }
         this.name = name;
-        this.pathA = pathA;
-        this.pathB = pathB;
+        this.paths = Collections.unmodifiableList(new ArrayList<>(paths));
     }
     
     public String getName() {
@@ -16,10 +35,80 @@ public class Profile {
     }
     
     public String getPathA() {
-        return pathA;
+        return paths.get(0);
     }
     
     public String getPathB() {
-        return pathB;
+        return paths.get(1);
+    }
+    
+    /**
+     * @return All folders of the profile, A and B first
+     */
+    public List<String> getReplicaPaths() {
+        return paths;
+    }
+    
+    /**
+     * @return True for profiles with more than two folders, synchronized as replicas
+     */
+    public boolean isReplicated() {
+        return paths.size() > 2;
+    }
+    
+    /**
+     * @return Letter naming a folder, "A" for the first
+     */
+    public static String replicaName(int replica) {
+        return String.valueOf((char) ('A' + replica));
+    }
+    
+    /**
+     * Sets a tuning option stored alongside the paths in the profile file
+     * (e.g. "scan.parallelism").
+     */
+    public void setOption(String key, String value) {
+        options.put(key, value);
+    }
+    
+    public String getOption(String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null ? value : defaultValue;
+    }
+    
+    public int getIntOption(String key, int defaultValue) {
+        String value = options.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for option '" + key + "': " + value);
+        }
+    }
+    
+    public long getLongOption(String key, long defaultValue) {
+        String value = options.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for option '" + key + "': " + value);
+        }
+    }
+    
+    public boolean getBooleanOption(String key, boolean defaultValue) {
+        String value = options.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+    
+    public Map<String, String> getOptions() {
+        return Collections.unmodifiableMap(options);
     }
 }
@@ -4,6 +4,10 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 // Singleton pattern
@@ -21,8 +25,13 @@ public class ProfileManager {
     
     public void saveProfile(Profile profile) throws IOException {
         Properties properties = new Properties();
-        properties.setProperty("pathA", profile.getPathA());
-        properties.setProperty("pathB", profile.getPathB());
+        List<String> paths = profile.getReplicaPaths();
+        for (int i = 0; i < paths.size(); i++) {
+            properties.setProperty("path" + Profile.replicaName(i), paths.get(i));
+        }
+        for (Map.Entry<String, String> option : profile.getOptions().entrySet()) {
+            properties.setProperty(option.getKey(), option.getValue());
+        }
         
         File profileFile = new File(profile.getName() + ".sync");
         try (FileWriter writer = new FileWriter(profileFile)) {
@@ -30,6 +39,23 @@ public class ProfileManager {
         }
     }
     
+    /**
+     * @return Names of all profiles saved in the working directory, sorted
+     */
+    public List<String> listProfiles() {
+        List<String> names = new ArrayList<>();
+        File[] files = new File(".").listFiles((directory, name) -> name.endsWith(".sync"));
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    names.add(file.getName().substring(0, file.getName().length() - ".sync".length()));
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+    
     public Profile loadProfile(String profileName) throws IOException {
         File profileFile = new File(profileName + ".sync");
         if (!profileFile.exists()) {
@@ -41,9 +67,22 @@ public class ProfileManager {
             properties.load(reader);
         }
         
-        String pathA = properties.getProperty("pathA");
-        String pathB = properties.getProperty("pathB");
+        // pathA and pathB, followed by pathC, pathD... for replicated profiles
+        List<String> paths = new ArrayList<>();
+        paths.add(properties.getProperty("pathA"));
+        paths.add(properties.getProperty("pathB"));
+        for (int i = 2; i < Profile.MAX_REPLICAS && properties.getProperty("path" + Profile.replicaName(i)) != null;
+             i++) {
+            paths.add(properties.getProperty("path" + Profile.replicaName(i)));
+        }
+        
+        Profile profile = new Profile(profileName, paths);
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.matches("path[A-Z]")) {
+                profile.setOption(key, properties.getProperty(key));
+            }
+        }
         
-        return new Profile(profileName, pathA, pathB);
+        return profile;
     }
 }
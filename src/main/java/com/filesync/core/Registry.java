@@ -1,36 +1,159 @@
 package com.filesync.core;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Registry {
     private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> removed = new HashSet<>();
+    /** Summaries of directories whose subtree was identical on every side, by directory path. */
+    private final Map<String, Long> directorySummaries = new HashMap<>();
+    private final Backing backing;
+    private Listener listener;
+    
+    /**
+     * Read-only base of entries that is queried lazily instead of being loaded
+     * up front, e.g. a memory-mapped registry file. Entries added or removed
+     * afterwards are kept in memory on top of it.
+     */
+    public interface Backing {
+        Entry find(String path);
+        Iterator<Entry> iterator();
+    }
+    
+    /**
+     * Notified of every change made to the registry, e.g. to journal it.
+     */
+    public interface Listener {
+        void entryAdded(Entry entry);
+        void entryRemoved(String path);
+        void directorySummarySet(String path, long summary);
+        void directorySummaryRemoved(String path);
+    }
+    
+    public Registry() {
+        this(null);
+    }
+    
+    public Registry(Backing backing) {
+        this.backing = backing;
+    }
+    
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    public Listener getListener() {
+        return listener;
+    }
     
     public void addEntry(String path, long lastModified) {
-        entries.put(path, new Entry(path, lastModified));
+        addEntry(path, lastModified, -1L, null);
+    }
+    
+    /**
+     * Records the synchronized state of a file.
+     * 
+     * @param path Relative path of the file
+     * @param lastModified Timestamp shared by both sides after the sync
+     * @param size Size in bytes, or -1 if unknown
+     * @param digest Hex content digest, or null if it was not computed
+     */
+    public void addEntry(String path, long lastModified, long size, String digest) {
+        Entry entry = new Entry(path, lastModified, size, digest);
+        entries.put(path, entry);
+        removed.remove(path);
+        if (listener != null) {
+            listener.entryAdded(entry);
+        }
     }
     
     public Entry getEntry(String path) {
-        return entries.get(path);
+        Entry entry = entries.get(path);
+        if (entry != null || backing == null || removed.contains(path)) {
+            return entry;
+        }
+        return backing.find(path);
     }
     
     public void removeEntry(String path) {
         entries.remove(path);
+        if (backing != null) {
+            removed.add(path);
+        }
+        if (listener != null) {
+            listener.entryRemoved(path);
+        }
+    }
+    
+    /**
+     * Records the summary of a directory whose subtree was identical on both sides.
+     * Summaries are kept apart from the file entries and are always held in memory:
+     * there is one per synchronized directory at most.
+     */
+    public void setDirectorySummary(String path, long summary) {
+        directorySummaries.put(path, summary);
+        if (listener != null) {
+            listener.directorySummarySet(path, summary);
+        }
+    }
+    
+    /**
+     * @return Recorded summary of the directory, or 0 if there is none
+     */
+    public long getDirectorySummary(String path) {
+        Long summary = directorySummaries.get(path);
+        return summary != null ? summary : 0L;
+    }
+    
+    public void removeDirectorySummary(String path) {
+        if (directorySummaries.remove(path) != null && listener != null) {
+            listener.directorySummaryRemoved(path);
+        }
+    }
+    
+    /**
+     * @return Recorded directory summaries by directory path, read-only
+     */
+    public Map<String, Long> getDirectorySummaries() {
+        return Collections.unmodifiableMap(directorySummaries);
     }
     
     public List<Entry> getEntries() {
-        return new ArrayList<>(entries.values());
+        List<Entry> result = new ArrayList<>(entries.values());
+        if (backing != null) {
+            Iterator<Entry> iterator = backing.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (!entries.containsKey(entry.getPath()) && !removed.contains(entry.getPath())) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
     }
     
     public static class Entry {
         private final String path;
         private final long lastModified;
+        private final long size;
+        private final String digest;
         
         public Entry(String path, long lastModified) {
+            this(path, lastModified, -1L, null);
+        }
+        
+        public Entry(String path, long lastModified, long size, String digest) {
             this.path = path;
             this.lastModified = lastModified;
+            this.size = size;
+            this.digest = digest;
         }
         
         public String getPath() {
@@ -40,5 +163,26 @@ public class Registry {
         public long getLastModified() {
             return lastModified;
         }
+        
+        public long getSize() {
+            return size;
+        }
+        
+        public String getDigest() {
+            return digest;
+        }
+        
+        /**
+         * Returns the recorded digest if the file still has the recorded size and timestamp,
+         * so the digest only has to be recomputed when the cheap metadata changed.
+         * 
+         * @return Cached digest, or null if it is unknown or possibly stale
+         */
+        public String getDigestIfUnchanged(long currentLastModified, long currentSize) {
+            if (digest != null && lastModified == currentLastModified && size == currentSize) {
+                return digest;
+            }
+            return null;
+        }
     }
 }
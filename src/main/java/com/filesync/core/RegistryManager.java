@@ -1,13 +1,27 @@
 package com.filesync.core;
 
+import com.filesync.core.registry.BinaryRegistryBuilder;
 import com.filesync.core.registry.JSONRegistryBuilder;
 import com.filesync.core.registry.PropertiesRegistryBuilder;
 import com.filesync.core.registry.RegistryBuilder;
+import com.filesync.core.registry.RegistryJournal;
 import com.filesync.core.registry.XMLRegistryBuilder;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manager for registry operations.
@@ -15,13 +29,24 @@ import java.util.Map;
  */
 public class RegistryManager {
     private static RegistryManager instance;
+    private static final long DEFAULT_JOURNAL_COMPACT_BYTES = 8L * 1024 * 1024;
+    
     private final Map<String, RegistryBuilder> builders = new HashMap<>();
+    private final Map<Registry, JournalState> journals = Collections.synchronizedMap(new WeakHashMap<>());
+    // One open log per registry file, closed when the registry is loaded again
+    private final Map<String, RegistryJournal> openJournals = new HashMap<>();
+    
+    // Non-daemon so a running compaction finishes before the JVM exits;
+    // the thread itself goes away once idle
+    private final ThreadPoolExecutor compactor = new ThreadPoolExecutor(0, 1, 1L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "registry-compactor"));
     
     private RegistryManager() {
         // Register default builders
         registerBuilder("xml", new XMLRegistryBuilder());
         registerBuilder("json", new JSONRegistryBuilder());
         registerBuilder("properties", new PropertiesRegistryBuilder());
+        registerBuilder("bin", new BinaryRegistryBuilder());
     }
     
     public static synchronized RegistryManager getInstance() {
@@ -45,7 +70,7 @@ public class RegistryManager {
      * Loads a registry using the specified format.
      * 
      * @param profile Profile associated with the registry
-     * @param format Format to use (e.g., "xml", "json", "properties")
+     * @param format Format to use (e.g., "xml", "json", "properties", "bin")
      * @return Registry object
      * @throws IOException If an I/O error occurs
      * @throws IllegalArgumentException If the format is not supported
@@ -53,7 +78,25 @@ public class RegistryManager {
     public Registry loadRegistry(Profile profile, String format) throws IOException {
         RegistryBuilder builder = getBuilder(format);
         String filePath = profile.getName() + "." + format;
-        return builder.buildRegistry(filePath, profile);
+        Registry registry = builder.buildRegistry(filePath, profile);
+        
+        if (profile.getBooleanOption("registry.journal", false)) {
+            // Journaled mode: the file above is only the base snapshot, the log holds later changes
+            RegistryJournal journal = new RegistryJournal(Paths.get(filePath + ".journal"));
+            synchronized (openJournals) {
+                // The registry this one replaces, e.g. from a daemon's previous run, is done with its log
+                RegistryJournal previous = openJournals.remove(filePath);
+                if (previous != null) {
+                    previous.close();
+                }
+                journal.replay(registry);
+                openJournals.put(filePath, journal);
+            }
+            registry.setListener(journal);
+            journals.put(registry, new JournalState(journal, format, builder, filePath));
+        }
+        
+        return registry;
     }
     
     /**
@@ -72,14 +115,70 @@ public class RegistryManager {
      * 
      * @param registry Registry to save
      * @param profile Profile associated with the registry
-     * @param format Format to use (e.g., "xml", "json", "properties")
+     * @param format Format to use (e.g., "xml", "json", "properties", "bin")
      * @throws IOException If an I/O error occurs
      * @throws IllegalArgumentException If the format is not supported
      */
     public void saveRegistry(Registry registry, Profile profile, String format) throws IOException {
+        JournalState state = journals.get(registry);
+        if (state != null && state.format.equalsIgnoreCase(format)) {
+            // Every change is already in the log: saving only makes it durable
+            state.journal.sync();
+            long threshold = profile.getLongOption("registry.journal.compactBytes", DEFAULT_JOURNAL_COMPACT_BYTES);
+            if (state.journal.size() >= threshold || state.journal.hasRotatedLog()) {
+                compact(registry, state, profile);
+            }
+            return;
+        }
+        
         RegistryBuilder builder = getBuilder(format);
-        String filePath = profile.getName() + "." + format;
-        builder.saveRegistry(registry, filePath, profile);
+        // Saved again at every checkpoint of a run: a crash while writing must leave the last copy intact
+        Path target = Paths.get(profile.getName() + "." + format).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".save");
+        builder.saveRegistry(registry, temp.toString(), profile);
+        replace(temp, target);
+    }
+    
+    /**
+     * Folds the journal into a new base snapshot. The log is rotated and the snapshot
+     * copied on the calling thread; writing it runs in the background.
+     */
+    private void compact(Registry registry, JournalState state, Profile profile) throws IOException {
+        synchronized (state) {
+            if (state.compacting) {
+                return;
+            }
+            state.compacting = true;
+        }
+        
+        if (!state.journal.hasRotatedLog()) {
+            state.journal.rotate();
+        }
+        
+        Registry snapshot = new Registry();
+        for (Registry.Entry entry : registry.getEntries()) {
+            snapshot.addEntry(entry.getPath(), entry.getLastModified(), entry.getSize(), entry.getDigest());
+        }
+        for (Map.Entry<String, Long> summary : registry.getDirectorySummaries().entrySet()) {
+            snapshot.setDirectorySummary(summary.getKey(), summary.getValue());
+        }
+        
+        compactor.execute(() -> {
+            try {
+                Path base = Paths.get(state.filePath);
+                Path temp = Paths.get(state.filePath + ".compact");
+                state.builder.saveRegistry(snapshot, temp.toString(), profile);
+                replace(temp, base.toAbsolutePath());
+                state.journal.compacted();
+            } catch (IOException | RuntimeException e) {
+                // The rotated log is kept and replayed, so the next save simply retries
+                System.err.println("Registry compaction failed for " + state.filePath + ": " + e.getMessage());
+            } finally {
+                synchronized (state) {
+                    state.compacting = false;
+                }
+            }
+        });
     }
     
     /**
@@ -93,6 +192,32 @@ public class RegistryManager {
         saveRegistry(registry, profile, "xml");
     }
     
+    /**
+     * Renames a saved temp file over the registry file, durably: the data is forced
+     * before the rename, so the rename never exposes a file whose blocks are missing,
+     * and the directory after it, so the rename itself survives a crash.
+     */
+    private static void replace(Path temp, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        
+        FileChannel directory;
+        try {
+            directory = FileChannel.open(target.getParent(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return; // Directories cannot be opened on this platform (Windows)
+        }
+        try (FileChannel opened = directory) {
+            opened.force(true);
+        }
+    }
+    
     private RegistryBuilder getBuilder(String format) {
         RegistryBuilder builder = builders.get(format.toLowerCase());
         if (builder == null) {
@@ -100,4 +225,19 @@ public class RegistryManager {
         }
         return builder;
     }
+    
+    private static class JournalState {
+        private final RegistryJournal journal;
+        private final String format;
+        private final RegistryBuilder builder;
+        private final String filePath;
+        private boolean compacting;
+        
+        JournalState(RegistryJournal journal, String format, RegistryBuilder builder, String filePath) {
+            this.journal = journal;
+            this.format = format;
+            this.builder = builder;
+            this.filePath = filePath;
+        }
+    }
 }
@@ -0,0 +1,269 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemHandler;
+import com.filesync.filesystem.FileSystemNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Pairs files that appeared on one side with files that disappeared from the same
+ * side, so that a rename is replayed as a move on the other side instead of a copy
+ * followed by a delete.
+ * New and deleted files are held back while the diff runs; once it is complete they
+ * are grouped by size and timestamp, which a rename preserves, and paired by content
+ * digest within each group. Size and timestamp alone also match unrelated files, such
+ * as files extracted from one archive, and replaying a wrong pairing would give a file
+ * another's content. The digest of a deleted file usually comes from the registry, so
+ * verifying a pair mostly costs reading the new file. Without verification, a group
+ * with exactly one new and one deleted file is paired without reading either.
+ */
+public class RenameDetector {
+    private final boolean verifyDigest;
+    private final List<Pending> pending = new ArrayList<>();
+    private final List<Pending> unmatched = new ArrayList<>();
+    
+    /**
+     * A new or deleted file held back until renames are detected.
+     */
+    public static class Pending {
+        private final String path;
+        private final SyncEngine.SyncStatus status;
+        private final FileSystemNode nodeA;
+        private final FileSystemNode nodeB;
+        private final Registry.Entry registryEntry;
+        private boolean matched;
+        private String digest;
+        
+        Pending(String path, SyncEngine.SyncStatus status, FileSystemNode nodeA, FileSystemNode nodeB,
+                Registry.Entry registryEntry) {
+            this.path = path;
+            this.status = status;
+            this.nodeA = nodeA;
+            this.nodeB = nodeB;
+            this.registryEntry = registryEntry;
+        }
+        
+        public String getPath() {
+            return path;
+        }
+        
+        public SyncEngine.SyncStatus getStatus() {
+            return status;
+        }
+        
+        public FileSystemNode getNodeA() {
+            return nodeA;
+        }
+        
+        public FileSystemNode getNodeB() {
+            return nodeB;
+        }
+        
+        public Registry.Entry getRegistryEntry() {
+            return registryEntry;
+        }
+        
+        boolean isChangeOnA() {
+            return status == SyncEngine.SyncStatus.A_NEW || status == SyncEngine.SyncStatus.A_DELETED;
+        }
+        
+        boolean isNew() {
+            return status == SyncEngine.SyncStatus.A_NEW || status == SyncEngine.SyncStatus.B_NEW;
+        }
+        
+        /**
+         * @return The copy of the file that still exists: the new file itself, or the
+         *         untouched copy on the other side of a deleted one
+         */
+        FileSystemNode getExistingNode() {
+            return nodeA != null ? nodeA : nodeB;
+        }
+    }
+    
+    /**
+     * A rename to replay: the file at the deleted path is moved to the new path on
+     * the side that did not change.
+     */
+    public static class Move {
+        private final Pending deleted;
+        private final Pending created;
+        private final String digest;
+        
+        Move(Pending deleted, Pending created, String digest) {
+            this.deleted = deleted;
+            this.created = created;
+            this.digest = digest;
+        }
+        
+        public String getFromPath() {
+            return deleted.path;
+        }
+        
+        public String getToPath() {
+            return created.path;
+        }
+        
+        /**
+         * @return true if the rename happened on side A and must be replayed on side B
+         */
+        public boolean isRenamedOnA() {
+            return created.isChangeOnA();
+        }
+        
+        /**
+         * @return State of the file at its new path
+         */
+        public FileSystemNode getNode() {
+            return created.getExistingNode();
+        }
+        
+        /**
+         * @return Content digest if it is known, null otherwise
+         */
+        public String getDigest() {
+            if (digest != null) {
+                return digest;
+            }
+            FileSystemNode node = deleted.getExistingNode();
+            Registry.Entry entry = deleted.registryEntry;
+            return entry != null ? entry.getDigestIfUnchanged(node.getLastModified(), node.getSize()) : null;
+        }
+    }
+    
+    /**
+     * @param verifyDigest true to confirm every pairing by content digest, false to pair
+     *        a lone new and deleted file of the same size and timestamp unread
+     */
+    public RenameDetector(boolean verifyDigest) {
+        this.verifyDigest = verifyDigest;
+    }
+    
+    /**
+     * Holds back a file if it may be one half of a rename.
+     * 
+     * @return true if the file is held back, false if it must be processed now
+     */
+    public boolean offer(String path, SyncEngine.SyncStatus status, FileSystemNode nodeA, FileSystemNode nodeB,
+                         Registry.Entry registryEntry) {
+        switch (status) {
+            case A_NEW:
+            case B_NEW:
+            case A_DELETED:
+            case B_DELETED:
+                pending.add(new Pending(path, status, nodeA, nodeB, registryEntry));
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Pairs the held back files. Files left unpaired are available from
+     * {@link #getUnmatched()} afterwards, in the order they were offered.
+     * 
+     * @return Renames to replay
+     * @throws IOException If a digest cannot be computed
+     */
+    public List<Move> detect(FileSystemHandler handlerA, FileSystemHandler handlerB) throws IOException {
+        Map<Key, List<Pending>> groups = new LinkedHashMap<>();
+        for (Pending file : pending) {
+            FileSystemNode node = file.getExistingNode();
+            if (node.getSize() >= 0) {
+                groups.computeIfAbsent(new Key(file.isChangeOnA(), node.getSize(), node.getLastModified()),
+                        key -> new ArrayList<>()).add(file);
+            }
+        }
+        
+        List<Move> moves = new ArrayList<>();
+        for (List<Pending> group : groups.values()) {
+            List<Pending> created = new ArrayList<>();
+            List<Pending> deleted = new ArrayList<>();
+            for (Pending file : group) {
+                (file.isNew() ? created : deleted).add(file);
+            }
+            if (created.isEmpty() || deleted.isEmpty()) {
+                continue;
+            }
+            
+            if (!verifyDigest && created.size() == 1 && deleted.size() == 1) {
+                moves.add(pair(deleted.get(0), created.get(0), null));
+                continue;
+            }
+            
+            for (Pending newFile : created) {
+                String newDigest = digest(newFile, handlerA, handlerB);
+                for (Pending deletedFile : deleted) {
+                    if (!deletedFile.matched && newDigest.equals(digest(deletedFile, handlerA, handlerB))) {
+                        moves.add(pair(deletedFile, newFile, newDigest));
+                        break;
+                    }
+                }
+            }
+        }
+        
+        unmatched.clear();
+        for (Pending file : pending) {
+            if (!file.matched) {
+                unmatched.add(file);
+            }
+        }
+        pending.clear();
+        return moves;
+    }
+    
+    /**
+     * @return Files that were not part of a rename in the last {@link #detect} call
+     */
+    public List<Pending> getUnmatched() {
+        return unmatched;
+    }
+    
+    private Move pair(Pending deleted, Pending created, String digest) {
+        deleted.matched = true;
+        created.matched = true;
+        return new Move(deleted, created, digest);
+    }
+    
+    private String digest(Pending file, FileSystemHandler handlerA, FileSystemHandler handlerB) throws IOException {
+        if (file.digest == null) {
+            FileSystemNode node = file.getExistingNode();
+            Registry.Entry entry = file.registryEntry;
+            file.digest = entry != null ? entry.getDigestIfUnchanged(node.getLastModified(), node.getSize()) : null;
+            if (file.digest == null) {
+                file.digest = (file.nodeA != null ? handlerA : handlerB).computeDigest(file.path);
+            }
+        }
+        return file.digest;
+    }
+    
+    private static class Key {
+        private final boolean changeOnA;
+        private final long size;
+        private final long lastModified;
+        
+        Key(boolean changeOnA, long size, long lastModified) {
+            this.changeOnA = changeOnA;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return changeOnA == other.changeOnA && size == other.size && lastModified == other.lastModified;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(changeOnA, size, lastModified);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.ScanEntry;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Operations found by the diff of a replicated profile, the counterpart of {@link SyncPlan}
+ * for more than two folders. Every operation names the replica whose version wins and all
+ * replicas it is applied to, so a changed file is read once for all of them. Operations
+ * run conflicts first, then small copies before large ones, then deletions, deepest
+ * paths first, once everything else is done.
+ */
+public class ReplicaPlan {
+    private final long smallFileBytes;
+    private final List<Operation> operations = new ArrayList<>();
+    
+    public enum Action {
+        CONFLICT,
+        COPY,
+        UPDATE,
+        DELETE
+    }
+    
+    /**
+     * A single planned change of one path.
+     */
+    public static class Operation {
+        private final Action action;
+        private final String path;
+        private final int source;
+        private final int[] targets;
+        private final FileSystemNode[] nodes;
+        private final Registry.Entry registryEntry;
+        
+        Operation(Action action, String path, int source, int[] targets, FileSystemNode[] nodes,
+                  Registry.Entry registryEntry) {
+            this.action = action;
+            this.path = path;
+            this.source = source;
+            this.targets = targets;
+            this.nodes = nodes;
+            this.registryEntry = registryEntry;
+        }
+        
+        public Action getAction() {
+            return action;
+        }
+        
+        public String getPath() {
+            return path;
+        }
+        
+        /**
+         * @return Replica holding the version to copy, or -1 for deletions and conflicts
+         */
+        public int getSource() {
+            return source;
+        }
+        
+        /**
+         * @return Replicas to copy to or delete from; empty for conflicts
+         */
+        public int[] getTargets() {
+            return targets.clone();
+        }
+        
+        /**
+         * @return State of the path on each replica, null where it is missing
+         */
+        public FileSystemNode[] getNodes() {
+            return nodes.clone();
+        }
+        
+        public FileSystemNode getSourceNode() {
+            return source >= 0 ? nodes[source] : null;
+        }
+        
+        public Registry.Entry getRegistryEntry() {
+            return registryEntry;
+        }
+        
+        /**
+         * @return Bytes read for a copy or update, 0 otherwise
+         */
+        public long getBytes() {
+            return source >= 0 ? Math.max(nodes[source].getSize(), 0L) : 0L;
+        }
+        
+        @Override
+        public String toString() {
+            switch (action) {
+                case DELETE:
+                    return "DELETE " + names(targets) + ": " + path;
+                case CONFLICT:
+                    return "CONFLICT " + path;
+                default:
+                    return action + " " + Profile.replicaName(source) + " -> " + names(targets) + ": " + path
+                            + " (" + getBytes() + " bytes)";
+            }
+        }
+    }
+    
+    /**
+     * @param smallFileBytes Copies below this size run before the larger ones
+     */
+    public ReplicaPlan(long smallFileBytes) {
+        this.smallFileBytes = smallFileBytes;
+    }
+    
+    /**
+     * Adds a copy of one replica's version to the replicas that lack it or hold another one.
+     * 
+     * @param nodes State on each replica; copied, so the diff may reuse the array
+     */
+    public void addCopy(String path, int source, int[] targets, FileSystemNode[] nodes, Registry.Entry registryEntry) {
+        boolean update = false;
+        for (int target : targets) {
+            update |= nodes[target] != null;
+        }
+        operations.add(new Operation(update ? Action.UPDATE : Action.COPY, path, source, targets, nodes.clone(),
+                registryEntry));
+    }
+    
+    public void addDelete(String path, int[] targets, FileSystemNode[] nodes, Registry.Entry registryEntry) {
+        operations.add(new Operation(Action.DELETE, path, -1, targets, nodes.clone(), registryEntry));
+    }
+    
+    /**
+     * Adds a path changed differently on several replicas, left to the conflict policy.
+     */
+    public void addConflict(String path, FileSystemNode[] nodes, Registry.Entry registryEntry) {
+        operations.add(new Operation(Action.CONFLICT, path, -1, new int[0], nodes.clone(), registryEntry));
+    }
+    
+    /**
+     * @return All operations in execution order
+     */
+    public List<Operation> getOperations() {
+        List<Operation> ordered = new ArrayList<>(operations);
+        ordered.sort(Comparator.comparingInt(this::phase).thenComparing(ReplicaPlan::compareInPhase));
+        return ordered;
+    }
+    
+    /**
+     * Splits the operations in execution order where one group must be complete before
+     * the next one starts: conflicts and transfers, then deletions. Within a group the
+     * order only sets priorities, so its operations can run concurrently.
+     * 
+     * @return Groups of operations, to be run one after the other
+     */
+    public List<List<Operation>> getStages() {
+        List<List<Operation>> stages = new ArrayList<>();
+        int current = -1;
+        for (Operation operation : getOperations()) {
+            int stage = stage(operation);
+            if (stage != current) {
+                stages.add(new ArrayList<>());
+                current = stage;
+            }
+            stages.get(stages.size() - 1).add(operation);
+        }
+        return stages;
+    }
+    
+    /**
+     * Lists the directories receiving new files on one replica, so they can be created
+     * in one pass before the transfers start.
+     * 
+     * @return Directories in path order, parents first
+     */
+    public List<String> getTargetDirectories(int replica) {
+        TreeSet<String> directories = new TreeSet<>(ScanEntry::comparePaths);
+        for (Operation operation : operations) {
+            int slash = operation.path.lastIndexOf('/');
+            if (slash > 0 && operation.source >= 0 && operation.nodes[replica] == null
+                    && contains(operation.targets, replica)) {
+                directories.add(operation.path.substring(0, slash));
+            }
+        }
+        return new ArrayList<>(directories);
+    }
+    
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+    
+    public int countOperations(Action action) {
+        int count = 0;
+        for (Operation operation : operations) {
+            if (operation.action == action) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * @return Total bytes read by all planned copies and updates
+     */
+    public long getTotalBytes() {
+        long total = 0L;
+        for (Operation operation : operations) {
+            total += operation.getBytes();
+        }
+        return total;
+    }
+    
+    /**
+     * Prints the operations in execution order, followed by the totals.
+     */
+    public void print(PrintStream out) {
+        for (Operation operation : getOperations()) {
+            out.println("  " + operation);
+        }
+        int transfers = countOperations(Action.COPY) + countOperations(Action.UPDATE);
+        out.println(transfers + " files (" + getTotalBytes() + " bytes) to transfer, "
+                + countOperations(Action.DELETE) + " to delete, " + countOperations(Action.CONFLICT) + " conflicts.");
+    }
+    
+    /**
+     * @return Group of operations that must wait for all earlier groups
+     */
+    private static int stage(Operation operation) {
+        return operation.action == Action.DELETE ? 1 : 0;
+    }
+    
+    private int phase(Operation operation) {
+        switch (operation.action) {
+            case CONFLICT:
+                return 0;
+            case COPY:
+            case UPDATE:
+                return operation.getBytes() < smallFileBytes ? 1 : 2;
+            case DELETE:
+            default:
+                return 3;
+        }
+    }
+    
+    /**
+     * Writes are grouped by directory; deletions go deepest first.
+     */
+    private static int compareInPhase(Operation a, Operation b) {
+        if (a.action == Action.DELETE) {
+            int depth = Integer.compare(depthOf(b.path), depthOf(a.path));
+            if (depth != 0) {
+                return depth;
+            }
+        }
+        return ScanEntry.comparePaths(a.path, b.path);
+    }
+    
+    private static boolean contains(int[] replicas, int replica) {
+        for (int candidate : replicas) {
+            if (candidate == replica) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return Names of the replicas, e.g. "C, D"
+     */
+    static String names(int[] replicas) {
+        StringBuilder names = new StringBuilder();
+        for (int replica : replicas) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(Profile.replicaName(replica));
+        }
+        return names.toString();
+    }
+    
+    private static int depthOf(String path) {
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,131 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemFactory;
+import com.filesync.filesystem.TreeSnapshot;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Shares snapshots of the same root between the synchronizations of several profiles.
+ * A run announces the roots it will scan with {@link #expect} when it becomes due; a
+ * scan of another run that was in progress then, or finished since, is handed to it
+ * instead of scanning again. A run that is about to change a root
+ * {@linkplain #invalidate invalidates} it, and a snapshot is dropped as soon as no due
+ * run expects its root any more, so only snapshots that can still be used are held.
+ */
+public class ScanCache {
+    private final Map<String, Root> roots = new HashMap<>();
+    
+    /**
+     * Takes a snapshot of a root.
+     */
+    public interface Scan {
+        TreeSnapshot run() throws IOException;
+    }
+    
+    private static class Root {
+        int expected;
+        /** End of the scan in milliseconds, or 0 while it runs. */
+        long scanEnd;
+        FutureTask<TreeSnapshot> scan;
+    }
+    
+    /**
+     * Announces that a run which became due now will scan the root.
+     */
+    public synchronized void expect(String root) {
+        roots.computeIfAbsent(key(root), key -> new Root()).expected++;
+    }
+    
+    /**
+     * Ends an announcement made with {@link #expect}, once the run has scanned or failed.
+     */
+    public synchronized void release(String root) {
+        String key = key(root);
+        Root entry = roots.get(key);
+        if (entry != null && --entry.expected <= 0) {
+            roots.remove(key);
+        }
+    }
+    
+    /**
+     * Drops the snapshot of a root whose content is about to change.
+     */
+    public synchronized void invalidate(String root) {
+        Root entry = roots.get(key(root));
+        if (entry != null) {
+            entry.scan = null;
+        }
+    }
+    
+    /**
+     * Returns a snapshot of the root that was still being taken, or was finished, when the
+     * calling run became due, taking one with the given scan if there is none.
+     * 
+     * @param notBefore Time the calling run became due, in milliseconds
+     */
+    public TreeSnapshot snapshot(String root, Scan scan, long notBefore) throws IOException {
+        Root entry;
+        FutureTask<TreeSnapshot> task;
+        boolean owner = false;
+        synchronized (this) {
+            entry = roots.get(key(root));
+            if (entry == null) {
+                task = null; // No run expects this root: nothing to share
+            } else {
+                if (entry.scan == null || (entry.scanEnd != 0 && entry.scanEnd < notBefore)) {
+                    entry.scan = new FutureTask<>(scan::run);
+                    entry.scanEnd = 0L;
+                    owner = true;
+                }
+                task = entry.scan;
+            }
+        }
+        
+        if (task == null) {
+            return scan.run();
+        }
+        if (owner) {
+            task.run();
+            synchronized (this) {
+                if (entry.scan == task) {
+                    entry.scanEnd = System.currentTimeMillis();
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning " + root);
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                // Not shared: the next run scans again
+                if (entry.scan == task) {
+                    entry.scan = null;
+                }
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error scanning " + root + ": " + e.getCause(), e.getCause());
+        }
+    }
+    
+    /**
+     * Folders reached through different spellings of the same path share one key;
+     * URLs are compared as given, without a trailing slash.
+     */
+    private static String key(String root) {
+        if (FileSystemFactory.isRemote(root)) {
+            return root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+        }
+        return Paths.get(root).toAbsolutePath().normalize().toString();
+    }
+}
@@ -1,27 +1,77 @@
 package com.filesync.core;
 
+import com.filesync.conflict.ConflictResolver;
+import com.filesync.conflict.ConflictResolverFactory;
 import com.filesync.filesystem.FileSystemFactory;
 import com.filesync.filesystem.FileSystemHandler;
 import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.filesystem.ScanEntry;
+import com.filesync.filesystem.ScanHints;
+import com.filesync.filesystem.ScanStream;
+import com.filesync.filesystem.TreeSnapshot;
+import com.filesync.metrics.MetricsManager;
+import com.filesync.metrics.SyncMetrics;
+import com.filesync.observer.SyncEvent;
+import com.filesync.observer.SyncEventBus;
 import com.filesync.observer.SyncObserver;
 import com.filesync.strategy.ConflictStrategy;
+import com.filesync.strategy.ContentAwareCopyStrategy;
 import com.filesync.strategy.CopyStrategy;
 import com.filesync.strategy.DeleteStrategy;
+import com.filesync.strategy.KeepBothStrategy;
+import com.filesync.strategy.MoveStrategy;
+import com.filesync.strategy.ReplicaCopyStrategy;
 import com.filesync.strategy.SyncStrategy;
+import com.filesync.transfer.TransferContext;
+import com.filesync.transfer.TransferStats;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
 
 // Template Method pattern for the synchronization algorithm
 public class SyncEngine {
+    private static final int DEFAULT_TRANSFER_CONCURRENCY = 4;
+    private static final int DEFAULT_CHECKPOINT_OPERATIONS = 10000;
+    private static final long DEFAULT_CHECKPOINT_SECONDS = 30L;
+    
     private final Profile profile;
     private final Registry registry;
     private final String format;
     private final List<SyncObserver> observers = new ArrayList<>();
+    private TransferContext transferContext = TransferContext.defaults();
+    private RenameDetector renameDetector;
+    private Map<String, Long> unchangedDirectories = new HashMap<>();
+    private List<String> changedDirectories = new ArrayList<>();
+    // Replicas whose missing files count as deletions, see KnownReplicas
+    private boolean[] knownReplicas;
+    private ConflictResolver conflictResolver;
+    private ConflictQueue conflictQueue;
+    private SyncEventBus eventBus;
+    private SyncMetrics metrics;
+    private boolean metricsExported = MetricsManager.isRemoteJmxEnabled();
+    private ScanCache scanCache;
+    // Digests of both versions of conflicts, computed on the pool ahead of scheduling them
+    private final Map<String, String[]> conflictDigests = new ConcurrentHashMap<>();
+    private long dueTime;
+    private boolean fullRescan;
     
     public SyncEngine(Profile profile) {
         this(profile, null, "properties");
@@ -41,142 +91,1132 @@ public class SyncEngine {
         observers.remove(observer);
     }
     
-    private void notifyObservers(String event, String path) {
-        for (SyncObserver observer : observers) {
-            observer.onSyncEvent(event, path);
-        }
+    /**
+     * Wraps a strategy so that its event is published, with its duration, once it completed.
+     */
+    private SyncStrategy reported(SyncStrategy strategy, SyncEvent.Kind kind, boolean fromA, String path,
+                                  String targetPath, long bytes) {
+        SyncEvent.Direction direction = fromA ? SyncEvent.Direction.A_TO_B : SyncEvent.Direction.B_TO_A;
+        return reported(strategy, kind, duration -> new SyncEvent(kind, direction, path, targetPath, bytes, duration));
+    }
+    
+    /**
+     * Wraps a strategy of a replicated profile, whose event names the replicas involved.
+     */
+    private SyncStrategy reported(SyncStrategy strategy, SyncEvent.Kind kind, String route, String path, long bytes) {
+        return reported(strategy, kind, duration -> new SyncEvent(kind, route, path, bytes, duration));
+    }
+    
+    private SyncStrategy reported(SyncStrategy strategy, SyncEvent.Kind kind, LongFunction<SyncEvent> event) {
+        SyncEventBus bus = eventBus;
+        SyncMetrics runMetrics = metrics;
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                strategy.execute();
+            } catch (IOException | RuntimeException e) {
+                runMetrics.recordError(kind);
+                throw e;
+            }
+            long duration = System.nanoTime() - start;
+            runMetrics.recordOperation(kind, duration);
+            bus.publish(event.apply(duration));
+        };
+    }
+    
+    /**
+     * Overrides the conflict policy of the profile, e.g. to ask the user while
+     * working through deferred conflicts.
+     * 
+     * @param conflictResolver Resolver to use, or null for the profile's policy
+     */
+    public void setConflictResolver(ConflictResolver conflictResolver) {
+        this.conflictResolver = conflictResolver;
+    }
+    
+    /**
+     * @return Byte counters of the last (or running) synchronization
+     */
+    public TransferStats getTransferStats() {
+        return transferContext.getStats();
+    }
+    
+    /**
+     * Exposes the metrics of every run through JMX unless the profile sets metrics.jmx=false.
+     * Off by default for one-off runs, which would pay for starting the MBean server without
+     * anyone connected, unless the JVM was started with remote JMX enabled.
+     */
+    public void setMetricsExported(boolean metricsExported) {
+        this.metricsExported = metricsExported;
+    }
+    
+    /**
+     * Takes the snapshots of full synchronizations from a cache shared with other profiles,
+     * and invalidates them there before changing either side.
+     * 
+     * @param scanCache Cache the roots were announced to with {@link ScanCache#expect}
+     * @param dueTime Time this run became due; older snapshots are not used
+     */
+    public void shareScans(ScanCache scanCache, long dueTime) {
+        this.scanCache = scanCache;
+        this.dueTime = dueTime;
+    }
+    
+    /**
+     * Lists every directory of local folders in the next scans, instead of reusing the
+     * listings of the directories that did not change since the previous scan.
+     */
+    public void setFullRescan(boolean fullRescan) {
+        this.fullRescan = fullRescan;
+    }
+    
+    /**
+     * @return Phase timings and operation latencies of the last (or running) synchronization
+     */
+    public SyncMetrics getMetrics() {
+        return metrics;
     }
     
     public void synchronize() throws IOException {
-        // Factory Method pattern to create file system handlers
-        FileSystemHandler handlerA = FileSystemFactory.createFileSystemHandler(profile.getPathA());
-        FileSystemHandler handlerB = FileSystemFactory.createFileSystemHandler(profile.getPathB());
+        startMeasuredRun();
+        boolean succeeded = false;
+        try {
+            RegistryManager registryManager = RegistryManager.getInstance();
+            
+            if (profile.isReplicated()) {
+                List<FileSystemHandler> handlers = createReplicaHandlers();
+                ReplicaPlan plan = planReplicas(handlers);
+                conflictQueue.clear();
+                invalidateScans(!plan.isEmpty());
+                executeReplicas(plan, handlers);
+            } else {
+                // Factory Method pattern to create file system handlers
+                FileSystemHandler handlerA = FileSystemFactory.createFileSystemHandler(profile.getPathA(), profile);
+                FileSystemHandler handlerB = FileSystemFactory.createFileSystemHandler(profile.getPathB(), profile);
+                
+                SyncPlan plan = plan(handlerA, handlerB);
+                
+                // A full run sees every conflict again, so the queue is rebuilt from this run's deferrals
+                conflictQueue.clear();
+                invalidateScans(!plan.isEmpty());
+                execute(plan, handlerA, handlerB);
+            }
+            metrics.startPhase(SyncMetrics.Phase.REGISTRY);
+            recordDirectorySummaries();
+            conflictQueue.save();
+            
+            // Save the updated registry with the specified format
+            registryManager.saveRegistry(registry, profile, format);
+            // Every folder now holds what the registry describes
+            KnownReplicas.save(profile);
+            succeeded = true;
+        } finally {
+            publishMetrics(succeeded);
+        }
+    }
+    
+    /**
+     * Scans both sides and works out what a synchronization would do, without
+     * changing any file or the registry.
+     * 
+     * @return Operations a call to {@link #synchronize()} would run now
+     * @throws IOException If an I/O error occurs
+     */
+    public SyncPlan plan() throws IOException {
+        if (profile.isReplicated()) {
+            throw new IllegalArgumentException("Profile " + profile.getName() + " has "
+                    + profile.getReplicaPaths().size() + " folders; use planReplicas()");
+        }
+        startRun();
+        FileSystemHandler handlerA = FileSystemFactory.createFileSystemHandler(profile.getPathA(), profile);
+        FileSystemHandler handlerB = FileSystemFactory.createFileSystemHandler(profile.getPathB(), profile);
+        return plan(handlerA, handlerB);
+    }
+    
+    /**
+     * Scans every replica of a replicated profile once and works out what a
+     * synchronization would do, without changing any file or the registry.
+     * 
+     * @return Operations a call to {@link #synchronize()} would run now
+     * @throws IOException If an I/O error occurs
+     */
+    public ReplicaPlan planReplicas() throws IOException {
+        startRun();
+        return planReplicas(createReplicaHandlers());
+    }
+    
+    /**
+     * Synchronizes only the given paths, e.g. those reported by a file watcher.
+     * Files are classified individually; a path that is a directory on either side
+     * is walked on both sides, which also covers created, moved and deleted directories.
+     * 
+     * @param paths Relative paths that may have changed on either side
+     * @throws IOException If an I/O error occurs
+     */
+    public void synchronizePaths(Collection<String> paths) throws IOException {
+        startMeasuredRun();
+        boolean succeeded = false;
+        try {
+            synchronizeSortedPaths(paths);
+            succeeded = true;
+        } finally {
+            publishMetrics(succeeded);
+        }
+    }
+    
+    private void synchronizeSortedPaths(Collection<String> paths) throws IOException {
+        // Paths are stat'ed and walked while diffing, so scanning counts as part of the diff
+        metrics.startPhase(SyncMetrics.Phase.DIFF);
         
-        RegistryManager registryManager = RegistryManager.getInstance();
+        // Sorted, so the contents of a walked directory directly follow it and can be skipped
+        List<String> sortedPaths = new ArrayList<>(paths);
+        sortedPaths.sort(ScanEntry::comparePaths);
         
-        // Scan both file systems
-        FileSystemNode rootA = handlerA.scan();
-        FileSystemNode rootB = handlerB.scan();
+        if (profile.isReplicated()) {
+            synchronizeReplicaPaths(sortedPaths);
+        } else {
+            synchronizeTwoSidedPaths(sortedPaths);
+        }
+        metrics.startPhase(SyncMetrics.Phase.REGISTRY);
+        recordDirectorySummaries();
+        conflictQueue.save();
         
-        // Build file maps for easier comparison
-        Map<String, FileSystemNode> filesA = buildFileMap(rootA, "");
-        Map<String, FileSystemNode> filesB = buildFileMap(rootB, "");
+        RegistryManager.getInstance().saveRegistry(registry, profile, format);
+    }
+    
+    private void synchronizeTwoSidedPaths(List<String> sortedPaths) throws IOException {
+        FileSystemHandler handlerA = FileSystemFactory.createFileSystemHandler(profile.getPathA(), profile);
+        FileSystemHandler handlerB = FileSystemFactory.createFileSystemHandler(profile.getPathB(), profile);
         
-        // Process all paths from both sides
-        Map<String, SyncStatus> statusMap = new HashMap<>();
+        SyncPlan plan = createPlan();
+        String walkedDirectory = null;
+        for (String path : sortedPaths) {
+            if (walkedDirectory != null && path.startsWith(walkedDirectory + "/")) {
+                continue;
+            }
+            conflictQueue.removeUnder(path);
+            
+            FileSystemNode nodeA = handlerA.stat(path);
+            FileSystemNode nodeB = handlerB.stat(path);
+            
+            if ((nodeA != null && nodeA.isDirectory()) || (nodeB != null && nodeB.isDirectory())) {
+                try (ScanStream streamA = handlerA.walk(path); ScanStream streamB = handlerB.walk(path)) {
+                    diff(streamA, streamB, plan);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                walkedDirectory = path;
+            } else if (nodeA != null || nodeB != null) {
+                Registry.Entry registryEntry = registry.getEntry(path);
+                classify(path, determineSyncStatus(nodeA, nodeB, registryEntry), nodeA, nodeB, registryEntry, plan);
+            }
+        }
+        detectRenames(plan, handlerA, handlerB);
         
-        // Check files in A
-        for (String path : filesA.keySet()) {
-            FileSystemNode nodeA = filesA.get(path);
-            FileSystemNode nodeB = filesB.get(path);
-            Registry.Entry registryEntry = registry.getEntry(path);
+        execute(plan, handlerA, handlerB);
+    }
+    
+    /**
+     * Synchronizes the given paths of a replicated profile. A path that is a directory
+     * on any replica is walked on all of them.
+     */
+    private void synchronizeReplicaPaths(List<String> sortedPaths) throws IOException {
+        List<FileSystemHandler> handlers = createReplicaHandlers();
+        checkReplicaRoots(handlers);
+        knownReplicas = knownReplicas(null);
+        ReplicaPlan plan = createReplicaPlan();
+        FileSystemNode[] nodes = new FileSystemNode[handlers.size()];
+        String walkedDirectory = null;
+        for (String path : sortedPaths) {
+            if (walkedDirectory != null && path.startsWith(walkedDirectory + "/")) {
+                continue;
+            }
+            conflictQueue.removeUnder(path);
             
-            if (nodeA.isDirectory()) continue; // Skip directories, process only files
+            boolean present = false;
+            boolean directory = false;
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = handlers.get(i).stat(path);
+                present |= nodes[i] != null;
+                directory |= nodes[i] != null && nodes[i].isDirectory();
+            }
             
-            SyncStatus status = determineSyncStatus(nodeA, nodeB, registryEntry);
-            statusMap.put(path, status);
+            if (directory) {
+                List<ScanStream> streams = new ArrayList<>();
+                try {
+                    for (FileSystemHandler handler : handlers) {
+                        streams.add(handler.walk(path));
+                    }
+                    diffReplicas(streams, plan);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    for (ScanStream stream : streams) {
+                        stream.close();
+                    }
+                }
+                walkedDirectory = path;
+            } else if (present) {
+                classifyReplicas(path, nodes, registry.getEntry(path), plan);
+            }
         }
         
-        // Check files in B that are not in A
-        for (String path : filesB.keySet()) {
-            if (!filesA.containsKey(path)) {
-                FileSystemNode nodeB = filesB.get(path);
-                Registry.Entry registryEntry = registry.getEntry(path);
-                
-                if (nodeB.isDirectory()) continue; // Skip directories
+        executeReplicas(plan, handlers);
+    }
+    
+    private void startRun() throws IOException {
+        transferContext = TransferContext.fromProfile(profile);
+        metrics = new SyncMetrics(profile.getName(), transferContext.getStats());
+        conflictQueue = ConflictQueue.load(profile);
+        if (conflictResolver == null) {
+            conflictResolver = ConflictResolverFactory.createConflictResolver(
+                    profile.getOption("conflict.policy", ConflictResolverFactory.DEFAULT_POLICY));
+        }
+        unchangedDirectories = new HashMap<>();
+        changedDirectories = new ArrayList<>();
+        // Renames between more than two folders are synchronized as copies and deletions;
+        // rename.verifyDigest=false trusts size and timestamp alone for unambiguous pairs
+        renameDetector = profile.getBooleanOption("rename.detect", true) && !profile.isReplicated()
+                ? new RenameDetector(profile.getBooleanOption("rename.verifyDigest", true)) : null;
+    }
+    
+    /**
+     * Starts a run that changes files, so its metrics are published, unlike those of a dry-run plan.
+     */
+    private void startMeasuredRun() throws IOException {
+        startRun();
+        if (profile.getBooleanOption("metrics.jmx", metricsExported)) {
+            MetricsManager.getInstance().register(metrics);
+        }
+    }
+    
+    /**
+     * Ends the run's metrics and appends them to the profile's history. A history that
+     * cannot be written is reported but does not fail the synchronization.
+     */
+    private void publishMetrics(boolean succeeded) {
+        metrics.finish(succeeded);
+        if (!profile.getBooleanOption("metrics.history", true)) {
+            return;
+        }
+        try {
+            MetricsManager.getInstance().record(metrics,
+                    profile.getIntOption("metrics.historyRuns", MetricsManager.DEFAULT_HISTORY_RUNS));
+        } catch (IOException e) {
+            System.err.println("Cannot write sync metrics: " + e.getMessage());
+        }
+    }
+    
+    private SyncPlan createPlan() {
+        return new SyncPlan(profile.getLongOption("plan.smallFileBytes", SyncPlan.DEFAULT_SMALL_FILE_BYTES));
+    }
+    
+    private ReplicaPlan createReplicaPlan() {
+        return new ReplicaPlan(profile.getLongOption("plan.smallFileBytes", SyncPlan.DEFAULT_SMALL_FILE_BYTES));
+    }
+    
+    private List<FileSystemHandler> createReplicaHandlers() throws IOException {
+        List<FileSystemHandler> handlers = new ArrayList<>();
+        for (String path : profile.getReplicaPaths()) {
+            handlers.add(FileSystemFactory.createFileSystemHandler(path, profile));
+        }
+        return handlers;
+    }
+    
+    /**
+     * Drops the shared snapshots of all folders of the profile before they are changed.
+     */
+    private void invalidateScans(boolean changing) {
+        if (scanCache != null && changing) {
+            for (String root : profile.getReplicaPaths()) {
+                scanCache.invalidate(root);
+            }
+        }
+    }
+    
+    private SyncPlan plan(FileSystemHandler handlerA, FileSystemHandler handlerB) throws IOException {
+        // Scan both file systems concurrently into compact snapshots, then
+        // merge-join them in path order
+        metrics.startPhase(SyncMetrics.Phase.SCAN);
+        TreeSnapshot[] snapshots = snapshot(Arrays.asList(handlerA, handlerB));
+        metrics.recordScannedEntries(snapshots[0].getEntryCount() + (long) snapshots[1].getEntryCount());
+        
+        metrics.startPhase(SyncMetrics.Phase.DIFF);
+        SyncPlan plan = createPlan();
+        diff(snapshots[0].iterator(), snapshots[1].iterator(), plan);
+        detectRenames(plan, handlerA, handlerB);
+        return plan;
+    }
+    
+    /**
+     * Scans every replica once, all of them concurrently, and joins the snapshots in one pass.
+     */
+    private ReplicaPlan planReplicas(List<FileSystemHandler> handlers) throws IOException {
+        checkReplicaRoots(handlers);
+        metrics.startPhase(SyncMetrics.Phase.SCAN);
+        TreeSnapshot[] snapshots = snapshot(handlers);
+        knownReplicas = knownReplicas(snapshots);
+        List<Iterator<ScanEntry>> cursors = new ArrayList<>();
+        long entries = 0L;
+        for (TreeSnapshot snapshot : snapshots) {
+            cursors.add(snapshot.iterator());
+            entries += snapshot.getEntryCount();
+        }
+        metrics.recordScannedEntries(entries);
+        
+        metrics.startPhase(SyncMetrics.Phase.DIFF);
+        ReplicaPlan plan = createReplicaPlan();
+        diffReplicas(cursors, plan);
+        return plan;
+    }
+    
+    /**
+     * Refuses to synchronize replicas when one of their folders is missing, e.g. an
+     * unmounted drive, whose files would otherwise look deleted.
+     */
+    private void checkReplicaRoots(List<FileSystemHandler> handlers) throws IOException {
+        List<String> roots = profile.getReplicaPaths();
+        for (int i = 0; i < handlers.size(); i++) {
+            if (!handlers.get(i).exists("")) {
+                throw new IOException("Folder " + Profile.replicaName(i) + " not found: " + roots.get(i)
+                        + " (create it to add it to the profile)");
+            }
+        }
+    }
+    
+    /**
+     * Works out which replicas the registry describes. A folder added since the last full
+     * synchronization, or found empty, is seeded with the other replicas' files instead
+     * of having its missing files deleted everywhere.
+     * 
+     * @param snapshots Scans of the replicas, or null if they were not scanned in full
+     */
+    private boolean[] knownReplicas(TreeSnapshot[] snapshots) throws IOException {
+        KnownReplicas known = KnownReplicas.load(profile);
+        List<String> roots = profile.getReplicaPaths();
+        boolean[] result = new boolean[roots.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = known.contains(roots.get(i));
+            if (result[i] && snapshots != null && snapshots[i].getEntryCount() == 0
+                    && !registry.getEntries().isEmpty()) {
+                System.err.println("Folder " + Profile.replicaName(i) + " (" + roots.get(i)
+                        + ") is empty: copying the other folders' files to it instead of deleting them");
+                result[i] = false;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Pairs the new and deleted files held back during the diff into renames and
+     * adds the remaining ones to the plan as plain copies and deletions.
+     */
+    private void detectRenames(SyncPlan plan, FileSystemHandler handlerA, FileSystemHandler handlerB)
+            throws IOException {
+        if (renameDetector == null) {
+            return;
+        }
+        
+        metrics.startPhase(SyncMetrics.Phase.RENAMES);
+        for (RenameDetector.Move move : renameDetector.detect(handlerA, handlerB)) {
+            plan.addMove(move);
+        }
+        for (RenameDetector.Pending file : renameDetector.getUnmatched()) {
+            plan.add(file.getPath(), file.getStatus(), file.getNodeA(), file.getNodeB(), file.getRegistryEntry());
+        }
+    }
+    
+    /**
+     * Runs a plan: the directories of new files are created first in one pass, then
+     * the operations are handed to the executor in plan order, one stage at a time.
+     */
+    private void execute(SyncPlan plan, FileSystemHandler handlerA, FileSystemHandler handlerB) throws IOException {
+        metrics.startPhase(SyncMetrics.Phase.EXECUTE);
+        for (String directory : plan.getTargetDirectories(true)) {
+            handlerB.createDirectory(directory);
+        }
+        for (String directory : plan.getTargetDirectories(false)) {
+            handlerA.createDirectory(directory);
+        }
+        
+        List<FileSystemHandler> handlers = Arrays.asList(handlerA, handlerB);
+        try (SyncEventBus bus = createEventBus(); TransferExecutor executor = createExecutor(handlers)) {
+            eventBus = bus;
+            try {
+                for (List<SyncPlan.Operation> stage : plan.getStages()) {
+                    digestConflicts(stage, handlerA, handlerB, executor);
+                    for (SyncPlan.Operation operation : stage) {
+                        schedule(operation, handlerA, handlerB, executor);
+                    }
+                    // The next stage may depend on this one, e.g. a copy on a move that made room for it
+                    executor.awaitSubmitted();
+                }
                 
-                SyncStatus status = determineSyncStatus(null, nodeB, registryEntry);
-                statusMap.put(path, status);
+                // Registry updates are applied as transfers finish and checkpointed now and then
+                executor.awaitCompletion();
+                syncHandlers(handlers);
+            } catch (IOException e) {
+                saveCompletedWork(executor, handlers, e);
+                throw e;
+            }
+        } finally {
+            reportDroppedEvents();
+        }
+    }
+    
+    /**
+     * Runs the plan of a replicated profile like {@link #execute}, creating the
+     * directories of new files on each replica first.
+     */
+    private void executeReplicas(ReplicaPlan plan, List<FileSystemHandler> handlers) throws IOException {
+        metrics.startPhase(SyncMetrics.Phase.EXECUTE);
+        for (int i = 0; i < handlers.size(); i++) {
+            for (String directory : plan.getTargetDirectories(i)) {
+                handlers.get(i).createDirectory(directory);
             }
         }
         
-        // Process each file based on its status
-        for (Map.Entry<String, SyncStatus> entry : statusMap.entrySet()) {
-            String path = entry.getKey();
-            SyncStatus status = entry.getValue();
-            
-            // Strategy pattern for different synchronization strategies
-            SyncStrategy strategy;
-            
-            switch (status) {
-                case A_NEW:
-                    strategy = new CopyStrategy(handlerA, handlerB, path, true);
-                    notifyObservers("COPY", "A -> B: " + path);
-                    break;
-                case B_NEW:
-                    strategy = new CopyStrategy(handlerB, handlerA, path, true);
-                    notifyObservers("COPY", "B -> A: " + path);
-                    break;
-                case A_NEWER:
-                    strategy = new CopyStrategy(handlerA, handlerB, path, false);
-                    notifyObservers("UPDATE", "A -> B: " + path);
-                    break;
-                case B_NEWER:
-                    strategy = new CopyStrategy(handlerB, handlerA, path, false);
-                    notifyObservers("UPDATE", "B -> A: " + path);
-                    break;
-                case CONFLICT:
-                    strategy = resolveConflict(path, handlerA, handlerB);
-                    break;
-                case A_DELETED:
-                    strategy = new DeleteStrategy(handlerB, path);
-                    notifyObservers("DELETE", "B: " + path);
-                    break;
-                case B_DELETED:
-                    strategy = new DeleteStrategy(handlerA, path);
-                    notifyObservers("DELETE", "A: " + path);
-                    break;
-                case NO_CHANGE:
-                default:
-                    continue; // No action needed
+        try (SyncEventBus bus = createEventBus(); TransferExecutor executor = createExecutor(handlers)) {
+            eventBus = bus;
+            try {
+                for (List<ReplicaPlan.Operation> stage : plan.getStages()) {
+                    for (ReplicaPlan.Operation operation : stage) {
+                        scheduleReplicas(operation, handlers, executor);
+                    }
+                    executor.awaitSubmitted();
+                }
+                executor.awaitCompletion();
+                syncHandlers(handlers);
+            } catch (IOException e) {
+                saveCompletedWork(executor, handlers, e);
+                throw e;
+            }
+        } finally {
+            reportDroppedEvents();
+        }
+    }
+    
+    /**
+     * Observers are served by the bus thread, so they cannot slow down transfers.
+     */
+    private SyncEventBus createEventBus() {
+        SyncEventBus.OverflowPolicy overflowPolicy = "block".equals(profile.getOption("events.overflow", "drop"))
+                ? SyncEventBus.OverflowPolicy.BLOCK : SyncEventBus.OverflowPolicy.DROP;
+        return new SyncEventBus(observers, profile.getIntOption("events.capacity", SyncEventBus.DEFAULT_CAPACITY),
+                overflowPolicy);
+    }
+    
+    private void reportDroppedEvents() {
+        if (eventBus != null && eventBus.getDroppedEvents() > 0) {
+            System.err.println(eventBus.getDroppedEvents() + " sync events were dropped (event queue full).");
+        }
+    }
+    
+    /**
+     * Updates the recorded directory summaries once all transfers of the run succeeded.
+     */
+    private void recordDirectorySummaries() {
+        for (String directory : changedDirectories) {
+            registry.removeDirectorySummary(directory);
+        }
+        for (Map.Entry<String, Long> directory : unchangedDirectories.entrySet()) {
+            registry.setDirectorySummary(directory.getKey(), directory.getValue());
+        }
+    }
+    
+    /**
+     * Scans every folder but the first on a separate thread while the first one is
+     * scanned on the calling one.
+     * 
+     * @param handlers Handlers of the profile's folders, in replica order
+     * @return Snapshots of the folders, in the same order
+     */
+    private TreeSnapshot[] snapshot(List<FileSystemHandler> handlers) throws IOException {
+        List<String> roots = profile.getReplicaPaths();
+        List<FutureTask<TreeSnapshot>> scans = new ArrayList<>();
+        for (int i = 1; i < handlers.size(); i++) {
+            String root = roots.get(i);
+            FileSystemHandler handler = handlers.get(i);
+            FutureTask<TreeSnapshot> scan = new FutureTask<>(() -> snapshot(root, handler));
+            Thread scanner = new Thread(scan, "snapshot-" + Profile.replicaName(i));
+            scanner.setDaemon(true);
+            scanner.start();
+            scans.add(scan);
+        }
+        
+        TreeSnapshot[] snapshots = new TreeSnapshot[handlers.size()];
+        int scanning = 0;
+        try {
+            snapshots[0] = snapshot(roots.get(0), handlers.get(0));
+            for (scanning = 1; scanning < snapshots.length; scanning++) {
+                snapshots[scanning] = scans.get(scanning - 1).get();
+            }
+            return snapshots;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error scanning " + roots.get(scanning) + ": " + e.getCause(), e.getCause());
+        } finally {
+            for (FutureTask<TreeSnapshot> scan : scans) {
+                scan.cancel(true);
+            }
+        }
+    }
+    
+    /**
+     * Scans one side, or takes its snapshot from the shared cache if scans are shared.
+     */
+    private TreeSnapshot snapshot(String root, FileSystemHandler handler) throws IOException {
+        ScanCache.Scan scan = () -> scan(root, handler);
+        return scanCache != null ? scanCache.snapshot(root, scan, dueTime) : scan.run();
+    }
+    
+    /**
+     * Scans a local folder with the hints saved by its previous scan, next to the registry,
+     * and saves the new ones. Every directory is listed if hints are disabled (scan.hints),
+     * a full rescan was asked for, or the last one is older than scan.fullRescanHours.
+     */
+    private TreeSnapshot scan(String root, FileSystemHandler handler) throws IOException {
+        int replica = profile.getReplicaPaths().indexOf(root);
+        if (!(handler instanceof LocalFileSystemHandler) || replica < 0
+                || !profile.getBooleanOption("scan.hints", true)) {
+            return handler.snapshot();
+        }
+        
+        Path hintFile = Paths.get(profile.getName() + "." + Profile.replicaName(replica) + ".scan");
+        ScanHints previous = fullRescan ? null : ScanHints.load(hintFile);
+        long fullRescanMillis = TimeUnit.HOURS.toMillis(
+                profile.getLongOption("scan.fullRescanHours", ScanHints.DEFAULT_FULL_RESCAN_HOURS));
+        if (previous != null && System.currentTimeMillis() - previous.getLastFullScan() >= fullRescanMillis) {
+            previous = null;
+        }
+        
+        ScanHints hints = ((LocalFileSystemHandler) handler).snapshot(previous);
+        metrics.recordDirectoryListings(hints.getListedDirectories(), hints.getReusedListings());
+        try {
+            hints.save(hintFile);
+        } catch (IOException e) {
+            // Only the next scan gets slower
+            System.err.println("Cannot save scan hints " + hintFile + ": " + e.getMessage());
+        }
+        return hints.getSnapshot();
+    }
+    
+    /**
+     * @param handlers Folders the transfers write to, made durable before each checkpoint
+     */
+    private TransferExecutor createExecutor(List<FileSystemHandler> handlers) {
+        TransferExecutor executor = new TransferExecutor(
+                profile.getIntOption("transfer.concurrency", DEFAULT_TRANSFER_CONCURRENCY));
+        executor.setCheckpoint(() -> saveProgress(handlers),
+                profile.getIntOption("checkpoint.operations", DEFAULT_CHECKPOINT_OPERATIONS),
+                profile.getLongOption("checkpoint.intervalSeconds", DEFAULT_CHECKPOINT_SECONDS) * 1000L);
+        return executor;
+    }
+    
+    /**
+     * Saves the registry entries of the operations completed so far, once the files they
+     * describe are on disk. Directory summaries are left alone: they only hold once every
+     * operation below them has run.
+     */
+    private void saveProgress(List<FileSystemHandler> handlers) throws IOException {
+        syncHandlers(handlers);
+        RegistryManager.getInstance().saveRegistry(registry, profile, format);
+    }
+    
+    /**
+     * Forces the files the transfers left pending under batched durability, so that the
+     * registry never records a copy a crash could still lose.
+     */
+    private static void syncHandlers(List<FileSystemHandler> handlers) throws IOException {
+        for (FileSystemHandler handler : handlers) {
+            handler.sync();
+        }
+    }
+    
+    /**
+     * Records the operations a failed run did complete, so that the next run neither
+     * repeats them nor mistakes their results for conflicting changes.
+     * Nothing is saved if the files they left pending, e.g. after a failed checkpoint,
+     * still cannot be made durable.
+     */
+    private void saveCompletedWork(TransferExecutor executor, List<FileSystemHandler> handlers,
+                                   IOException failure) {
+        executor.abort();
+        try {
+            saveProgress(handlers);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+    
+    private void diff(Iterator<ScanEntry> sideA, Iterator<ScanEntry> sideB, SyncPlan plan) throws IOException {
+        MergeJoinDiff.join(sideA, sideB, (path, nodeA, nodeB) -> {
+            if (nodeA != null && nodeB != null && nodeA.isDirectory() && nodeB.isDirectory()) {
+                return compareDirectories(path, nodeA, nodeB);
+            }
+            if (nodeA != null ? nodeA.isDirectory() : nodeB.isDirectory()) {
+                return true; // Skip directories, process only files
             }
             
-            // Execute the strategy
-            strategy.execute();
-            
-            // Update registry
-            if (status == SyncStatus.A_DELETED || status == SyncStatus.B_DELETED) {
-                registry.removeEntry(path);
-            } else {
-                long lastModified;
-                if (status == SyncStatus.A_NEW || status == SyncStatus.A_NEWER || 
-                    (status == SyncStatus.CONFLICT && strategy instanceof CopyStrategy && 
-                     ((CopyStrategy) strategy).isSourceA())) {
-                    lastModified = filesA.get(path).getLastModified();
+            Registry.Entry registryEntry = registry.getEntry(path);
+            SyncStatus status = determineSyncStatus(nodeA, nodeB, registryEntry);
+            if (status != SyncStatus.NO_CHANGE) {
+                markChanged(path);
+            }
+            classify(path, status, nodeA, nodeB, registryEntry, plan);
+            return true;
+        });
+    }
+    
+    /**
+     * Compares the subtree summaries of a directory present on both sides. If both
+     * match the summary recorded by the last sync, nothing below the directory has
+     * changed on either side and its contents are skipped.
+     * 
+     * @return false to skip the directory's contents
+     */
+    private boolean compareDirectories(String path, FileSystemNode nodeA, FileSystemNode nodeB) {
+        long summary = nodeA.getSummary();
+        if (summary == 0 || summary != nodeB.getSummary()) {
+            changedDirectories.add(path);
+            return true;
+        }
+        if (summary == registry.getDirectorySummary(path)) {
+            return false;
+        }
+        
+        // Identical on both sides: recorded at the end of the run unless a file below it needs work
+        unchangedDirectories.put(path, summary);
+        return true;
+    }
+    
+    /**
+     * Withdraws the directories above a file that needs work from the summaries to record.
+     * A directory whose summaries differ has ancestors whose summaries differ too, so the
+     * walk up stops at the first directory that is no longer a candidate.
+     */
+    private void markChanged(String path) {
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            if (unchangedDirectories.remove(path.substring(0, slash)) == null) {
+                break;
+            }
+        }
+    }
+    
+    private void classify(String path, SyncStatus status, FileSystemNode nodeA, FileSystemNode nodeB,
+                          Registry.Entry registryEntry, SyncPlan plan) {
+        // New and deleted files wait for rename detection at the end of the diff
+        if (renameDetector == null || !renameDetector.offer(path, status, nodeA, nodeB, registryEntry)) {
+            plan.add(path, status, nodeA, nodeB, registryEntry);
+        }
+    }
+    
+    private void diffReplicas(List<? extends Iterator<ScanEntry>> replicas, ReplicaPlan plan) throws IOException {
+        MergeJoinDiff.joinAll(replicas, (path, nodes) -> {
+            for (FileSystemNode node : nodes) {
+                if (node != null && node.isDirectory()) {
+                    return compareReplicaDirectories(path, nodes);
+                }
+            }
+            if (classifyReplicas(path, nodes, registry.getEntry(path), plan)) {
+                markChanged(path);
+            }
+            return true;
+        });
+    }
+    
+    /**
+     * Like {@link #compareDirectories}, for a directory of a replicated profile: its
+     * contents are skipped if it has the summary recorded by the last sync on every replica.
+     * 
+     * @return false to skip the directory's contents
+     */
+    private boolean compareReplicaDirectories(String path, FileSystemNode[] nodes) {
+        long summary = nodes[0] != null ? nodes[0].getSummary() : 0L;
+        for (FileSystemNode node : nodes) {
+            if (summary == 0 || node == null || !node.isDirectory() || node.getSummary() != summary) {
+                changedDirectories.add(path);
+                return true;
+            }
+        }
+        if (summary == registry.getDirectorySummary(path)) {
+            return false;
+        }
+        unchangedDirectories.put(path, summary);
+        return true;
+    }
+    
+    /**
+     * Classifies a file of a replicated profile from its state on each replica and after
+     * the last sync, the N-way counterpart of {@link #determineSyncStatus}. A file changed
+     * on one replica only, or deleted from replicas where nobody changed it, is propagated
+     * to all others; a file never synchronized gets the newest version everywhere. Any
+     * other combination is a conflict. A replica the registry does not describe yet only
+     * receives files: missing from it, a file is copied rather than deleted.
+     * 
+     * @param nodes State on each replica, null where the file is missing
+     * @return true if the file needs work
+     */
+    private boolean classifyReplicas(String path, FileSystemNode[] nodes, Registry.Entry registryEntry,
+                                     ReplicaPlan plan) {
+        int source = -1;
+        boolean deleted = false;
+        boolean conflict = false;
+        boolean unseeded = false;
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == null) {
+                if (knownReplicas[i]) {
+                    deleted = true;
                 } else {
-                    lastModified = filesB.get(path).getLastModified();
+                    unseeded = true;
+                }
+            } else if (registryEntry == null) {
+                if (source < 0 || nodes[i].getLastModified() > nodes[source].getLastModified()) {
+                    source = i;
+                }
+            } else if (nodes[i].getLastModified() != registryEntry.getLastModified()) {
+                // Changed since the last sync: a second, different change is a conflict
+                if (source < 0) {
+                    source = i;
+                } else if (nodes[i].getLastModified() != nodes[source].getLastModified()) {
+                    conflict = true;
                 }
-                registry.addEntry(path, lastModified);
             }
         }
         
-        // Save the updated registry with the specified format
-        registryManager.saveRegistry(registry, profile, format);
+        if (conflict || (registryEntry != null && source >= 0 && deleted)) {
+            plan.addConflict(path, nodes, registryEntry);
+            return true;
+        }
+        if (source < 0 && !deleted && unseeded) {
+            // Unchanged everywhere it is: a replica that never had it gets a copy
+            for (int i = 0; source < 0; i++) {
+                source = nodes[i] != null ? i : -1;
+            }
+        }
+        if (source >= 0) {
+            int[] targets = replicasOtherThan(nodes, nodes[source]);
+            if (targets.length == 0) {
+                return false;
+            }
+            plan.addCopy(path, source, targets, nodes, registryEntry);
+            return true;
+        }
+        if (deleted) {
+            plan.addDelete(path, replicasOtherThan(nodes, null), nodes, registryEntry);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * @param version Version to compare with, or null for a deletion
+     * @return Replicas not holding the version, i.e. holding another one or (for a version) missing the file
+     */
+    private static int[] replicasOtherThan(FileSystemNode[] nodes, FileSystemNode version) {
+        int[] replicas = new int[nodes.length];
+        int count = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            boolean same = version == null ? nodes[i] == null
+                    : nodes[i] != null && nodes[i].getLastModified() == version.getLastModified();
+            if (!same) {
+                replicas[count++] = i;
+            }
+        }
+        return Arrays.copyOf(replicas, count);
+    }
+    
+    private void scheduleReplicas(ReplicaPlan.Operation operation, List<FileSystemHandler> handlers,
+                                  TransferExecutor executor) {
+        String path = operation.getPath();
+        switch (operation.getAction()) {
+            case COPY:
+            case UPDATE:
+                SyncEvent.Kind kind = operation.getAction() == ReplicaPlan.Action.COPY
+                        ? SyncEvent.Kind.COPY : SyncEvent.Kind.UPDATE;
+                scheduleReplicaCopy(path, operation.getSource(), operation.getSourceNode(), operation.getTargets(),
+                        handlers, kind, executor);
+                break;
+            case DELETE:
+                scheduleReplicaDelete(path, operation.getTargets(), handlers, SyncEvent.Kind.DELETE, executor);
+                break;
+            case CONFLICT:
+            default:
+                scheduleReplicaConflict(path, operation.getNodes(), operation.getRegistryEntry(), handlers, executor);
+                break;
+        }
+    }
+    
+    /**
+     * Copies one replica's version to the others, reading it once for all of them.
+     */
+    private void scheduleReplicaCopy(String path, int source, FileSystemNode sourceNode, int[] targets,
+                                     List<FileSystemHandler> handlers, SyncEvent.Kind kind,
+                                     TransferExecutor executor) {
+        List<FileSystemHandler> targetHandlers = new ArrayList<>();
+        for (int target : targets) {
+            targetHandlers.add(handlers.get(target));
+        }
+        ReplicaCopyStrategy copy = new ReplicaCopyStrategy(handlers.get(source), targetHandlers, path,
+                transferContext);
+        String route = Profile.replicaName(source) + " -> " + ReplicaPlan.names(targets);
+        executor.submit(reported(copy, kind, route, path, Math.max(sourceNode.getSize(), 0L)), () ->
+                registry.addEntry(path, sourceNode.getLastModified(), sourceNode.getSize(), copy.getDigest()));
     }
     
-    // Rest of the methods remain the same
+    private void scheduleReplicaDelete(String path, int[] targets, List<FileSystemHandler> handlers,
+                                       SyncEvent.Kind kind, TransferExecutor executor) {
+        SyncStrategy delete = () -> {
+            for (int target : targets) {
+                new DeleteStrategy(handlers.get(target), path).execute();
+            }
+        };
+        executor.submit(reported(delete, kind, ReplicaPlan.names(targets), path, 0L),
+                () -> registry.removeEntry(path));
+    }
     
-    private Map<String, FileSystemNode> buildFileMap(FileSystemNode node, String path) {
-        Map<String, FileSystemNode> map = new HashMap<>();
+    /**
+     * Resolves a conflict between replicas with the conflict policy, which compares the
+     * changed versions two at a time in replica order: the first one against the second,
+     * the winner against the third, and so on. A deletion counts as one version.
+     * A policy answer other than a version, including keeping both, defers the conflict.
+     */
+    private void scheduleReplicaConflict(String path, FileSystemNode[] nodes, Registry.Entry registryEntry,
+                                         List<FileSystemHandler> handlers, TransferExecutor executor) {
+        // Each changed version once, -1 standing for the deletion
+        List<Integer> versions = new ArrayList<>();
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == null) {
+                if (!versions.contains(-1)) {
+                    versions.add(-1);
+                }
+            } else if (registryEntry == null || nodes[i].getLastModified() != registryEntry.getLastModified()) {
+                boolean seen = false;
+                for (int version : versions) {
+                    seen |= version >= 0 && nodes[version].getLastModified() == nodes[i].getLastModified();
+                }
+                if (!seen) {
+                    versions.add(i);
+                }
+            }
+        }
+        
+        int winner = versions.get(0);
+        for (int candidate : versions.subList(1, versions.size())) {
+            ConflictResolver.Resolution resolution = conflictResolver.resolve(path,
+                    winner >= 0 ? nodes[winner] : null, candidate >= 0 ? nodes[candidate] : null);
+            if (resolution == ConflictResolver.Resolution.USE_B) {
+                winner = candidate;
+            } else if (resolution != ConflictResolver.Resolution.USE_A) {
+                conflictQueue.add(path);
+                metrics.recordOperation(SyncEvent.Kind.DEFER_CONFLICT, 0L);
+                eventBus.publish(new SyncEvent(SyncEvent.Kind.DEFER_CONFLICT, null, path, 0L, 0L));
+                return;
+            }
+        }
         
-        if (!node.isDirectory()) {
-            map.put(path, node);
-            return map;
+        if (winner < 0) {
+            scheduleReplicaDelete(path, replicasOtherThan(nodes, null), handlers, SyncEvent.Kind.RESOLVE_CONFLICT,
+                    executor);
+        } else {
+            scheduleReplicaCopy(path, winner, nodes[winner], replicasOtherThan(nodes, nodes[winner]), handlers,
+                    SyncEvent.Kind.RESOLVE_CONFLICT, executor);
         }
+    }
+    
+    private void schedule(SyncPlan.Operation operation, FileSystemHandler handlerA, FileSystemHandler handlerB,
+                          TransferExecutor executor) throws IOException {
+        String path = operation.getPath();
+        FileSystemNode nodeA = operation.getNodeA();
+        FileSystemNode nodeB = operation.getNodeB();
+        Registry.Entry registryEntry = operation.getRegistryEntry();
         
-        for (FileSystemNode child : node.getChildren()) {
-            String childPath = path.isEmpty() ? child.getName() : path + "/" + child.getName();
-            map.put(childPath, child);
+        if (operation.getAction() == SyncPlan.Action.MOVE) {
+            String targetPath = operation.getTargetPath();
+            FileSystemNode node = operation.isTowardB() ? nodeA : nodeB;
+            String digest = operation.getDigest();
             
-            if (child.isDirectory()) {
-                map.putAll(buildFileMap(child, childPath));
+            SyncStrategy move = new MoveStrategy(operation.isTowardB() ? handlerB : handlerA, path, targetPath);
+            SyncStrategy strategy = reported(move, SyncEvent.Kind.MOVE, operation.isTowardB(), path, targetPath, 0L);
+            executor.submit(strategy, () -> {
+                registry.removeEntry(path);
+                registry.addEntry(targetPath, node.getLastModified(), node.getSize(), digest);
+            });
+            return;
+        }
+        
+        // Strategy pattern for different synchronization strategies
+        SyncStrategy strategy;
+        SyncEvent.Kind kind;
+        boolean fromA;
+        
+        switch (operation.getStatus()) {
+            case A_NEW:
+                strategy = new CopyStrategy(handlerA, handlerB, path, true, true, transferContext);
+                kind = SyncEvent.Kind.COPY;
+                fromA = true;
+                break;
+            case B_NEW:
+                strategy = new CopyStrategy(handlerB, handlerA, path, true, false, transferContext);
+                kind = SyncEvent.Kind.COPY;
+                fromA = false;
+                break;
+            case A_NEWER:
+                strategy = updateStrategy(path, nodeA, nodeB, handlerA, handlerB, registryEntry, true);
+                kind = SyncEvent.Kind.UPDATE;
+                fromA = true;
+                break;
+            case B_NEWER:
+                strategy = updateStrategy(path, nodeB, nodeA, handlerB, handlerA, registryEntry, false);
+                kind = SyncEvent.Kind.UPDATE;
+                fromA = false;
+                break;
+            case CONFLICT:
+                ContentAwareCopyStrategy touch = identicalContentStrategy(path, nodeA, nodeB, handlerA, handlerB,
+                        registryEntry);
+                if (touch == null) {
+                    scheduleConflict(path, nodeA, nodeB, handlerA, handlerB, executor);
+                    return;
+                }
+                strategy = touch;
+                kind = SyncEvent.Kind.TOUCH;
+                fromA = touch.isSourceA();
+                break;
+            case A_DELETED:
+                strategy = reported(new DeleteStrategy(handlerB, path), SyncEvent.Kind.DELETE, true, path, null, 0L);
+                executor.submit(strategy, () -> registry.removeEntry(path));
+                return;
+            case B_DELETED:
+                strategy = reported(new DeleteStrategy(handlerA, path), SyncEvent.Kind.DELETE, false, path, null, 0L);
+                executor.submit(strategy, () -> registry.removeEntry(path));
+                return;
+            case NO_CHANGE:
+            default:
+                return; // No action needed
+        }
+        
+        // Execute the strategy and record the source state once it succeeded
+        FileSystemNode sourceNode = fromA ? nodeA : nodeB;
+        SyncStrategy submitted = strategy;
+        long bytes = kind == SyncEvent.Kind.TOUCH ? 0L : Math.max(sourceNode.getSize(), 0L);
+        executor.submit(reported(strategy, kind, fromA, path, null, bytes), () -> {
+            String digest = null;
+            if (submitted instanceof ContentAwareCopyStrategy) {
+                digest = ((ContentAwareCopyStrategy) submitted).getSourceDigest();
+            } else if (submitted instanceof CopyStrategy) {
+                digest = ((CopyStrategy) submitted).getDigest();
             }
+            registry.addEntry(path, sourceNode.getLastModified(), sourceNode.getSize(), digest);
+        });
+    }
+    
+    /**
+     * Builds the strategy for a file modified on one side only. When both copies have
+     * the same size the content is compared first, so a touched file only gets its
+     * timestamp fixed instead of being copied again.
+     */
+    private SyncStrategy updateStrategy(String path, FileSystemNode sourceNode, FileSystemNode targetNode,
+                                        FileSystemHandler source, FileSystemHandler target,
+                                        Registry.Entry registryEntry, boolean isSourceA) {
+        if (targetNode == null || sourceNode.getSize() < 0 || sourceNode.getSize() != targetNode.getSize()) {
+            return new CopyStrategy(source, target, path, true, isSourceA, transferContext);
+        }
+        return new ContentAwareCopyStrategy(source, target, path, sourceNode.getLastModified(),
+                cachedDigest(sourceNode, registryEntry), cachedDigest(targetNode, registryEntry), isSourceA,
+                transferContext);
+    }
+    
+    /**
+     * Digests the conflicting files that may hold the same content on the pool and waits
+     * for them, so that they are read in parallel rather than one after the other on the
+     * thread scheduling the plan. {@link #identicalContentStrategy} picks the digests up.
+     */
+    private void digestConflicts(List<SyncPlan.Operation> stage, FileSystemHandler handlerA,
+                                 FileSystemHandler handlerB, TransferExecutor executor) throws IOException {
+        boolean submitted = false;
+        for (SyncPlan.Operation operation : stage) {
+            FileSystemNode nodeA = operation.getNodeA();
+            FileSystemNode nodeB = operation.getNodeB();
+            if (operation.getAction() != SyncPlan.Action.CONFLICT || !sameSize(nodeA, nodeB)) {
+                continue;
+            }
+            String path = operation.getPath();
+            String cachedA = cachedDigest(nodeA, operation.getRegistryEntry());
+            String cachedB = cachedDigest(nodeB, operation.getRegistryEntry());
+            if (cachedA != null && cachedB != null) {
+                continue;
+            }
+            executor.submit(() -> conflictDigests.put(path, new String[] {
+                    cachedA != null ? cachedA : handlerA.computeDigest(path),
+                    cachedB != null ? cachedB : handlerB.computeDigest(path)}), () -> { });
+            submitted = true;
+        }
+        if (submitted) {
+            executor.awaitSubmitted();
+        }
+    }
+    
+    /**
+     * Checks whether both sides of a conflict hold the same content. If they do, the
+     * conflict is only a timestamp difference and the newer timestamp wins without
+     * asking the user.
+     * 
+     * @return Strategy fixing the older timestamp, or null if the contents differ
+     */
+    private ContentAwareCopyStrategy identicalContentStrategy(String path, FileSystemNode nodeA, FileSystemNode nodeB,
+                                                              FileSystemHandler handlerA, FileSystemHandler handlerB,
+                                                              Registry.Entry registryEntry) throws IOException {
+        if (!sameSize(nodeA, nodeB)) {
+            return null;
+        }
+        
+        String[] digests = conflictDigests.remove(path);
+        String digestA = digests != null ? digests[0] : cachedDigest(nodeA, registryEntry);
+        String digestB = digests != null ? digests[1] : cachedDigest(nodeB, registryEntry);
+        if (digestA == null) {
+            digestA = handlerA.computeDigest(path);
+        }
+        if (digestB == null) {
+            digestB = handlerB.computeDigest(path);
+        }
+        if (!digestA.equals(digestB)) {
+            return null;
         }
         
-        return map;
+        if (nodeA.getLastModified() >= nodeB.getLastModified()) {
+            return new ContentAwareCopyStrategy(handlerA, handlerB, path, nodeA.getLastModified(), digestA, digestB, true,
+                    transferContext);
+        } else {
+            return new ContentAwareCopyStrategy(handlerB, handlerA, path, nodeB.getLastModified(), digestB, digestA, false,
+                    transferContext);
+        }
+    }
+    
+    /**
+     * @return True if both versions exist with the same known size, so their content may be identical
+     */
+    private static boolean sameSize(FileSystemNode nodeA, FileSystemNode nodeB) {
+        return nodeA != null && nodeB != null && nodeA.getSize() >= 0 && nodeA.getSize() == nodeB.getSize();
+    }
+    
+    private String cachedDigest(FileSystemNode node, Registry.Entry registryEntry) {
+        return registryEntry != null ? registryEntry.getDigestIfUnchanged(node.getLastModified(), node.getSize()) : null;
     }
     
-    private SyncStatus determineSyncStatus(FileSystemNode nodeA, FileSystemNode nodeB, Registry.Entry registryEntry) {
+    /**
+     * Classifies a path from its state on each side and its state after the last sync.
+     * 
+     * @param nodeA State on side A, or null if the path is missing there
+     * @param nodeB State on side B, or null if the path is missing there
+     * @param registryEntry State recorded by the last sync, or null if the path was never synchronized
+     */
+    public static SyncStatus determineSyncStatus(FileSystemNode nodeA, FileSystemNode nodeB,
+                                                 Registry.Entry registryEntry) {
         boolean hasA = nodeA != null;
         boolean hasB = nodeB != null;
         boolean hasRegistry = registryEntry != null;
@@ -225,32 +1265,84 @@ public class SyncEngine {
         return SyncStatus.NO_CHANGE;
     }
     
-    private SyncStrategy resolveConflict(String path, FileSystemHandler handlerA, FileSystemHandler handlerB) {
-        System.out.println("CONFLICT detected for: " + path);
-        System.out.println("Choose direction:");
-        System.out.println("1. A -> B (use version from A)");
-        System.out.println("2. B -> A (use version from B)");
+    /**
+     * Resolves a conflict between two different versions with the conflict policy.
+     * Deferred conflicts are left untouched and queued for the resolve command.
+     */
+    private void scheduleConflict(String path, FileSystemNode nodeA, FileSystemNode nodeB,
+                                  FileSystemHandler handlerA, FileSystemHandler handlerB, TransferExecutor executor) {
+        ConflictResolver.Resolution resolution = conflictResolver.resolve(path, nodeA, nodeB);
         
-        Scanner scanner = new Scanner(System.in);
-        int choice;
+        if (resolution == ConflictResolver.Resolution.DEFER) {
+            conflictQueue.add(path);
+            metrics.recordOperation(SyncEvent.Kind.DEFER_CONFLICT, 0L);
+            eventBus.publish(new SyncEvent(SyncEvent.Kind.DEFER_CONFLICT, SyncEvent.Direction.NONE, path, null,
+                    0L, 0L));
+            return;
+        }
         
-        do {
-            System.out.print("Enter choice (1 or 2): ");
-            try {
-                choice = scanner.nextInt();
-            } catch (Exception e) {
-                choice = 0;
-                scanner.nextLine(); // Clear the invalid input
+        if (resolution == ConflictResolver.Resolution.KEEP_BOTH) {
+            if (nodeA != null && nodeB != null) {
+                // The newer version keeps the path, the older one is renamed
+                boolean winnerA = nodeA.getLastModified() >= nodeB.getLastModified();
+                FileSystemNode winnerNode = winnerA ? nodeA : nodeB;
+                FileSystemNode loserNode = winnerA ? nodeB : nodeA;
+                FileSystemHandler winner = winnerA ? handlerA : handlerB;
+                FileSystemHandler loser = winnerA ? handlerB : handlerA;
+                String conflictPath = conflictPath(path, winnerA ? "B" : "A", loserNode, handlerA, handlerB);
+                
+                KeepBothStrategy keepBoth = new KeepBothStrategy(winner, loser, path, conflictPath, winnerA,
+                        transferContext);
+                SyncStrategy strategy = reported(keepBoth, SyncEvent.Kind.KEEP_BOTH, winnerA, path, conflictPath,
+                        winnerNode.getSize() + loserNode.getSize());
+                executor.submit(strategy, () -> {
+                    registry.addEntry(path, winnerNode.getLastModified(), winnerNode.getSize(), keepBoth.getDigest());
+                    registry.addEntry(conflictPath, loserNode.getLastModified(), loserNode.getSize(),
+                            keepBoth.getConflictDigest());
+                });
+                return;
             }
-        } while (choice != 1 && choice != 2);
+            // Only one version is left, so keeping both means keeping that one
+            resolution = nodeA != null ? ConflictResolver.Resolution.USE_A : ConflictResolver.Resolution.USE_B;
+        }
+        
+        boolean fromA = resolution == ConflictResolver.Resolution.USE_A;
+        FileSystemNode sourceNode = fromA ? nodeA : nodeB;
         
-        if (choice == 1) {
-            notifyObservers("RESOLVE CONFLICT", "A -> B: " + path);
-            return new ConflictStrategy(handlerA, handlerB, path, true);
+        if (sourceNode == null) {
+            // The chosen version is a deletion
+            SyncStrategy strategy = reported(new DeleteStrategy(fromA ? handlerB : handlerA, path),
+                    SyncEvent.Kind.RESOLVE_CONFLICT, fromA, path, null, 0L);
+            executor.submit(strategy, () -> registry.removeEntry(path));
         } else {
-            notifyObservers("RESOLVE CONFLICT", "B -> A: " + path);
-            return new ConflictStrategy(handlerB, handlerA, path, false);
+            ConflictStrategy copy = new ConflictStrategy(fromA ? handlerA : handlerB, fromA ? handlerB : handlerA,
+                    path, fromA, transferContext);
+            SyncStrategy strategy = reported(copy, SyncEvent.Kind.RESOLVE_CONFLICT, fromA, path, null,
+                    sourceNode.getSize());
+            executor.submit(strategy, () ->
+                    registry.addEntry(path, sourceNode.getLastModified(), sourceNode.getSize(), copy.getDigest()));
+        }
+    }
+    
+    /**
+     * Builds a free name for the losing version of a conflict, e.g.
+     * "report.conflict-B-20240131-094500.txt" for "report.txt".
+     */
+    private static String conflictPath(String path, String side, FileSystemNode loserNode,
+                                       FileSystemHandler handlerA, FileSystemHandler handlerB) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1) {
+            dot = path.length(); // No extension (or a dot file)
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(loserNode.getLastModified()));
+        String base = path.substring(0, dot) + ".conflict-" + side + "-" + stamp;
+        
+        String candidate = base + path.substring(dot);
+        for (int i = 2; handlerA.exists(candidate) || handlerB.exists(candidate); i++) {
+            candidate = base + "-" + i + path.substring(dot);
         }
+        return candidate;
     }
     
     public enum SyncStatus {
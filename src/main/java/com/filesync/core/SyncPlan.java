@@ -0,0 +1,340 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.ScanEntry;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Operations found by the diff, held between diff and execution so they can be
+ * reviewed (sync --plan) and run in an order that is kind to the file systems:
+ * renames first, then conflicts, then small copies before large ones, each
+ * group ordered by target directory so a directory's files are written together,
+ * and finally deletions, deepest paths first. Renames are complete before anything
+ * else starts, and deletions wait for everything else, see {@link #getStages()}.
+ * Only paths that need work are kept; unchanged files never enter the plan.
+ */
+public class SyncPlan {
+    public static final long DEFAULT_SMALL_FILE_BYTES = 1024 * 1024;
+    
+    private final long smallFileBytes;
+    private final List<Operation> operations = new ArrayList<>();
+    
+    public enum Action {
+        MOVE,
+        CONFLICT,
+        COPY,
+        UPDATE,
+        DELETE
+    }
+    
+    /**
+     * A single planned change of one path.
+     */
+    public static class Operation {
+        private final Action action;
+        private final SyncEngine.SyncStatus status;
+        private final String path;
+        private final String targetPath;
+        private final String targetDirectory;
+        private final FileSystemNode nodeA;
+        private final FileSystemNode nodeB;
+        private final Registry.Entry registryEntry;
+        private final String digest;
+        private final boolean towardB;
+        
+        private Operation(Action action, SyncEngine.SyncStatus status, String path, String targetPath,
+                          FileSystemNode nodeA, FileSystemNode nodeB, Registry.Entry registryEntry, String digest,
+                          boolean towardB) {
+            this.action = action;
+            this.status = status;
+            this.path = path;
+            this.targetPath = targetPath;
+            this.targetDirectory = parentOf(targetPath);
+            this.nodeA = nodeA;
+            this.nodeB = nodeB;
+            this.registryEntry = registryEntry;
+            this.digest = digest;
+            this.towardB = towardB;
+        }
+        
+        public Action getAction() {
+            return action;
+        }
+        
+        /**
+         * @return Status found by the diff, or null for a move
+         */
+        public SyncEngine.SyncStatus getStatus() {
+            return status;
+        }
+        
+        /**
+         * @return Path the operation applies to; the old path of a move
+         */
+        public String getPath() {
+            return path;
+        }
+        
+        /**
+         * @return New path of a move, the path itself otherwise
+         */
+        public String getTargetPath() {
+            return targetPath;
+        }
+        
+        public FileSystemNode getNodeA() {
+            return nodeA;
+        }
+        
+        public FileSystemNode getNodeB() {
+            return nodeB;
+        }
+        
+        public Registry.Entry getRegistryEntry() {
+            return registryEntry;
+        }
+        
+        /**
+         * @return Known content digest of a moved file, or null
+         */
+        public String getDigest() {
+            return digest;
+        }
+        
+        /**
+         * @return true if side B is written, false if side A is (undecided for conflicts)
+         */
+        public boolean isTowardB() {
+            return towardB;
+        }
+        
+        /**
+         * @return Bytes to transfer for a copy or update, 0 for other operations
+         */
+        public long getBytes() {
+            if (action != Action.COPY && action != Action.UPDATE) {
+                return 0L;
+            }
+            FileSystemNode source = towardB ? nodeA : nodeB;
+            return Math.max(source.getSize(), 0L);
+        }
+        
+        @Override
+        public String toString() {
+            String direction = towardB ? "A -> B: " : "B -> A: ";
+            switch (action) {
+                case MOVE:
+                    return "MOVE " + (towardB ? "B: " : "A: ") + path + " -> " + targetPath;
+                case DELETE:
+                    return "DELETE " + (towardB ? "B: " : "A: ") + path;
+                case CONFLICT:
+                    return "CONFLICT " + path;
+                default:
+                    return action + " " + direction + path + " (" + getBytes() + " bytes)";
+            }
+        }
+    }
+    
+    public SyncPlan() {
+        this(DEFAULT_SMALL_FILE_BYTES);
+    }
+    
+    /**
+     * @param smallFileBytes Copies below this size run before the larger ones
+     */
+    public SyncPlan(long smallFileBytes) {
+        this.smallFileBytes = smallFileBytes;
+    }
+    
+    /**
+     * Adds the work for a file classified by the diff. Unchanged files are ignored.
+     */
+    public void add(String path, SyncEngine.SyncStatus status, FileSystemNode nodeA, FileSystemNode nodeB,
+                    Registry.Entry registryEntry) {
+        Action action;
+        boolean towardB;
+        switch (status) {
+            case A_NEW:
+            case B_NEW:
+                action = Action.COPY;
+                towardB = status == SyncEngine.SyncStatus.A_NEW;
+                break;
+            case A_NEWER:
+            case B_NEWER:
+                action = Action.UPDATE;
+                towardB = status == SyncEngine.SyncStatus.A_NEWER;
+                break;
+            case A_DELETED:
+            case B_DELETED:
+                action = Action.DELETE;
+                towardB = status == SyncEngine.SyncStatus.A_DELETED;
+                break;
+            case CONFLICT:
+                action = Action.CONFLICT;
+                towardB = false;
+                break;
+            case NO_CHANGE:
+            default:
+                return;
+        }
+        operations.add(new Operation(action, status, path, path, nodeA, nodeB, registryEntry, null, towardB));
+    }
+    
+    /**
+     * Adds a rename to replay on the side that did not change.
+     */
+    public void addMove(RenameDetector.Move move) {
+        operations.add(new Operation(Action.MOVE, null, move.getFromPath(), move.getToPath(),
+                move.isRenamedOnA() ? move.getNode() : null, move.isRenamedOnA() ? null : move.getNode(),
+                null, move.getDigest(), move.isRenamedOnA()));
+    }
+    
+    /**
+     * @return All operations in execution order
+     */
+    public List<Operation> getOperations() {
+        List<Operation> ordered = new ArrayList<>(operations);
+        ordered.sort(Comparator.comparingInt(this::phase).thenComparing(SyncPlan::compareInPhase));
+        return ordered;
+    }
+    
+    /**
+     * Splits the operations in execution order where one group must be complete before
+     * the next one starts: moves, then conflicts and transfers, then deletions. Within a
+     * group the order only sets priorities, so its operations can run concurrently.
+     * 
+     * @return Groups of operations, to be run one after the other
+     */
+    public List<List<Operation>> getStages() {
+        List<List<Operation>> stages = new ArrayList<>();
+        int current = -1;
+        for (Operation operation : getOperations()) {
+            int stage = stage(operation);
+            if (stage != current) {
+                stages.add(new ArrayList<>());
+                current = stage;
+            }
+            stages.get(stages.size() - 1).add(operation);
+        }
+        return stages;
+    }
+    
+    /**
+     * @param sideB true for the directories to create on side B, false for side A
+     * @return Directories receiving new files on that side, parents before children
+     */
+    public List<String> getTargetDirectories(boolean sideB) {
+        TreeSet<String> directories = new TreeSet<>(ScanEntry::comparePaths);
+        for (Operation operation : operations) {
+            // Updated files already have their directory
+            Action action = operation.action;
+            if (operation.towardB == sideB && (action == Action.COPY || action == Action.MOVE)
+                    && !operation.targetDirectory.isEmpty()) {
+                directories.add(operation.targetDirectory);
+            }
+        }
+        return new ArrayList<>(directories);
+    }
+    
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+    
+    public int countOperations(Action action) {
+        int count = 0;
+        for (Operation operation : operations) {
+            if (operation.action == action) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * @return Total bytes of all planned copies and updates
+     */
+    public long getTotalBytes() {
+        long total = 0L;
+        for (Operation operation : operations) {
+            total += operation.getBytes();
+        }
+        return total;
+    }
+    
+    /**
+     * Prints the operations in execution order, followed by the totals.
+     */
+    public void print(PrintStream out) {
+        for (Operation operation : getOperations()) {
+            out.println("  " + operation);
+        }
+        int transfers = countOperations(Action.COPY) + countOperations(Action.UPDATE);
+        out.println(transfers + " files (" + getTotalBytes() + " bytes) to transfer, "
+                + countOperations(Action.MOVE) + " to move, " + countOperations(Action.DELETE) + " to delete, "
+                + countOperations(Action.CONFLICT) + " conflicts.");
+    }
+    
+    /**
+     * @return Group of operations that must wait for all earlier groups
+     */
+    private static int stage(Operation operation) {
+        switch (operation.action) {
+            case MOVE:
+                return 0;
+            case DELETE:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+    
+    private int phase(Operation operation) {
+        switch (operation.action) {
+            case MOVE:
+                return 0;
+            case CONFLICT:
+                return 1;
+            case COPY:
+            case UPDATE:
+                return operation.getBytes() < smallFileBytes ? 2 : 3;
+            case DELETE:
+            default:
+                return 4;
+        }
+    }
+    
+    /**
+     * Writes are grouped by target side and directory; deletions go deepest first.
+     */
+    private static int compareInPhase(Operation a, Operation b) {
+        if (a.action == Action.DELETE) {
+            int depth = Integer.compare(depthOf(b.path), depthOf(a.path));
+            return depth != 0 ? depth : ScanEntry.comparePaths(a.path, b.path);
+        }
+        if (a.towardB != b.towardB) {
+            return a.towardB ? -1 : 1;
+        }
+        int directory = ScanEntry.comparePaths(a.targetDirectory, b.targetDirectory);
+        return directory != 0 ? directory : ScanEntry.comparePaths(a.targetPath, b.targetPath);
+    }
+    
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+    
+    private static int depthOf(String path) {
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,81 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemFactory;
+import com.filesync.filesystem.TreeWatcher;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Continuous synchronization driven by file system events.
+ * After one full sync, only the paths reported by the watcher are synchronized;
+ * if the watcher lost events, the next cycle falls back to a full sync. A cycle that
+ * fails is retried with the next changes, or after a delay if nothing changes.
+ */
+public class SyncWatcher {
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 300L;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 2000L;
+    private static final long DEFAULT_RETRY_MILLIS = 5000L;
+    
+    private final Profile profile;
+    private final SyncEngine syncEngine;
+    
+    public SyncWatcher(Profile profile, SyncEngine syncEngine) {
+        this.profile = profile;
+        this.syncEngine = syncEngine;
+    }
+    
+    /**
+     * Watches all folders of the profile until the thread is interrupted.
+     * 
+     * @throws IOException If the folders cannot be watched or the initial sync fails
+     * @throws InterruptedException If the thread is interrupted
+     */
+    public void run() throws IOException, InterruptedException {
+        long debounce = profile.getLongOption("watch.debounceMillis", DEFAULT_DEBOUNCE_MILLIS);
+        long maxDelay = profile.getLongOption("watch.maxDelayMillis", DEFAULT_MAX_DELAY_MILLIS);
+        long retryDelay = profile.getLongOption("watch.retryMillis", DEFAULT_RETRY_MILLIS);
+        
+        for (String path : profile.getReplicaPaths()) {
+            if (FileSystemFactory.isRemote(path)) {
+                // A WebDAV share sends no change notifications
+                throw new IllegalArgumentException(
+                        "Watch mode needs local folders only; synchronize WebDAV profiles with sync");
+            }
+        }
+        
+        try (TreeWatcher watcher = new TreeWatcher()) {
+            // Register before the initial sync so that nothing changed during it is missed
+            for (String path : profile.getReplicaPaths()) {
+                watcher.watch(Paths.get(path));
+            }
+            syncEngine.synchronize();
+            
+            Set<String> failedPaths = new HashSet<>();
+            boolean failedFullSync = false;
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean retry = failedFullSync || !failedPaths.isEmpty();
+                TreeWatcher.ChangeSet changes = watcher.poll(debounce, maxDelay, retry ? retryDelay : -1L);
+                boolean full = failedFullSync || changes.isOverflow();
+                Set<String> paths = new HashSet<>(failedPaths);
+                paths.addAll(changes.getPaths());
+                try {
+                    if (full) {
+                        syncEngine.synchronize();
+                    } else if (!paths.isEmpty()) {
+                        syncEngine.synchronizePaths(paths);
+                    }
+                    failedPaths.clear();
+                    failedFullSync = false;
+                } catch (IOException e) {
+                    // Keep watching; the failed paths are retried with the next changes, or after a delay
+                    System.err.println("Synchronization failed, retrying: " + e.getMessage());
+                    failedFullSync = full;
+                    failedPaths = full ? new HashSet<>() : paths;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.filesync.core;
+
+import com.filesync.strategy.SyncStrategy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs sync strategies on a bounded thread pool.
+ * The work queue is bounded and overflow runs on the submitting thread, so a
+ * fast diff cannot queue up an unbounded number of transfers. Registry updates
+ * of successful strategies are collected and applied on the submitting thread only:
+ * those completed so far on each {@link #submit} and while {@link #awaitSubmitted()} or
+ * {@link #awaitCompletion()} waits, the rest once they have drained the pool. An optional {@link Checkpoint} saves the
+ * applied updates every so many updates or seconds, on the same thread.
+ */
+public class TransferExecutor implements AutoCloseable {
+    private static final int QUEUED_TASKS_PER_THREAD = 64;
+    
+    private final ThreadPoolExecutor pool;
+    private final Queue<Runnable> registryUpdates = new ConcurrentLinkedQueue<>();
+    private final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object drained = new Object();
+    private Checkpoint checkpoint;
+    private int checkpointUpdates;
+    private long checkpointIntervalNanos;
+    private int updatesSinceCheckpoint;
+    private long lastCheckpoint = System.nanoTime();
+    private boolean checkpointFailed;
+    
+    /**
+     * Saves the registry updates applied so far.
+     */
+    public interface Checkpoint {
+        void save() throws IOException;
+    }
+    
+    /**
+     * @param concurrency Maximum number of strategies executing at the same time
+     */
+    public TransferExecutor(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Transfer concurrency must be >= 1: " + concurrency);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(concurrency * QUEUED_TASKS_PER_THREAD),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "transfer-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    
+    /**
+     * Saves progress while the strategies run, so that a run that is killed or fails keeps
+     * the updates of the strategies that completed. A checkpoint that fails fails the run:
+     * no further checkpoint is taken, strategies submitted afterwards are not executed, and
+     * the failure is thrown by the next {@link #awaitSubmitted()} or {@link #awaitCompletion()}.
+     * 
+     * @param checkpoint Action saving the applied updates
+     * @param everyUpdates Applied updates after which a checkpoint is taken, or 0 for no limit
+     * @param intervalMillis Time after which applied updates are checkpointed, or 0 for no limit
+     */
+    public void setCheckpoint(Checkpoint checkpoint, int everyUpdates, long intervalMillis) {
+        this.checkpoint = checkpoint;
+        this.checkpointUpdates = everyUpdates;
+        this.checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+    
+    /**
+     * Schedules a strategy for execution.
+     * 
+     * @param strategy Strategy to execute
+     * @param registryUpdate Update to apply to the registry if the strategy succeeds
+     */
+    public void submit(SyncStrategy strategy, Runnable registryUpdate) {
+        applyCompletedUpdates();
+        checkpointIfDue();
+        if (checkpointFailed) {
+            return;
+        }
+        pending.incrementAndGet();
+        pool.execute(() -> {
+            try {
+                strategy.execute();
+                registryUpdates.add(registryUpdate);
+            } catch (IOException e) {
+                failures.add(e);
+            } catch (RuntimeException e) {
+                failures.add(new IOException("Transfer failed: " + e.getMessage(), e));
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    synchronized (drained) {
+                        drained.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Waits for the strategies submitted so far and applies their registry updates. Unlike
+     * {@link #awaitCompletion()}, more strategies can be submitted afterwards, e.g. ones
+     * that depend on the results of these.
+     * 
+     * @throws IOException The first failure of any strategy so far, with the others suppressed
+     */
+    public void awaitSubmitted() throws IOException {
+        try {
+            while (!waitForPending(1000L)) {
+                applyCompletedUpdates();
+                checkpointIfDue();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            applyCompletedUpdates();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for transfers", e);
+        }
+        
+        applyCompletedUpdates();
+        throwFailures();
+    }
+    
+    /**
+     * Waits for all submitted strategies, then applies the collected registry updates.
+     * 
+     * @throws IOException The first failure of any strategy, with the others suppressed
+     */
+    public void awaitCompletion() throws IOException {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Long transfers keep running: record those that are done meanwhile
+                applyCompletedUpdates();
+                checkpointIfDue();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            applyCompletedUpdates();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for transfers", e);
+        }
+        
+        applyCompletedUpdates();
+        throwFailures();
+    }
+    
+    /**
+     * Cancels the strategies still queued or running and applies the updates of those that
+     * completed, so that the progress of a failed run can be saved.
+     */
+    public void abort() {
+        pool.shutdownNow();
+        applyCompletedUpdates();
+    }
+    
+    /**
+     * @return True once no submitted strategy is running or queued
+     */
+    private boolean waitForPending(long millis) throws InterruptedException {
+        synchronized (drained) {
+            if (pending.get() > 0) {
+                drained.wait(millis);
+            }
+            return pending.get() == 0;
+        }
+    }
+    
+    private void throwFailures() throws IOException {
+        if (!failures.isEmpty()) {
+            List<IOException> errors = new ArrayList<>(failures);
+            IOException first = errors.get(0);
+            for (int i = 1; i < errors.size(); i++) {
+                first.addSuppressed(errors.get(i));
+            }
+            throw first;
+        }
+    }
+    
+    private void applyCompletedUpdates() {
+        Runnable update;
+        while ((update = registryUpdates.poll()) != null) {
+            update.run();
+            updatesSinceCheckpoint++;
+        }
+    }
+    
+    private void checkpointIfDue() {
+        if (checkpoint == null || checkpointFailed || updatesSinceCheckpoint == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if ((checkpointUpdates > 0 && updatesSinceCheckpoint >= checkpointUpdates)
+                || (checkpointIntervalNanos > 0 && now - lastCheckpoint >= checkpointIntervalNanos)) {
+            try {
+                checkpoint.save();
+            } catch (IOException e) {
+                // The files behind the updates may not be on disk: carrying on would let a later save vouch for them
+                checkpointFailed = true;
+                failures.add(new IOException("Checkpoint failed: " + e.getMessage(), e));
+            }
+            updatesSinceCheckpoint = 0;
+            lastCheckpoint = now;
+        }
+    }
+    
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,169 @@
+package com.filesync.core.registry;
+
+import com.filesync.core.Profile;
+import com.filesync.core.Registry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of RegistryBuilder for a compact, memory-mapped binary format.
+ * Loading only maps the file; entries are looked up lazily through
+ * {@link BinaryRegistryIndex}. See that class for the file layout.
+ */
+public class BinaryRegistryBuilder implements RegistryBuilder {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] HEX_VALUES = new byte['f' + 1];
+    
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[Character.forDigit(i, 16)] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(Character.forDigit(i, 16))] = (byte) i;
+        }
+    }
+    
+    @Override
+    public Registry buildRegistry(String filePath, Profile profile) throws IOException {
+        Path file = Paths.get(filePath);
+        
+        if (!Files.exists(file)) {
+            return new Registry();
+        }
+        
+        BinaryRegistryIndex index = BinaryRegistryIndex.open(file);
+        Registry registry = new Registry(index);
+        for (Map.Entry<String, Long> summary : index.readDirectorySummaries().entrySet()) {
+            registry.setDirectorySummary(summary.getKey(), summary.getValue());
+        }
+        return registry;
+    }
+    
+    @Override
+    public void saveRegistry(Registry registry, String filePath, Profile profile) throws IOException {
+        List<Registry.Entry> entries = registry.getEntries();
+        int count = entries.size();
+        
+        // Sorting is most of the cost of a save. Each path is encoded once with the index of
+        // its entry appended, so the sort compares byte arrays directly instead of going
+        // through boxed indexes or strings, both of which cost a pointer chase per comparison
+        byte[][] keys = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            byte[] path = entries.get(i).getPath().getBytes(StandardCharsets.UTF_8);
+            byte[] key = Arrays.copyOf(path, path.length + 4);
+            ByteBuffer.wrap(key, path.length, 4).putInt(i);
+            keys[i] = key;
+        }
+        Arrays.sort(keys, (a, b) -> Arrays.compareUnsigned(a, 0, a.length - 4, b, 0, b.length - 4));
+        Map<String, Long> summaries = registry.getDirectorySummaries();
+        
+        // RegistryManager writes to a temp file and swaps it in, so a mapped copy of the old file stays readable
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putLong(BinaryRegistryIndex.MAGIC);
+            buffer.putInt(BinaryRegistryIndex.VERSION);
+            buffer.putInt(summaries.size());
+            buffer.putLong(count);
+            buffer.putLong(BinaryRegistryIndex.HEADER_SIZE + (long) count * BinaryRegistryIndex.RECORD_SIZE);
+            
+            long pathOffset = 0;
+            for (byte[] key : keys) {
+                Registry.Entry entry = entries.get(ByteBuffer.wrap(key, key.length - 4, 4).getInt());
+                if (buffer.remaining() < BinaryRegistryIndex.RECORD_SIZE) {
+                    drain(buffer, channel);
+                }
+                int record = buffer.position();
+                buffer.putLong(pathOffset);
+                buffer.putInt(key.length - 4);
+                buffer.putInt(0);
+                buffer.putLong(entry.getLastModified());
+                buffer.putLong(entry.getSize());
+                if (putDigest(buffer, entry.getDigest())) {
+                    buffer.putInt(record + 12, BinaryRegistryIndex.FLAG_DIGEST);
+                }
+                pathOffset += key.length - 4;
+            }
+            
+            for (byte[] key : keys) {
+                put(buffer, key, key.length - 4, channel);
+            }
+            
+            for (Map.Entry<String, Long> summary : summaries.entrySet()) {
+                byte[] path = summary.getKey().getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 12) {
+                    drain(buffer, channel);
+                }
+                buffer.putLong(summary.getValue());
+                buffer.putInt(path.length);
+                put(buffer, path, path.length, channel);
+            }
+            drain(buffer, channel);
+        }
+    }
+    
+    /**
+     * Stores a digest raw, as the format requires. The digest field is left zeroed if the
+     * digest is absent or not a 256-bit hex string.
+     * 
+     * @return True if the digest was stored
+     */
+    private static boolean putDigest(ByteBuffer buffer, String hex) {
+        int start = buffer.position();
+        if (hex == null || hex.length() != BinaryRegistryIndex.DIGEST_LENGTH * 2) {
+            buffer.position(start + BinaryRegistryIndex.DIGEST_LENGTH);
+            return false;
+        }
+        for (int i = 0; i < BinaryRegistryIndex.DIGEST_LENGTH; i++) {
+            int high = hexValue(hex.charAt(i * 2));
+            int low = hexValue(hex.charAt(i * 2 + 1));
+            if (high < 0 || low < 0) {
+                buffer.position(start);
+                buffer.put(new byte[BinaryRegistryIndex.DIGEST_LENGTH]);
+                return false;
+            }
+            buffer.put((byte) ((high << 4) | low));
+        }
+        return true;
+    }
+    
+    private static int hexValue(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
+    
+    private static void put(ByteBuffer buffer, byte[] bytes, int length, FileChannel channel) throws IOException {
+        if (length > buffer.remaining()) {
+            drain(buffer, channel);
+            if (length > buffer.capacity()) {
+                write(ByteBuffer.wrap(bytes, 0, length), channel);
+                return;
+            }
+        }
+        buffer.put(bytes, 0, length);
+    }
+    
+    /**
+     * Writes out the buffered bytes and zeroes the buffer, so skipped digest fields read as zero.
+     */
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        write(buffer, channel);
+        Arrays.fill(buffer.array(), 0, buffer.limit(), (byte) 0);
+        buffer.clear();
+    }
+    
+    private static void write(ByteBuffer bytes, FileChannel channel) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
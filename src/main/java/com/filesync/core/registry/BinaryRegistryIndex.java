@@ -0,0 +1,216 @@
+package com.filesync.core.registry;
+
+import com.filesync.core.Registry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Memory-mapped view of a binary registry file.
+ * Lookups binary-search the fixed-width record table directly in the mapping
+ * and only decode the record that matches, so opening a registry costs the same
+ * whatever its size. All reads use absolute offsets, so lookups are thread-safe.
+ * 
+ * Directory summaries are few and follow the strings; they are read in one go.
+ * 
+ * <pre>
+ * header:  magic (8) | version (4) | summary count (4) | count (8) | string table offset (8)
+ * record:  path offset (8) | path length (4) | flags (4) | lastModified (8) | size (8) | digest (32)
+ * strings: UTF-8 paths, records sorted by their unsigned byte order
+ * summary: summary (8) | path length (4) | UTF-8 directory path
+ * </pre>
+ */
+public class BinaryRegistryIndex implements Registry.Backing {
+    static final long MAGIC = 0x4A53594E43524547L; // "JSYNCREG"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 64;
+    static final int DIGEST_LENGTH = 32;
+    static final int FLAG_DIGEST = 1;
+    
+    private static final int PATH_OFFSET = 0;
+    private static final int PATH_LENGTH = 8;
+    private static final int FLAGS = 12;
+    private static final int LAST_MODIFIED = 16;
+    private static final int SIZE = 24;
+    private static final int DIGEST = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int stringTableOffset;
+    
+    private BinaryRegistryIndex(MappedByteBuffer buffer, int count, int stringTableOffset) {
+        this.buffer = buffer;
+        this.count = count;
+        this.stringTableOffset = stringTableOffset;
+    }
+    
+    /**
+     * Maps a binary registry file.
+     * 
+     * @param file Registry file
+     * @return Index over the mapped file
+     * @throws IOException If the file cannot be mapped or is not a binary registry
+     */
+    public static BinaryRegistryIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Binary registry too large to map: " + fileSize + " bytes");
+            }
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Truncated binary registry: " + file);
+            }
+            
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (buffer.getLong(0) != MAGIC) {
+                throw new IOException("Not a binary registry: " + file);
+            }
+            if (buffer.getInt(8) != VERSION) {
+                throw new IOException("Unsupported binary registry version: " + buffer.getInt(8));
+            }
+            
+            long count = buffer.getLong(16);
+            long stringTableOffset = buffer.getLong(24);
+            // Bounds first: a huge count overflows the product below into a plausible offset
+            if (count < 0 || count > (fileSize - HEADER_SIZE) / RECORD_SIZE || buffer.getInt(12) < 0
+                    || stringTableOffset < HEADER_SIZE || stringTableOffset > fileSize
+                    || stringTableOffset != HEADER_SIZE + count * RECORD_SIZE) {
+                throw new IOException("Corrupt binary registry header: " + file);
+            }
+            
+            return new BinaryRegistryIndex(buffer, (int) count, (int) stringTableOffset);
+        }
+    }
+    
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Reads the directory summaries that follow the path strings.
+     * 
+     * @return Summaries by directory path
+     * @throws IOException If the section runs past the end of the file
+     */
+    public Map<String, Long> readDirectorySummaries() throws IOException {
+        int summaries = buffer.getInt(12);
+        Map<String, Long> result = new HashMap<>();
+        long position = stringTableOffset;
+        if (count > 0) {
+            int last = HEADER_SIZE + (count - 1) * RECORD_SIZE;
+            position += buffer.getLong(last + PATH_OFFSET) + buffer.getInt(last + PATH_LENGTH);
+        }
+        
+        for (int i = 0; i < summaries; i++) {
+            if (position + 12 > buffer.limit()) {
+                throw new IOException("Corrupt binary registry: truncated directory summaries");
+            }
+            long summary = buffer.getLong((int) position);
+            int length = buffer.getInt((int) position + 8);
+            position += 12;
+            if (length < 0 || position + length > buffer.limit()) {
+                throw new IOException("Corrupt binary registry: truncated directory summaries");
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) position);
+            view.get(bytes);
+            position += length;
+            result.put(new String(bytes, StandardCharsets.UTF_8), summary);
+        }
+        return result;
+    }
+    
+    @Override
+    public Registry.Entry find(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compareKey(middle, key);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return readEntry(middle, path);
+            }
+        }
+        
+        return null;
+    }
+    
+    @Override
+    public Iterator<Registry.Entry> iterator() {
+        return new Iterator<Registry.Entry>() {
+            private int index;
+            
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+            
+            @Override
+            public Registry.Entry next() {
+                if (index >= count) {
+                    throw new NoSuchElementException();
+                }
+                return readEntry(index++, null);
+            }
+        };
+    }
+    
+    private int compareKey(int index, byte[] key) {
+        int record = HEADER_SIZE + index * RECORD_SIZE;
+        int start = stringTableOffset + (int) buffer.getLong(record + PATH_OFFSET);
+        int length = buffer.getInt(record + PATH_LENGTH);
+        
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int order = Integer.compare(buffer.get(start + i) & 0xFF, key[i] & 0xFF);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+    
+    private Registry.Entry readEntry(int index, String knownPath) {
+        int record = HEADER_SIZE + index * RECORD_SIZE;
+        String path = knownPath;
+        if (path == null) {
+            byte[] bytes = new byte[buffer.getInt(record + PATH_LENGTH)];
+            ByteBuffer view = buffer.duplicate();
+            view.position(stringTableOffset + (int) buffer.getLong(record + PATH_OFFSET));
+            view.get(bytes);
+            path = new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        String digest = null;
+        if ((buffer.getInt(record + FLAGS) & FLAG_DIGEST) != 0) {
+            char[] hex = new char[DIGEST_LENGTH * 2];
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                byte b = buffer.get(record + DIGEST + i);
+                hex[i * 2] = HEX[(b >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[b & 0xF];
+            }
+            digest = new String(hex);
+        }
+        
+        return new Registry.Entry(path, buffer.getLong(record + LAST_MODIFIED), buffer.getLong(record + SIZE), digest);
+    }
+}
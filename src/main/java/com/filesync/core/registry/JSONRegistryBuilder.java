@@ -3,22 +3,24 @@ package com.filesync.core.registry;
 import com.filesync.core.Profile;
 import com.filesync.core.Registry;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Iterator;
-
-// Note: This implementation uses org.json library
-// You would need to add this dependency to your project
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.json.JSONTokener;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
 
 /**
  * Implementation of RegistryBuilder for JSON format.
+ * Entries are streamed one at a time in both directions, so loading and saving
+ * need no memory beyond the registry itself. Directory summaries follow the entries
+ * as a "directories" object mapping each directory to its summary.
  */
 public class JSONRegistryBuilder implements RegistryBuilder {
+    private static final int BUFFER_SIZE = 64 * 1024;
     
     @Override
     public Registry buildRegistry(String filePath, Profile profile) throws IOException {
@@ -29,46 +31,104 @@ public class JSONRegistryBuilder implements RegistryBuilder {
             return registry;
         }
         
-        try (FileReader reader = new FileReader(file)) {
-            JSONTokener tokener = new JSONTokener(reader);
-            JSONObject root = new JSONObject(tokener);
-            
-            JSONArray entries = root.getJSONArray("entries");
-            
-            for (int i = 0; i < entries.length(); i++) {
-                JSONObject entry = entries.getJSONObject(i);
-                String path = entry.getString("path");
-                long lastModified = entry.getLong("lastModified");
-                
-                registry.addEntry(path, lastModified);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(Files.newInputStream(file.toPath()),
+                StandardCharsets.UTF_8))) {
+            reader.expect(JsonReader.Token.BEGIN_OBJECT);
+            JsonReader.Token token;
+            while ((token = reader.next()) == JsonReader.Token.NAME) {
+                if (reader.getString().equals("entries")) {
+                    reader.expect(JsonReader.Token.BEGIN_ARRAY);
+                    while ((token = reader.next()) == JsonReader.Token.BEGIN_OBJECT) {
+                        readEntry(reader, registry);
+                    }
+                    if (token != JsonReader.Token.END_ARRAY) {
+                        throw new IOException("Expected an entry but found " + token);
+                    }
+                } else if (reader.getString().equals("directories")) {
+                    reader.expect(JsonReader.Token.BEGIN_OBJECT);
+                    while ((token = reader.next()) == JsonReader.Token.NAME) {
+                        String path = reader.getString();
+                        reader.expect(JsonReader.Token.NUMBER);
+                        registry.setDirectorySummary(path, reader.getLong());
+                    }
+                    if (token != JsonReader.Token.END_OBJECT) {
+                        throw new IOException("Expected a directory summary but found " + token);
+                    }
+                } else {
+                    reader.skipValue(reader.next());
+                }
+            }
+            if (token != JsonReader.Token.END_OBJECT) {
+                throw new IOException("Expected a member but found " + token);
             }
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new IOException("Error parsing JSON registry: " + e.getMessage(), e);
         }
         
         return registry;
     }
     
-    @Override
-    public void saveRegistry(Registry registry, String filePath, Profile profile) throws IOException {
-        JSONObject root = new JSONObject();
-        root.put("profileName", profile.getName());
+    private void readEntry(JsonReader reader, Registry registry) throws IOException {
+        String path = null;
+        long lastModified = 0L;
+        long size = -1L;
+        String digest = null;
         
-        JSONArray entries = new JSONArray();
-        
-        for (Registry.Entry entry : registry.getEntries()) {
-            JSONObject entryObj = new JSONObject();
-            entryObj.put("path", entry.getPath());
-            entryObj.put("lastModified", entry.getLastModified());
-            entries.put(entryObj);
+        JsonReader.Token token;
+        while ((token = reader.next()) == JsonReader.Token.NAME) {
+            String name = reader.getString();
+            JsonReader.Token value = reader.next();
+            switch (name) {
+                case "path":
+                    path = reader.getString();
+                    break;
+                case "lastModified":
+                    lastModified = reader.getLong();
+                    break;
+                case "size":
+                    size = reader.getLong();
+                    break;
+                case "digest":
+                    digest = value == JsonReader.Token.STRING ? reader.getString() : null;
+                    break;
+                default:
+                    reader.skipValue(value);
+                    break;
+            }
         }
-        
-        root.put("entries", entries);
-        
-        try (FileWriter writer = new FileWriter(filePath)) {
-            writer.write(root.toString(2)); // Pretty print with 2-space indentation
-        } catch (Exception e) {
-            throw new IOException("Error saving JSON registry: " + e.getMessage(), e);
+        if (token != JsonReader.Token.END_OBJECT || path == null) {
+            throw new IOException("Incomplete registry entry" + (path != null ? ": " + path : ""));
+        }
+        registry.addEntry(path, lastModified, size, digest);
+    }
+    
+    @Override
+    public void saveRegistry(Registry registry, String filePath, Profile profile) throws IOException {
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                new BufferedOutputStream(Files.newOutputStream(Paths.get(filePath)), BUFFER_SIZE),
+                StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            writer.name("profileName").value(profile.getName());
+            writer.name("entries").beginArray();
+            for (Registry.Entry entry : registry.getEntries()) {
+                writer.beginObject();
+                writer.name("path").value(entry.getPath());
+                writer.name("lastModified").value(entry.getLastModified());
+                if (entry.getSize() >= 0) {
+                    writer.name("size").value(entry.getSize());
+                }
+                if (entry.getDigest() != null) {
+                    writer.name("digest").value(entry.getDigest());
+                }
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.name("directories").beginObject();
+            for (Map.Entry<String, Long> summary : registry.getDirectorySummaries().entrySet()) {
+                writer.name(summary.getKey()).value(summary.getValue());
+            }
+            writer.endObject();
+            writer.endObject();
         }
     }
 }
@@ -0,0 +1,287 @@
+package com.filesync.core.registry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull tokenizer for JSON that reads through a fixed buffer, so a document of any
+ * size is parsed with constant memory. Object member names are reported as
+ * {@link Token#NAME} tokens; commas and colons are consumed as separators, which
+ * makes the reader lenient about where they appear but keeps it small and fast.
+ */
+public class JsonReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        TRUE,
+        FALSE,
+        NULL,
+        END_DOCUMENT
+    }
+    
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder text = new StringBuilder();
+    private int position;
+    private int limit;
+    private long longValue;
+    private boolean integral;
+    
+    public JsonReader(Reader reader) {
+        this.reader = reader;
+    }
+    
+    /**
+     * Reads the next token. The text of a name, string or number is then available
+     * from {@link #getString()}, the value of a number from {@link #getLong()}.
+     * 
+     * @throws IOException If the input cannot be read or is not JSON
+     */
+    public Token next() throws IOException {
+        int c = skipSeparators();
+        switch (c) {
+            case -1:
+                return Token.END_DOCUMENT;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case '"':
+                readString();
+                if (skipWhitespace() == ':') {
+                    position++;
+                    return Token.NAME;
+                }
+                return Token.STRING;
+            case 't':
+                expectLiteral("true");
+                return Token.TRUE;
+            case 'f':
+                expectLiteral("false");
+                return Token.FALSE;
+            case 'n':
+                expectLiteral("null");
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber((char) c);
+                    return Token.NUMBER;
+                }
+                throw new IOException("Unexpected character '" + (char) c + "' in JSON");
+        }
+    }
+    
+    /**
+     * Reads the next token and fails unless it is the expected one.
+     */
+    public void expect(Token expected) throws IOException {
+        Token token = next();
+        if (token != expected) {
+            throw new IOException("Expected " + expected + " in JSON but found " + token);
+        }
+    }
+    
+    /**
+     * @return Text of the last name, string or number token
+     */
+    public String getString() {
+        return text.toString();
+    }
+    
+    /**
+     * @return Value of the last number token, rounded if it is not an integer
+     */
+    public long getLong() {
+        return integral ? longValue : Math.round(Double.parseDouble(text.toString()));
+    }
+    
+    /**
+     * Skips the value whose first token was just read: nothing for a scalar, the
+     * whole content up to the matching end token for an object or array.
+     */
+    public void skipValue(Token first) throws IOException {
+        if (first != Token.BEGIN_OBJECT && first != Token.BEGIN_ARRAY) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            Token token = next();
+            if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+                depth++;
+            } else if (token == Token.END_OBJECT || token == Token.END_ARRAY) {
+                depth--;
+            } else if (token == Token.END_DOCUMENT) {
+                throw new IOException("Unexpected end of JSON");
+            }
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+    
+    private boolean fill() throws IOException {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * @return Next character that is neither whitespace nor a separator, consumed, or -1 at the end
+     */
+    private int skipSeparators() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != ',' && c != ':') {
+                return c;
+            }
+        }
+    }
+    
+    /**
+     * @return Next character that is not whitespace, left unconsumed, or -1 at the end
+     */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            position++;
+        }
+    }
+    
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            // Copy runs of plain characters straight from the buffer
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+            
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c == -1) {
+                throw new IOException("Unterminated string in JSON");
+            } else {
+                // First character after a buffer refill
+                text.append((char) c);
+            }
+        }
+    }
+    
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                text.append((char) c);
+                break;
+            case 'b':
+                text.append('\b');
+                break;
+            case 'f':
+                text.append('\f');
+                break;
+            case 'n':
+                text.append('\n');
+                break;
+            case 'r':
+                text.append('\r');
+                break;
+            case 't':
+                text.append('\t');
+                break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw new IOException("Invalid \\u escape in JSON");
+                    }
+                    value = value * 16 + digit;
+                }
+                text.append((char) value);
+                break;
+            default:
+                throw new IOException("Invalid escape in JSON: \\" + (char) c);
+        }
+    }
+    
+    private void readNumber(char first) throws IOException {
+        text.setLength(0);
+        text.append(first);
+        boolean negative = first == '-';
+        long value = negative ? 0L : first - '0';
+        integral = true;
+        int digits = negative ? 0 : 1;
+        
+        while (true) {
+            if (position == limit && !fill()) {
+                break;
+            }
+            char c = buffer[position];
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integral = false;
+            } else {
+                break;
+            }
+            text.append(c);
+            position++;
+        }
+        
+        if (digits == 0) {
+            throw new IOException("Invalid number in JSON: " + text);
+        }
+        // Longer numbers may have overflowed and are parsed from their text instead
+        if (integral && digits > 18) {
+            longValue = Long.parseLong(text.toString());
+        } else {
+            longValue = negative ? -value : value;
+        }
+    }
+    
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 1; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw new IOException("Invalid literal in JSON, expected " + literal);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.filesync.core.registry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Streaming JSON writer: values are written out as they are added, so a document of
+ * any size is produced with constant memory. Output is indented by two spaces per level.
+ * Text is collected in an unsynchronized buffer and handed to the underlying writer in
+ * large chunks, which avoids a lock per token in BufferedWriter.
+ */
+public class JsonWriter implements Closeable {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    
+    private final Writer writer;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int length;
+    private boolean[] hasElements = new boolean[8];
+    private int depth;
+    private boolean afterName;
+    
+    /**
+     * @param writer Destination; it does not need to be buffered
+     */
+    public JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+    
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+    
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+    
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+    
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+    
+    /**
+     * Writes the name of the next object member; its value must follow.
+     */
+    public JsonWriter name(String name) throws IOException {
+        beforeValue();
+        writeString(name);
+        write(": ");
+        afterName = true;
+        return this;
+    }
+    
+    public JsonWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            write("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+    
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        write(Long.toString(value));
+        return this;
+    }
+    
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        write(value ? "true" : "false");
+        return this;
+    }
+    
+    public void flush() throws IOException {
+        flushBuffer();
+        writer.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private void flushBuffer() throws IOException {
+        writer.write(buffer, 0, length);
+        length = 0;
+    }
+    
+    private void write(char c) throws IOException {
+        if (length == buffer.length) {
+            flushBuffer();
+        }
+        buffer[length++] = c;
+    }
+    
+    private void write(String text) throws IOException {
+        write(text, 0, text.length());
+    }
+    
+    private void write(String text, int offset, int count) throws IOException {
+        while (count > 0) {
+            if (length == buffer.length) {
+                flushBuffer();
+            }
+            int chunk = Math.min(count, buffer.length - length);
+            text.getChars(offset, offset + chunk, buffer, length);
+            length += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+    
+    private JsonWriter open(char bracket) throws IOException {
+        beforeValue();
+        write(bracket);
+        if (depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+        }
+        hasElements[depth++] = false;
+        return this;
+    }
+    
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("No open object or array to close");
+        }
+        if (hasElements[--depth]) {
+            newLine();
+        }
+        write(bracket);
+        if (depth == 0) {
+            write('\n');
+        }
+        return this;
+    }
+    
+    /**
+     * Writes the separator and indentation in front of a value, unless it follows its name.
+     */
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElements[depth - 1]) {
+                write(',');
+            }
+            hasElements[depth - 1] = true;
+            newLine();
+        }
+    }
+    
+    private void newLine() throws IOException {
+        write('\n');
+        for (int i = 0; i < depth; i++) {
+            write("  ");
+        }
+    }
+    
+    private void writeString(String value) throws IOException {
+        write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escape = null;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c == '\n') {
+                escape = "\\n";
+            } else if (c == '\r') {
+                escape = "\\r";
+            } else if (c == '\t') {
+                escape = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                escape = String.format("\\u%04x", (int) c);
+            }
+            if (escape != null) {
+                write(value, start, i - start);
+                write(escape);
+                start = i + 1;
+            }
+        }
+        write(value, start, value.length() - start);
+        write('"');
+    }
+}
@@ -7,11 +7,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * Implementation of RegistryBuilder for Properties format.
- * This maintains backward compatibility with the original implementation.
+ * This maintains backward compatibility with the original implementation:
+ * values are "lastModified", optionally followed by ",size" and ",digest".
+ * Directory summaries share the file under their directory path plus '/', a key no
+ * file path can have.
  */
 public class PropertiesRegistryBuilder implements RegistryBuilder {
     
@@ -30,8 +34,16 @@ public class PropertiesRegistryBuilder implements RegistryBuilder {
         }
         
         for (String path : properties.stringPropertyNames()) {
-            long lastModified = Long.parseLong(properties.getProperty(path));
-            registry.addEntry(path, lastModified);
+            if (path.endsWith("/")) {
+                registry.setDirectorySummary(path.substring(0, path.length() - 1),
+                        Long.parseLong(properties.getProperty(path)));
+                continue;
+            }
+            String[] fields = properties.getProperty(path).split(",");
+            long lastModified = Long.parseLong(fields[0]);
+            long size = fields.length > 1 ? Long.parseLong(fields[1]) : -1L;
+            String digest = fields.length > 2 ? fields[2] : null;
+            registry.addEntry(path, lastModified, size, digest);
         }
         
         return registry;
@@ -42,7 +54,17 @@ public class PropertiesRegistryBuilder implements RegistryBuilder {
         Properties properties = new Properties();
         
         for (Registry.Entry entry : registry.getEntries()) {
-            properties.setProperty(entry.getPath(), String.valueOf(entry.getLastModified()));
+            StringBuilder value = new StringBuilder(String.valueOf(entry.getLastModified()));
+            if (entry.getSize() >= 0 || entry.getDigest() != null) {
+                value.append(',').append(entry.getSize());
+            }
+            if (entry.getDigest() != null) {
+                value.append(',').append(entry.getDigest());
+            }
+            properties.setProperty(entry.getPath(), value.toString());
+        }
+        for (Map.Entry<String, Long> summary : registry.getDirectorySummaries().entrySet()) {
+            properties.setProperty(summary.getKey() + "/", String.valueOf(summary.getValue()));
         }
         
         try (FileWriter writer = new FileWriter(filePath)) {
@@ -0,0 +1,266 @@
+package com.filesync.core.registry;
+
+import com.filesync.core.Registry;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of registry changes.
+ * Each change to an entry or a directory summary is appended as a length-prefixed,
+ * CRC-checked record. Records are
+ * held in memory until {@link #sync()}, which writes and forces them in one go, so
+ * the cost of an update is a memory copy and the log grows by one fsync per save.
+ * The registry is saved only once the files its changes describe are on disk, and
+ * a record that reached the log earlier would vouch for a copy a crash could still
+ * lose. A torn record at the end of the log (crash during a write) is detected on
+ * replay and cut off.
+ * 
+ * <p>For compaction the log is rotated: the current file becomes the ".old" log,
+ * which is deleted once a new base snapshot has been written. Replay applies the
+ * ".old" log first, so a crash at any point of a compaction loses nothing.</p>
+ */
+public class RegistryJournal implements Registry.Listener, AutoCloseable {
+    private static final byte OP_ADD = 'A';
+    private static final byte OP_REMOVE = 'R';
+    private static final byte OP_SET_SUMMARY = 'S';
+    private static final byte OP_REMOVE_SUMMARY = 'D';
+    private static final int BUFFER_SIZE = 128 * 1024;
+    
+    private final Path file;
+    private final Path oldFile;
+    /** Records appended since the last sync, not written to the log yet. */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(BUFFER_SIZE);
+    private FileChannel channel;
+    
+    /**
+     * @param file Journal file
+     */
+    public RegistryJournal(Path file) {
+        this.file = file;
+        this.oldFile = file.resolveSibling(file.getFileName() + ".old");
+    }
+    
+    /**
+     * Applies the rotated log, if any, then the current log to a registry, and opens the
+     * current log for appending. Must be called before the journal is attached to the registry.
+     * 
+     * @param registry Registry loaded from the base snapshot
+     * @return Number of records replayed
+     * @throws IOException If a log cannot be read
+     */
+    public synchronized int replay(Registry registry) throws IOException {
+        int records = 0;
+        if (Files.exists(oldFile)) {
+            records += replayFile(oldFile, registry);
+        }
+        if (Files.exists(file)) {
+            records += replayFile(file, registry);
+        }
+        
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return records;
+    }
+    
+    private static int replayFile(Path path, Registry registry) throws IOException {
+        int records = 0;
+        long validLength = 0;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > BUFFER_SIZE) {
+                        break; // Garbage after a torn write
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    if (in.readInt() != checksum(payload)) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                apply(payload, registry);
+                validLength += 8 + payload.length;
+                records++;
+            }
+        }
+        
+        if (Files.size(path) > validLength) {
+            try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+            }
+        }
+        return records;
+    }
+    
+    private static void apply(byte[] payload, Registry registry) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte op = in.readByte();
+            String path = in.readUTF();
+            if (op == OP_ADD) {
+                long lastModified = in.readLong();
+                long size = in.readLong();
+                String digest = in.readBoolean() ? in.readUTF() : null;
+                registry.addEntry(path, lastModified, size, digest);
+            } else if (op == OP_REMOVE) {
+                registry.removeEntry(path);
+            } else if (op == OP_SET_SUMMARY) {
+                registry.setDirectorySummary(path, in.readLong());
+            } else if (op == OP_REMOVE_SUMMARY) {
+                registry.removeDirectorySummary(path);
+            } else {
+                throw new IOException("Unknown registry journal operation: " + op);
+            }
+        }
+    }
+    
+    @Override
+    public void entryAdded(Registry.Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.getPath().length());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(OP_ADD);
+            out.writeUTF(entry.getPath());
+            out.writeLong(entry.getLastModified());
+            out.writeLong(entry.getSize());
+            out.writeBoolean(entry.getDigest() != null);
+            if (entry.getDigest() != null) {
+                out.writeUTF(entry.getDigest());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen in memory
+        }
+        append(bytes.toByteArray());
+    }
+    
+    @Override
+    public void entryRemoved(String path) {
+        appendPathRecord(OP_REMOVE, path);
+    }
+    
+    @Override
+    public void directorySummarySet(String path, long summary) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(24 + path.length());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(OP_SET_SUMMARY);
+            out.writeUTF(path);
+            out.writeLong(summary);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray());
+    }
+    
+    @Override
+    public void directorySummaryRemoved(String path) {
+        appendPathRecord(OP_REMOVE_SUMMARY, path);
+    }
+    
+    private void appendPathRecord(byte op, String path) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + path.length());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(op);
+            out.writeUTF(path);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray());
+    }
+    
+    private synchronized void append(byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length);
+        record.put(payload);
+        record.putInt(checksum(payload));
+        pending.write(record.array(), 0, record.capacity());
+    }
+    
+    /**
+     * Writes the records appended so far to the log and forces them to disk. Called once
+     * the changes they record are durable themselves.
+     * 
+     * @throws IOException If the records cannot be written; they are kept for the next sync
+     */
+    public synchronized void sync() throws IOException {
+        if (pending.size() > 0) {
+            ByteBuffer records = ByteBuffer.wrap(pending.toByteArray());
+            long start = channel.size();
+            try {
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+            } catch (IOException e) {
+                // A partly written batch would be replayed up to where it stopped; the retry rewrites it whole
+                channel.truncate(start);
+                throw e;
+            }
+            pending.reset();
+        }
+        channel.force(false);
+    }
+    
+    /**
+     * @return Bytes in the current log, used to decide when to compact
+     */
+    public synchronized long size() throws IOException {
+        return channel.size() + pending.size();
+    }
+    
+    /**
+     * @return True while a rotated log waits for its compaction to finish
+     */
+    public boolean hasRotatedLog() {
+        return Files.exists(oldFile);
+    }
+    
+    /**
+     * Syncs and rotates the current log so a snapshot can be compacted from it,
+     * and starts an empty log for further appends.
+     */
+    public synchronized void rotate() throws IOException {
+        sync();
+        channel.close();
+        Files.move(file, oldFile, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    
+    /**
+     * Drops the rotated log once its records are part of a durable base snapshot.
+     */
+    public void compacted() throws IOException {
+        Files.deleteIfExists(oldFile);
+    }
+    
+    /**
+     * Closes the log. Records appended since the last sync are dropped: the changes they
+     * record were never saved, so their files may not be on disk either.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        pending.reset();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+    
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
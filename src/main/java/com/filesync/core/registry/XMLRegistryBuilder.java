@@ -3,28 +3,39 @@ package com.filesync.core.registry;
 import com.filesync.core.Profile;
 import com.filesync.core.Registry;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
 
 /**
  * Implementation of RegistryBuilder for XML format.
+ * Entries are read one element at a time with StAX and written straight to a buffered
+ * stream instead of going through a DOM, so loading and saving need no memory beyond
+ * the registry itself. Directory summaries follow the entries as "directory" elements.
  */
 public class XMLRegistryBuilder implements RegistryBuilder {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final XMLInputFactory inputFactory;
+    
+    public XMLRegistryBuilder() {
+        inputFactory = XMLInputFactory.newInstance();
+        // A registry never needs a DTD; refusing them also rules out external entities
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
     
     @Override
     public Registry buildRegistry(String filePath, Profile profile) throws IOException {
@@ -35,26 +46,29 @@ public class XMLRegistryBuilder implements RegistryBuilder {
             return registry;
         }
         
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(file);
-            document.getDocumentElement().normalize();
-            
-            NodeList entryList = document.getElementsByTagName("entry");
-            
-            for (int i = 0; i < entryList.getLength(); i++) {
-                Node node = entryList.item(i);
-                
-                if (node.getNodeType() == Node.ELEMENT_NODE) {
-                    Element element = (Element) node;
-                    String path = element.getAttribute("path");
-                    long lastModified = Long.parseLong(element.getAttribute("lastModified"));
-                    
-                    registry.addEntry(path, lastModified);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE)) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    if (reader.getLocalName().equals("entry")) {
+                        String path = reader.getAttributeValue(null, "path");
+                        long lastModified = Long.parseLong(reader.getAttributeValue(null, "lastModified"));
+                        String size = reader.getAttributeValue(null, "size");
+                        String digest = reader.getAttributeValue(null, "digest");
+                        
+                        registry.addEntry(path, lastModified, size != null ? Long.parseLong(size) : -1L, digest);
+                    } else if (reader.getLocalName().equals("directory")) {
+                        registry.setDirectorySummary(reader.getAttributeValue(null, "path"),
+                                Long.parseLong(reader.getAttributeValue(null, "summary")));
+                    }
                 }
+            } finally {
+                reader.close();
             }
-        } catch (ParserConfigurationException | SAXException e) {
+        } catch (XMLStreamException | NumberFormatException e) {
             throw new IOException("Error parsing XML registry: " + e.getMessage(), e);
         }
         
@@ -63,36 +77,77 @@ public class XMLRegistryBuilder implements RegistryBuilder {
     
     @Override
     public void saveRegistry(Registry registry, String filePath, Profile profile) throws IOException {
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.newDocument();
-            
-            // Create root element
-            Element rootElement = document.createElement("registry");
-            rootElement.setAttribute("profileName", profile.getName());
-            document.appendChild(rootElement);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(filePath)),
+                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<registry");
+            writeAttribute(out, "profileName", profile.getName());
+            out.write(">\n");
             
-            // Add entries
+            // One indented line per entry, as before
             for (Registry.Entry entry : registry.getEntries()) {
-                Element entryElement = document.createElement("entry");
-                entryElement.setAttribute("path", entry.getPath());
-                entryElement.setAttribute("lastModified", String.valueOf(entry.getLastModified()));
-                rootElement.appendChild(entryElement);
+                out.write("  <entry");
+                writeAttribute(out, "path", entry.getPath());
+                writeAttribute(out, "lastModified", String.valueOf(entry.getLastModified()));
+                if (entry.getSize() >= 0) {
+                    writeAttribute(out, "size", String.valueOf(entry.getSize()));
+                }
+                if (entry.getDigest() != null) {
+                    writeAttribute(out, "digest", entry.getDigest());
+                }
+                out.write("/>\n");
             }
-            
-            // Write to file
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            
-            DOMSource source = new DOMSource(document);
-            StreamResult result = new StreamResult(new File(filePath));
-            transformer.transform(source, result);
-            
-        } catch (ParserConfigurationException | TransformerException e) {
-            throw new IOException("Error saving XML registry: " + e.getMessage(), e);
+            for (Map.Entry<String, Long> summary : registry.getDirectorySummaries().entrySet()) {
+                out.write("  <directory");
+                writeAttribute(out, "path", summary.getKey());
+                writeAttribute(out, "summary", String.valueOf(summary.getValue()));
+                out.write("/>\n");
+            }
+            out.write("</registry>\n");
+        }
+    }
+    
+    /**
+     * Writes an attribute with its value escaped. Tabs and line breaks are written as
+     * character references, which a parser keeps, where the literal characters would be
+     * normalized to spaces; StAX writers leave them as they are, so entries are written here.
+     */
+    private static void writeAttribute(Writer out, String name, String value) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"");
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String escape;
+            switch (value.charAt(i)) {
+                case '&':
+                    escape = "&amp;";
+                    break;
+                case '<':
+                    escape = "&lt;";
+                    break;
+                case '>':
+                    escape = "&gt;";
+                    break;
+                case '"':
+                    escape = "&quot;";
+                    break;
+                case '\t':
+                    escape = "&#9;";
+                    break;
+                case '\n':
+                    escape = "&#10;";
+                    break;
+                case '\r':
+                    escape = "&#13;";
+                    break;
+                default:
+                    continue;
+            }
+            out.write(value, start, i - start);
+            out.write(escape);
+            start = i + 1;
         }
+        out.write(value, start, value.length() - start);
+        out.write('"');
     }
 }
@@ -0,0 +1,173 @@
+package com.filesync.daemon;
+
+import com.filesync.filesystem.FileSystemFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hands out the devices synchronizations run on, so that jobs of different profiles
+ * share a disk or server instead of competing for it.
+ * Every device runs a fixed number of jobs at a time. Jobs are served in the order they
+ * asked: a waiting job reserves the devices it needs, so a job needing two busy devices
+ * is not overtaken forever by jobs that only need one of them.
+ */
+public class IoScheduler {
+    private final int slotsPerDevice;
+    private final Map<String, Integer> busy = new HashMap<>();
+    private final LinkedList<Lease> waiting = new LinkedList<>();
+    
+    /**
+     * @param slotsPerDevice Number of jobs that may use one device at the same time
+     */
+    public IoScheduler(int slotsPerDevice) {
+        if (slotsPerDevice < 1) {
+            throw new IllegalArgumentException("Slots per device must be >= 1: " + slotsPerDevice);
+        }
+        this.slotsPerDevice = slotsPerDevice;
+    }
+    
+    /**
+     * Waits until all given devices have a free slot for the job.
+     * 
+     * @param devices Devices the job reads and writes, see {@link #deviceOf}
+     * @return Lease to close once the job is done with the devices
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public synchronized Lease acquire(Collection<String> devices) throws InterruptedException {
+        Lease lease = new Lease(new LinkedHashSet<>(devices));
+        waiting.add(lease);
+        grant();
+        try {
+            while (!lease.granted) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            if (lease.granted) {
+                lease.close();
+            } else {
+                waiting.remove(lease);
+                grant(); // Devices this job reserved may be free for others now
+            }
+            throw e;
+        }
+        return lease;
+    }
+    
+    /**
+     * @return Number of jobs waiting for a device
+     */
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+    
+    /**
+     * Identifies the device holding a folder: the file system device for local paths,
+     * or host and port for WebDAV URLs. Folders that do not exist yet belong to the
+     * device of their closest existing parent.
+     */
+    public static String deviceOf(String root) {
+        if (FileSystemFactory.isRemote(root)) {
+            URI uri = URI.create(root);
+            String scheme = uri.getScheme().toLowerCase();
+            int port = uri.getPort() != -1 ? uri.getPort() : scheme.equals("https") ? 443 : 80;
+            return scheme + "://" + uri.getHost().toLowerCase() + ":" + port;
+        }
+        
+        Path path = Paths.get(root).toAbsolutePath();
+        while (path.getParent() != null && !Files.exists(path)) {
+            path = path.getParent();
+        }
+        try {
+            return "dev:" + Files.getAttribute(path, "unix:dev");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            try {
+                return "store:" + Files.getFileStore(path).name();
+            } catch (IOException storeFailure) {
+                return path.toString();
+            }
+        } catch (IOException e) {
+            return path.toString();
+        }
+    }
+    
+    private synchronized void release(Lease lease) {
+        for (String device : lease.devices) {
+            busy.computeIfPresent(device, (key, jobs) -> jobs > 1 ? jobs - 1 : null);
+        }
+        grant();
+    }
+    
+    /**
+     * Starts the waiting jobs whose devices are free and not reserved by an earlier job.
+     */
+    private void grant() {
+        Set<String> reserved = new HashSet<>();
+        List<Lease> started = new ArrayList<>();
+        for (Iterator<Lease> it = waiting.iterator(); it.hasNext(); ) {
+            Lease lease = it.next();
+            boolean free = true;
+            for (String device : lease.devices) {
+                if (reserved.contains(device) || busy.getOrDefault(device, 0) >= slotsPerDevice) {
+                    free = false;
+                    break;
+                }
+            }
+            if (free) {
+                for (String device : lease.devices) {
+                    busy.merge(device, 1, Integer::sum);
+                }
+                it.remove();
+                started.add(lease);
+            } else {
+                reserved.addAll(lease.devices);
+            }
+        }
+        if (!started.isEmpty()) {
+            for (Lease lease : started) {
+                lease.granted = true;
+            }
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Devices held by one job.
+     */
+    public class Lease implements AutoCloseable {
+        private final Set<String> devices;
+        private boolean granted;
+        private boolean closed;
+        
+        Lease(Set<String> devices) {
+            this.devices = devices;
+        }
+        
+        public Set<String> getDevices() {
+            return devices;
+        }
+        
+        @Override
+        public void close() {
+            synchronized (IoScheduler.this) {
+                if (!closed) {
+                    closed = true;
+                    release(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.filesync.daemon;
+
+import com.filesync.conflict.ConflictResolverFactory;
+import com.filesync.conflict.DeferResolver;
+import com.filesync.core.Profile;
+import com.filesync.core.Registry;
+import com.filesync.core.RegistryManager;
+import com.filesync.core.ScanCache;
+import com.filesync.core.SyncEngine;
+import com.filesync.core.registry.JsonWriter;
+import com.filesync.metrics.SyncMetrics;
+import com.filesync.observer.LogSyncObserver;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Synchronizes several profiles in one process, each on its own interval.
+ * Runs wait for the devices of all their folders through a shared {@link IoScheduler},
+ * and profiles with a folder in common share its scan through a {@link ScanCache}.
+ * The state of all jobs is written to a status file whenever it changes.
+ */
+public class SyncDaemon implements AutoCloseable {
+    public static final long DEFAULT_INTERVAL_SECONDS = 300L;
+    private static final long STATUS_REFRESH_SECONDS = 5L;
+    
+    private final List<Job> jobs = new ArrayList<>();
+    private final String format;
+    private final IoScheduler ioScheduler;
+    private final ScanCache scanCache = new ScanCache();
+    private final Path statusFile;
+    private final ScheduledThreadPoolExecutor timer;
+    private volatile boolean closed;
+    
+    /**
+     * @param profiles Profiles to synchronize; "daemon.intervalSeconds" sets the delay
+     *                 between the end of one run and the start of the next
+     * @param format Registry format of all profiles
+     * @param ioScheduler Scheduler sharing the devices between the runs
+     * @param statusFile File the status is written to
+     */
+    public SyncDaemon(List<Profile> profiles, String format, IoScheduler ioScheduler, Path statusFile) {
+        for (Profile profile : profiles) {
+            long interval = profile.getLongOption("daemon.intervalSeconds", DEFAULT_INTERVAL_SECONDS);
+            if (interval <= 0) {
+                throw new IllegalArgumentException("daemon.intervalSeconds must be > 0 in profile "
+                        + profile.getName() + ": " + interval);
+            }
+            jobs.add(new Job(profile, interval));
+        }
+        this.format = format;
+        this.ioScheduler = ioScheduler;
+        this.statusFile = statusFile;
+        
+        // One thread per job, since a job holds its thread while it waits for its devices
+        AtomicInteger threadCount = new AtomicInteger();
+        this.timer = new ScheduledThreadPoolExecutor(jobs.size() + 1, runnable -> {
+            Thread thread = new Thread(runnable, "daemon-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Starts every profile now, then on its interval, until the daemon is closed.
+     */
+    public void start() {
+        for (Job job : jobs) {
+            timer.scheduleWithFixedDelay(job::run, 0L, job.intervalSeconds, TimeUnit.SECONDS);
+        }
+        timer.scheduleWithFixedDelay(this::writeStatus, STATUS_REFRESH_SECONDS, STATUS_REFRESH_SECONDS,
+                TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Stops starting runs and waits for the running ones to finish. If the calling thread
+     * is interrupted, stops waiting and leaves the thread's interrupt status set.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        timer.shutdown();
+        try {
+            timer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Files.deleteIfExists(statusFile);
+        } catch (IOException e) {
+            System.err.println("Cannot delete daemon status " + statusFile + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Rewrites the status file; a reader never sees it half written.
+     */
+    private synchronized void writeStatus() {
+        Path absolute = statusFile.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        long now = System.currentTimeMillis();
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+                 JsonWriter json = new JsonWriter(writer)) {
+                json.beginObject();
+                json.name("pid").value(ProcessHandle.current().pid());
+                json.name("updated").value(now);
+                json.name("queueDepth").value(ioScheduler.getQueueDepth());
+                json.name("running").value(countRunning());
+                json.name("jobs").beginArray();
+                for (Job job : jobs) {
+                    job.describe(json, now);
+                }
+                json.endArray();
+                json.endObject();
+            }
+            try {
+                Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot write daemon status " + statusFile + ": " + e.getMessage());
+        }
+    }
+    
+    private int countRunning() {
+        int running = 0;
+        for (Job job : jobs) {
+            if (job.state == State.RUNNING) {
+                running++;
+            }
+        }
+        return running;
+    }
+    
+    private enum State {
+        IDLE,
+        WAITING,
+        RUNNING
+    }
+    
+    /**
+     * Periodic synchronization of one profile.
+     */
+    private class Job {
+        private final Profile profile;
+        private final long intervalSeconds;
+        private volatile State state = State.IDLE;
+        private volatile SyncEngine engine;
+        private volatile long dueTime;
+        private volatile long startTime;
+        private volatile long lastEndTime;
+        private volatile String lastResult;
+        
+        Job(Profile profile, long intervalSeconds) {
+            this.profile = profile;
+            this.intervalSeconds = intervalSeconds;
+        }
+        
+        /**
+         * Runs one synchronization. Failures are reported and the job runs again on its
+         * next interval, since an exception would cancel the periodic task.
+         */
+        void run() {
+            List<String> roots = profile.getReplicaPaths();
+            dueTime = System.currentTimeMillis();
+            for (String root : roots) {
+                scanCache.expect(root);
+            }
+            state = State.WAITING;
+            writeStatus();
+            try {
+                List<String> devices = new ArrayList<>();
+                for (String root : roots) {
+                    devices.add(IoScheduler.deviceOf(root));
+                }
+                IoScheduler.Lease lease = ioScheduler.acquire(devices);
+                try {
+                    if (closed) {
+                        return; // Stopped while waiting for the devices
+                    }
+                    startTime = System.currentTimeMillis();
+                    state = State.RUNNING;
+                    writeStatus();
+                    synchronize();
+                } finally {
+                    lease.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lastResult = "interrupted";
+            } catch (Exception e) {
+                lastResult = "failed: " + e.getMessage();
+                System.err.println("[" + profile.getName() + "] Synchronization failed: " + e.getMessage());
+            } finally {
+                for (String root : roots) {
+                    scanCache.release(root);
+                }
+                lastEndTime = System.currentTimeMillis();
+                state = State.IDLE;
+                writeStatus();
+            }
+        }
+        
+        private void synchronize() throws IOException {
+            // The registry is read again for every run, so the resolve command can be used meanwhile
+            Registry registry = RegistryManager.getInstance().loadRegistry(profile, format);
+            SyncEngine syncEngine = new SyncEngine(profile, registry, format);
+            syncEngine.setMetricsExported(true);
+            syncEngine.shareScans(scanCache, dueTime);
+            if (ConflictResolverFactory.DEFAULT_POLICY.equals(
+                    profile.getOption("conflict.policy", ConflictResolverFactory.DEFAULT_POLICY))) {
+                // Nobody answers prompts of a daemon: conflicts wait for the resolve command
+                syncEngine.setConflictResolver(new DeferResolver());
+            }
+            String logFile = profile.getOption("log.file", null);
+            if (logFile != null) {
+                syncEngine.registerObserver(new LogSyncObserver(Paths.get(logFile)));
+            }
+            
+            engine = syncEngine;
+            try {
+                syncEngine.synchronize();
+            } finally {
+                engine = null;
+            }
+            lastResult = "ok: " + syncEngine.getTransferStats();
+            System.out.println("[" + profile.getName() + "] " + syncEngine.getTransferStats() + ".");
+        }
+        
+        void describe(JsonWriter json, long now) throws IOException {
+            json.beginObject();
+            json.name("profile").value(profile.getName());
+            json.name("state").value(state.name().toLowerCase());
+            json.name("intervalSeconds").value(intervalSeconds);
+            if (state != State.IDLE) {
+                json.name("waitingMillis").value((state == State.RUNNING ? startTime : now) - dueTime);
+            }
+            SyncEngine running = engine;
+            SyncMetrics metrics = running != null ? running.getMetrics() : null;
+            if (state == State.RUNNING && metrics != null) {
+                SyncMetrics.Phase phase = metrics.getCurrentPhase();
+                json.name("phase").value(phase != null ? phase.name().toLowerCase() : null);
+                json.name("runningMillis").value(now - startTime);
+                json.name("files").value(metrics.getFiles());
+                json.name("bytes").value(metrics.getBytes());
+            }
+            if (lastResult != null) {
+                json.name("lastEnd").value(lastEndTime);
+                json.name("lastResult").value(lastResult);
+            }
+            if (state == State.IDLE && lastEndTime > 0) {
+                json.name("nextRun").value(lastEndTime + TimeUnit.SECONDS.toMillis(intervalSeconds));
+            }
+            json.endObject();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.filesync.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content digests used to tell a real modification from a timestamp-only change.
+ */
+public class ContentDigest {
+    public static final String ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private ContentDigest() {}
+    
+    /**
+     * Reads the channel to its end and returns the hex digest of its content.
+     */
+    public static String compute(ReadableByteChannel channel) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Channel digesting everything written to it, so that a copy streamed through this
+     * process gets its digest without reading the file again.
+     */
+    public static class Sink implements WritableByteChannel {
+        private final MessageDigest digest = newDigest();
+        private String hex;
+        
+        @Override
+        public int write(ByteBuffer source) {
+            int length = source.remaining();
+            digest.update(source);
+            return length;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return hex == null;
+        }
+        
+        /**
+         * Marks the content as complete.
+         */
+        @Override
+        public void close() {
+            if (hex == null) {
+                hex = toHex(digest.digest());
+            }
+        }
+        
+        /**
+         * @return Hex digest of the content, or null if the sink was not closed, i.e. did
+         *         not receive a complete content
+         */
+        public String getDigest() {
+            return hex;
+        }
+    }
+    
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+    
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
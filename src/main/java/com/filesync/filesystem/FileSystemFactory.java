@@ -1,11 +1,45 @@
 package com.filesync.filesystem;
 
+import com.filesync.core.Profile;
+import com.filesync.transfer.Durability;
+import com.filesync.transfer.GroupCommit;
+import com.filesync.transfer.LocalCopyEngine;
+import com.filesync.transfer.PartialFile;
+
 // Factory Method pattern
 public class FileSystemFactory {
     public static FileSystemHandler createFileSystemHandler(String path) {
-        // Currently only supports local file system
-        // In the future, could return different implementations based on the path
-        // (e.g., WebDAVFileSystemHandler for http:// paths)
+        if (isRemote(path)) {
+            return new WebDAVFileSystemHandler(path);
+        }
         return new LocalFileSystemHandler(path);
     }
+    
+    public static FileSystemHandler createFileSystemHandler(String path, Profile profile) {
+        if (isRemote(path)) {
+            return new WebDAVFileSystemHandler(path,
+                    profile.getIntOption("webdav.parallelism", WebDAVFileSystemHandler.DEFAULT_PARALLELISM),
+                    profile.getLongOption("webdav.timeoutMillis", WebDAVFileSystemHandler.DEFAULT_TIMEOUT_MILLIS),
+                    profile.getOption("webdav.user", null), profile.getOption("webdav.password", null));
+        }
+        
+        int scanParallelism = profile.getIntOption("scan.parallelism", 0);
+        GroupCommit commit = new GroupCommit(
+                Durability.parse(profile.getOption("copy.durability", Durability.BATCHED.toString())),
+                profile.getIntOption("copy.durabilityBatchFiles", GroupCommit.DEFAULT_BATCH_FILES));
+        LocalCopyEngine copyEngine = new LocalCopyEngine(
+                profile.getBooleanOption("copy.reflink", true),
+                profile.getLongOption("copy.reflinkMinBytes", LocalFileSystemHandler.DEFAULT_REFLINK_MIN_BYTES),
+                profile.getLongOption("transfer.resumeMinBytes", PartialFile.DEFAULT_RESUME_MIN_BYTES),
+                commit);
+        return new LocalFileSystemHandler(path, scanParallelism, copyEngine);
+    }
+    
+    /**
+     * @return True for http:// and https:// URLs, which are served by WebDAV
+     */
+    public static boolean isRemote(String path) {
+        String lower = path.toLowerCase();
+        return lower.startsWith("http://") || lower.startsWith("https://");
+    }
 }
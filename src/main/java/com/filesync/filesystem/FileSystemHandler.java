@@ -1,14 +1,28 @@
 package com.filesync.filesystem;
 
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 
 // Abstract Factory pattern
 public interface FileSystemHandler {
-    FileSystemNode scan() throws IOException;
-    void copyFile(String sourcePath, String targetPath, boolean preserveTimestamp) throws IOException;
+    TreeSnapshot snapshot() throws IOException;
+    ScanStream walk() throws IOException;
+    ScanStream walk(String path) throws IOException;
+    FileSystemNode stat(String path) throws IOException;
+    long copyFile(String sourcePath, String targetPath, boolean preserveTimestamp) throws IOException;
+    void createDirectory(String path) throws IOException;
     void deleteFile(String path) throws IOException;
+    void moveFile(String sourcePath, String targetPath) throws IOException;
     boolean exists(String path);
     long getLastModified(String path);
     void setLastModified(String path, long time) throws IOException;
+    String computeDigest(String path) throws IOException;
+    long getSize(String path) throws IOException;
+    SeekableByteChannel openRandomAccess(String path, boolean writable) throws IOException;
+    ReadableByteChannel openRead(String path) throws IOException;
+    ReadableByteChannel openRead(String path, long offset) throws IOException;
+    WriteChannel openWrite(String path, long size) throws IOException;
+    void sync() throws IOException;
     String getBasePath();
 }
@@ -1,20 +1,34 @@
 package com.filesync.filesystem;
 
-import java.util.ArrayList;
-import java.util.List;
-
-// Composite pattern
+/**
+ * Name, type and state of a scanned file or directory. Whole trees are kept as a
+ * {@link TreeSnapshot} or streamed as {@link ScanEntry} objects instead of being
+ * linked into an object graph.
+ */
 public class FileSystemNode {
     private final String name;
     private final boolean isDirectory;
     private final long lastModified;
-    private final List<FileSystemNode> children;
+    private final long size;
+    private final long summary;
     
     public FileSystemNode(String name, boolean isDirectory, long lastModified) {
+        this(name, isDirectory, lastModified, -1L);
+    }
+    
+    public FileSystemNode(String name, boolean isDirectory, long lastModified, long size) {
+        this(name, isDirectory, lastModified, size, 0L);
+    }
+    
+    /**
+     * @param summary Hash summarizing a directory's whole subtree, or 0 if unknown
+     */
+    public FileSystemNode(String name, boolean isDirectory, long lastModified, long size, long summary) {
         this.name = name;
         this.isDirectory = isDirectory;
         this.lastModified = lastModified;
-        this.children = isDirectory ? new ArrayList<>() : null;
+        this.size = size;
+        this.summary = summary;
     }
     
     public String getName() {
@@ -29,13 +43,18 @@ public class FileSystemNode {
         return lastModified;
     }
     
-    public List<FileSystemNode> getChildren() {
-        return children;
+    /**
+     * @return Size in bytes, or -1 if unknown
+     */
+    public long getSize() {
+        return size;
     }
     
-    public void addChild(FileSystemNode child) {
-        if (isDirectory && children != null) {
-            children.add(child);
-        }
+    /**
+     * @return Hash over the names, sizes and timestamps of everything below this
+     *         directory, or 0 if it is unknown (e.g. in a streamed scan)
+     */
+    public long getSummary() {
+        return summary;
     }
 }
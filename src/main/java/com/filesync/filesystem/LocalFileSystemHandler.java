@@ -1,73 +1,148 @@
 package com.filesync.filesystem;
 
-import java.io.File;
+import com.filesync.transfer.GroupCommit;
+import com.filesync.transfer.LocalCopyEngine;
+import com.filesync.transfer.WorkingCopy;
+
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 
 public class LocalFileSystemHandler implements FileSystemHandler {
+    public static final long DEFAULT_REFLINK_MIN_BYTES = 8L * 1024 * 1024;
+    
     private final String basePath;
+    private final ParallelTreeScanner scanner;
+    private final LocalCopyEngine copyEngine;
     
     public LocalFileSystemHandler(String basePath) {
+        this(basePath, 0);
+    }
+    
+    /**
+     * @param basePath Root folder handled by this instance
+     * @param scanParallelism Number of scanner threads, or 0 for one per processor
+     */
+    public LocalFileSystemHandler(String basePath, int scanParallelism) {
+        this(basePath, scanParallelism, new LocalCopyEngine(true, DEFAULT_REFLINK_MIN_BYTES));
+    }
+    
+    /**
+     * @param basePath Root folder handled by this instance
+     * @param scanParallelism Number of scanner threads, or 0 for one per processor
+     * @param copyEngine Engine used for copies out of this folder
+     */
+    public LocalFileSystemHandler(String basePath, int scanParallelism, LocalCopyEngine copyEngine) {
         this.basePath = basePath;
+        this.scanner = new ParallelTreeScanner(scanParallelism);
+        this.copyEngine = copyEngine;
     }
     
     @Override
-    public FileSystemNode scan() throws IOException {
-        File root = new File(basePath);
-        return scanRecursive(root);
+    public TreeSnapshot snapshot() throws IOException {
+        TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+        try {
+            // Fed directly by the walk, without the queue of a stream
+            scanner.walk(Paths.get(basePath), "", builder::add);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning " + basePath);
+        }
+        return builder.build();
     }
     
-    private FileSystemNode scanRecursive(File file) throws IOException {
-        String name = file.getName();
-        boolean isDirectory = file.isDirectory();
-        long lastModified = file.lastModified();
-        
-        FileSystemNode node = new FileSystemNode(name, isDirectory, lastModified);
-        
-        if (isDirectory) {
-            File[] children = file.listFiles();
-            if (children != null) {
-                for (File child : children) {
-                    if (!isSymbolicLink(child)) { // Skip symbolic links
-                        node.addChild(scanRecursive(child));
-                    }
-                }
-            }
+    /**
+     * Scans the folder like {@link #snapshot()}, reusing the listings of the directories
+     * that did not change since the scan that produced the given hints.
+     * 
+     * @param previous Hints of the previous scan of this folder, or null to list every directory
+     * @return Hints holding the new snapshot, for the next scan
+     */
+    public ScanHints snapshot(ScanHints previous) throws IOException {
+        try {
+            return scanner.snapshot(Paths.get(basePath), previous);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning " + basePath);
         }
-        
-        return node;
     }
     
-    private boolean isSymbolicLink(File file) throws IOException {
-        return Files.isSymbolicLink(file.toPath());
+    @Override
+    public ScanStream walk() throws IOException {
+        return walk("");
     }
     
     @Override
-    public void copyFile(String sourcePath, String targetPath, boolean preserveTimestamp) throws IOException {
-        Path source = Paths.get(basePath, sourcePath);
-        Path target = Paths.get(targetPath);
-        
-        // Create parent directories if they don't exist
-        File targetParent = target.getParent().toFile();
-        if (!targetParent.exists()) {
-            targetParent.mkdirs();
+    public ScanStream walk(String path) throws IOException {
+        Path root = Paths.get(basePath, path);
+        return ScanStream.start(basePath, sink -> scanner.walk(root, path, sink));
+    }
+    
+    @Override
+    public FileSystemNode stat(String path) throws IOException {
+        Path filePath = Paths.get(basePath, path);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(filePath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return null;
         }
         
-        if (preserveTimestamp) {
-            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
-        } else {
-            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        if (attributes.isSymbolicLink()) {
+            return null; // Symbolic links are not synchronized
         }
+        return new FileSystemNode(filePath.getFileName().toString(), attributes.isDirectory(),
+                attributes.lastModifiedTime().toMillis(), attributes.isDirectory() ? -1L : attributes.size());
+    }
+    
+    @Override
+    public long copyFile(String sourcePath, String targetPath, boolean preserveTimestamp) throws IOException {
+        Path source = Paths.get(basePath, sourcePath);
+        Path target = Paths.get(targetPath);
+        return copyEngine.copy(source, target, preserveTimestamp);
+    }
+    
+    @Override
+    public void createDirectory(String path) throws IOException {
+        Files.createDirectories(Paths.get(basePath, path));
     }
     
     @Override
     public void deleteFile(String path) throws IOException {
         Path filePath = Paths.get(basePath, path);
         Files.delete(filePath);
+        copyEngine.getGroupCommit().directoryChanged(filePath.getParent());
+    }
+    
+    @Override
+    public void moveFile(String sourcePath, String targetPath) throws IOException {
+        Path source = Paths.get(basePath, sourcePath);
+        Path target = Paths.get(basePath, targetPath);
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            // An atomic rename would silently replace it
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+        GroupCommit commit = copyEngine.getGroupCommit();
+        commit.directoryChanged(source.getParent());
+        commit.directoryChanged(target.getParent());
     }
     
     @Override
@@ -85,7 +160,67 @@ public class LocalFileSystemHandler implements FileSystemHandler {
     @Override
     public void setLastModified(String path, long time) throws IOException {
         Path filePath = Paths.get(basePath, path);
-        filePath.toFile().setLastModified(time);
+        copyEngine.getGroupCommit().setLastModified(filePath, time);
+    }
+    
+    @Override
+    public String computeDigest(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(basePath, path), StandardOpenOption.READ)) {
+            return ContentDigest.compute(channel);
+        }
+    }
+    
+    @Override
+    public long getSize(String path) throws IOException {
+        return Files.size(Paths.get(basePath, path));
+    }
+    
+    @Override
+    public SeekableByteChannel openRandomAccess(String path, boolean writable) throws IOException {
+        Path filePath = Paths.get(basePath, path);
+        if (writable) {
+            return FileChannel.open(filePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return FileChannel.open(filePath, StandardOpenOption.READ);
+    }
+    
+    /**
+     * Opens a copy of a file for an in-place style update that only replaces the file once
+     * complete; see {@link LocalCopyEngine#openWorkingCopy}.
+     */
+    public WorkingCopy openWorkingCopy(String path) throws IOException {
+        return copyEngine.openWorkingCopy(Paths.get(basePath, path));
+    }
+    
+    @Override
+    public ReadableByteChannel openRead(String path) throws IOException {
+        return FileChannel.open(Paths.get(basePath, path), StandardOpenOption.READ);
+    }
+    
+    @Override
+    public ReadableByteChannel openRead(String path, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(basePath, path), StandardOpenOption.READ);
+        channel.position(offset);
+        return channel;
+    }
+    
+    @Override
+    public WriteChannel openWrite(String path, long size) throws IOException {
+        Path filePath = Paths.get(basePath, path);
+        Files.createDirectories(filePath.getParent());
+        return copyEngine.getGroupCommit().openWrite(filePath, size);
+    }
+    
+    /**
+     * Forces the files written so far to disk, if the durability level left them pending.
+     */
+    @Override
+    public void sync() throws IOException {
+        copyEngine.getGroupCommit().flush();
+    }
+    
+    public GroupCommit getGroupCommit() {
+        return copyEngine.getGroupCommit();
     }
     
     @Override
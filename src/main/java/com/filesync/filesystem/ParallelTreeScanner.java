@@ -0,0 +1,296 @@
+package com.filesync.filesystem;
+
+import com.filesync.transfer.PartialFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scans a local directory tree on a work-stealing pool.
+ * Each directory is listed by its own task, so idle workers fetch the
+ * listings of upcoming subtrees while earlier entries are consumed. Attributes are read
+ * with a single {@link BasicFileAttributes} call per entry instead of
+ * separate isDirectory/lastModified/isSymbolicLink lookups. With the {@link ScanHints}
+ * of the previous scan, directories whose modification time did not change are not
+ * listed again: only the attributes of their recorded children are read.
+ */
+public class ParallelTreeScanner {
+    /** Previous snapshot index of the scanned root. */
+    private static final int ROOT = -1;
+    /** Previous snapshot index of a directory the previous scan did not see. */
+    private static final int NONE = -2;
+    
+    private final int parallelism;
+    
+    /**
+     * @param parallelism Number of worker threads, or 0 to use one per available processor
+     */
+    public ParallelTreeScanner(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Scan parallelism must be >= 0: " + parallelism);
+        }
+        this.parallelism = parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+    }
+    
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    /**
+     * Walks the tree rooted at the given path depth-first, emitting entries in
+     * {@link ScanEntry#comparePaths} order. Emission is sequential, but the listings
+     * of a directory's subdirectories are fetched ahead on the pool while its
+     * earlier entries are consumed. A missing root is walked as an empty tree.
+     * 
+     * @param root Root directory to walk
+     * @param prefix Relative path of the root, prepended to every emitted path ("" for none)
+     * @param sink Receiver of the sorted entries
+     * @throws IOException If a directory cannot be read
+     * @throws InterruptedException If the walk is cancelled
+     */
+    public void walk(Path root, String prefix, ScanStream.Sink sink) throws IOException, InterruptedException {
+        // The scanned root may itself be a link, but subtrees behind links are skipped
+        LinkOption[] options = prefix.isEmpty() ? new LinkOption[0] : new LinkOption[] {LinkOption.NOFOLLOW_LINKS};
+        if (!Files.isDirectory(root, options)) {
+            return;
+        }
+        
+        Scan scan = new Scan(null);
+        try {
+            scan.walkDirectory(root, prefix, scan.pool.submit(new ListingTask(scan, root, NONE, 0L)), sink);
+        } finally {
+            scan.pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Snapshots the whole tree like a {@link #walk} into a {@link TreeSnapshot}, taking the
+     * children of every directory whose listing the previous hints still hold from them
+     * instead of listing the directory; only the attributes of those children are read.
+     * 
+     * @param root Root directory to scan
+     * @param previous Hints of the previous scan of the same root, or null to list every directory
+     * @return Hints holding the new snapshot, for the next scan
+     * @throws IOException If a directory cannot be read
+     * @throws InterruptedException If the scan is cancelled
+     */
+    public ScanHints snapshot(Path root, ScanHints previous) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long lastFullScan = previous != null ? previous.getLastFullScan() : start;
+        TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(root, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return new ScanHints(builder.build(), 0L, start, lastFullScan, 0, 0);
+        }
+        if (!attributes.isDirectory()) {
+            return new ScanHints(builder.build(), 0L, start, lastFullScan, 0, 0);
+        }
+        
+        long rootLastModified = attributes.lastModifiedTime().toMillis();
+        Scan scan = new Scan(previous);
+        try {
+            ListingTask listing = new ListingTask(scan, root, previous != null ? ROOT : NONE, rootLastModified);
+            scan.walkDirectory(root, "", scan.pool.submit(listing), builder::add);
+        } finally {
+            scan.pool.shutdownNow();
+        }
+        return new ScanHints(builder.build(), rootLastModified, start, lastFullScan, scan.listed.get(),
+                scan.reused.get());
+    }
+    
+    /**
+     * State of one walk, shared by its listing tasks.
+     */
+    private class Scan {
+        private final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        private final ScanHints hints;
+        private final AtomicInteger listed = new AtomicInteger();
+        private final AtomicInteger reused = new AtomicInteger();
+        
+        Scan(ScanHints hints) {
+            this.hints = hints;
+        }
+        
+        void walkDirectory(Path directory, String prefix, ForkJoinTask<List<Child>> listing, ScanStream.Sink sink)
+                throws IOException, InterruptedException {
+            List<Child> children = join(listing);
+            
+            // Prefetch the listings of all subdirectories before descending into the first one
+            List<ForkJoinTask<List<Child>>> subListings = new ArrayList<>();
+            for (Child child : children) {
+                subListings.add(child.attributes.isDirectory() ? pool.submit(new ListingTask(this,
+                        directory.resolve(child.name), child.previous, child.attributes.lastModifiedTime().toMillis()))
+                        : null);
+            }
+            
+            for (int i = 0; i < children.size(); i++) {
+                Child child = children.get(i);
+                String path = prefix.isEmpty() ? child.name : prefix + "/" + child.name;
+                sink.accept(new ScanEntry(path, child.toNode()));
+                
+                if (child.attributes.isDirectory()) {
+                    walkDirectory(directory.resolve(child.name), path, subListings.get(i), sink);
+                    subListings.set(i, null);
+                }
+            }
+        }
+    }
+    
+    private static List<Child> join(ForkJoinTask<List<Child>> listing) throws IOException, InterruptedException {
+        try {
+            return listing.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Error listing directory: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+    
+    /**
+     * Lists a directory with one attribute read per entry, skipping symbolic links,
+     * partial copies and entries deleted while listing. The result is sorted by name.
+     */
+    private static List<Child> list(Path directory) {
+        List<Child> children = new ArrayList<>();
+        
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                if (PartialFile.isPartialName(child.getFileName().toString())) {
+                    continue; // Belongs to an unfinished copy, not to the folder's content
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    continue; // Deleted while scanning
+                }
+                
+                if (!attributes.isSymbolicLink()) { // Skip symbolic links
+                    children.add(new Child(child.getFileName().toString(), attributes));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        children.sort(Comparator.comparing(child -> child.name));
+        return children;
+    }
+    
+    /**
+     * Reads the attributes of the children a snapshot recorded for a directory, in their
+     * recorded (name) order, without listing the directory.
+     */
+    private static List<Child> restat(Path directory, TreeSnapshot snapshot, int previous) {
+        List<Child> children = new ArrayList<>();
+        for (int index = snapshot.firstChild(previous); index < snapshot.childrenEnd(previous);
+             index = snapshot.nextSibling(index)) {
+            String name = snapshot.nameAt(index);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(directory.resolve(name), BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                continue; // Deleted while scanning
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            
+            if (!attributes.isSymbolicLink()) {
+                Child child = new Child(name, attributes);
+                child.previous = attributes.isDirectory() && snapshot.isDirectoryAt(index) ? index : NONE;
+                children.add(child);
+            }
+        }
+        return children;
+    }
+    
+    /**
+     * Links the subdirectories of a listed directory to their entries in the previous snapshot.
+     */
+    private static void matchPrevious(List<Child> children, TreeSnapshot snapshot, int previous) {
+        Map<String, Integer> directories = new HashMap<>();
+        for (int index = snapshot.firstChild(previous); index < snapshot.childrenEnd(previous);
+             index = snapshot.nextSibling(index)) {
+            if (snapshot.isDirectoryAt(index)) {
+                directories.put(snapshot.nameAt(index), index);
+            }
+        }
+        for (Child child : children) {
+            if (child.attributes.isDirectory()) {
+                child.previous = directories.getOrDefault(child.name, NONE);
+            }
+        }
+    }
+    
+    private static class Child {
+        private final String name;
+        private final BasicFileAttributes attributes;
+        /** Index of the directory in the previous snapshot, or {@link #NONE}. */
+        private int previous = NONE;
+        
+        Child(String name, BasicFileAttributes attributes) {
+            this.name = name;
+            this.attributes = attributes;
+        }
+        
+        FileSystemNode toNode() {
+            return new FileSystemNode(name, attributes.isDirectory(), attributes.lastModifiedTime().toMillis(),
+                    attributes.isDirectory() ? -1L : attributes.size());
+        }
+    }
+    
+    @SuppressWarnings("serial") // RecursiveTask is Serializable, but tasks never leave the pool
+    private static class ListingTask extends RecursiveTask<List<Child>> {
+        private final Scan scan;
+        private final Path directory;
+        private final int previous;
+        private final long lastModified;
+        
+        /**
+         * @param previous Index of the directory in the previous snapshot, {@link #ROOT} or {@link #NONE}
+         * @param lastModified Current modification time of the directory
+         */
+        ListingTask(Scan scan, Path directory, int previous, long lastModified) {
+            this.scan = scan;
+            this.directory = directory;
+            this.previous = previous;
+            this.lastModified = lastModified;
+        }
+        
+        @Override
+        protected List<Child> compute() {
+            ScanHints hints = scan.hints;
+            if (hints != null && previous != NONE && hints.isListingValid(previous, lastModified)) {
+                scan.reused.incrementAndGet();
+                return restat(directory, hints.getSnapshot(), previous);
+            }
+            
+            scan.listed.incrementAndGet();
+            List<Child> children = list(directory);
+            if (hints != null && previous != NONE) {
+                matchPrevious(children, hints.getSnapshot(), previous);
+            }
+            return children;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.filesync.filesystem;
+
+/**
+ * A single entry of a sorted scan: the node and its path relative to the scanned root,
+ * using '/' as separator. Directory nodes carry no children in this form.
+ */
+public class ScanEntry {
+    private final String path;
+    private final FileSystemNode node;
+    
+    public ScanEntry(String path, FileSystemNode node) {
+        this.path = path;
+        this.node = node;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public FileSystemNode getNode() {
+        return node;
+    }
+    
+    /**
+     * Orders relative paths the way a depth-first walk with name-sorted children emits them:
+     * segment by segment, so "a/b" sorts before "a-c". Equivalent to a character comparison
+     * in which '/' sorts below every other character.
+     */
+    public static int comparePaths(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                if (ca == '/') {
+                    return -1;
+                }
+                if (cb == '/') {
+                    return 1;
+                }
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+}
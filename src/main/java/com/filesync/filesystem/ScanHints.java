@@ -0,0 +1,143 @@
+package com.filesync.filesystem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Snapshot of a local folder kept from its last scan, so that the next scan can skip
+ * listing the directories that did not gain or lose entries since.
+ * A directory's modification time changes whenever an entry is created, deleted or
+ * renamed in it, so a directory whose time is still the recorded one has the recorded
+ * children: the scan only reads their attributes again instead of listing it.
+ * Times within {@link #MTIME_SLACK_MILLIS} of the recorded scan are not trusted, since
+ * a change made right after the listing may not have moved a coarse timestamp.
+ */
+public class ScanHints {
+    /** Granularity of directory timestamps on the coarsest file systems (FAT, some NFS servers). */
+    public static final long MTIME_SLACK_MILLIS = 2000L;
+    /** Hours after which a scan lists every directory again, in case a change was missed. */
+    public static final long DEFAULT_FULL_RESCAN_HOURS = 24L;
+    
+    private static final int MAGIC = 0x4a53434e; // "JSCN"
+    private static final int VERSION = 1;
+    
+    private final TreeSnapshot snapshot;
+    private final long rootLastModified;
+    private final long scanStart;
+    private final long lastFullScan;
+    private final int listedDirectories;
+    private final int reusedListings;
+    
+    /**
+     * @param snapshot Result of the scan
+     * @param rootLastModified Modification time of the scanned folder itself
+     * @param scanStart Time the scan started, in milliseconds
+     * @param lastFullScan Start of the last scan that listed every directory
+     * @param listedDirectories Directories the scan listed
+     * @param reusedListings Directories whose listing the scan took from the previous hints
+     */
+    public ScanHints(TreeSnapshot snapshot, long rootLastModified, long scanStart, long lastFullScan,
+                     int listedDirectories, int reusedListings) {
+        this.snapshot = snapshot;
+        this.rootLastModified = rootLastModified;
+        this.scanStart = scanStart;
+        this.lastFullScan = lastFullScan;
+        this.listedDirectories = listedDirectories;
+        this.reusedListings = reusedListings;
+    }
+    
+    /**
+     * Reads the hints written by {@link #save}.
+     * 
+     * @return The hints, or null if the file does not exist or cannot be used, which means a full scan
+     */
+    public static ScanHints load(Path file) {
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null; // Written by another version
+            }
+            long rootLastModified = in.readLong();
+            long scanStart = in.readLong();
+            long lastFullScan = in.readLong();
+            return new ScanHints(TreeSnapshot.read(in), rootLastModified, scanStart, lastFullScan, 0, 0);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (EOFException e) {
+            System.err.println("Ignoring scan hints " + file + ": file is truncated");
+            return null;
+        } catch (IOException e) {
+            System.err.println("Ignoring scan hints " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Replaces the file with these hints; a reader never sees it half written.
+     */
+    public void save(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(rootLastModified);
+            out.writeLong(scanStart);
+            out.writeLong(lastFullScan);
+            snapshot.write(out);
+        }
+        try {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    public TreeSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * @return Start of the last scan that listed every directory, in milliseconds
+     */
+    public long getLastFullScan() {
+        return lastFullScan;
+    }
+    
+    /**
+     * @return Directories listed by the scan that produced these hints
+     */
+    public int getListedDirectories() {
+        return listedDirectories;
+    }
+    
+    /**
+     * @return Directories whose listing the scan that produced these hints reused
+     */
+    public int getReusedListings() {
+        return reusedListings;
+    }
+    
+    /**
+     * Checks whether the recorded children of a directory are still its children.
+     * 
+     * @param directory Index of the directory in the snapshot, or -1 for the scanned folder
+     * @param lastModified Current modification time of the directory
+     */
+    boolean isListingValid(int directory, long lastModified) {
+        long recorded = directory < 0 ? rootLastModified : snapshot.lastModifiedAt(directory);
+        return recorded == lastModified && recorded < scanStart - MTIME_SLACK_MILLIS;
+    }
+}
@@ -0,0 +1,103 @@
+package com.filesync.filesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Path-sorted stream of scan entries produced by a background thread.
+ * The queue between producer and consumer is bounded, so memory stays flat
+ * no matter how large the tree is. I/O errors of the producer are rethrown
+ * to the consumer as {@link UncheckedIOException}.
+ */
+public class ScanStream implements Iterator<ScanEntry>, AutoCloseable {
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final ScanEntry END = new ScanEntry(null, null);
+    
+    private final BlockingQueue<ScanEntry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread producerThread;
+    private volatile IOException failure;
+    private ScanEntry next;
+    
+    /**
+     * Receives entries in sorted order from a producer.
+     */
+    public interface Sink {
+        void accept(ScanEntry entry) throws InterruptedException;
+    }
+    
+    /**
+     * Walks a tree and pushes its entries, in sorted order, into a sink.
+     */
+    public interface Producer {
+        void produce(Sink sink) throws IOException, InterruptedException;
+    }
+    
+    private ScanStream(String name, Producer producer) {
+        this.producerThread = new Thread(() -> {
+            try {
+                producer.produce(queue::put);
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                return; // Closed by the consumer
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // Closed by the consumer
+            }
+        }, "scan-" + name);
+        this.producerThread.setDaemon(true);
+    }
+    
+    /**
+     * Starts a stream fed by the given producer on its own thread.
+     * 
+     * @param name Name used for the producer thread
+     * @param producer Walker emitting entries in {@link ScanEntry#comparePaths} order
+     * @return Running stream
+     */
+    public static ScanStream start(String name, Producer producer) {
+        ScanStream stream = new ScanStream(name, producer);
+        stream.producerThread.start();
+        return stream;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new IOException("Interrupted while scanning", e));
+            }
+        }
+        if (next == END) {
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+            return false;
+        }
+        return true;
+    }
+    
+    @Override
+    public ScanEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ScanEntry entry = next;
+        next = null;
+        return entry;
+    }
+    
+    @Override
+    public void close() {
+        producerThread.interrupt();
+    }
+}
@@ -0,0 +1,365 @@
+package com.filesync.filesystem;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact, immutable result of a full tree scan.
+ * Entries are kept in walk order ({@link ScanEntry#comparePaths}) in parallel
+ * primitive arrays: parent index, name offset, timestamp, size and flags, with
+ * all names packed into one shared UTF-8 arena. Paths are not stored; they are
+ * rebuilt while iterating from the parent links, so each directory prefix is
+ * built once and shared by all of its children. A file costs about 37 bytes
+ * plus the UTF-8 bytes of its name, instead of a {@link FileSystemNode} object,
+ * its name String and a full path String.
+ * <p>
+ * Each directory also carries a summary: a hash over the names, sizes and
+ * timestamps of its children, folding in the summaries of its subdirectories.
+ * Directory timestamps are left out, so two identical trees have the same
+ * summaries even when their directories were created at different times.
+ */
+public class TreeSnapshot implements Iterable<ScanEntry> {
+    private static final byte FLAG_DIRECTORY = 1;
+    
+    private final int count;
+    private final int maxDepth;
+    private final int[] parents;
+    private final int[] nameOffsets;
+    private final long[] lastModified;
+    private final long[] sizes;
+    private final byte[] flags;
+    private final byte[] names;
+    private final long[] summaries;
+    private final int[] subtreeEnds;
+    
+    private TreeSnapshot(Builder builder) {
+        this.count = builder.count;
+        this.maxDepth = builder.maxDepth;
+        this.parents = Arrays.copyOf(builder.parents, count);
+        this.nameOffsets = Arrays.copyOf(builder.nameOffsets, count + 1);
+        this.lastModified = Arrays.copyOf(builder.lastModified, count);
+        this.sizes = Arrays.copyOf(builder.sizes, count);
+        this.flags = Arrays.copyOf(builder.flags, count);
+        this.names = Arrays.copyOf(builder.names, builder.nameLength);
+        this.summaries = new long[count];
+        this.subtreeEnds = new int[count];
+        summarize();
+    }
+    
+    /**
+     * Computes directory summaries and subtree bounds bottom-up. Entries are in walk
+     * order, so every child has a higher index than its directory and is complete by
+     * the time it is folded into it; children are folded in reverse name order.
+     */
+    private void summarize() {
+        for (int index = count - 1; index >= 0; index--) {
+            if ((flags[index] & FLAG_DIRECTORY) != 0) {
+                summaries[index] = summaries[index] != 0 ? summaries[index] : 1L;
+                subtreeEnds[index] = Math.max(subtreeEnds[index], index + 1);
+            } else {
+                subtreeEnds[index] = index + 1;
+            }
+            
+            int parent = parents[index];
+            if (parent >= 0) {
+                boolean isDirectory = (flags[index] & FLAG_DIRECTORY) != 0;
+                long child = mix(nameHash(index) ^ sizes[index]);
+                child = mix(child ^ (isDirectory ? summaries[index] : lastModified[index]));
+                long folded = mix(summaries[parent] * 31 + child);
+                summaries[parent] = folded != 0 ? folded : 1L;
+                subtreeEnds[parent] = Math.max(subtreeEnds[parent], subtreeEnds[index]);
+            }
+        }
+    }
+    
+    private long nameHash(int index) {
+        // 64-bit FNV-1a over the UTF-8 name
+        long hash = 0xcbf29ce484222325L;
+        for (int i = nameOffsets[index]; i < nameOffsets[index + 1]; i++) {
+            hash ^= names[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    private static long mix(long value) {
+        // Finalizer of MurmurHash3
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+    
+    /**
+     * Builds a snapshot from entries in walk order.
+     * 
+     * @param entries Entries sorted by {@link ScanEntry#comparePaths}, each directory before its contents
+     * @return Snapshot holding all entries
+     */
+    public static TreeSnapshot capture(Iterator<ScanEntry> entries) {
+        Builder builder = new Builder();
+        while (entries.hasNext()) {
+            builder.add(entries.next());
+        }
+        return builder.build();
+    }
+    
+    /**
+     * @return Number of files and directories in the snapshot
+     */
+    public int getEntryCount() {
+        return count;
+    }
+    
+    /**
+     * @return Approximate heap size of the snapshot in bytes
+     */
+    public long getMemoryUsage() {
+        return 4L * parents.length + 4L * nameOffsets.length + 8L * lastModified.length
+                + 8L * sizes.length + flags.length + names.length + 8L * summaries.length + 4L * subtreeEnds.length;
+    }
+    
+    /**
+     * @param directory Index of a directory, or -1 for the root
+     * @return Index of the directory's first child; further children follow at {@link #nextSibling}
+     */
+    int firstChild(int directory) {
+        return directory + 1;
+    }
+    
+    /**
+     * @param directory Index of a directory, or -1 for the root
+     * @return Index after the last entry below the directory
+     */
+    int childrenEnd(int directory) {
+        return directory < 0 ? count : subtreeEnds[directory];
+    }
+    
+    int nextSibling(int index) {
+        return subtreeEnds[index];
+    }
+    
+    String nameAt(int index) {
+        return new String(names, nameOffsets[index], nameOffsets[index + 1] - nameOffsets[index],
+                StandardCharsets.UTF_8);
+    }
+    
+    long lastModifiedAt(int index) {
+        return lastModified[index];
+    }
+    
+    boolean isDirectoryAt(int index) {
+        return (flags[index] & FLAG_DIRECTORY) != 0;
+    }
+    
+    /**
+     * Writes the entries in walk order; summaries and subtree bounds are computed again
+     * when reading.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(count);
+        for (int index = 0; index < count; index++) {
+            int nameLength = nameOffsets[index + 1] - nameOffsets[index];
+            if (nameLength > 0xffff) {
+                throw new IOException("Name too long to store: " + nameAt(index));
+            }
+            out.writeInt(parents[index]);
+            out.writeShort(nameLength);
+            out.write(names, nameOffsets[index], nameLength);
+            out.writeLong(lastModified[index]);
+            out.writeLong(sizes[index]);
+            out.writeByte(flags[index]);
+        }
+    }
+    
+    /**
+     * Reads a snapshot written by {@link #write}. Arrays grow as entries are read, so a
+     * damaged count fails on the end of the input rather than on a huge allocation.
+     * 
+     * @throws IOException If the input ends early or does not hold a valid snapshot
+     */
+    public static TreeSnapshot read(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid snapshot entry count: " + count);
+        }
+        Builder builder = new Builder();
+        int[] depths = new int[Builder.INITIAL_CAPACITY];
+        for (int index = 0; index < count; index++) {
+            int parent = in.readInt();
+            if (parent < -1 || parent >= index || (parent >= 0 && (builder.flags[parent] & FLAG_DIRECTORY) == 0)) {
+                throw new IOException("Invalid parent of snapshot entry " + index + ": " + parent);
+            }
+            byte[] name = new byte[in.readUnsignedShort()];
+            in.readFully(name);
+            long entryLastModified = in.readLong();
+            long size = in.readLong();
+            byte entryFlags = in.readByte();
+            
+            if (index == depths.length) {
+                depths = Arrays.copyOf(depths, index + (index >> 1));
+            }
+            depths[index] = (parent >= 0 ? depths[parent] : 0) + ((entryFlags & FLAG_DIRECTORY) != 0 ? 1 : 0);
+            builder.maxDepth = Math.max(builder.maxDepth, depths[index]);
+            builder.append(parent, name, entryLastModified, size, entryFlags);
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Iterates the entries in walk order. Each call creates fresh {@link ScanEntry}
+     * objects, so the snapshot itself stays compact while it is being consumed.
+     */
+    @Override
+    public Cursor iterator() {
+        return new Cursor();
+    }
+    
+    /**
+     * Iterator over the snapshot that can jump over a directory's contents.
+     */
+    public class Cursor implements Iterator<ScanEntry> {
+        private final int[] directoryIndexes = new int[maxDepth];
+        private final String[] directoryPaths = new String[maxDepth];
+        private int depth;
+        private int position;
+        
+        @Override
+        public boolean hasNext() {
+            return position < count;
+        }
+        
+        @Override
+        public ScanEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int index = position++;
+            
+            // Leave the directories the walk has moved out of
+            int parent = parents[index];
+            while (depth > 0 && directoryIndexes[depth - 1] != parent) {
+                depth--;
+            }
+            
+            String name = nameAt(index);
+            String path = depth == 0 ? name : directoryPaths[depth - 1] + "/" + name;
+            boolean isDirectory = (flags[index] & FLAG_DIRECTORY) != 0;
+            
+            if (isDirectory) {
+                directoryIndexes[depth] = index;
+                directoryPaths[depth] = path;
+                depth++;
+            }
+            return new ScanEntry(path, new FileSystemNode(name, isDirectory, lastModified[index], sizes[index],
+                    summaries[index]));
+        }
+        
+        /**
+         * Skips everything below the directory returned by the last call to {@link #next()}.
+         * Does nothing if that entry is a file.
+         */
+        public void skipSubtree() {
+            if (position > 0) {
+                position = Math.max(position, subtreeEnds[position - 1]);
+            }
+        }
+    }
+    
+    /**
+     * Accumulates entries in walk order, e.g. directly as the sink of a walk.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 1024;
+        
+        private int count;
+        private int maxDepth;
+        private int[] parents = new int[INITIAL_CAPACITY];
+        private int[] nameOffsets = new int[INITIAL_CAPACITY + 1];
+        private long[] lastModified = new long[INITIAL_CAPACITY];
+        private long[] sizes = new long[INITIAL_CAPACITY];
+        private byte[] flags = new byte[INITIAL_CAPACITY];
+        private byte[] names = new byte[INITIAL_CAPACITY * 16];
+        private int nameLength;
+        
+        // Directories enclosing the last entry, outermost first
+        private int[] directoryIndexes = new int[16];
+        private String[] directoryPaths = new String[16];
+        private int depth;
+        
+        /**
+         * @param entry Next entry in walk order
+         * @throws IllegalArgumentException If the entry's directory was not added before it
+         */
+        public void add(ScanEntry entry) {
+            String path = entry.getPath();
+            FileSystemNode node = entry.getNode();
+            int slash = path.lastIndexOf('/');
+            
+            while (depth > 0 && !isParent(directoryPaths[depth - 1], path, slash)) {
+                depth--;
+            }
+            if (slash >= 0 && depth == 0) {
+                throw new IllegalArgumentException("Entry added before its directory: " + path);
+            }
+            
+            byte[] name = path.substring(slash + 1).getBytes(StandardCharsets.UTF_8);
+            int index = append(depth > 0 ? directoryIndexes[depth - 1] : -1, name, node.getLastModified(),
+                    node.getSize(), node.isDirectory() ? FLAG_DIRECTORY : 0);
+            
+            if (node.isDirectory()) {
+                if (depth == directoryIndexes.length) {
+                    directoryIndexes = Arrays.copyOf(directoryIndexes, depth * 2);
+                    directoryPaths = Arrays.copyOf(directoryPaths, depth * 2);
+                }
+                directoryIndexes[depth] = index;
+                directoryPaths[depth] = path;
+                depth++;
+                maxDepth = Math.max(maxDepth, depth);
+            }
+        }
+        
+        private int append(int parent, byte[] name, long entryLastModified, long size, byte entryFlags) {
+            if (count == parents.length) {
+                grow();
+            }
+            if (nameLength + name.length > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length + (names.length >> 1), nameLength + name.length));
+            }
+            System.arraycopy(name, 0, names, nameLength, name.length);
+            nameLength += name.length;
+            
+            int index = count++;
+            parents[index] = parent;
+            nameOffsets[index + 1] = nameLength;
+            lastModified[index] = entryLastModified;
+            sizes[index] = size;
+            flags[index] = entryFlags;
+            return index;
+        }
+        
+        public TreeSnapshot build() {
+            return new TreeSnapshot(this);
+        }
+        
+        private static boolean isParent(String directory, String path, int slash) {
+            return slash == directory.length() && path.startsWith(directory);
+        }
+        
+        private void grow() {
+            int capacity = parents.length + (parents.length >> 1);
+            parents = Arrays.copyOf(parents, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+            lastModified = Arrays.copyOf(lastModified, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.filesync.filesystem;
+
+import com.filesync.transfer.PartialFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recursive watch over one or more local trees.
+ * Every directory is registered with a {@link WatchService}, including directories
+ * created later. Events are debounced and coalesced into a set of relative paths.
+ */
+public class TreeWatcher implements AutoCloseable {
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<WatchKey, Path> roots = new HashMap<>();
+    
+    /**
+     * Paths changed during one debounce window. If the watch service overflowed,
+     * events were lost and the caller has to rescan everything.
+     */
+    public static class ChangeSet {
+        private final Set<String> paths = new HashSet<>();
+        private boolean overflow;
+        
+        public Set<String> getPaths() {
+            return paths;
+        }
+        
+        public boolean isOverflow() {
+            return overflow;
+        }
+    }
+    
+    public TreeWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+    
+    /**
+     * Registers a root and every directory below it. Symbolic links are not followed.
+     * 
+     * @param root Root of the tree to watch
+     * @throws IOException If a directory cannot be registered, e.g. when the
+     *                     platform's watch limit is exhausted
+     */
+    public void watch(Path root) throws IOException {
+        registerTree(root, root);
+    }
+    
+    private void registerTree(Path root, Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, directory);
+                roots.put(key, root);
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE; // Deleted while registering
+            }
+        });
+    }
+    
+    /**
+     * Blocks until something changes, then keeps collecting events until none arrived
+     * for {@code debounceMillis}, or {@code maxDelayMillis} passed since the first one.
+     * 
+     * @return Coalesced changes, as paths relative to their root
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public ChangeSet poll(long debounceMillis, long maxDelayMillis) throws InterruptedException {
+        return poll(debounceMillis, maxDelayMillis, -1L);
+    }
+    
+    /**
+     * Like {@link #poll(long, long)}, but gives up waiting for the first change after
+     * {@code timeoutMillis}.
+     * 
+     * @param timeoutMillis Maximum wait for the first change, or -1 to wait forever
+     * @return Coalesced changes, empty if nothing changed in time
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public ChangeSet poll(long debounceMillis, long maxDelayMillis, long timeoutMillis) throws InterruptedException {
+        ChangeSet changes = new ChangeSet();
+        WatchKey key = timeoutMillis < 0 ? watchService.take()
+                : watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        long deadline = System.currentTimeMillis() + maxDelayMillis;
+        
+        while (key != null) {
+            collect(key, changes);
+            
+            long remaining = Math.min(debounceMillis, deadline - System.currentTimeMillis());
+            if (remaining <= 0) {
+                break;
+            }
+            key = watchService.poll(remaining, TimeUnit.MILLISECONDS);
+        }
+        
+        return changes;
+    }
+    
+    private void collect(WatchKey key, ChangeSet changes) {
+        Path directory = directories.get(key);
+        Path root = roots.get(key);
+        
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                changes.overflow = true;
+                continue;
+            }
+            
+            Path child = directory.resolve((Path) event.context());
+            if (PartialFile.isPartialName(child.getFileName().toString())) {
+                continue; // Progress of a copy; the finished file shows up when it is renamed
+            }
+            changes.paths.add(root.relativize(child).toString().replace(File.separatorChar, '/'));
+            
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    registerTree(root, child);
+                } catch (IOException e) {
+                    changes.overflow = true; // Changes below it could go unnoticed
+                }
+            }
+        }
+        
+        if (!key.reset()) {
+            directories.remove(key);
+            roots.remove(key);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -1,53 +1,1123 @@
 package com.filesync.filesystem;
 
+import com.filesync.transfer.Durability;
+import com.filesync.transfer.GroupCommit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RecursiveTask;
 
-// Adapter pattern - This is a stub implementation for future WebDAV support
+/**
+ * Adapter pattern: exposes a WebDAV share as a {@link FileSystemHandler}.
+ * <p>
+ * All requests go through one {@link HttpClient}, which keeps its HTTP/1.1 connections
+ * alive and reuses them across requests. Trees are walked like {@link ParallelTreeScanner}
+ * walks local ones: every directory is listed by its own {@code PROPFIND Depth: 1} on a
+ * bounded pool, and the listings of a directory's subdirectories are fetched ahead while
+ * its earlier entries are consumed. File content is streamed with GET and PUT and never
+ * held in memory as a whole.
+ * <p>
+ * The server sets {@code getlastmodified} itself, to the upload time and with second
+ * precision only, so synchronized timestamps are stored with {@code PROPPATCH} in a dead
+ * property, together with the size and server timestamp they belong to. A file changed
+ * by another client no longer matches them and falls back to {@code getlastmodified}.
+ */
 public class WebDAVFileSystemHandler implements FileSystemHandler {
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60_000L;
+    
+    private static final String DAV = "DAV:";
+    private static final String JSYNC = "urn:x-jsync:";
+    private static final String PROPFIND_BODY = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<D:propfind xmlns:D=\"DAV:\" xmlns:J=\"" + JSYNC + "\"><D:prop>"
+            + "<D:resourcetype/><D:getcontentlength/><D:getlastmodified/><J:mtime/><J:size/><J:modified/>"
+            + "</D:prop></D:propfind>";
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    
     private final String baseUrl;
+    private final String basePath;
+    private final int parallelism;
+    private final Duration timeout;
+    private final String authorization;
+    private final HttpClient client;
+    private final XMLInputFactory inputFactory;
+    /** Collections known to exist, so uploads do not have to create their parents first. */
+    private final Set<String> knownCollections = ConcurrentHashMap.newKeySet();
     
     public WebDAVFileSystemHandler(String baseUrl) {
-        this.baseUrl = baseUrl;
+        this(baseUrl, DEFAULT_PARALLELISM, DEFAULT_TIMEOUT_MILLIS, null, null);
+    }
+    
+    /**
+     * @param baseUrl URL of the synchronized collection, e.g. "https://host/dav/share"
+     * @param parallelism Number of directories listed at the same time
+     * @param timeoutMillis Timeout for connecting and for the response headers of a request
+     * @param user User for basic authentication, or null to send no credentials
+     * @param password Password of the user
+     */
+    public WebDAVFileSystemHandler(String baseUrl, int parallelism, long timeoutMillis, String user, String password) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("WebDAV parallelism must be > 0: " + parallelism);
+        }
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.basePath = trimSlash(URI.create(this.baseUrl + "/").getPath());
+        this.parallelism = parallelism;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        // Sent up front: answering a 401 challenge would need the body of a PUT a second time
+        this.authorization = user == null ? null : "Basic " + Base64.getEncoder()
+                .encodeToString((user + ":" + (password != null ? password : "")).getBytes(StandardCharsets.UTF_8));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+    
+    @Override
+    public TreeSnapshot snapshot() throws IOException {
+        TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+        try {
+            walkTree("", builder::add);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning " + baseUrl);
+        }
+        return builder.build();
+    }
+    
+    @Override
+    public ScanStream walk() throws IOException {
+        return walk("");
+    }
+    
+    @Override
+    public ScanStream walk(String path) throws IOException {
+        return ScanStream.start(baseUrl, sink -> walkTree(path, sink));
+    }
+    
+    @Override
+    public FileSystemNode stat(String path) throws IOException {
+        List<Resource> resources = propfind(path, "0");
+        if (resources == null || resources.isEmpty()) {
+            return null;
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return resources.get(0).toNode(name);
     }
     
+    /**
+     * Downloads a file with a streaming GET into a temp file, installed over the target
+     * once complete. The copy is outside any sync run's batch, so it is forced on its own.
+     * 
+     * @param targetPath Local path of the copy
+     */
     @Override
-    public FileSystemNode scan() throws IOException {
-        // This would be implemented to use HTTP methods to scan a WebDAV server
-        throw new UnsupportedOperationException("WebDAV support not implemented yet");
+    public long copyFile(String sourcePath, String targetPath, boolean preserveTimestamp) throws IOException {
+        FileSystemNode node = stat(sourcePath);
+        if (node == null || node.isDirectory()) {
+            throw new NoSuchFileException(resourceUrl(sourcePath));
+        }
+        
+        Path target = Paths.get(targetPath);
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        
+        GroupCommit commit = new GroupCommit(Durability.PER_FILE, 1);
+        long copied;
+        try (InputStream in = get(sourcePath, 0L)) {
+            WriteChannel out = commit.openWrite(target, node.getSize());
+            try {
+                copied = in.transferTo(Channels.newOutputStream(out));
+            } catch (IOException | RuntimeException e) {
+                // The size may be unknown: closing would install the partial copy
+                try {
+                    out.abort();
+                } catch (IOException abortFailure) {
+                    e.addSuppressed(abortFailure);
+                }
+                throw e;
+            }
+            out.close();
+        }
+        if (preserveTimestamp) {
+            commit.setLastModified(target, node.getLastModified());
+        }
+        return copied;
     }
     
     @Override
-    public void copyFile(String sourcePath, String targetPath, boolean preserveTimestamp) throws IOException {
-        // This would use HTTP GET to read the file and HTTP PUT to write it
-        throw new UnsupportedOperationException("WebDAV support not implemented yet");
+    public void createDirectory(String path) throws IOException {
+        int status = mkcol(path);
+        if (status == 409 && !path.isEmpty()) {
+            createDirectory(path.indexOf('/') > 0 ? path.substring(0, path.lastIndexOf('/')) : "");
+            status = mkcol(path);
+        }
+        // 405: the collection already exists
+        check(status, "MKCOL", path, 200, 201, 405);
+        knownCollections.add(path);
     }
     
     @Override
     public void deleteFile(String path) throws IOException {
-        // This would use HTTP DELETE
-        throw new UnsupportedOperationException("WebDAV support not implemented yet");
+        knownCollections.clear(); // The path may be a collection, or one of its ancestors
+        HttpRequest request = request(resourceUrl(path)).DELETE().build();
+        int status = send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status == 404) {
+            throw new NoSuchFileException(resourceUrl(path));
+        }
+        check(status, "DELETE", path, 200, 204);
+    }
+    
+    @Override
+    public void moveFile(String sourcePath, String targetPath) throws IOException {
+        knownCollections.clear();
+        int status = move(sourcePath, targetPath);
+        if (status == 409 && targetPath.indexOf('/') > 0) {
+            createDirectory(targetPath.substring(0, targetPath.lastIndexOf('/')));
+            status = move(sourcePath, targetPath);
+        }
+        if (status == 412) {
+            // Overwrite: F refused to replace the target
+            throw new FileAlreadyExistsException(resourceUrl(targetPath));
+        } else if (status == 404) {
+            throw new NoSuchFileException(resourceUrl(sourcePath));
+        }
+        check(status, "MOVE", sourcePath, 201, 204);
     }
     
     @Override
     public boolean exists(String path) {
-        // This would use HTTP HEAD to check if a file exists
-        throw new UnsupportedOperationException("WebDAV support not implemented yet");
+        try {
+            return stat(path) != null;
+        } catch (IOException e) {
+            return false;
+        }
     }
     
     @Override
     public long getLastModified(String path) {
-        // This would use HTTP HEAD to get the Last-Modified header
-        throw new UnsupportedOperationException("WebDAV support not implemented yet");
+        try {
+            FileSystemNode node = stat(path);
+            return node != null ? node.getLastModified() : 0L;
+        } catch (IOException e) {
+            return 0L;
+        }
     }
     
+    /**
+     * Stores a synchronized timestamp in the dead properties of a file, along with the
+     * size and server timestamp it currently has.
+     */
     @Override
     public void setLastModified(String path, long time) throws IOException {
-        // This would use WebDAV PROPPATCH to set the Last-Modified property
-        throw new UnsupportedOperationException("WebDAV support not implemented yet");
+        List<Resource> resources = propfind(path, "0");
+        if (resources == null || resources.isEmpty()) {
+            throw new NoSuchFileException(resourceUrl(path));
+        }
+        Resource current = resources.get(0);
+        
+        String body = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                + "<D:propertyupdate xmlns:D=\"DAV:\" xmlns:J=\"" + JSYNC + "\"><D:set><D:prop>"
+                + "<J:mtime>" + time + "</J:mtime><J:size>" + current.length + "</J:size>"
+                + "<J:modified>" + current.httpLastModified + "</J:modified>"
+                + "</D:prop></D:set></D:propertyupdate>";
+        HttpRequest request = request(resourceUrl(path))
+                .header("Content-Type", "application/xml; charset=utf-8")
+                .method("PROPPATCH", HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+        
+        try (InputStream in = response.body()) {
+            check(response.statusCode(), "PROPPATCH", path, 200, 207);
+            if (response.statusCode() == 207) {
+                for (Resource resource : parseMultiStatus(in)) {
+                    if (resource.failed) {
+                        throw new IOException("WebDAV PROPPATCH " + path + " failed: the server refused the "
+                                + "timestamp properties");
+                    }
+                }
+            }
+        }
+    }
+    
+    @Override
+    public String computeDigest(String path) throws IOException {
+        try (InputStream in = get(path, 0L)) {
+            return ContentDigest.compute(Channels.newChannel(in));
+        }
+    }
+    
+    @Override
+    public long getSize(String path) throws IOException {
+        FileSystemNode node = stat(path);
+        if (node == null) {
+            throw new NoSuchFileException(resourceUrl(path));
+        }
+        return node.getSize();
+    }
+    
+    /**
+     * Opens a file for reading with ranged GETs: reads stream from one response until the
+     * position is moved. WebDAV has no standard partial write, so files cannot be opened
+     * for writing.
+     */
+    @Override
+    public SeekableByteChannel openRandomAccess(String path, boolean writable) throws IOException {
+        if (writable) {
+            throw new IOException("WebDAV files cannot be written in place: " + resourceUrl(path));
+        }
+        return new RangeReadChannel(path, getSize(path));
+    }
+    
+    @Override
+    public ReadableByteChannel openRead(String path) throws IOException {
+        return Channels.newChannel(get(path, 0L));
+    }
+    
+    /**
+     * Reads from an offset with a Range request, or by skipping if the server ignores it.
+     */
+    @Override
+    public ReadableByteChannel openRead(String path, long offset) throws IOException {
+        return Channels.newChannel(get(path, offset));
+    }
+    
+    /**
+     * Starts a streaming PUT and returns a channel feeding its body; the upload completes
+     * when the channel is closed and is broken off when it is aborted. Missing parent
+     * collections are created first, since a rejected PUT cannot be repeated with the same body.
+     * 
+     * @param size Exact length of the content, sent as Content-Length, or -1 if unknown
+     */
+    @Override
+    public WriteChannel openWrite(String path, long size) throws IOException {
+        if (path.indexOf('/') > 0) {
+            String parent = path.substring(0, path.lastIndexOf('/'));
+            if (!knownCollections.contains(parent)) {
+                createDirectory(parent);
+            }
+        }
+        return new UploadChannel(path, size);
+    }
+    
+    /**
+     * Nothing to do: a PUT is complete once the server answered it.
+     */
+    @Override
+    public void sync() {
     }
     
     @Override
     public String getBasePath() {
         return baseUrl;
     }
+    
+    /**
+     * Walks the tree below a collection depth-first, emitting entries in
+     * {@link ScanEntry#comparePaths} order. A missing collection is walked as an empty tree.
+     */
+    private void walkTree(String path, ScanStream.Sink sink) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            walkDirectory(pool, path, pool.submit(new ListingTask(path)), sink);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    private void walkDirectory(ForkJoinPool pool, String path, ForkJoinTask<List<Resource>> listing,
+                               ScanStream.Sink sink) throws IOException, InterruptedException {
+        List<Resource> children = join(listing);
+        
+        // Prefetch the listings of all subdirectories before descending into the first one
+        List<ForkJoinTask<List<Resource>>> subListings = new ArrayList<>();
+        for (Resource child : children) {
+            subListings.add(child.collection ? pool.submit(new ListingTask(child(path, child.name))) : null);
+        }
+        
+        for (int i = 0; i < children.size(); i++) {
+            Resource child = children.get(i);
+            String childPath = child(path, child.name);
+            sink.accept(new ScanEntry(childPath, child.toNode(child.name)));
+            
+            if (child.collection) {
+                walkDirectory(pool, childPath, subListings.get(i), sink);
+                subListings.set(i, null);
+            }
+        }
+    }
+    
+    private static List<Resource> join(ForkJoinTask<List<Resource>> listing) throws IOException, InterruptedException {
+        try {
+            return listing.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Error listing collection: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+    
+    /**
+     * Lists the members of a collection, sorted by name. A collection deleted while
+     * scanning is listed as empty.
+     */
+    private List<Resource> list(String path) throws IOException {
+        List<Resource> resources = propfind(path, "1");
+        List<Resource> children = new ArrayList<>();
+        if (resources == null) {
+            return children;
+        }
+        
+        String self = trimSlash(basePath + "/" + path);
+        for (Resource resource : resources) {
+            String href = trimSlash(decode(resource.href));
+            if (href.equals(self)) {
+                continue; // The collection itself
+            }
+            resource.name = href.substring(href.lastIndexOf('/') + 1);
+            if (!resource.name.isEmpty()) {
+                children.add(resource);
+            }
+        }
+        knownCollections.add(path);
+        
+        children.sort(Comparator.comparing(child -> child.name));
+        return children;
+    }
+    
+    /**
+     * @param depth "0" for the resource itself, "1" to include the members of a collection
+     * @return Resources of the multistatus response, or null if the resource does not exist
+     */
+    private List<Resource> propfind(String path, String depth) throws IOException {
+        String url = "1".equals(depth) ? collectionUrl(path) : resourceUrl(path);
+        HttpRequest request = request(url)
+                .header("Depth", depth)
+                .header("Content-Type", "application/xml; charset=utf-8")
+                .method("PROPFIND", HttpRequest.BodyPublishers.ofString(PROPFIND_BODY, StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+        
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == 404) {
+                return null;
+            }
+            check(response.statusCode(), "PROPFIND", path, 207);
+            return parseMultiStatus(body);
+        }
+    }
+    
+    private int mkcol(String path) throws IOException {
+        HttpRequest request = request(collectionUrl(path))
+                .method("MKCOL", HttpRequest.BodyPublishers.noBody())
+                .build();
+        return send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+    
+    private int move(String sourcePath, String targetPath) throws IOException {
+        HttpRequest request = request(resourceUrl(sourcePath))
+                .header("Destination", resourceUrl(targetPath))
+                .header("Overwrite", "F")
+                .method("MOVE", HttpRequest.BodyPublishers.noBody())
+                .build();
+        return send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+    
+    /**
+     * Starts a GET and returns its body as a stream.
+     * 
+     * @param offset First byte to read; a server ignoring the range is skipped forward
+     */
+    private InputStream get(String path, long offset) throws IOException {
+        HttpRequest.Builder builder = request(resourceUrl(path)).GET();
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-");
+        }
+        HttpResponse<InputStream> response = send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        InputStream in = response.body();
+        
+        int status = response.statusCode();
+        if (status == 200 || (status == 206 && offset > 0)) {
+            long skip = status == 200 ? offset : 0L;
+            while (skip > 0) {
+                long skipped = in.skip(skip);
+                if (skipped <= 0) {
+                    in.close();
+                    throw new IOException("WebDAV GET " + path + " ended before offset " + offset);
+                }
+                skip -= skipped;
+            }
+            return in;
+        }
+        
+        in.close();
+        if (status == 416 && offset > 0) {
+            // Nothing at or after the offset; a caller expecting more bytes sees the short read
+            return InputStream.nullInputStream();
+        }
+        if (status == 404) {
+            throw new NoSuchFileException(resourceUrl(path));
+        }
+        throw new IOException("WebDAV GET " + path + " failed: HTTP " + status);
+    }
+    
+    private HttpRequest.Builder request(String url) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(timeout);
+        if (authorization != null) {
+            builder.header("Authorization", authorization);
+        }
+        return builder;
+    }
+    
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during WebDAV " + request.method() + " " + request.uri());
+        }
+    }
+    
+    private static void check(int status, String method, String path, int... expected) throws IOException {
+        for (int code : expected) {
+            if (status == code) {
+                return;
+            }
+        }
+        throw new IOException("WebDAV " + method + " " + path + " failed: HTTP " + status);
+    }
+    
+    /**
+     * Reads the responses of a multistatus document, keeping only the properties of
+     * successful propstat elements.
+     */
+    private List<Resource> parseMultiStatus(InputStream in) throws IOException {
+        List<Resource> resources = new ArrayList<>();
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                Resource resource = null;
+                Resource found = null;
+                int status = 0;
+                
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String namespace = reader.getNamespaceURI();
+                        String name = reader.getLocalName();
+                        if (JSYNC.equals(namespace) && found != null) {
+                            if (name.equals("mtime")) {
+                                found.mtime = parseLong(reader.getElementText());
+                            } else if (name.equals("size")) {
+                                found.mtimeSize = parseLong(reader.getElementText());
+                            } else if (name.equals("modified")) {
+                                found.mtimeModified = parseLong(reader.getElementText());
+                            }
+                            continue;
+                        }
+                        if (!DAV.equals(namespace)) {
+                            continue;
+                        }
+                        switch (name) {
+                            case "response":
+                                resource = new Resource();
+                                break;
+                            case "href":
+                                if (resource != null) {
+                                    resource.href = reader.getElementText().trim();
+                                }
+                                break;
+                            case "propstat":
+                                found = new Resource();
+                                status = 0;
+                                break;
+                            case "status":
+                                status = parseStatus(reader.getElementText());
+                                if (found == null && resource != null && status / 100 != 2) {
+                                    resource.failed = true; // Status of the whole response
+                                }
+                                break;
+                            case "collection":
+                                if (found != null) {
+                                    found.collection = true;
+                                }
+                                break;
+                            case "getcontentlength":
+                                if (found != null) {
+                                    found.length = parseLong(reader.getElementText());
+                                }
+                                break;
+                            case "getlastmodified":
+                                if (found != null) {
+                                    found.httpLastModified = parseDate(reader.getElementText());
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && DAV.equals(reader.getNamespaceURI())) {
+                        if (reader.getLocalName().equals("propstat") && resource != null && found != null) {
+                            if (status / 100 == 2) {
+                                resource.merge(found);
+                            } else if (status != 404) {
+                                resource.failed = true; // Missing properties are reported as 404
+                            }
+                            found = null;
+                        } else if (reader.getLocalName().equals("response") && resource != null) {
+                            if (resource.href != null) {
+                                resources.add(resource);
+                            }
+                            resource = null;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid WebDAV multistatus response: " + e.getMessage(), e);
+        }
+        return resources;
+    }
+    
+    private static int parseStatus(String statusLine) {
+        // "HTTP/1.1 200 OK"
+        int start = statusLine.indexOf(' ');
+        if (start < 0 || start + 4 > statusLine.length()) {
+            return 0;
+        }
+        int status = 0;
+        for (int i = start + 1; i < start + 4; i++) {
+            int digit = Character.digit(statusLine.charAt(i), 10);
+            if (digit < 0) {
+                return 0;
+            }
+            status = status * 10 + digit;
+        }
+        return status;
+    }
+    
+    private static long parseLong(String text) {
+        text = text.trim();
+        if (text.isEmpty()) {
+            return -1L; // Empty element of a missing property
+        }
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+    
+    /**
+     * Parses an HTTP date. Servers send the fixed layout "Sun, 06 Nov 1994 08:49:37 GMT",
+     * which is read directly; it is parsed once per scanned file and the general formatter
+     * costs several times more. Anything else goes through the formatter.
+     */
+    private static long parseDate(String text) {
+        text = text.trim();
+        if (text.length() == 29 && text.endsWith(" GMT")) {
+            int monthIndex = MONTHS.indexOf(text.substring(8, 11));
+            int month = monthIndex >= 0 && monthIndex % 3 == 0 ? monthIndex / 3 + 1 : 0;
+            int day = digits(text, 5, 2);
+            int year = digits(text, 12, 4);
+            int hour = digits(text, 17, 2);
+            int minute = digits(text, 20, 2);
+            int second = digits(text, 23, 2);
+            if (month > 0 && (day | year | hour | minute | second) >= 0 && day >= 1 && day <= 31) {
+                try {
+                    long days = LocalDate.of(year, month, day).toEpochDay();
+                    return ((days * 24 + hour) * 60 + minute) * 60_000L + second * 1000L;
+                } catch (DateTimeException e) {
+                    // Fall through to the formatter
+                }
+            }
+        }
+        try {
+            return ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0L;
+        }
+    }
+    
+    /**
+     * @return Value of a run of decimal digits, or -1 if one of them is not a digit
+     */
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    
+    private String resourceUrl(String path) {
+        return path.isEmpty() ? baseUrl + "/" : baseUrl + "/" + encode(path);
+    }
+    
+    private String collectionUrl(String path) {
+        return path.isEmpty() ? baseUrl + "/" : baseUrl + "/" + encode(path) + "/";
+    }
+    
+    private static String child(String path, String name) {
+        return path.isEmpty() ? name : path + "/" + name;
+    }
+    
+    private static String trimSlash(String path) {
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(0, end);
+    }
+    
+    /**
+     * Percent-encodes a relative path, keeping its '/' separators.
+     */
+    private static String encode(String path) {
+        StringBuilder encoded = new StringBuilder(path.length() + 16);
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~' || c == '/') {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            }
+        }
+        return encoded.toString();
+    }
+    
+    /**
+     * Decodes an href to its path: the scheme and host of an absolute URL are dropped,
+     * percent escapes are decoded as UTF-8.
+     */
+    private static String decode(String href) {
+        int start = 0;
+        int scheme = href.indexOf("://");
+        if (scheme >= 0) {
+            int slash = href.indexOf('/', scheme + 3);
+            start = slash >= 0 ? slash : href.length();
+        }
+        
+        if (href.indexOf('%', start) < 0) {
+            return href.substring(start);
+        }
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(href.length());
+        for (int i = start; i < href.length(); i++) {
+            char c = href.charAt(i);
+            if (c == '%' && i + 2 < href.length()) {
+                int high = Character.digit(href.charAt(i + 1), 16);
+                int low = Character.digit(href.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    bytes.write(high * 16 + low);
+                    i += 2;
+                    continue;
+                }
+            }
+            byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+            bytes.write(encoded, 0, encoded.length);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Properties of one resource in a multistatus response.
+     */
+    private static class Resource {
+        private String href;
+        private String name;
+        private boolean collection;
+        private long length = -1L;
+        private long httpLastModified;
+        private long mtime = -1L;
+        private long mtimeSize = -1L;
+        private long mtimeModified = -1L;
+        private boolean failed;
+        
+        void merge(Resource found) {
+            collection |= found.collection;
+            length = found.length >= 0 ? found.length : length;
+            httpLastModified = found.httpLastModified != 0 ? found.httpLastModified : httpLastModified;
+            mtime = found.mtime >= 0 ? found.mtime : mtime;
+            mtimeSize = found.mtimeSize >= 0 ? found.mtimeSize : mtimeSize;
+            mtimeModified = found.mtimeModified >= 0 ? found.mtimeModified : mtimeModified;
+        }
+        
+        FileSystemNode toNode(String nodeName) {
+            if (collection) {
+                return new FileSystemNode(nodeName, true, mtime >= 0 ? mtime : httpLastModified, -1L);
+            }
+            // The stored timestamp only holds for the content it was stored with
+            boolean unchanged = mtime >= 0 && mtimeSize == length && mtimeModified == httpLastModified;
+            long lastModified = unchanged ? mtime : httpLastModified;
+            return new FileSystemNode(nodeName, false, lastModified, length);
+        }
+    }
+    
+    @SuppressWarnings("serial") // RecursiveTask is Serializable, but tasks never leave the pool
+    private class ListingTask extends RecursiveTask<List<Resource>> {
+        private final String path;
+        
+        ListingTask(String path) {
+            this.path = path;
+        }
+        
+        @Override
+        protected List<Resource> compute() {
+            try {
+                return list(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    
+    /**
+     * Write side of a streaming PUT. The channel is the publisher of the request body:
+     * every write waits for demand from the HTTP client and hands it the data, so at most
+     * the client's own buffering is held in memory. The client keeps the buffers it is
+     * given, hence each write passes it a copy.
+     */
+    private class UploadChannel implements WriteChannel, Flow.Publisher<ByteBuffer>, Flow.Subscription {
+        private final String path;
+        private final long size;
+        private final CompletableFuture<HttpResponse<Void>> response;
+        private Flow.Subscriber<? super ByteBuffer> subscriber;
+        private long demand;
+        private boolean cancelled;
+        private long written;
+        private boolean open = true;
+        
+        UploadChannel(String path, long size) {
+            this.path = path;
+            this.size = size;
+            // A known length is sent as Content-Length; not every server accepts chunked uploads
+            HttpRequest.BodyPublisher body = size == 0 ? HttpRequest.BodyPublishers.noBody()
+                    : size > 0 ? HttpRequest.BodyPublishers.fromPublisher(this, size)
+                    : HttpRequest.BodyPublishers.fromPublisher(this);
+            HttpRequest request = WebDAVFileSystemHandler.this.request(resourceUrl(path))
+                    .header("Content-Type", "application/octet-stream")
+                    .PUT(body)
+                    .build();
+            this.response = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+            response.whenComplete((result, failure) -> wakeUp());
+        }
+        
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> newSubscriber) {
+            boolean first;
+            synchronized (this) {
+                first = subscriber == null;
+                if (first) {
+                    subscriber = newSubscriber;
+                    notifyAll();
+                }
+            }
+            if (first) {
+                newSubscriber.onSubscribe(this);
+                return;
+            }
+            // The body is streamed once and cannot be replayed
+            newSubscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+                
+                @Override
+                public void cancel() {
+                }
+            });
+            newSubscriber.onError(new IllegalStateException("Upload body already sent: " + path));
+        }
+        
+        @Override
+        public synchronized void request(long n) {
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            notifyAll();
+        }
+        
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+        
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            int count = source.remaining();
+            if (size >= 0 && written + count > size) {
+                throw new IOException("WebDAV PUT " + path + " got more than the announced " + size + " bytes");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            
+            Flow.Subscriber<? super ByteBuffer> target = awaitDemand();
+            ByteBuffer chunk = ByteBuffer.allocate(count);
+            chunk.put(source).flip();
+            target.onNext(chunk);
+            written += count;
+            return count;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (!open) {
+                return;
+            }
+            open = false;
+            if (size != 0) {
+                Flow.Subscriber<? super ByteBuffer> target = awaitSubscriber();
+                if (target != null) {
+                    if (size < 0 || written == size) {
+                        target.onComplete();
+                    } else {
+                        target.onError(new IOException("Upload of " + path + " ended after " + written
+                                + " of " + size + " bytes"));
+                    }
+                }
+            }
+            check(awaitResponse().statusCode(), "PUT", path, 200, 201, 204);
+        }
+        
+        /**
+         * Fails the request body, so that the client breaks the PUT off before the server
+         * receives a complete body. An empty body has been sent already and cannot be recalled.
+         */
+        @Override
+        public void abort() throws IOException {
+            if (!open) {
+                return;
+            }
+            open = false;
+            if (size != 0) {
+                Flow.Subscriber<? super ByteBuffer> target = awaitSubscriber();
+                if (target != null) {
+                    target.onError(new IOException("Upload of " + path + " aborted after " + written + " bytes"));
+                }
+            }
+            try {
+                awaitResponse();
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                // Expected: the request fails with its body
+            }
+        }
+        
+        private synchronized Flow.Subscriber<? super ByteBuffer> awaitDemand() throws IOException {
+            while (subscriber == null || demand == 0) {
+                if (cancelled || response.isDone()) {
+                    // The server answered before reading the whole body, typically with an error
+                    check(awaitResponse().statusCode(), "PUT", path);
+                }
+                await();
+            }
+            demand--;
+            return subscriber;
+        }
+        
+        private synchronized Flow.Subscriber<? super ByteBuffer> awaitSubscriber() throws IOException {
+            while (subscriber == null && !response.isDone()) {
+                await();
+            }
+            return subscriber;
+        }
+        
+        private HttpResponse<Void> awaitResponse() throws IOException {
+            try {
+                return response.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response.cancel(true);
+                throw new InterruptedIOException("Interrupted during WebDAV PUT " + path);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause
+                        : new IOException("WebDAV PUT " + path + " failed: " + cause.getMessage(), cause);
+            }
+        }
+        
+        private void await() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response.cancel(true);
+                throw new InterruptedIOException("Interrupted during WebDAV PUT " + path);
+            }
+        }
+        
+        private synchronized void wakeUp() {
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Read-only channel over a remote file. Sequential reads stream from one GET; moving
+     * the position closes it and the next read starts a ranged GET at the new position.
+     */
+    private class RangeReadChannel implements SeekableByteChannel {
+        private final String path;
+        private final long size;
+        private long position;
+        private InputStream in;
+        private byte[] transfer;
+        private boolean open = true;
+        
+        RangeReadChannel(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+        
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            ensureOpen();
+            if (position >= size) {
+                return -1;
+            }
+            if (in == null) {
+                in = get(path, position);
+            }
+            
+            int count;
+            if (destination.hasArray()) {
+                count = in.read(destination.array(), destination.arrayOffset() + destination.position(),
+                        destination.remaining());
+                if (count > 0) {
+                    destination.position(destination.position() + count);
+                }
+            } else {
+                if (transfer == null) {
+                    transfer = new byte[COPY_BUFFER_SIZE];
+                }
+                count = in.read(transfer, 0, Math.min(transfer.length, destination.remaining()));
+                if (count > 0) {
+                    destination.put(transfer, 0, count);
+                }
+            }
+            if (count > 0) {
+                position += count;
+            }
+            return count;
+        }
+        
+        @Override
+        public int write(ByteBuffer source) {
+            throw new NonWritableChannelException();
+        }
+        
+        @Override
+        public long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+        
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition != position) {
+                closeStream();
+                position = newPosition;
+            }
+            return this;
+        }
+        
+        @Override
+        public long size() throws IOException {
+            ensureOpen();
+            return size;
+        }
+        
+        @Override
+        public SeekableByteChannel truncate(long newSize) {
+            throw new NonWritableChannelException();
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            open = false;
+            closeStream();
+        }
+        
+        private void closeStream() throws IOException {
+            if (in != null) {
+                InputStream stream = in;
+                in = null;
+                stream.close();
+            }
+        }
+        
+        private void ensureOpen() throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
 }
@@ -0,0 +1,17 @@
+package com.filesync.filesystem;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel writing a file that replaces its target once the channel is closed.
+ * A writer that fails calls {@link #abort()} instead, so that content of unknown
+ * length is never installed half-written.
+ */
+public interface WriteChannel extends WritableByteChannel {
+    /**
+     * Discards what was written and closes the channel; the target keeps its previous
+     * content. Closing the channel afterwards does nothing.
+     */
+    void abort() throws IOException;
+}
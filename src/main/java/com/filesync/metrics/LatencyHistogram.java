@@ -0,0 +1,81 @@
+package com.filesync.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency distribution with power-of-two buckets in microseconds: bucket 0 counts
+ * operations under 1 us, bucket i those from 2^(i-1) to 2^i - 1 us. Percentiles are
+ * therefore upper bounds within a factor of two, which is enough to see where the
+ * time of a run goes at a fixed cost of a few hundred bytes per histogram.
+ * Recording is lock-free, so concurrent transfers can share one histogram.
+ */
+public class LatencyHistogram {
+    public static final int BUCKETS = 40;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0L);
+    
+    public void record(long durationNanos) {
+        long micros = Math.max(durationNanos, 0L) / 1000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        counts.incrementAndGet(bucket);
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+    
+    public long getCount() {
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+    
+    public long getMeanMicros() {
+        long count = getCount();
+        return count > 0 ? totalMicros.sum() / count : 0L;
+    }
+    
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+    
+    /**
+     * @param quantile Quantile between 0 and 1, e.g. 0.99
+     * @return Upper bound of the bucket holding the quantile, capped at the maximum, or 0 if empty
+     */
+    public long getPercentileMicros(double quantile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                long upperBound = i == 0 ? 0L : (1L << i) - 1;
+                return Math.min(upperBound, getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+    
+    /**
+     * @return Count of each bucket, without the empty buckets at the end
+     */
+    public long[] getBuckets() {
+        int length = BUCKETS;
+        while (length > 0 && counts.get(length - 1) == 0) {
+            length--;
+        }
+        long[] buckets = new long[length];
+        for (int i = 0; i < length; i++) {
+            buckets[i] = counts.get(i);
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,145 @@
+package com.filesync.metrics;
+
+import com.filesync.core.registry.JsonReader;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes run metrics: the running or last run of each profile as a JMX MBean,
+ * and the summary of every finished run as one line of "&lt;profile&gt;.metrics.jsonl".
+ * Implements the Singleton pattern.
+ */
+public class MetricsManager {
+    public static final int DEFAULT_HISTORY_RUNS = 500;
+    
+    private static MetricsManager instance;
+    
+    private MetricsManager() {}
+    
+    public static synchronized MetricsManager getInstance() {
+        if (instance == null) {
+            instance = new MetricsManager();
+        }
+        return instance;
+    }
+    
+    /**
+     * @return true if the JVM was started with a remote JMX agent
+     */
+    public static boolean isRemoteJmxEnabled() {
+        return System.getProperty("com.sun.management.jmxremote") != null
+                || System.getProperty("com.sun.management.jmxremote.port") != null;
+    }
+    
+    /**
+     * Exposes a run through JMX, replacing the previous run of the same profile.
+     * A platform without JMX only loses the MBean; the run is not affected.
+     */
+    public synchronized void register(SyncMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.filesync:type=SyncMetrics,profile="
+                    + ObjectName.quote(metrics.getProfileName()));
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                // First run of this profile in this JVM
+            }
+            server.registerMBean(metrics, name);
+        } catch (InstanceAlreadyExistsException e) {
+            System.err.println("Sync metrics already registered for " + metrics.getProfileName());
+        } catch (JMException | SecurityException e) {
+            System.err.println("Cannot register sync metrics: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Appends the summary of a finished run to the profile's history, keeping the last runs only.
+     * 
+     * @param keepRuns Number of runs to keep in the history file
+     * @throws IOException If the history file cannot be written
+     */
+    public synchronized void record(SyncMetrics metrics, int keepRuns) throws IOException {
+        Path file = historyFile(metrics.getProfileName());
+        List<String> lines = Files.exists(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : new ArrayList<>();
+        lines.add(metrics.toJson());
+        if (lines.size() > keepRuns) {
+            lines = lines.subList(lines.size() - keepRuns, lines.size());
+        }
+        
+        // Replaced in one step, so a reader of the history never sees it half written
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Reads the numeric fields of the last recorded runs; booleans read as 0 or 1.
+     * 
+     * @param runs Maximum number of runs to return
+     * @return Runs in the order they were recorded, oldest first
+     * @throws IOException If the history file cannot be read
+     */
+    public List<Map<String, Long>> loadHistory(String profileName, int runs) throws IOException {
+        Path file = historyFile(profileName);
+        List<Map<String, Long>> history = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return history;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (String line : lines.subList(Math.max(0, lines.size() - runs), lines.size())) {
+            if (!line.trim().isEmpty()) {
+                history.add(parseNumbers(line));
+            }
+        }
+        return history;
+    }
+    
+    private static Path historyFile(String profileName) {
+        return Paths.get(profileName + ".metrics.jsonl");
+    }
+    
+    /**
+     * Extracts the top-level numbers and booleans of a line written by
+     * {@link SyncMetrics#toJson()}; strings and arrays are skipped.
+     */
+    private static Map<String, Long> parseNumbers(String json) throws IOException {
+        Map<String, Long> values = new LinkedHashMap<>();
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.expect(JsonReader.Token.BEGIN_OBJECT);
+        while (reader.next() == JsonReader.Token.NAME) {
+            String key = reader.getString();
+            JsonReader.Token value = reader.next();
+            if (value == JsonReader.Token.NUMBER) {
+                values.put(key, reader.getLong());
+            } else if (value == JsonReader.Token.TRUE || value == JsonReader.Token.FALSE) {
+                values.put(key, value == JsonReader.Token.TRUE ? 1L : 0L);
+            } else {
+                reader.skipValue(value);
+            }
+        }
+        return values;
+    }
+}
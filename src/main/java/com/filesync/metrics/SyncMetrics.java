@@ -0,0 +1,321 @@
+package com.filesync.metrics;
+
+import com.filesync.observer.SyncEvent;
+import com.filesync.transfer.TransferStats;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of one synchronization run: wall time per phase, entries scanned,
+ * files and bytes transferred with their rates, and a latency histogram and an
+ * error count per kind of operation.
+ * Phases run one after the other on the engine thread; operations are recorded by
+ * the transfer threads concurrently.
+ */
+public class SyncMetrics implements SyncMetricsMXBean {
+    
+    public enum Phase {
+        SCAN,
+        DIFF,
+        RENAMES,
+        EXECUTE,
+        REGISTRY
+    }
+    
+    private final String profileName;
+    private final TransferStats transferStats;
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final Map<SyncEvent.Kind, LatencyHistogram> latencies = new EnumMap<>(SyncEvent.Kind.class);
+    private final Map<SyncEvent.Kind, LongAdder> errors = new EnumMap<>(SyncEvent.Kind.class);
+    private final LongAdder scannedEntries = new LongAdder();
+    private final LongAdder listedDirectories = new LongAdder();
+    private final LongAdder reusedListings = new LongAdder();
+    private volatile Phase currentPhase;
+    private volatile long currentPhaseStart;
+    private volatile long endNanos;
+    private volatile boolean succeeded;
+    
+    /**
+     * @param transferStats Byte counters of the same run, read for the transfer totals
+     */
+    public SyncMetrics(String profileName, TransferStats transferStats) {
+        this.profileName = profileName;
+        this.transferStats = transferStats;
+        for (SyncEvent.Kind kind : SyncEvent.Kind.values()) {
+            latencies.put(kind, new LatencyHistogram());
+            errors.put(kind, new LongAdder());
+        }
+    }
+    
+    /**
+     * Ends the running phase, if any, and starts timing the given one.
+     */
+    public void startPhase(Phase phase) {
+        long now = System.nanoTime();
+        endPhase(now);
+        currentPhaseStart = now;
+        currentPhase = phase;
+    }
+    
+    /**
+     * Ends the running phase and the run.
+     * 
+     * @param succeeded false if the run stopped on an error
+     */
+    public void finish(boolean succeeded) {
+        long now = System.nanoTime();
+        endPhase(now);
+        this.succeeded = succeeded;
+        this.endNanos = now;
+    }
+    
+    private void endPhase(long now) {
+        Phase phase = currentPhase;
+        if (phase != null) {
+            phaseNanos.addAndGet(phase.ordinal(), now - currentPhaseStart);
+            currentPhase = null;
+        }
+    }
+    
+    public void recordScannedEntries(long count) {
+        scannedEntries.add(count);
+    }
+    
+    /**
+     * @param listed Directories a local scan listed
+     * @param reused Directories whose listing it took from the previous scan instead
+     */
+    public void recordDirectoryListings(long listed, long reused) {
+        listedDirectories.add(listed);
+        reusedListings.add(reused);
+    }
+    
+    public void recordOperation(SyncEvent.Kind kind, long durationNanos) {
+        latencies.get(kind).record(durationNanos);
+    }
+    
+    public void recordError(SyncEvent.Kind kind) {
+        errors.get(kind).increment();
+    }
+    
+    public LatencyHistogram getLatency(SyncEvent.Kind kind) {
+        return latencies.get(kind);
+    }
+    
+    /**
+     * @return Phase running now, or null before the first phase and once the run finished
+     */
+    public Phase getCurrentPhase() {
+        return currentPhase;
+    }
+    
+    public long getPhaseNanos(Phase phase) {
+        long nanos = phaseNanos.get(phase.ordinal());
+        if (phase == currentPhase) {
+            nanos += System.nanoTime() - currentPhaseStart;
+        }
+        return nanos;
+    }
+    
+    @Override
+    public String getProfileName() {
+        return profileName;
+    }
+    
+    @Override
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return endNanos == 0L;
+    }
+    
+    @Override
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+    
+    @Override
+    public long getDurationMillis() {
+        return ((isRunning() ? System.nanoTime() : endNanos) - startNanos) / 1_000_000;
+    }
+    
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            millis.put(phase.name().toLowerCase(Locale.ROOT), getPhaseNanos(phase) / 1_000_000);
+        }
+        return millis;
+    }
+    
+    @Override
+    public long getScannedEntries() {
+        return scannedEntries.sum();
+    }
+    
+    @Override
+    public long getListedDirectories() {
+        return listedDirectories.sum();
+    }
+    
+    @Override
+    public long getReusedListings() {
+        return reusedListings.sum();
+    }
+    
+    @Override
+    public long getFiles() {
+        return transferStats.getFiles();
+    }
+    
+    @Override
+    public long getBytes() {
+        return transferStats.getBytesTransferred();
+    }
+    
+    /**
+     * @return Files transferred per second of the execute phase
+     */
+    @Override
+    public double getFilesPerSecond() {
+        return perSecond(getFiles(), getPhaseNanos(Phase.EXECUTE));
+    }
+    
+    /**
+     * @return Bytes transferred per second of the execute phase
+     */
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getBytes(), getPhaseNanos(Phase.EXECUTE));
+    }
+    
+    @Override
+    public long getErrors() {
+        long total = 0L;
+        for (LongAdder count : errors.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+    
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<SyncEvent.Kind, LatencyHistogram> latency : latencies.entrySet()) {
+            if (latency.getValue().getCount() > 0) {
+                counts.put(key(latency.getKey()), latency.getValue().getCount());
+            }
+        }
+        return counts;
+    }
+    
+    @Override
+    public Map<String, Long> getOperationErrors() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<SyncEvent.Kind, LongAdder> error : errors.entrySet()) {
+            if (error.getValue().sum() > 0) {
+                counts.put(key(error.getKey()), error.getValue().sum());
+            }
+        }
+        return counts;
+    }
+    
+    @Override
+    public Map<String, Long> getLatencyMicros() {
+        Map<String, Long> percentiles = new LinkedHashMap<>();
+        for (Map.Entry<SyncEvent.Kind, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram latency = entry.getValue();
+            if (latency.getCount() > 0) {
+                String kind = key(entry.getKey());
+                percentiles.put(kind + ".p50", latency.getPercentileMicros(0.50));
+                percentiles.put(kind + ".p90", latency.getPercentileMicros(0.90));
+                percentiles.put(kind + ".p99", latency.getPercentileMicros(0.99));
+                percentiles.put(kind + ".max", latency.getMaxMicros());
+            }
+        }
+        return percentiles;
+    }
+    
+    /**
+     * Builds the summary of the run as one line of JSON. Keys are flat, e.g.
+     * "scanMs" or "copy.p99Us", so each run can be appended to a JSON-lines history.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"profile\":\"").append(escape(profileName)).append('"');
+        field(json, "timestamp", startTime);
+        json.append(",\"succeeded\":").append(succeeded);
+        field(json, "durationMs", getDurationMillis());
+        for (Phase phase : Phase.values()) {
+            field(json, phase.name().toLowerCase(Locale.ROOT) + "Ms", getPhaseNanos(phase) / 1_000_000);
+        }
+        field(json, "scannedEntries", getScannedEntries());
+        field(json, "listedDirectories", getListedDirectories());
+        field(json, "reusedListings", getReusedListings());
+        field(json, "files", getFiles());
+        field(json, "bytes", getBytes());
+        field(json, "bytesSaved", transferStats.getBytesSaved());
+        field(json, "filesPerSecond", Math.round(getFilesPerSecond()));
+        field(json, "bytesPerSecond", Math.round(getBytesPerSecond()));
+        field(json, "errors", getErrors());
+        
+        for (SyncEvent.Kind kind : SyncEvent.Kind.values()) {
+            LatencyHistogram latency = latencies.get(kind);
+            long failed = errors.get(kind).sum();
+            if (latency.getCount() == 0 && failed == 0) {
+                continue;
+            }
+            String prefix = key(kind) + ".";
+            field(json, prefix + "count", latency.getCount());
+            field(json, prefix + "errors", failed);
+            field(json, prefix + "meanUs", latency.getMeanMicros());
+            field(json, prefix + "p50Us", latency.getPercentileMicros(0.50));
+            field(json, prefix + "p90Us", latency.getPercentileMicros(0.90));
+            field(json, prefix + "p99Us", latency.getPercentileMicros(0.99));
+            field(json, prefix + "maxUs", latency.getMaxMicros());
+            json.append(",\"").append(prefix).append("buckets\":[");
+            long[] buckets = latency.getBuckets();
+            for (int i = 0; i < buckets.length; i++) {
+                json.append(i > 0 ? "," : "").append(buckets[i]);
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+    
+    private static void field(StringBuilder json, String key, long value) {
+        json.append(",\"").append(key).append("\":").append(value);
+    }
+    
+    private static String key(SyncEvent.Kind kind) {
+        return kind.name().toLowerCase(Locale.ROOT);
+    }
+    
+    private static double perSecond(long count, long nanos) {
+        return nanos > 0 ? count * 1e9 / nanos : 0.0;
+    }
+    
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
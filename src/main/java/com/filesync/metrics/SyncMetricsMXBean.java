@@ -0,0 +1,64 @@
+package com.filesync.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the last (or running) synchronization of a profile, registered as
+ * "com.filesync:type=SyncMetrics,profile=&lt;name&gt;".
+ */
+public interface SyncMetricsMXBean {
+    String getProfileName();
+    
+    /**
+     * @return Start of the run in milliseconds since the epoch
+     */
+    long getStartTime();
+    
+    boolean isRunning();
+    
+    boolean isSucceeded();
+    
+    long getDurationMillis();
+    
+    /**
+     * @return Wall time of each phase so far, keyed by phase name
+     */
+    Map<String, Long> getPhaseMillis();
+    
+    long getScannedEntries();
+    
+    /**
+     * @return Directories listed by the scans of local folders
+     */
+    long getListedDirectories();
+    
+    /**
+     * @return Directories of local folders whose listing was reused from the previous scan
+     */
+    long getReusedListings();
+    
+    long getFiles();
+    
+    long getBytes();
+    
+    double getFilesPerSecond();
+    
+    double getBytesPerSecond();
+    
+    long getErrors();
+    
+    /**
+     * @return Completed operations by kind
+     */
+    Map<String, Long> getOperationCounts();
+    
+    /**
+     * @return Failed operations by kind
+     */
+    Map<String, Long> getOperationErrors();
+    
+    /**
+     * @return Latency percentiles in microseconds, keyed "&lt;kind&gt;.p50", ".p90", ".p99" and ".max"
+     */
+    Map<String, Long> getLatencyMicros();
+}
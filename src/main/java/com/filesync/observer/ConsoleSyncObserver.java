@@ -2,8 +2,18 @@ package com.filesync.observer;
 
 // Observer pattern implementation
 public class ConsoleSyncObserver implements SyncObserver {
+    private final StringBuilder buffer = new StringBuilder();
+    
     @Override
-    public void onSyncEvent(String event, String path) {
-        System.out.println("[" + event + "] " + path);
+    public void onSyncEvent(SyncEvent event) {
+        buffer.append(event).append(System.lineSeparator());
+    }
+    
+    @Override
+    public void onBatchEnd() {
+        // One write per batch instead of one per event
+        System.out.print(buffer);
+        System.out.flush();
+        buffer.setLength(0);
     }
 }
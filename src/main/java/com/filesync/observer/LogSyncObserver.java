@@ -0,0 +1,47 @@
+package com.filesync.observer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+// Observer pattern implementation: appends events to a log file, one write per batch
+public class LogSyncObserver implements SyncObserver {
+    private final Path logFile;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final StringBuilder buffer = new StringBuilder();
+    
+    public LogSyncObserver(Path logFile) {
+        this.logFile = logFile;
+    }
+    
+    @Override
+    public void onSyncEvent(SyncEvent event) {
+        buffer.append(dateFormat.format(new Date(event.getTimestamp()))).append(' ').append(event);
+        if (event.getBytes() > 0) {
+            buffer.append(" bytes=").append(event.getBytes());
+        }
+        if (event.getDurationNanos() > 0) {
+            buffer.append(" ms=").append(event.getDurationNanos() / 1_000_000);
+        }
+        buffer.append(System.lineSeparator());
+    }
+    
+    @Override
+    public void onBatchEnd() {
+        if (buffer.length() == 0) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.append(buffer);
+        } catch (IOException e) {
+            System.err.println("Cannot write sync log " + logFile + ": " + e.getMessage());
+        }
+        buffer.setLength(0);
+    }
+}
@@ -0,0 +1,149 @@
+package com.filesync.observer;
+
+/**
+ * A single operation reported by the sync engine. Events are plain values, so
+ * they can be queued and handed to observers on another thread; text is only
+ * built by the observers that need it.
+ */
+public class SyncEvent {
+    
+    public enum Kind {
+        COPY("COPY"),
+        UPDATE("UPDATE"),
+        TOUCH("TOUCH"),
+        MOVE("MOVE"),
+        DELETE("DELETE"),
+        RESOLVE_CONFLICT("RESOLVE CONFLICT"),
+        KEEP_BOTH("KEEP BOTH"),
+        DEFER_CONFLICT("DEFER CONFLICT");
+        
+        private final String label;
+        
+        Kind(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    /**
+     * Side the change comes from and side it is applied to. A deletion from A
+     * to B removes the file from B. Changes between the folders of a replicated
+     * profile name their replicas in a route instead.
+     */
+    public enum Direction {
+        A_TO_B,
+        B_TO_A,
+        REPLICAS,
+        NONE
+    }
+    
+    private final Kind kind;
+    private final Direction direction;
+    private final String path;
+    private final String targetPath;
+    private final String route;
+    private final long bytes;
+    private final long durationNanos;
+    private final long timestamp;
+    
+    /**
+     * @param targetPath New path of a move, name of the renamed copy of a conflict kept twice, or null
+     * @param bytes Size of the transferred file, or 0 if no data was transferred
+     * @param durationNanos Time the operation took, or 0 if it did not run
+     */
+    public SyncEvent(Kind kind, Direction direction, String path, String targetPath, long bytes, long durationNanos) {
+        this(kind, direction, path, targetPath, null, bytes, durationNanos);
+    }
+    
+    /**
+     * Creates the event of a change between the replicas of a replicated profile.
+     * 
+     * @param route Replicas involved, e.g. "A -> C, D" for a copy or "B, C" for a deletion
+     */
+    public SyncEvent(Kind kind, String route, String path, long bytes, long durationNanos) {
+        this(kind, Direction.REPLICAS, path, null, route, bytes, durationNanos);
+    }
+    
+    private SyncEvent(Kind kind, Direction direction, String path, String targetPath, String route, long bytes,
+                      long durationNanos) {
+        this.kind = kind;
+        this.direction = direction;
+        this.path = path;
+        this.targetPath = targetPath;
+        this.route = route;
+        this.bytes = bytes;
+        this.durationNanos = durationNanos;
+        this.timestamp = System.currentTimeMillis();
+    }
+    
+    public Kind getKind() {
+        return kind;
+    }
+    
+    public Direction getDirection() {
+        return direction;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public String getTargetPath() {
+        return targetPath;
+    }
+    
+    /**
+     * @return Replicas a change between replicas went from and to, or null for two-folder profiles
+     */
+    public String getRoute() {
+        return route;
+    }
+    
+    public long getBytes() {
+        return bytes;
+    }
+    
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+    
+    /**
+     * @return Time the event was created, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * @return Human-readable details, e.g. "A -> B: docs/report.txt"
+     */
+    public String describe() {
+        if (direction == Direction.REPLICAS) {
+            return route != null ? route + ": " + path : path;
+        }
+        switch (kind) {
+            case MOVE:
+                return changedSide() + path + " -> " + targetPath;
+            case DELETE:
+                return changedSide() + path;
+            case KEEP_BOTH:
+                return path + " (" + (direction == Direction.A_TO_B ? "B" : "A") + " version -> " + targetPath + ")";
+            case DEFER_CONFLICT:
+                return path;
+            default:
+                return (direction == Direction.A_TO_B ? "A -> B: " : "B -> A: ") + path;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "[" + kind.getLabel() + "] " + describe();
+    }
+    
+    private String changedSide() {
+        return direction == Direction.A_TO_B ? "B: " : "A: ";
+    }
+}
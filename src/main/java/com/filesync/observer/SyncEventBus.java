@@ -0,0 +1,158 @@
+package com.filesync.observer;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers sync events to observers on a dedicated thread.
+ * Publishers only put events into a bounded queue, so slow observers (a
+ * terminal, a pipe, a log file) never run on the transfer threads. Events
+ * are handed over in batches, after which each observer is told to flush.
+ * When the queue is full, the overflow policy either drops the event or
+ * makes the publisher wait. A failing observer is reported once when it first
+ * fails, and with its number of failures when the bus closes.
+ */
+public class SyncEventBus implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 65536;
+    private static final int MAX_BATCH = 1024;
+    private static final SyncEvent END =
+            new SyncEvent(SyncEvent.Kind.COPY, SyncEvent.Direction.NONE, null, null, 0L, 0L);
+    
+    private final BlockingQueue<SyncEvent> queue;
+    private final List<SyncObserver> observers;
+    private final OverflowPolicy overflowPolicy;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    /** Failures per observer; only used by the dispatcher, and by close() once it has stopped */
+    private final Map<SyncObserver, Long> failedObservers = new IdentityHashMap<>();
+    private final Thread dispatcher;
+    
+    public enum OverflowPolicy {
+        /** Discard events that do not fit, counting them */
+        DROP,
+        /** Wait for room in the queue */
+        BLOCK
+    }
+    
+    /**
+     * Starts a bus delivering to the given observers.
+     * 
+     * @param observers Observers receiving every event, in publishing order
+     * @param capacity Maximum number of queued events
+     * @param overflowPolicy What to do with an event when the queue is full
+     */
+    public SyncEventBus(List<SyncObserver> observers, int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Event queue capacity must be >= 1: " + capacity);
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.observers = new CopyOnWriteArrayList<>(observers);
+        this.overflowPolicy = overflowPolicy;
+        this.dispatcher = new Thread(this::dispatch, "sync-events");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+    
+    /**
+     * Queues an event for delivery. Safe to call from any thread.
+     */
+    public void publish(SyncEvent event) {
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.increment();
+            }
+        } else if (!queue.offer(event)) {
+            dropped.increment();
+        }
+    }
+    
+    /**
+     * @return Number of events discarded because the queue was full
+     */
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+    
+    /**
+     * @return Number of times an observer failed to handle an event or the end of a batch
+     */
+    public long getObserverFailures() {
+        return failures.sum();
+    }
+    
+    private void dispatch() {
+        List<SyncEvent> batch = new ArrayList<>();
+        boolean running = true;
+        
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            
+            for (SyncEvent event : batch) {
+                if (event == END) {
+                    running = false;
+                    break;
+                }
+                for (SyncObserver observer : observers) {
+                    try {
+                        observer.onSyncEvent(event);
+                    } catch (RuntimeException e) {
+                        report(observer, e);
+                    }
+                }
+            }
+            for (SyncObserver observer : observers) {
+                try {
+                    observer.onBatchEnd();
+                } catch (RuntimeException e) {
+                    report(observer, e);
+                }
+            }
+            batch.clear();
+        }
+    }
+    
+    /**
+     * Reports the first failure of an observer and counts the others; the dispatcher
+     * keeps going, since publishers waiting for room in the queue and close() depend on it.
+     */
+    private void report(SyncObserver observer, RuntimeException e) {
+        failures.increment();
+        if (failedObservers.merge(observer, 1L, Long::sum) == 1L) {
+            System.err.println("Sync observer " + observer.getClass().getName() + " failed: " + e);
+        }
+    }
+    
+    /**
+     * Delivers the events queued so far, then stops the dispatcher and reports how
+     * often each failing observer failed.
+     */
+    @Override
+    public void close() {
+        try {
+            queue.put(END);
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dispatcher.interrupt();
+            return;
+        }
+        for (Map.Entry<SyncObserver, Long> failed : failedObservers.entrySet()) {
+            System.err.println("Sync observer " + failed.getKey().getClass().getName() + " failed "
+                    + failed.getValue() + " times");
+        }
+    }
+}
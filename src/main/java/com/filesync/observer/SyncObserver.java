@@ -2,5 +2,11 @@ package com.filesync.observer;
 
 // Observer pattern
 public interface SyncObserver {
-    void onSyncEvent(String event, String path);
+    void onSyncEvent(SyncEvent event);
+    
+    /**
+     * Called after each batch of events, e.g. to write buffered output at once.
+     */
+    default void onBatchEnd() {
+    }
 }
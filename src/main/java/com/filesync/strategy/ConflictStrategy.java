@@ -1,6 +1,7 @@
 package com.filesync.strategy;
 
 import com.filesync.filesystem.FileSystemHandler;
+import com.filesync.transfer.TransferContext;
 
 import java.io.IOException;
 
@@ -10,21 +11,36 @@ public class ConflictStrategy implements SyncStrategy {
     private final FileSystemHandler target;
     private final String path;
     private final boolean isSourceA;
+    private final TransferContext context;
+    private CopyStrategy copyStrategy;
     
     public ConflictStrategy(FileSystemHandler source, FileSystemHandler target, String path, boolean isSourceA) {
+        this(source, target, path, isSourceA, TransferContext.defaults());
+    }
+    
+    public ConflictStrategy(FileSystemHandler source, FileSystemHandler target, String path, boolean isSourceA,
+                            TransferContext context) {
         this.source = source;
         this.target = target;
         this.path = path;
         this.isSourceA = isSourceA;
+        this.context = context;
     }
     
     @Override
     public void execute() throws IOException {
         // Delegate to CopyStrategy with preserveTimestamp=true
-        CopyStrategy copyStrategy = new CopyStrategy(source, target, path, true, isSourceA);
+        copyStrategy = new CopyStrategy(source, target, path, true, isSourceA, context);
         copyStrategy.execute();
     }
     
+    /**
+     * @return Digest of the copied content if the copy streamed it, available after execution; null otherwise
+     */
+    public String getDigest() {
+        return copyStrategy != null ? copyStrategy.getDigest() : null;
+    }
+    
     public boolean isSourceA() {
         return isSourceA;
     }
@@ -0,0 +1,72 @@
+package com.filesync.strategy;
+
+import com.filesync.filesystem.FileSystemHandler;
+import com.filesync.transfer.TransferContext;
+
+import java.io.IOException;
+
+// Strategy pattern implementation: copies only when the content actually differs
+public class ContentAwareCopyStrategy implements SyncStrategy {
+    private final FileSystemHandler source;
+    private final FileSystemHandler target;
+    private final String path;
+    private final long sourceLastModified;
+    private final boolean isSourceA;
+    private final TransferContext context;
+    private String sourceDigest;
+    private String targetDigest;
+    private boolean contentUnchanged;
+    
+    /**
+     * @param sourceDigest Known digest of the source, or null to compute it
+     * @param targetDigest Known digest of the target, or null to compute it
+     */
+    public ContentAwareCopyStrategy(FileSystemHandler source, FileSystemHandler target, String path,
+                                    long sourceLastModified, String sourceDigest, String targetDigest,
+                                    boolean isSourceA, TransferContext context) {
+        this.source = source;
+        this.target = target;
+        this.path = path;
+        this.sourceLastModified = sourceLastModified;
+        this.sourceDigest = sourceDigest;
+        this.targetDigest = targetDigest;
+        this.isSourceA = isSourceA;
+        this.context = context;
+    }
+    
+    @Override
+    public void execute() throws IOException {
+        if (sourceDigest == null) {
+            sourceDigest = source.computeDigest(path);
+        }
+        if (targetDigest == null) {
+            targetDigest = target.computeDigest(path);
+        }
+        
+        contentUnchanged = sourceDigest.equals(targetDigest);
+        if (contentUnchanged) {
+            // Same bytes on both sides: only the timestamp needs fixing
+            target.setLastModified(path, sourceLastModified);
+        } else {
+            new CopyStrategy(source, target, path, true, isSourceA, context).execute();
+        }
+    }
+    
+    /**
+     * @return Digest of the source content, available after execution
+     */
+    public String getSourceDigest() {
+        return sourceDigest;
+    }
+    
+    /**
+     * @return True if execution only had to fix the target timestamp
+     */
+    public boolean isContentUnchanged() {
+        return contentUnchanged;
+    }
+    
+    public boolean isSourceA() {
+        return isSourceA;
+    }
+}
@@ -1,8 +1,14 @@
 package com.filesync.strategy;
 
+import com.filesync.filesystem.ContentDigest;
 import com.filesync.filesystem.FileSystemHandler;
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.transfer.DeltaTransfer;
+import com.filesync.transfer.TransferContext;
+import com.filesync.transfer.WorkingCopy;
 
 import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
 
 // Strategy pattern implementation
 public class CopyStrategy implements SyncStrategy {
@@ -11,34 +17,58 @@ public class CopyStrategy implements SyncStrategy {
     private final String path;
     private final boolean preserveTimestamp;
     private final boolean isSourceA;
+    private final TransferContext context;
+    private ContentDigest.Sink digest;
     
     public CopyStrategy(FileSystemHandler source, FileSystemHandler target, String path, boolean preserveTimestamp) {
-        this.source = source;
-        this.target = target;
-        this.path = path;
-        this.preserveTimestamp = preserveTimestamp;
-        this.isSourceA = true; // Default assumption
+        this(source, target, path, preserveTimestamp, true); // Default assumption
     }
     
     public CopyStrategy(FileSystemHandler source, FileSystemHandler target, String path, boolean preserveTimestamp, boolean isSourceA) {
+        this(source, target, path, preserveTimestamp, isSourceA, TransferContext.defaults());
+    }
+    
+    public CopyStrategy(FileSystemHandler source, FileSystemHandler target, String path, boolean preserveTimestamp,
+                        boolean isSourceA, TransferContext context) {
         this.source = source;
         this.target = target;
         this.path = path;
         this.preserveTimestamp = preserveTimestamp;
         this.isSourceA = isSourceA;
+        this.context = context;
     }
     
     @Override
     public void execute() throws IOException {
         String sourcePath = path;
-        String targetPath = target.getBasePath() + "/" + path;
-        
-        source.copyFile(sourcePath, targetPath, preserveTimestamp);
         
-        if (preserveTimestamp) {
-            long lastModified = source.getLastModified(sourcePath);
-            target.setLastModified(path, lastModified);
+        // Only local targets can be patched, so remote ones always get the whole file
+        if (context.isDeltaEnabled() && target instanceof LocalFileSystemHandler
+                && context.useDelta(source.getSize(sourcePath)) && target.exists(path)) {
+            // Large file already present on the target: only write the changed blocks. They go to a
+            // copy of the target, so a failed or interrupted transfer never leaves it half rewritten
+            DeltaTransfer.Result result;
+            try (SeekableByteChannel in = source.openRandomAccess(sourcePath, false);
+                 WorkingCopy copy = ((LocalFileSystemHandler) target).openWorkingCopy(path)) {
+                result = context.newDeltaTransfer().apply(in, copy.getChannel());
+                // Patching always touches the copy, so it gets the source's timestamp in any case
+                copy.complete(source.getLastModified(sourcePath));
+            }
+            context.getStats().recordDelta(result.getLiteralBytes(), result.getMovedBytes(), result.getMatchedBytes());
+            return;
         }
+        
+        // The pipeline applies the timestamp itself as part of the copy
+        digest = new ContentDigest.Sink();
+        long size = context.getPipeline().transfer(source, target, path, preserveTimestamp, digest);
+        context.getStats().recordCopy(size);
+    }
+    
+    /**
+     * @return Digest of the copied content if the copy streamed it, available after execution; null otherwise
+     */
+    public String getDigest() {
+        return digest != null ? digest.getDigest() : null;
     }
     
     public boolean isSourceA() {
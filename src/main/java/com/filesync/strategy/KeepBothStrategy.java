@@ -0,0 +1,61 @@
+package com.filesync.strategy;
+
+import com.filesync.filesystem.FileSystemHandler;
+import com.filesync.transfer.TransferContext;
+
+import java.io.IOException;
+
+// Strategy pattern implementation for conflicts resolved by keeping both versions
+public class KeepBothStrategy implements SyncStrategy {
+    private final FileSystemHandler winner;
+    private final FileSystemHandler loser;
+    private final String path;
+    private final String conflictPath;
+    private final boolean isWinnerA;
+    private final TransferContext context;
+    private CopyStrategy winnerCopy;
+    private CopyStrategy loserCopy;
+    
+    /**
+     * @param winner Side whose version stays at the original path
+     * @param loser Side whose version is renamed to the conflict path
+     * @param conflictPath Path given to the losing version on both sides
+     */
+    public KeepBothStrategy(FileSystemHandler winner, FileSystemHandler loser, String path, String conflictPath,
+                            boolean isWinnerA, TransferContext context) {
+        this.winner = winner;
+        this.loser = loser;
+        this.path = path;
+        this.conflictPath = conflictPath;
+        this.isWinnerA = isWinnerA;
+        this.context = context;
+    }
+    
+    @Override
+    public void execute() throws IOException {
+        // Set the losing version aside, then replicate both versions to both sides
+        loser.moveFile(path, conflictPath);
+        winnerCopy = new CopyStrategy(winner, loser, path, true, isWinnerA, context);
+        winnerCopy.execute();
+        loserCopy = new CopyStrategy(loser, winner, conflictPath, true, !isWinnerA, context);
+        loserCopy.execute();
+    }
+    
+    /**
+     * @return Digest of the winning version if its copy streamed it, available after execution; null otherwise
+     */
+    public String getDigest() {
+        return winnerCopy != null ? winnerCopy.getDigest() : null;
+    }
+    
+    /**
+     * @return Digest of the losing version if its copy streamed it, available after execution; null otherwise
+     */
+    public String getConflictDigest() {
+        return loserCopy != null ? loserCopy.getDigest() : null;
+    }
+    
+    public String getConflictPath() {
+        return conflictPath;
+    }
+}
@@ -0,0 +1,28 @@
+package com.filesync.strategy;
+
+import com.filesync.filesystem.FileSystemHandler;
+
+import java.io.IOException;
+
+// Strategy pattern implementation: replays a rename instead of copying the file again
+public class MoveStrategy implements SyncStrategy {
+    private final FileSystemHandler handler;
+    private final String sourcePath;
+    private final String targetPath;
+    
+    /**
+     * @param handler Side on which the file is renamed
+     * @param sourcePath Current relative path of the file
+     * @param targetPath New relative path of the file
+     */
+    public MoveStrategy(FileSystemHandler handler, String sourcePath, String targetPath) {
+        this.handler = handler;
+        this.sourcePath = sourcePath;
+        this.targetPath = targetPath;
+    }
+    
+    @Override
+    public void execute() throws IOException {
+        handler.moveFile(sourcePath, targetPath);
+    }
+}
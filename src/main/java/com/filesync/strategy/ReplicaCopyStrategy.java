@@ -0,0 +1,44 @@
+package com.filesync.strategy;
+
+import com.filesync.filesystem.ContentDigest;
+import com.filesync.filesystem.FileSystemHandler;
+import com.filesync.transfer.TransferContext;
+
+import java.io.IOException;
+import java.util.List;
+
+// Strategy pattern implementation
+public class ReplicaCopyStrategy implements SyncStrategy {
+    private final FileSystemHandler source;
+    private final List<FileSystemHandler> targets;
+    private final String path;
+    private final TransferContext context;
+    private ContentDigest.Sink digest;
+    
+    /**
+     * Copies one replica's version of a file to several others, reading it once.
+     */
+    public ReplicaCopyStrategy(FileSystemHandler source, List<FileSystemHandler> targets, String path,
+                               TransferContext context) {
+        this.source = source;
+        this.targets = targets;
+        this.path = path;
+        this.context = context;
+    }
+    
+    @Override
+    public void execute() throws IOException {
+        digest = new ContentDigest.Sink();
+        long size = context.getPipeline().transfer(source, targets, path, true, digest);
+        for (int i = 0; i < targets.size(); i++) {
+            context.getStats().recordCopy(size);
+        }
+    }
+    
+    /**
+     * @return Digest of the copied content if the copy streamed it, available after execution; null otherwise
+     */
+    public String getDigest() {
+        return digest != null ? digest.getDigest() : null;
+    }
+}
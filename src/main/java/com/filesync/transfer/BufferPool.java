@@ -0,0 +1,75 @@
+package com.filesync.transfer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable direct buffers for transfers.
+ * Buffers come from a free list and are only allocated when it is empty; once returned,
+ * at most a fixed number of them is kept, so a burst of parallel transfers does not pin
+ * its peak memory. Acquiring never blocks, so transfers cannot deadlock on the pool.
+ * Implements the Singleton pattern: repeated runs in one process (watch mode) reuse
+ * the same buffers instead of allocating direct memory on every cycle.
+ */
+public class BufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final int DEFAULT_MAX_RETAINED = 32;
+    
+    private static BufferPool instance;
+    
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+    private final AtomicLong allocated = new AtomicLong();
+    
+    /**
+     * @param bufferSize Capacity of every buffer
+     * @param maxRetained Number of returned buffers kept for reuse
+     */
+    public BufferPool(int bufferSize, int maxRetained) {
+        if (bufferSize <= 0 || maxRetained <= 0) {
+            throw new IllegalArgumentException("Buffer size and retained count must be > 0");
+        }
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxRetained);
+    }
+    
+    public static synchronized BufferPool getInstance() {
+        if (instance == null) {
+            instance = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_RETAINED);
+        }
+        return instance;
+    }
+    
+    /**
+     * @return Cleared buffer, owned by the caller until it is released
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Returns a buffer to the pool; it must not be used by the caller afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        free.offer(buffer); // Dropped if the pool is full
+    }
+    
+    public int getBufferSize() {
+        return bufferSize;
+    }
+    
+    /**
+     * @return Number of buffers allocated since the pool was created
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+}
@@ -0,0 +1,300 @@
+package com.filesync.transfer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * rsync-style delta transfer that updates an existing target in place.
+ * The target is split into fixed-size blocks indexed by a rolling (weak) and an
+ * MD5 (strong) checksum. The source is scanned with a rolling window; windows
+ * matching a target block are not transferred, everything else is written as
+ * literal data at the same offset it has in the source.
+ * 
+ * <p>Because the target is rewritten in place, a block can only be reused if it
+ * lies at or after the current write offset, i.e. before it could have been
+ * overwritten (the rule rsync uses for --inplace).</p>
+ */
+public class DeltaTransfer {
+    private static final int LITERAL_FLUSH_SIZE = 1024 * 1024;
+    
+    private final int blockSize;
+    
+    /**
+     * Outcome of a delta transfer, in bytes of the resulting file.
+     */
+    public static class Result {
+        private long literalBytes;
+        private long movedBytes;
+        private long matchedBytes;
+        
+        /**
+         * @return Bytes read from the source and written to the target
+         */
+        public long getLiteralBytes() {
+            return literalBytes;
+        }
+        
+        /**
+         * @return Bytes copied from another offset of the target itself
+         */
+        public long getMovedBytes() {
+            return movedBytes;
+        }
+        
+        /**
+         * @return Bytes that were already in place and not written at all
+         */
+        public long getMatchedBytes() {
+            return matchedBytes;
+        }
+    }
+    
+    public DeltaTransfer(int blockSize) {
+        if (blockSize < 512) {
+            throw new IllegalArgumentException("Delta block size must be >= 512: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+    
+    /**
+     * Makes the target identical to the source.
+     * 
+     * @param source Channel of the new content
+     * @param target Read-write channel of the outdated content
+     * @return Statistics of the transfer
+     * @throws IOException If either channel fails
+     */
+    public Result apply(SeekableByteChannel source, SeekableByteChannel target) throws IOException {
+        Result result = new Result();
+        Map<Integer, List<Block>> blocks = indexBlocks(target);
+        MessageDigest strong = newStrongDigest();
+        
+        long sourceSize = source.size();
+        Window window = new Window(source, LITERAL_FLUSH_SIZE + 2 * blockSize + 1);
+        ByteBuffer moveBuffer = ByteBuffer.allocate(blockSize);
+        
+        long literalStart = 0;
+        long position = 0;
+        boolean rolling = false;
+        int a = 0;
+        int b = 0;
+        
+        while (position + blockSize <= sourceSize) {
+            window.fill(literalStart, Math.min(position + blockSize + 1, sourceSize));
+            
+            if (!rolling) {
+                a = 0;
+                b = 0;
+                for (int i = 0; i < blockSize; i++) {
+                    int value = window.byteAt(position + i) & 0xFF;
+                    a += value;
+                    b += (blockSize - i) * value;
+                }
+                a &= 0xFFFF;
+                b &= 0xFFFF;
+                rolling = true;
+            }
+            
+            Block match = findMatch(blocks.get(a | (b << 16)), window, position, strong);
+            if (match != null) {
+                writeLiteral(window, literalStart, position, target, result);
+                
+                if (match.offset == position) {
+                    result.matchedBytes += blockSize;
+                } else {
+                    moveBuffer.clear();
+                    readFully(target, match.offset, moveBuffer);
+                    moveBuffer.flip();
+                    writeFully(target, position, moveBuffer);
+                    result.movedBytes += blockSize;
+                }
+                
+                position += blockSize;
+                literalStart = position;
+                rolling = false;
+            } else {
+                if (position + blockSize < sourceSize) {
+                    int out = window.byteAt(position) & 0xFF;
+                    int in = window.byteAt(position + blockSize) & 0xFF;
+                    a = (a - out + in) & 0xFFFF;
+                    b = (b - blockSize * out + a) & 0xFFFF;
+                }
+                position++;
+                
+                if (position - literalStart >= LITERAL_FLUSH_SIZE) {
+                    writeLiteral(window, literalStart, position, target, result);
+                    literalStart = position;
+                }
+            }
+        }
+        
+        window.fill(literalStart, sourceSize);
+        writeLiteral(window, literalStart, sourceSize, target, result);
+        
+        if (target.size() > sourceSize) {
+            target.truncate(sourceSize);
+        }
+        return result;
+    }
+    
+    private Map<Integer, List<Block>> indexBlocks(SeekableByteChannel target) throws IOException {
+        Map<Integer, List<Block>> blocks = new HashMap<>();
+        MessageDigest strong = newStrongDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+        long count = target.size() / blockSize; // A short last block is never reused
+        
+        for (long index = 0; index < count; index++) {
+            long offset = index * blockSize;
+            buffer.clear();
+            readFully(target, offset, buffer);
+            
+            byte[] data = buffer.array();
+            int a = 0;
+            int b = 0;
+            for (int i = 0; i < blockSize; i++) {
+                int value = data[i] & 0xFF;
+                a += value;
+                b += (blockSize - i) * value;
+            }
+            int weak = (a & 0xFFFF) | ((b & 0xFFFF) << 16);
+            
+            strong.reset();
+            strong.update(data, 0, blockSize);
+            blocks.computeIfAbsent(weak, key -> new ArrayList<>(1)).add(new Block(offset, strong.digest()));
+        }
+        
+        return blocks;
+    }
+    
+    /**
+     * Picks the block equal to the source window, preferring one already at the
+     * same offset; blocks before the write offset may have been overwritten.
+     */
+    private Block findMatch(List<Block> candidates, Window window, long position, MessageDigest strong) {
+        if (candidates == null) {
+            return null;
+        }
+        
+        byte[] digest = null;
+        Block best = null;
+        for (Block candidate : candidates) {
+            if (candidate.offset < position) {
+                continue;
+            }
+            if (digest == null) {
+                strong.reset();
+                window.update(strong, position, blockSize);
+                digest = strong.digest();
+            }
+            if (Arrays.equals(digest, candidate.strong)) {
+                if (candidate.offset == position) {
+                    return candidate;
+                }
+                if (best == null || candidate.offset < best.offset) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+    
+    private static void writeLiteral(Window window, long from, long to, SeekableByteChannel target, Result result)
+            throws IOException {
+        if (to > from) {
+            writeFully(target, from, window.slice(from, (int) (to - from)));
+            result.literalBytes += to - from;
+        }
+    }
+    
+    private static void readFully(SeekableByteChannel channel, long position, ByteBuffer buffer) throws IOException {
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of file at offset " + channel.position());
+            }
+        }
+    }
+    
+    private static void writeFully(SeekableByteChannel channel, long position, ByteBuffer buffer) throws IOException {
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static MessageDigest newStrongDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+    
+    private static class Block {
+        private final long offset;
+        private final byte[] strong;
+        
+        Block(long offset, byte[] strong) {
+            this.offset = offset;
+            this.strong = strong;
+        }
+    }
+    
+    /**
+     * Sliding buffer over the source that keeps everything from the start of the
+     * pending literal run up to the end of the current window.
+     */
+    private static class Window {
+        private final SeekableByteChannel source;
+        private final byte[] buffer;
+        private long start;
+        private int length;
+        
+        Window(SeekableByteChannel source, int capacity) {
+            this.source = source;
+            this.buffer = new byte[capacity];
+        }
+        
+        void fill(long keepFrom, long until) throws IOException {
+            if (until <= start + length) {
+                return;
+            }
+            
+            int shift = (int) (keepFrom - start);
+            System.arraycopy(buffer, shift, buffer, 0, length - shift);
+            start = keepFrom;
+            length -= shift;
+            
+            ByteBuffer target = ByteBuffer.wrap(buffer, length, buffer.length - length);
+            source.position(start + length);
+            while (start + length < until) {
+                int read = source.read(target);
+                if (read < 0) {
+                    throw new EOFException("Source shrank during delta transfer");
+                }
+                length += read;
+            }
+        }
+        
+        byte byteAt(long position) {
+            return buffer[(int) (position - start)];
+        }
+        
+        void update(MessageDigest digest, long position, int count) {
+            digest.update(buffer, (int) (position - start), count);
+        }
+        
+        ByteBuffer slice(long position, int count) {
+            return ByteBuffer.wrap(buffer, (int) (position - start), count);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.filesync.transfer;
+
+/**
+ * How hard a local folder makes sure that the files written to it survive a crash.
+ * Every level writes a copy next to its target and renames it into place, so readers
+ * never see half a file; the levels only differ in when data reaches the disk.
+ */
+public enum Durability {
+    /** Leaves write-back to the operating system; fastest, but a crash may lose recent copies. */
+    NONE("none"),
+    /**
+     * Forces completed files in groups, then renames them into place and forces their
+     * directories, before the registry records them.
+     */
+    BATCHED("batched"),
+    /** Forces every file before its rename and its directory after it. */
+    PER_FILE("per-file");
+    
+    private final String name;
+    
+    Durability(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * @param name Level as written in a profile: none, batched or per-file
+     * @throws IllegalArgumentException If the level is unknown
+     */
+    public static Durability parse(String name) {
+        for (Durability durability : values()) {
+            if (durability.name.equalsIgnoreCase(name)) {
+                return durability;
+            }
+        }
+        throw new IllegalArgumentException("Unknown durability level: " + name + " (none, batched or per-file)");
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
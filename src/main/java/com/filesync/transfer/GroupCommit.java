@@ -0,0 +1,307 @@
+package com.filesync.transfer;
+
+import com.filesync.filesystem.WriteChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Installs finished copies in a local folder and makes them durable at its {@link Durability} level.
+ * A copy is written to a temp file in the target's directory and renamed over the target.
+ * With batched durability, the renames wait for the batch: once enough copies have
+ * accumulated and whenever {@link #flush()} is called, their temp files are forced
+ * together, then renamed, then each directory is forced once for all files installed in
+ * it. Until then a target keeps its previous content. Directories whose entries changed
+ * otherwise, by a delete or a move, are forced with the same batch. Callers flush before
+ * the registry records the files, so the registry never vouches for data that is not on
+ * disk yet.
+ */
+public class GroupCommit {
+    /** Files installed before a batch is forced without waiting for the next flush. */
+    public static final int DEFAULT_BATCH_FILES = 1000;
+    
+    private final Durability durability;
+    private final int batchFiles;
+    private final Object flushLock = new Object();
+    private Map<Path, Path> installs = new LinkedHashMap<>();
+    private Set<Path> files = new LinkedHashSet<>();
+    private Set<Path> directories = new LinkedHashSet<>();
+    
+    /**
+     * @param durability When installed files are forced to disk
+     * @param batchFiles Files after which a batch is forced, for {@link Durability#BATCHED}
+     */
+    public GroupCommit(Durability durability, int batchFiles) {
+        if (batchFiles < 1) {
+            throw new IllegalArgumentException("Durability batch must be >= 1 file: " + batchFiles);
+        }
+        this.durability = durability;
+        this.batchFiles = batchFiles;
+    }
+    
+    public Durability getDurability() {
+        return durability;
+    }
+    
+    /**
+     * Renames a complete temp file over its target, right away or with the next batch.
+     * 
+     * @param temp Complete copy, in the target's directory
+     * @param target File to replace
+     */
+    public void install(Path temp, Path target) throws IOException {
+        if (durability == Durability.BATCHED) {
+            boolean full;
+            synchronized (this) {
+                installs.put(target, temp);
+                full = isFull();
+            }
+            if (full) {
+                flush();
+            }
+            return;
+        }
+        
+        if (durability == Durability.PER_FILE) {
+            // Data first: a rename that survives a crash must not point to missing blocks
+            force(temp);
+        }
+        move(temp, target);
+        if (durability == Durability.PER_FILE) {
+            forceDirectory(target.getParent());
+        }
+    }
+    
+    /**
+     * Opens a temp file for a copy of known size, installed over the target when the
+     * channel is closed after receiving exactly that size. An aborted copy is deleted.
+     * 
+     * @param target File to replace; its parent directory must exist
+     * @param size Length of the copy, or -1 to install whatever was written before closing
+     */
+    public WriteChannel openWrite(Path target, long size) throws IOException {
+        Path temp = PartialFile.temporary(target);
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new WriteChannel() {
+            private long written;
+            
+            @Override
+            public int write(ByteBuffer source) throws IOException {
+                int count = channel.write(source);
+                written += count;
+                return count;
+            }
+            
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+            
+            @Override
+            public void close() throws IOException {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                channel.close();
+                if (size >= 0 && written != size) {
+                    // A failed or short copy leaves the target as it was
+                    Files.deleteIfExists(temp);
+                    throw new IOException("Incomplete copy of " + target + ": expected " + size + " bytes, got "
+                            + written);
+                }
+                install(temp, target);
+            }
+            
+            @Override
+            public void abort() throws IOException {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        };
+    }
+    
+    /**
+     * Sets the modification time of a file, or of its copy if that still waits for its batch.
+     */
+    public void setLastModified(Path file, long time) throws IOException {
+        synchronized (this) {
+            Path temp = installs.get(file);
+            if (temp != null) {
+                // Held under the lock, so the batch cannot rename the copy meanwhile
+                temp.toFile().setLastModified(time);
+                return;
+            }
+        }
+        synchronized (flushLock) {
+            // The copy may be in a batch being installed; wait for it to be in place
+            file.toFile().setLastModified(time);
+        }
+        changed(file);
+    }
+    
+    /**
+     * Records a file changed in place, e.g. by a delta transfer or a new timestamp.
+     */
+    public void changed(Path file) throws IOException {
+        if (durability == Durability.PER_FILE) {
+            force(file);
+        } else if (durability == Durability.BATCHED) {
+            boolean full;
+            synchronized (this) {
+                files.add(file);
+                full = isFull();
+            }
+            if (full) {
+                flush();
+            }
+        }
+    }
+    
+    /**
+     * Records a directory whose entries changed outside of {@link #install}, e.g. by
+     * deleting or moving a file.
+     */
+    public void directoryChanged(Path directory) throws IOException {
+        if (durability == Durability.PER_FILE) {
+            forceDirectory(directory);
+        } else if (durability == Durability.BATCHED) {
+            boolean full;
+            synchronized (this) {
+                directories.add(directory);
+                full = isFull();
+            }
+            if (full) {
+                flush();
+            }
+        }
+    }
+    
+    /**
+     * @return Directories whose changed entries wait for the next flush
+     */
+    synchronized Set<Path> getPendingDirectories() {
+        return new LinkedHashSet<>(directories);
+    }
+    
+    private boolean isFull() {
+        return installs.size() + files.size() + directories.size() >= batchFiles;
+    }
+    
+    /**
+     * Forces every copy and changed file so far, renames the copies over their targets,
+     * then forces their directories and the other changed directories. Returns once a batch another thread started
+     * installing is complete as well. If a file cannot be forced or renamed, the copies
+     * not installed yet and the files not forced yet stay pending, so the next flush
+     * retries them and fails as well rather than vouching for them.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            Map<Path, Path> batchInstalls;
+            Set<Path> batchFiles;
+            Set<Path> batchDirectories;
+            synchronized (this) {
+                if (installs.isEmpty() && files.isEmpty() && directories.isEmpty()) {
+                    return;
+                }
+                batchInstalls = installs;
+                batchFiles = files;
+                batchDirectories = directories;
+                installs = new LinkedHashMap<>();
+                files = new LinkedHashSet<>();
+                directories = new LinkedHashSet<>();
+            }
+            
+            boolean forced = false;
+            try {
+                // Data first: a rename that survives a crash must not point to missing blocks
+                for (Path temp : batchInstalls.values()) {
+                    force(temp);
+                }
+                for (Path file : batchFiles) {
+                    try {
+                        force(file);
+                    } catch (NoSuchFileException e) {
+                        // Replaced or deleted since; whatever replaced it is in a batch of its own
+                    }
+                }
+                forced = true;
+                
+                for (Iterator<Map.Entry<Path, Path>> i = batchInstalls.entrySet().iterator(); i.hasNext(); ) {
+                    Map.Entry<Path, Path> install = i.next();
+                    move(install.getValue(), install.getKey());
+                    batchDirectories.add(install.getKey().getParent());
+                    i.remove();
+                }
+                for (Iterator<Path> i = batchDirectories.iterator(); i.hasNext(); ) {
+                    forceDirectory(i.next());
+                    i.remove();
+                }
+            } catch (IOException | RuntimeException e) {
+                requeue(batchInstalls, forced ? Collections.emptySet() : batchFiles, batchDirectories);
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Puts back the part of a failed batch that is not installed or forced. Copies installed since
+     * for the same targets are newer and take precedence.
+     */
+    private synchronized void requeue(Map<Path, Path> batchInstalls, Set<Path> batchFiles,
+            Set<Path> batchDirectories) {
+        Map<Path, Path> pending = new LinkedHashMap<>(batchInstalls);
+        pending.putAll(installs);
+        installs = pending;
+        Set<Path> pendingFiles = new LinkedHashSet<>(batchFiles);
+        pendingFiles.addAll(files);
+        files = pendingFiles;
+        batchDirectories.addAll(directories);
+        directories = batchDirectories;
+    }
+    
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+    
+    /**
+     * Makes the entries of a directory durable, where the platform allows opening one.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return; // Removed since, or directories cannot be opened on this platform (Windows)
+        }
+        try (FileChannel opened = channel) {
+            opened.force(true);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.filesync.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * High-throughput copy between two local paths.
+ * Files under 1 MB use the native {@link Files#copy}, which is cheapest for them.
+ * Larger data moves with {@link FileChannel#transferTo} in large chunks, which the JDK maps
+ * to copy_file_range/sendfile so bytes never pass through the Java heap. Large files
+ * are first offered to a reflink clone (Btrfs, XFS, ...), which shares extents and
+ * costs no data I/O at all; file stores that refuse it are remembered for the life of the
+ * process and skipped, while a clone failing for other reasons only falls back for its file.
+ * Timestamps are applied in the same pass and known parent directories are not checked again.
+ * Every copy is written to a hidden temp file beside its target, which the engine's
+ * {@link GroupCommit} renames over the target and makes durable. Copies that are not
+ * cloned and reach the resume threshold use a {@link PartialFile} as temp file, so a copy
+ * interrupted by a crash continues from its last checkpoint. Delta updates rewrite a
+ * {@link WorkingCopy} of their target, which the same group commit installs.
+ */
+public class LocalCopyEngine {
+    private static final long SMALL_FILE_SIZE = 1024 * 1024;
+    private static final long CHUNK_SIZE = 256L * 1024 * 1024;
+    private static final long REFLINK_TIMEOUT_SECONDS = 60;
+    private static final boolean REFLINK_PLATFORM = System.getProperty("os.name", "").toLowerCase().contains("linux");
+    
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    /**
+     * Whether clones worked on each device, shared by all engines: handlers, and their engines,
+     * are created for every run, and a failed clone attempt costs a process start.
+     */
+    private static final Map<Object, Boolean> REFLINK_SUPPORT = new ConcurrentHashMap<>();
+    
+    private final boolean reflink;
+    private final long reflinkMinBytes;
+    private final long resumeMinBytes;
+    private final GroupCommit commit;
+    private final Set<Path> knownDirectories = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * @param reflink Whether to try a reflink clone before copying
+     * @param reflinkMinBytes Smallest file for which a clone is attempted
+     */
+    public LocalCopyEngine(boolean reflink, long reflinkMinBytes) {
+        this(reflink, reflinkMinBytes, PartialFile.DEFAULT_RESUME_MIN_BYTES,
+                new GroupCommit(Durability.BATCHED, GroupCommit.DEFAULT_BATCH_FILES));
+    }
+    
+    /**
+     * @param reflink Whether to try a reflink clone before copying
+     * @param reflinkMinBytes Smallest file for which a clone is attempted
+     * @param resumeMinBytes Smallest file copied through a resumable partial file, or 0 to never resume
+     * @param commit Installs the copies in the target folder at its durability level
+     */
+    public LocalCopyEngine(boolean reflink, long reflinkMinBytes, long resumeMinBytes, GroupCommit commit) {
+        this.reflink = reflink;
+        this.reflinkMinBytes = reflinkMinBytes;
+        this.resumeMinBytes = resumeMinBytes;
+        this.commit = commit;
+    }
+    
+    /**
+     * @return Group commit of the folder this engine copies to, also used for files written by other means
+     */
+    public GroupCommit getGroupCommit() {
+        return commit;
+    }
+    
+    /**
+     * Copies a file, replacing the target.
+     * 
+     * @param source Existing source file
+     * @param target Target file; missing parent directories are created
+     * @param preserveTimestamp Whether the target gets the source's modification time
+     * @return Number of bytes copied
+     * @throws IOException If the copy fails
+     */
+    public long copy(Path source, Path target, boolean preserveTimestamp) throws IOException {
+        // One attribute read provides size, timestamp and, where available, permissions
+        BasicFileAttributes attributes = POSIX
+                ? Files.readAttributes(source, PosixFileAttributes.class)
+                : Files.readAttributes(source, BasicFileAttributes.class);
+        ensureParent(target);
+        
+        try {
+            write(source, target, attributes, preserveTimestamp);
+        } catch (NoSuchFileException e) {
+            forgetParent(target);
+            write(source, target, attributes, preserveTimestamp);
+        }
+        return attributes.size();
+    }
+    
+    /**
+     * Copies a file into a hidden temp file beside it, for an update that must not be seen
+     * until it is complete. The copy is cloned where reflinks work, so it only costs the
+     * blocks the update rewrites.
+     * 
+     * @param file Existing file
+     * @return Copy that replaces the file once completed
+     * @throws IOException If the copy fails
+     */
+    public WorkingCopy openWorkingCopy(Path file) throws IOException {
+        BasicFileAttributes attributes = POSIX
+                ? Files.readAttributes(file, PosixFileAttributes.class)
+                : Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        Path temp = PartialFile.temporary(file);
+        try {
+            if (!(reflink && REFLINK_PLATFORM && size >= reflinkMinBytes && tryReflink(file, temp))) {
+                copyData(file, temp, size);
+            }
+            checkComplete(temp, file, size);
+            return new WorkingCopy(file, temp, commit,
+                    POSIX ? ((PosixFileAttributes) attributes).permissions() : null);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException cleanupFailure) {
+                e.addSuppressed(cleanupFailure);
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Copies into a temp file beside the target, then installs it over the target.
+     */
+    private void write(Path source, Path target, BasicFileAttributes attributes, boolean preserveTimestamp)
+            throws IOException {
+        long size = attributes.size();
+        Path temp = PartialFile.temporary(target);
+        try {
+            if (size < SMALL_FILE_SIZE) {
+                // Opening channels costs more than the data; the native copy also carries the attributes
+                copySmall(source, temp, preserveTimestamp);
+                checkComplete(temp, target, size);
+                commit.install(temp, target);
+                return;
+            }
+            
+            if (!(reflink && REFLINK_PLATFORM && size >= reflinkMinBytes && tryReflink(source, temp))) {
+                if (resumeMinBytes > 0 && size >= resumeMinBytes) {
+                    copyResumable(source, target, attributes, preserveTimestamp);
+                    return;
+                }
+                copyData(source, temp, size);
+            }
+            if (preserveTimestamp) {
+                applyAttributes(temp, attributes);
+            }
+            checkComplete(temp, target, size);
+            commit.install(temp, target);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException cleanupFailure) {
+                e.addSuppressed(cleanupFailure);
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * @throws IOException If the copy does not have the size of the source, which changed while copying
+     */
+    static void checkComplete(Path temp, Path target, long size) throws IOException {
+        long copied = Files.size(temp);
+        if (copied != size) {
+            throw new IOException("Source changed while copying to " + target + ": expected " + size
+                    + " bytes, got " + copied);
+        }
+    }
+    
+    private static void copySmall(Path source, Path target, boolean preserveTimestamp) throws IOException {
+        if (preserveTimestamp) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        } else {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Applies the attributes Files.copy(COPY_ATTRIBUTES) carries over.
+     */
+    private static void applyAttributes(Path target, BasicFileAttributes attributes) throws IOException {
+        if (POSIX) {
+            Files.setPosixFilePermissions(target, ((PosixFileAttributes) attributes).permissions());
+        }
+        Files.setLastModifiedTime(target, attributes.lastModifiedTime());
+    }
+    
+    /**
+     * Drops a cached parent, which may have been removed since it was created, and recreates it.
+     */
+    private void forgetParent(Path target) throws IOException {
+        knownDirectories.remove(target.getParent());
+        ensureParent(target);
+    }
+    
+    private void ensureParent(Path target) throws IOException {
+        Path parent = target.getParent();
+        if (parent != null && !knownDirectories.contains(parent)) {
+            Files.createDirectories(parent);
+            knownDirectories.add(parent);
+        }
+    }
+    
+    private static void copyData(Path source, Path target, long size) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, Math.min(CHUNK_SIZE, size - position), out);
+                if (transferred <= 0) {
+                    break; // Source shrank while copying; the size check rejects the copy
+                }
+                position += transferred;
+            }
+        }
+    }
+    
+    /**
+     * Copies into the partial file of the target, continuing after the bytes an interrupted
+     * copy of the same source left there, and checkpoints after every chunk.
+     */
+    private void copyResumable(Path source, Path target, BasicFileAttributes attributes, boolean preserveTimestamp)
+            throws IOException {
+        long size = attributes.size();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             PartialFile partial = PartialFile.open(target, size, attributes.lastModifiedTime().toMillis())) {
+            FileChannel out = partial.getChannel();
+            long position = partial.getResumeOffset();
+            while (position < size) {
+                long transferred = in.transferTo(position,
+                        Math.min(PartialFile.DEFAULT_CHECKPOINT_BYTES, size - position), out);
+                if (transferred <= 0) {
+                    break; // Source shrank while copying; complete() reports it
+                }
+                position += transferred;
+                partial.checkpoint();
+            }
+            // Permissions may make the data read-only: only a complete copy gets them
+            if (preserveTimestamp && position == size) {
+                applyAttributes(partial.getPath(), attributes);
+            }
+            partial.complete(commit);
+        }
+    }
+    
+    /**
+     * Clones the file with cp --reflink=always, the portable way to reach FICLONE from Java.
+     * Only a file system refusing clones disables them for its device; any other failure,
+     * e.g. a source removed meanwhile or a timeout, leaves that one file to a plain copy.
+     * 
+     * @return True if the target now shares the source's extents
+     */
+    private static boolean tryReflink(Path source, Path target) throws IOException {
+        // Device ids are a plain stat, unlike FileStore lookups which parse the mount table
+        Object device = Files.getAttribute(target.getParent(), "unix:dev");
+        if (Boolean.FALSE.equals(REFLINK_SUPPORT.get(device)) || !device.equals(Files.getAttribute(source, "unix:dev"))) {
+            return false; // Clones never cross file systems
+        }
+        
+        ProcessBuilder builder = new ProcessBuilder("cp", "--reflink=always", "--", source.toString(), target.toString())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        // Untranslated messages, to tell a refusal from other errors
+        builder.environment().put("LC_ALL", "C");
+        Process process = builder.start();
+        boolean exited;
+        try {
+            exited = process.waitFor(REFLINK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cloning " + source, e);
+        }
+        if (!exited) {
+            process.destroyForcibly();
+            return false;
+        }
+        
+        // cp has exited, so its few lines of errors are all in the pipe already
+        String errors;
+        try (InputStream in = process.getErrorStream()) {
+            errors = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (process.exitValue() == 0) {
+            REFLINK_SUPPORT.put(device, true);
+            return true;
+        }
+        if (isRefusal(errors)) {
+            REFLINK_SUPPORT.put(device, false);
+        }
+        return false;
+    }
+    
+    /**
+     * @return True if cp's errors say the file system cannot clone, rather than that this one file failed
+     */
+    static boolean isRefusal(String errors) {
+        return errors.contains("Operation not supported") || errors.contains("Invalid cross-device link");
+    }
+}
@@ -0,0 +1,230 @@
+package com.filesync.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temp file receiving a large copy next to its target, so that an interrupted copy
+ * resumes where it stopped instead of starting over.
+ * The data goes to a hidden ".name.jsync-part" file. A ".name.jsync-part.state" file
+ * records the size and modification time of the source and how many bytes of the data
+ * are verified, i.e. were forced to disk before the state was written. A copy resumes
+ * only from the verified bytes of the same source version; anything else starts over.
+ * The finished file replaces the target with one rename, so the target never holds a
+ * half-written copy. Smaller copies, which are not worth resuming, use a plain
+ * {@link #temporary} file the same way. Scanners skip both, see {@link #isPartialName}.
+ */
+public class PartialFile implements Closeable {
+    /** Smallest copy written through a partial file; smaller ones are cheaper to redo. */
+    public static final long DEFAULT_RESUME_MIN_BYTES = 64L * 1024 * 1024;
+    /** Bytes written between two checkpoints of the verified offset. */
+    public static final long DEFAULT_CHECKPOINT_BYTES = 64L * 1024 * 1024;
+    
+    private static final String SUFFIX = ".jsync-part";
+    private static final String STATE_SUFFIX = ".state";
+    private static final String TEMP_SUFFIX = ".jsync-tmp";
+    
+    private final Path target;
+    private final Path data;
+    private final Path state;
+    private final long sourceSize;
+    private final long sourceLastModified;
+    private final FileChannel channel;
+    private final long resumeOffset;
+    private long verified;
+    
+    private PartialFile(Path target, Path data, Path state, long sourceSize, long sourceLastModified,
+                        FileChannel channel, long resumeOffset) {
+        this.target = target;
+        this.data = data;
+        this.state = state;
+        this.sourceSize = sourceSize;
+        this.sourceLastModified = sourceLastModified;
+        this.channel = channel;
+        this.resumeOffset = resumeOffset;
+        this.verified = resumeOffset;
+    }
+    
+    /**
+     * Opens the partial file of a target, positioned after its verified bytes if it was
+     * left by an interrupted copy of the same source version, or empty otherwise.
+     * 
+     * @param target File the copy is for; its parent directory must exist
+     * @param sourceSize Size of the source being copied
+     * @param sourceLastModified Modification time of the source being copied
+     */
+    public static PartialFile open(Path target, long sourceSize, long sourceLastModified) throws IOException {
+        Path data = target.resolveSibling("." + target.getFileName() + SUFFIX);
+        Path state = data.resolveSibling(data.getFileName() + STATE_SUFFIX);
+        long offset = readVerifiedOffset(state, sourceSize, sourceLastModified);
+        
+        FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            if (offset > channel.size()) {
+                offset = 0L; // The data did not survive, whatever the state says
+            }
+            if (offset == 0L) {
+                // Stale state must not vouch for the new data before its first checkpoint
+                Files.deleteIfExists(state);
+            }
+            // Bytes after the verified offset may not have reached the disk intact
+            channel.truncate(offset);
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new PartialFile(target, data, state, sourceSize, sourceLastModified, channel, offset);
+    }
+    
+    /**
+     * @return Hidden temp file in the target's directory, for a copy that is written at once
+     */
+    public static Path temporary(Path target) {
+        return target.resolveSibling("." + target.getFileName() + TEMP_SUFFIX);
+    }
+    
+    /**
+     * @return True if a file name belongs to a partial or temp file or a state, which is never synchronized
+     */
+    public static boolean isPartialName(String name) {
+        return name.startsWith(".") && (name.endsWith(SUFFIX) || name.endsWith(SUFFIX + STATE_SUFFIX)
+                || name.endsWith(SUFFIX + STATE_SUFFIX + ".tmp") || name.endsWith(TEMP_SUFFIX));
+    }
+    
+    /**
+     * @return Bytes kept from an interrupted copy, where writing continues; 0 for a new copy
+     */
+    public long getResumeOffset() {
+        return resumeOffset;
+    }
+    
+    /**
+     * @return Path of the data, e.g. to set its attributes before it replaces the target
+     */
+    public Path getPath() {
+        return data;
+    }
+    
+    /**
+     * @return Channel on the data, positioned where writing continues
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+    
+    /**
+     * @param checkpointBytes Bytes written between two checkpoints
+     * @return Channel appending to the data and checkpointing as it goes
+     */
+    public WritableByteChannel checkpointing(long checkpointBytes) {
+        return new WritableByteChannel() {
+            private long unverified;
+            
+            @Override
+            public int write(ByteBuffer source) throws IOException {
+                int written = channel.write(source);
+                unverified += written;
+                if (unverified >= checkpointBytes) {
+                    checkpoint();
+                    unverified = 0L;
+                }
+                return written;
+            }
+            
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+            
+            @Override
+            public void close() {
+                // The partial file is closed by its owner
+            }
+        };
+    }
+    
+    /**
+     * Forces the data written so far to disk, then records it as verified.
+     */
+    public void checkpoint() throws IOException {
+        long position = channel.position();
+        if (position == verified) {
+            return;
+        }
+        channel.force(false);
+        
+        Path temp = state.resolveSibling(state.getFileName() + ".tmp");
+        String line = sourceSize + " " + sourceLastModified + " " + position + "\n";
+        Files.write(temp, line.getBytes(StandardCharsets.US_ASCII));
+        move(temp, state);
+        verified = position;
+    }
+    
+    /**
+     * Replaces the target with the complete data and removes the state.
+     * 
+     * @param commit Group commit of the target's folder, which installs the data
+     * @throws IOException If the data does not have the size of the source, which changed while copying;
+     *                     the data and state are discarded, so the next copy starts over
+     */
+    public void complete(GroupCommit commit) throws IOException {
+        long size = channel.position();
+        channel.close();
+        if (size != sourceSize) {
+            // Resuming from bytes of a version that is gone would fail the same way every time
+            Files.deleteIfExists(state);
+            Files.deleteIfExists(data);
+            throw new IOException("Source changed while copying to " + target + ": expected " + sourceSize
+                    + " bytes, got " + size);
+        }
+        commit.install(data, target);
+        Files.deleteIfExists(state);
+    }
+    
+    /**
+     * Closes the data, keeping it and its state for a later copy to resume from.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /**
+     * @return Verified offset recorded for this source version, or 0 if there is none
+     */
+    private static long readVerifiedOffset(Path state, long sourceSize, long sourceLastModified) {
+        try {
+            String[] fields = new String(Files.readAllBytes(state), StandardCharsets.US_ASCII).trim().split(" ");
+            if (fields.length == 3 && Long.parseLong(fields[0]) == sourceSize
+                    && Long.parseLong(fields[1]) == sourceLastModified) {
+                long offset = Long.parseLong(fields[2]);
+                return offset >= 0 && offset <= sourceSize ? offset : 0L;
+            }
+            return 0L;
+        } catch (NoSuchFileException | NumberFormatException e) {
+            return 0L;
+        } catch (IOException e) {
+            System.err.println("Ignoring partial copy state " + state + ": " + e.getMessage());
+            return 0L;
+        }
+    }
+    
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
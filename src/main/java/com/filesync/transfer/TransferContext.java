@@ -0,0 +1,65 @@
+package com.filesync.transfer;
+
+import com.filesync.core.Profile;
+
+/**
+ * Settings and statistics shared by the transfers of one synchronization run.
+ */
+public class TransferContext {
+    private static final long DEFAULT_DELTA_THRESHOLD = 64L * 1024 * 1024;
+    private static final int DEFAULT_DELTA_BLOCK_SIZE = 64 * 1024;
+    
+    private final long deltaThreshold;
+    private final int deltaBlockSize;
+    private final TransferStats stats = new TransferStats();
+    private final TransferPipeline pipeline;
+    
+    /**
+     * @param deltaThreshold Minimum size of an existing target for delta transfer, or 0 to disable it
+     * @param deltaBlockSize Block size used to match source and target
+     * @param resumeMinBytes Smallest download to a local folder that can resume after an interruption,
+     *                       or 0 to never resume
+     */
+    public TransferContext(long deltaThreshold, int deltaBlockSize, long resumeMinBytes) {
+        this.deltaThreshold = deltaThreshold;
+        this.deltaBlockSize = deltaBlockSize;
+        this.pipeline = new TransferPipeline(BufferPool.getInstance(), resumeMinBytes);
+    }
+    
+    /**
+     * @return Context without delta transfer, used when no profile settings apply
+     */
+    public static TransferContext defaults() {
+        return new TransferContext(0L, DEFAULT_DELTA_BLOCK_SIZE, PartialFile.DEFAULT_RESUME_MIN_BYTES);
+    }
+    
+    public static TransferContext fromProfile(Profile profile) {
+        return new TransferContext(
+                profile.getLongOption("delta.thresholdBytes", DEFAULT_DELTA_THRESHOLD),
+                profile.getIntOption("delta.blockSize", DEFAULT_DELTA_BLOCK_SIZE),
+                profile.getLongOption("transfer.resumeMinBytes", PartialFile.DEFAULT_RESUME_MIN_BYTES));
+    }
+    
+    public boolean isDeltaEnabled() {
+        return deltaThreshold > 0;
+    }
+    
+    /**
+     * @return True if a file of this size, whose target already exists, should use delta transfer
+     */
+    public boolean useDelta(long size) {
+        return deltaThreshold > 0 && size >= deltaThreshold;
+    }
+    
+    public DeltaTransfer newDeltaTransfer() {
+        return new DeltaTransfer(deltaBlockSize);
+    }
+    
+    public TransferPipeline getPipeline() {
+        return pipeline;
+    }
+    
+    public TransferStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,408 @@
+package com.filesync.transfer;
+
+import com.filesync.filesystem.ContentDigest;
+import com.filesync.filesystem.FileSystemHandler;
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.filesystem.WriteChannel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies files between any two handlers through their {@link FileSystemHandler#openRead}
+ * and {@link FileSystemHandler#openWrite} channels and pooled direct buffers.
+ * A file that fits in one buffer is read and written by the calling thread. Larger files
+ * are double-buffered: a reader thread fills the next buffers while the caller writes the
+ * current one, so a slow side (typically the network) is kept busy all the time.
+ * Copies between two local folders are left to {@link LocalCopyEngine}, which clones or
+ * copies inside the kernel. A file copied to several handlers at once is read only once,
+ * every buffer being written to all of them. A large file copied to a local folder is
+ * written to a {@link PartialFile}, so a copy interrupted by a crash asks the source only
+ * for the bytes it had not yet verified. A copy that fails is aborted on every target,
+ * which keeps its previous content.
+ */
+public class TransferPipeline {
+    /** Buffers a reader may fill ahead of the writer. */
+    private static final int READ_AHEAD = 2;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    
+    private static final AtomicInteger READER_COUNT = new AtomicInteger();
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "transfer-reader-" + READER_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final BufferPool pool;
+    private final long resumeMinBytes;
+    
+    public TransferPipeline(BufferPool pool) {
+        this(pool, PartialFile.DEFAULT_RESUME_MIN_BYTES);
+    }
+    
+    /**
+     * @param resumeMinBytes Smallest file copied to a local folder through a partial file, or 0 to never resume
+     */
+    public TransferPipeline(BufferPool pool, long resumeMinBytes) {
+        this.pool = pool;
+        this.resumeMinBytes = resumeMinBytes;
+    }
+    
+    /**
+     * Copies a file to the same relative path on another handler, replacing it there.
+     * 
+     * @param source Handler holding the file
+     * @param target Handler receiving the copy; missing parent directories are created
+     * @param path Relative path of the file on both sides
+     * @param preserveTimestamp Whether the copy gets the source's modification time
+     * @return Number of bytes copied
+     * @throws IOException If either side fails
+     */
+    public long transfer(FileSystemHandler source, FileSystemHandler target, String path, boolean preserveTimestamp)
+            throws IOException {
+        return transfer(source, target, path, preserveTimestamp, null);
+    }
+    
+    /**
+     * Copies a file like {@link #transfer(FileSystemHandler, FileSystemHandler, String, boolean)},
+     * digesting the content on its way if the copy streams all of it through this process.
+     * Copies between local folders are left to the kernel and not digested.
+     * 
+     * @param digest Sink receiving the content and closed once it is complete, or null
+     * @return Number of bytes copied
+     * @throws IOException If either side fails
+     */
+    public long transfer(FileSystemHandler source, FileSystemHandler target, String path, boolean preserveTimestamp,
+                         ContentDigest.Sink digest) throws IOException {
+        if (source instanceof LocalFileSystemHandler && target instanceof LocalFileSystemHandler) {
+            return source.copyFile(path, Paths.get(target.getBasePath(), path).toString(), preserveTimestamp);
+        }
+        
+        // Read before the content, so a change made during the copy shows up in the next sync
+        FileSystemNode node = source.stat(path);
+        if (node == null || node.isDirectory()) {
+            throw new NoSuchFileException(source.getBasePath() + "/" + path);
+        }
+        
+        long copied;
+        if (target instanceof LocalFileSystemHandler && resumeMinBytes > 0 && node.getSize() >= resumeMinBytes) {
+            copied = transferResumable(source, target, path, node, digest);
+        } else {
+            try (ReadableByteChannel in = source.openRead(path)) {
+                WriteChannel out = target.openWrite(path, node.getSize());
+                try {
+                    copied = digest != null ? copy(in, out, digest) : copy(in, out);
+                } catch (IOException | RuntimeException e) {
+                    abortAll(new WriteChannel[] {out}, e);
+                    throw e;
+                }
+                out.close();
+            }
+            if (digest != null) {
+                digest.close();
+            }
+        }
+        if (preserveTimestamp) {
+            target.setLastModified(path, node.getLastModified());
+        }
+        return copied;
+    }
+    
+    /**
+     * Copies into the partial file of a local target, reading the source from the end of
+     * the bytes an interrupted copy of the same version verified. Only a copy that starts
+     * from the beginning is digested.
+     * 
+     * @return Number of bytes read from the source by this call
+     */
+    private long transferResumable(FileSystemHandler source, FileSystemHandler target, String path,
+                                   FileSystemNode node, ContentDigest.Sink digest) throws IOException {
+        Path file = Paths.get(target.getBasePath(), path);
+        Files.createDirectories(file.getParent());
+        try (PartialFile partial = PartialFile.open(file, node.getSize(), node.getLastModified())) {
+            long copied = 0L;
+            // The interrupted copy may have kept all the data; a range starting at the end would be refused
+            if (partial.getResumeOffset() < node.getSize()) {
+                WritableByteChannel out = partial.checkpointing(PartialFile.DEFAULT_CHECKPOINT_BYTES);
+                boolean whole = digest != null && partial.getResumeOffset() == 0L;
+                try (ReadableByteChannel in = source.openRead(path, partial.getResumeOffset())) {
+                    copied = whole ? copy(in, out, digest) : copy(in, out);
+                }
+                if (whole) {
+                    digest.close();
+                }
+            }
+            partial.complete(((LocalFileSystemHandler) target).getGroupCommit());
+            return copied;
+        }
+    }
+    
+    /**
+     * Copies a file to the same relative path on several handlers, reading it once.
+     * 
+     * @param source Handler holding the file
+     * @param targets Handlers receiving the copy; missing parent directories are created
+     * @param path Relative path of the file on all sides
+     * @param preserveTimestamp Whether the copies get the source's modification time
+     * @return Number of bytes read from the source
+     * @throws IOException If the source or any target fails
+     */
+    public long transfer(FileSystemHandler source, List<FileSystemHandler> targets, String path,
+                         boolean preserveTimestamp) throws IOException {
+        return transfer(source, targets, path, preserveTimestamp, null);
+    }
+    
+    /**
+     * Copies a file to several handlers like {@link #transfer(FileSystemHandler, List, String, boolean)},
+     * digesting the content on its way if the copy streams all of it through this process.
+     * 
+     * @param digest Sink receiving the content and closed once it is complete, or null
+     * @return Number of bytes read from the source
+     * @throws IOException If the source or any target fails
+     */
+    public long transfer(FileSystemHandler source, List<FileSystemHandler> targets, String path,
+                         boolean preserveTimestamp, ContentDigest.Sink digest) throws IOException {
+        if (targets.size() == 1) {
+            return transfer(source, targets.get(0), path, preserveTimestamp, digest);
+        }
+        boolean allLocal = source instanceof LocalFileSystemHandler;
+        for (FileSystemHandler target : targets) {
+            allLocal &= target instanceof LocalFileSystemHandler;
+        }
+        if (allLocal) {
+            // Kernel copies read the page cache after the first one
+            long copied = 0L;
+            for (FileSystemHandler target : targets) {
+                copied = transfer(source, target, path, preserveTimestamp);
+            }
+            return copied;
+        }
+        
+        FileSystemNode node = source.stat(path);
+        if (node == null || node.isDirectory()) {
+            throw new NoSuchFileException(source.getBasePath() + "/" + path);
+        }
+        
+        long copied;
+        WriteChannel[] copies = new WriteChannel[targets.size()];
+        try (ReadableByteChannel in = source.openRead(path)) {
+            try {
+                for (int i = 0; i < targets.size(); i++) {
+                    copies[i] = targets.get(i).openWrite(path, node.getSize());
+                }
+                WritableByteChannel[] outs = copies;
+                if (digest != null) {
+                    outs = Arrays.copyOf(copies, copies.length + 1, WritableByteChannel[].class);
+                    outs[copies.length] = digest;
+                }
+                copied = copy(in, outs);
+            } catch (IOException | RuntimeException e) {
+                // The digest is left open: it did not receive a complete content
+                abortAll(copies, e);
+                throw e;
+            }
+            closeAll(copies);
+            if (digest != null) {
+                digest.close(); // Closed last, once the copies are complete
+            }
+        }
+        if (preserveTimestamp) {
+            for (FileSystemHandler target : targets) {
+                target.setLastModified(path, node.getLastModified());
+            }
+        }
+        return copied;
+    }
+    
+    /**
+     * Copies a channel to its end into one or more others.
+     * 
+     * @return Number of bytes read
+     */
+    public long copy(ReadableByteChannel in, WritableByteChannel... outs) throws IOException {
+        ByteBuffer first = pool.acquire();
+        boolean handedOver = false;
+        try {
+            boolean end = fill(in, first);
+            first.flip();
+            if (end) {
+                // Fits in one buffer: no reader thread needed
+                long size = first.remaining();
+                writeAll(outs, first);
+                return size;
+            }
+            handedOver = true;
+            return copyOverlapped(in, outs, first);
+        } finally {
+            if (!handedOver) {
+                pool.release(first);
+            }
+        }
+    }
+    
+    private long copyOverlapped(ReadableByteChannel in, WritableByteChannel[] outs, ByteBuffer first)
+            throws IOException {
+        BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(READ_AHEAD + 1);
+        Reader reader = new Reader(in, filled);
+        Future<?> readerTask = READERS.submit(reader);
+        
+        ByteBuffer current = first;
+        long copied = 0L;
+        try {
+            while (current != END) {
+                copied += current.remaining();
+                writeAll(outs, current);
+                pool.release(current);
+                current = null;
+                current = filled.take();
+            }
+            if (reader.failure != null) {
+                throw reader.failure;
+            }
+            return copied;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while copying");
+        } finally {
+            if (current != null && current != END) {
+                pool.release(current);
+            }
+            if (current != END) {
+                readerTask.cancel(true);
+            }
+            for (ByteBuffer buffer = filled.poll(); buffer != null; buffer = filled.poll()) {
+                if (buffer != END) {
+                    pool.release(buffer);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads until the buffer is full or the channel ends.
+     * 
+     * @return True if the channel ended
+     */
+    private static boolean fill(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+    
+    /**
+     * Writes the remaining content of the buffer to every channel.
+     */
+    private static void writeAll(WritableByteChannel[] outs, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        for (WritableByteChannel out : outs) {
+            buffer.position(start);
+            writeFully(out, buffer);
+        }
+    }
+    
+    /**
+     * Closes every opened channel, even if closing one fails; the first failure is thrown.
+     */
+    private static void closeAll(WritableByteChannel[] outs) throws IOException {
+        IOException failure = null;
+        for (WritableByteChannel out : outs) {
+            if (out == null) {
+                continue;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Aborts every opened copy after a failed transfer, so that none of them is installed.
+     */
+    private static void abortAll(WriteChannel[] copies, Exception failure) {
+        for (WriteChannel copy : copies) {
+            if (copy == null) {
+                continue;
+            }
+            try {
+                copy.abort();
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+    
+    /**
+     * Fills buffers from the source and queues them for the writer, followed by {@link #END}.
+     */
+    private class Reader implements Runnable {
+        private final ReadableByteChannel in;
+        private final BlockingQueue<ByteBuffer> filled;
+        private volatile IOException failure;
+        
+        Reader(ReadableByteChannel in, BlockingQueue<ByteBuffer> filled) {
+            this.in = in;
+            this.filled = filled;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                boolean end = false;
+                while (!end) {
+                    ByteBuffer buffer = pool.acquire();
+                    try {
+                        end = fill(in, buffer);
+                    } catch (IOException e) {
+                        pool.release(buffer);
+                        throw e;
+                    }
+                    buffer.flip();
+                    filled.put(buffer);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                return; // Cancelled by the writer
+            }
+            try {
+                filled.put(END);
+            } catch (InterruptedException e) {
+                // Cancelled by the writer
+            }
+        }
+    }
+}
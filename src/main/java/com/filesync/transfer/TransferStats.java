@@ -0,0 +1,67 @@
+package com.filesync.transfer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte counters of a synchronization run, shared by all concurrent transfers.
+ */
+public class TransferStats {
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytesCopied = new LongAdder();
+    private final LongAdder deltaFiles = new LongAdder();
+    private final LongAdder deltaLiteralBytes = new LongAdder();
+    private final LongAdder deltaMovedBytes = new LongAdder();
+    private final LongAdder deltaMatchedBytes = new LongAdder();
+    
+    /**
+     * Records a whole-file copy.
+     */
+    public void recordCopy(long bytes) {
+        files.increment();
+        bytesCopied.add(bytes);
+    }
+    
+    /**
+     * Records a delta transfer.
+     * 
+     * @param literalBytes Bytes taken from the source and written to the target
+     * @param movedBytes Bytes reused from another offset of the target
+     * @param matchedBytes Bytes already in place in the target and left untouched
+     */
+    public void recordDelta(long literalBytes, long movedBytes, long matchedBytes) {
+        files.increment();
+        deltaFiles.increment();
+        deltaLiteralBytes.add(literalBytes);
+        deltaMovedBytes.add(movedBytes);
+        deltaMatchedBytes.add(matchedBytes);
+    }
+    
+    public long getFiles() {
+        return files.sum();
+    }
+    
+    /**
+     * @return Bytes read from a source and written to a target
+     */
+    public long getBytesTransferred() {
+        return bytesCopied.sum() + deltaLiteralBytes.sum();
+    }
+    
+    /**
+     * @return Bytes that delta transfers did not have to move from the source
+     */
+    public long getBytesSaved() {
+        return deltaMovedBytes.sum() + deltaMatchedBytes.sum();
+    }
+    
+    public long getDeltaFiles() {
+        return deltaFiles.sum();
+    }
+    
+    @Override
+    public String toString() {
+        return getFiles() + " files, " + getBytesTransferred() + " bytes transferred"
+                + (getDeltaFiles() > 0 ? ", " + getBytesSaved() + " bytes saved by delta transfer of "
+                + getDeltaFiles() + " files" : "");
+    }
+}
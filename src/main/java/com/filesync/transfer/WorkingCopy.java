@@ -0,0 +1,76 @@
+package com.filesync.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * Copy of a local file that a delta transfer rewrites instead of the file itself.
+ * The file keeps its content until {@link #complete} renames the finished copy over it
+ * through the folder's {@link GroupCommit}, so a transfer stopped by a failure or a
+ * crash never leaves it half rewritten. An incomplete copy is deleted on {@link #close()};
+ * one left by a crash is a hidden temp file that scanners skip, see {@link PartialFile#isPartialName}.
+ */
+public class WorkingCopy implements Closeable {
+    private final Path target;
+    private final Path temp;
+    private final GroupCommit commit;
+    private final Set<PosixFilePermission> permissions;
+    private final FileChannel channel;
+    private boolean completed;
+    
+    /**
+     * @param target File the copy replaces
+     * @param temp Copy of the target's content, in the target's directory
+     * @param commit Group commit of the target's folder
+     * @param permissions Permissions the installed copy gets, or null where there are none
+     */
+    WorkingCopy(Path target, Path temp, GroupCommit commit, Set<PosixFilePermission> permissions)
+            throws IOException {
+        this.target = target;
+        this.temp = temp;
+        this.commit = commit;
+        this.permissions = permissions;
+        this.channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+    
+    /**
+     * @return Read-write channel on the copy
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+    
+    /**
+     * Replaces the target with the updated copy.
+     * 
+     * @param lastModified Modification time the target gets
+     */
+    public void complete(long lastModified) throws IOException {
+        channel.close();
+        // Applied last: permissions may make the copy read-only
+        Files.setLastModifiedTime(temp, FileTime.fromMillis(lastModified));
+        if (permissions != null) {
+            Files.setPosixFilePermissions(temp, permissions);
+        }
+        commit.install(temp, target);
+        completed = true;
+    }
+    
+    /**
+     * Closes the copy, deleting it unless it was completed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (!completed) {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.filesync.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncStatCommandTest {
+    
+    @Test
+    void medianIgnoresOutliers() {
+        assertEquals(20L, SyncStatCommand.median(runs(10L, 1000L, 20L), "durationMs"));
+        assertEquals(30L, SyncStatCommand.median(runs(40L, 10L, 30L, 20L), "durationMs"));
+        assertEquals(0L, SyncStatCommand.median(runs(5L), "scanMs"), "missing values read as 0");
+    }
+    
+    @Test
+    void comparesLatestRunWithMedianOfEarlierOnes() {
+        List<Map<String, Long>> history = runs(100L, 5000L, 100L, 120L, 200L);
+        history.get(1).put("succeeded", 0L);
+        
+        String output = print(history);
+        assertTrue(output.contains("FAILED"), output);
+        assertTrue(output.contains("median of the 4 runs before it"), output);
+        // Median of 100, 5000, 100, 120 is 120: the outlier does not hide the slowdown
+        assertTrue(output.contains("Total time            200 (median 120, +67%)"), output);
+        assertTrue(output.contains("Scan                    0 (median 0, n/a)"), output);
+    }
+    
+    @Test
+    void singleRunHasNoTrend() {
+        String output = print(runs(100L));
+        assertFalse(output.contains("median"), output);
+        assertTrue(print(new ArrayList<>()).contains("No runs recorded yet"));
+    }
+    
+    private static String print(List<Map<String, Long>> history) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SyncStatCommand.printRuns(history, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * @return Successful runs with the given durations, oldest first
+     */
+    private static List<Map<String, Long>> runs(long... durations) {
+        List<Map<String, Long>> runs = new ArrayList<>();
+        for (long duration : durations) {
+            Map<String, Long> run = new HashMap<>();
+            run.put("timestamp", 1_600_000_000_000L);
+            run.put("durationMs", duration);
+            run.put("succeeded", 1L);
+            runs.add(run);
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,56 @@
+package com.filesync.conflict;
+
+import com.filesync.conflict.ConflictResolver.Resolution;
+import com.filesync.filesystem.FileSystemNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConflictResolverTest {
+    private static final FileSystemNode OLDER = new FileSystemNode("file", false, 1000L, 1L);
+    private static final FileSystemNode NEWER = new FileSystemNode("file", false, 2000L, 1L);
+    
+    @Test
+    void newestWins() {
+        ConflictResolver resolver = ConflictResolverFactory.createConflictResolver("newest-wins");
+        assertEquals(Resolution.USE_A, resolver.resolve("file", NEWER, OLDER));
+        assertEquals(Resolution.USE_B, resolver.resolve("file", OLDER, NEWER));
+        assertEquals(Resolution.USE_A, resolver.resolve("file", OLDER, OLDER));
+    }
+    
+    @Test
+    void modificationBeatsDeletion() {
+        ConflictResolver resolver = ConflictResolverFactory.createConflictResolver("newest-wins");
+        assertEquals(Resolution.USE_A, resolver.resolve("file", OLDER, null));
+        assertEquals(Resolution.USE_B, resolver.resolve("file", null, OLDER));
+    }
+    
+    @Test
+    void preferredSideWinsEvenWithDeletion() {
+        assertEquals(Resolution.USE_A,
+                ConflictResolverFactory.createConflictResolver("prefer-a").resolve("file", null, NEWER));
+        assertEquals(Resolution.USE_B,
+                ConflictResolverFactory.createConflictResolver("prefer-b").resolve("file", NEWER, OLDER));
+    }
+    
+    @Test
+    void keepBothAndDefer() {
+        assertEquals(Resolution.KEEP_BOTH,
+                ConflictResolverFactory.createConflictResolver("keep-both").resolve("file", NEWER, OLDER));
+        assertEquals(Resolution.DEFER,
+                ConflictResolverFactory.createConflictResolver("defer").resolve("file", NEWER, OLDER));
+    }
+    
+    @Test
+    void askDefersWithoutConsole() {
+        // Test runs have no console attached, like cron or service runs
+        assertInstanceOf(DeferResolver.class, ConflictResolverFactory.createConflictResolver("ask"));
+    }
+    
+    @Test
+    void rejectsUnknownPolicy() {
+        assertThrows(IllegalArgumentException.class, () -> ConflictResolverFactory.createConflictResolver("coin"));
+    }
+}
@@ -0,0 +1,72 @@
+package com.filesync.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConflictQueueTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void keepsPathsAndTimesAcrossSaves() throws IOException {
+        Profile profile = profile();
+        ConflictQueue queue = ConflictQueue.load(profile);
+        assertTrue(queue.isEmpty());
+        queue.add("b/file");
+        queue.add("a file=with:specials");
+        long deferredAt = queue.getDeferredAt("b/file");
+        queue.save();
+        
+        ConflictQueue loaded = ConflictQueue.load(profile);
+        assertEquals(List.of("a file=with:specials", "b/file"), sorted(loaded.getPaths()));
+        assertEquals(deferredAt, loaded.getDeferredAt("b/file"));
+        
+        // Deferring again keeps the first time
+        loaded.add("b/file");
+        assertEquals(deferredAt, loaded.getDeferredAt("b/file"));
+        assertEquals(0L, loaded.getDeferredAt("other"));
+    }
+    
+    @Test
+    void removesPathsBelowDirectory() throws IOException {
+        ConflictQueue queue = ConflictQueue.load(profile());
+        queue.add("dir");
+        queue.add("dir/file");
+        queue.add("dir/sub/file");
+        queue.add("directory");
+        queue.removeUnder("dir");
+        assertEquals(List.of("directory"), queue.getPaths());
+    }
+    
+    @Test
+    void emptyQueueRemovesFile() throws IOException {
+        Profile profile = profile();
+        ConflictQueue queue = ConflictQueue.load(profile);
+        queue.add("file");
+        queue.save();
+        Path file = folder.resolve("p.conflicts");
+        assertTrue(Files.exists(file));
+        
+        queue.clear();
+        queue.save();
+        assertFalse(Files.exists(file));
+    }
+    
+    private Profile profile() {
+        return new Profile(folder.resolve("p").toString(), "a", "b");
+    }
+    
+    private static List<String> sorted(List<String> paths) {
+        paths.sort(null);
+        return paths;
+    }
+}
@@ -0,0 +1,103 @@
+package com.filesync.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Skips directories whose subtree is unchanged since the last sync, seen through the
+ * registry lookups the diff makes.
+ */
+class DirectorySummarySyncTest {
+    private static final long TIME = 1_600_000_000_000L;
+    
+    @TempDir
+    Path folder;
+    private Path a;
+    private Path b;
+    private Profile profile;
+    private LookupRecordingRegistry registry;
+    
+    @BeforeEach
+    void createSides() throws IOException {
+        a = Files.createDirectory(folder.resolve("a"));
+        b = Files.createDirectory(folder.resolve("b"));
+        profile = new Profile(folder.resolve("p").toString(), a.toString(), b.toString());
+        registry = new LookupRecordingRegistry();
+        write(a, "dir/file", "v1", TIME);
+        write(a, "dir/sub/other", "v1", TIME);
+        write(a, "top", "v1", TIME);
+    }
+    
+    @Test
+    void unchangedSubtreeIsSkipped() throws IOException {
+        sync();
+        // The first run only finds the directory on one side, the second records it as identical
+        sync();
+        long summary = registry.getDirectorySummary("dir");
+        assertNotEquals(0L, summary);
+        assertTrue(registry.getEntries().stream().noneMatch(entry -> entry.getPath().endsWith("/")));
+        
+        sync();
+        
+        assertFalse(registry.lookups.contains("dir/file"));
+        assertFalse(registry.lookups.contains("dir/sub/other"));
+        assertTrue(registry.lookups.contains("top"));
+        assertEquals(summary, registry.getDirectorySummary("dir"));
+    }
+    
+    @Test
+    void changedSubtreeIsWalkedAgain() throws IOException {
+        sync();
+        sync();
+        long summary = registry.getDirectorySummary("dir");
+        
+        write(a, "dir/sub/other", "v2", TIME + 1000L);
+        sync();
+        
+        assertTrue(registry.lookups.contains("dir/sub/other"));
+        assertEquals("v2", Files.readString(b.resolve("dir/sub/other")));
+        assertEquals(0L, registry.getDirectorySummary("dir"));
+        
+        // Identical again: recorded anew, with the summary of the new content
+        sync();
+        assertNotEquals(0L, registry.getDirectorySummary("dir"));
+        assertNotEquals(summary, registry.getDirectorySummary("dir"));
+        sync();
+        assertFalse(registry.lookups.contains("dir/sub/other"));
+    }
+    
+    private void sync() throws IOException {
+        registry.lookups.clear();
+        new SyncEngine(profile, registry, "json").synchronize();
+    }
+    
+    private static void write(Path side, String path, String content, long time) throws IOException {
+        Path file = side.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+    }
+    
+    private static class LookupRecordingRegistry extends Registry {
+        private final Set<String> lookups = new HashSet<>();
+        
+        @Override
+        public Entry getEntry(String path) {
+            lookups.add(path);
+            return super.getEntry(path);
+        }
+    }
+}
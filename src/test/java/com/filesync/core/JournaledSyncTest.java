@@ -0,0 +1,86 @@
+package com.filesync.core;
+
+import com.filesync.core.registry.RegistryJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Interrupts a journaled run with batched durability after the registry recorded its
+ * copies, but before they were installed and flushed.
+ */
+class JournaledSyncTest {
+    /** More than a checkpoint's worth of journal records used to be forced early. */
+    private static final int FILES = 1100;
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void crashBeforeFlushLeavesNoRecordOfLostCopies() throws IOException {
+        Path a = Files.createDirectory(folder.resolve("a"));
+        Path b = Files.createDirectory(folder.resolve("b"));
+        for (int i = 0; i < FILES; i++) {
+            Files.writeString(a.resolve("file" + i), "content " + i);
+        }
+        Profile profile = new Profile(folder.resolve("p").toString(), a.toString(), b.toString());
+        profile.setOption("registry.journal", "true");
+        profile.setOption("copy.durability", "batched");
+        profile.setOption("copy.durabilityBatchFiles", String.valueOf(10 * FILES));
+        
+        Registry registry = RegistryManager.getInstance().loadRegistry(profile, "json");
+        Registry.Listener journal = registry.getListener();
+        registry.setListener(new Registry.Listener() {
+            private int added;
+            
+            @Override
+            public void entryAdded(Registry.Entry entry) {
+                journal.entryAdded(entry);
+                if (++added == FILES) {
+                    throw new IllegalStateException("crash");
+                }
+            }
+            
+            @Override
+            public void entryRemoved(String path) {
+                journal.entryRemoved(path);
+            }
+            
+            @Override
+            public void directorySummarySet(String path, long summary) {
+                journal.directorySummarySet(path, summary);
+            }
+            
+            @Override
+            public void directorySummaryRemoved(String path) {
+                journal.directorySummaryRemoved(path);
+            }
+        });
+        assertThrows(IllegalStateException.class, () -> new SyncEngine(profile, registry, "json").synchronize());
+        
+        // What a restart would read: every recorded copy must be in place
+        Path log = folder.resolve("crashed.journal");
+        Files.copy(Path.of(profile.getName() + ".json.journal"), log);
+        Registry recovered = new Registry();
+        try (RegistryJournal replay = new RegistryJournal(log)) {
+            replay.replay(recovered);
+        }
+        for (Registry.Entry entry : recovered.getEntries()) {
+            assertEquals(Files.readString(a.resolve(entry.getPath())), Files.readString(b.resolve(entry.getPath())));
+        }
+        
+        // The next run copies again whatever was lost
+        Registry reloaded = RegistryManager.getInstance().loadRegistry(profile, "json");
+        new SyncEngine(profile, reloaded, "json").synchronize();
+        for (int i = 0; i < FILES; i++) {
+            assertEquals("content " + i, Files.readString(b.resolve("file" + i)));
+        }
+        assertEquals(FILES, reloaded.getEntries().size());
+    }
+}
@@ -0,0 +1,108 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.ScanEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MergeJoinDiffTest {
+    
+    @Test
+    void interleavedPathsAreReportedOnceInOrder() throws IOException {
+        List<String> joined = join(scan("a", "c", "e"), scan("b", "c", "d"), path -> true);
+        assertEquals(List.of("a A", "b B", "c AB", "d B", "e A"), joined);
+    }
+    
+    @Test
+    void childrenComeBeforeSiblingsSortingBelowSlash() throws IOException {
+        // '-' and '.' sort before '/' in plain string order, but a directory's contents come first
+        List<String> sorted = new ArrayList<>(List.of("a.d", "a-c", "a/b", "a"));
+        sorted.sort(ScanEntry::comparePaths);
+        assertEquals(List.of("a", "a/b", "a-c", "a.d"), sorted);
+        
+        List<String> joined = join(scan("a/", "a/b", "a.d"), scan("a/", "a-c", "a.d"), path -> true);
+        assertEquals(List.of("a AB", "a/b A", "a-c B", "a.d AB"), joined);
+    }
+    
+    @Test
+    void fileAndDirectoryAtSamePathAreJoined() throws IOException {
+        List<FileSystemNode[]> nodes = new ArrayList<>();
+        MergeJoinDiff.join(scan("x/", "x/y", "z").iterator(), scan("x", "z").iterator(), (path, nodeA, nodeB) -> {
+            nodes.add(new FileSystemNode[] {nodeA, nodeB});
+            return true;
+        });
+        
+        assertEquals(3, nodes.size());
+        assertTrue(nodes.get(0)[0].isDirectory());
+        assertFalse(nodes.get(0)[1].isDirectory());
+        assertEquals("y", nodes.get(1)[0].getName());
+        assertNull(nodes.get(1)[1]);
+    }
+    
+    @Test
+    void skippedDirectoryHidesItsContentsOnBothSides() throws IOException {
+        List<String> joined = join(scan("d/", "d/a", "d/b/", "d/b/c", "d-e"), scan("d/", "d/b/", "d/z", "e"),
+                path -> !path.equals("d"));
+        assertEquals(List.of("d AB", "d-e A", "e B"), joined);
+    }
+    
+    @Test
+    void emptySideReportsEverythingOnTheOther() throws IOException {
+        assertEquals(List.of("a A", "a/b A"), join(scan("a/", "a/b"), scan(), path -> true));
+        assertEquals(List.of("a B", "c B"), join(scan(), scan("a", "c"), path -> true));
+        assertEquals(List.of(), join(scan(), scan(), path -> true));
+    }
+    
+    @Test
+    void joinAllReadsEveryScanOnce() throws IOException {
+        List<String> joined = new ArrayList<>();
+        List<Iterator<ScanEntry>> sides = List.of(scan("a", "b/", "b/c").iterator(), scan("b/", "b/d").iterator(),
+                scan().iterator(), scan("a", "a-b").iterator());
+        MergeJoinDiff.joinAll(sides, (path, nodes) -> {
+            StringBuilder present = new StringBuilder(path).append(' ');
+            for (int i = 0; i < nodes.length; i++) {
+                present.append(nodes[i] != null ? (char) ('A' + i) : "");
+            }
+            joined.add(present.toString());
+            return true;
+        });
+        assertEquals(List.of("a AD", "a-b D", "b AB", "b/c A", "b/d B"), joined);
+    }
+    
+    /**
+     * @return Each reported path followed by the sides holding it
+     */
+    private static List<String> join(List<ScanEntry> sideA, List<ScanEntry> sideB, Predicate<String> descend)
+            throws IOException {
+        List<String> joined = new ArrayList<>();
+        MergeJoinDiff.join(sideA.iterator(), sideB.iterator(), (path, nodeA, nodeB) -> {
+            joined.add(path + " " + (nodeA != null ? "A" : "") + (nodeB != null ? "B" : ""));
+            return descend.test(path);
+        });
+        return joined;
+    }
+    
+    /**
+     * @param paths Sorted paths; those ending with a slash are directories
+     */
+    private static List<ScanEntry> scan(String... paths) {
+        List<ScanEntry> entries = new ArrayList<>();
+        for (String path : paths) {
+            boolean directory = path.endsWith("/");
+            String name = directory ? path.substring(0, path.length() - 1) : path;
+            entries.add(new ScanEntry(name, new FileSystemNode(name.substring(name.lastIndexOf('/') + 1), directory,
+                    0L, directory ? 0L : 1L)));
+        }
+        return entries;
+    }
+}
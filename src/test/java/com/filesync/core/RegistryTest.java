@@ -0,0 +1,42 @@
+package com.filesync.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegistryTest {
+    
+    @Test
+    void cachedDigestNeedsUnchangedMetadata() {
+        Registry registry = new Registry();
+        registry.addEntry("file", 1000L, 10L, "abc");
+        Registry.Entry entry = registry.getEntry("file");
+        
+        assertEquals("abc", entry.getDigestIfUnchanged(1000L, 10L));
+        assertNull(entry.getDigestIfUnchanged(1001L, 10L));
+        assertNull(entry.getDigestIfUnchanged(1000L, 11L));
+    }
+    
+    @Test
+    void entryWithoutDigestHasNone() {
+        Registry registry = new Registry();
+        registry.addEntry("file", 1000L);
+        assertNull(registry.getEntry("file").getDigestIfUnchanged(1000L, 0L));
+    }
+    
+    @Test
+    void directorySummariesAreNotEntries() {
+        Registry registry = new Registry();
+        registry.setDirectorySummary("dir", 42L);
+        
+        assertEquals(42L, registry.getDirectorySummary("dir"));
+        assertTrue(registry.getEntries().isEmpty());
+        assertNull(registry.getEntry("dir"));
+        assertNull(registry.getEntry("dir/"));
+        
+        registry.removeDirectorySummary("dir");
+        assertEquals(0L, registry.getDirectorySummary("dir"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.LocalFileSystemHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenameDetectorTest {
+    private static final long TIME = 1_600_000_000_000L;
+    
+    @TempDir
+    Path folder;
+    private Path a;
+    private Path b;
+    private LocalFileSystemHandler handlerA;
+    private LocalFileSystemHandler handlerB;
+    
+    @BeforeEach
+    void createSides() throws IOException {
+        a = Files.createDirectory(folder.resolve("a"));
+        b = Files.createDirectory(folder.resolve("b"));
+        handlerA = new LocalFileSystemHandler(a.toString());
+        handlerB = new LocalFileSystemHandler(b.toString());
+    }
+    
+    @Test
+    void renamedFileIsPaired() throws IOException {
+        RenameDetector detector = new RenameDetector(true);
+        offerDeletedOnA(detector, "old.txt", "content");
+        offerNewOnA(detector, "new.txt", "content");
+        
+        List<RenameDetector.Move> moves = detector.detect(handlerA, handlerB);
+        
+        assertEquals(1, moves.size());
+        RenameDetector.Move move = moves.get(0);
+        assertEquals("old.txt", move.getFromPath());
+        assertEquals("new.txt", move.getToPath());
+        assertTrue(move.isRenamedOnA());
+        assertEquals(handlerA.computeDigest("new.txt"), move.getDigest());
+        assertTrue(detector.getUnmatched().isEmpty());
+    }
+    
+    @Test
+    void sameMetadataWithOtherContentIsNotPaired() throws IOException {
+        RenameDetector detector = new RenameDetector(true);
+        offerDeletedOnA(detector, "old.txt", "content");
+        offerNewOnA(detector, "new.txt", "CONTENT");
+        
+        assertTrue(detector.detect(handlerA, handlerB).isEmpty());
+        assertEquals(2, detector.getUnmatched().size());
+    }
+    
+    @Test
+    void unverifiedPairTrustsMetadata() throws IOException {
+        // The opt-out pairs a lone candidate on size and timestamp alone
+        RenameDetector detector = new RenameDetector(false);
+        offerDeletedOnA(detector, "old.txt", "content");
+        offerNewOnA(detector, "new.txt", "CONTENT");
+        
+        assertEquals(1, detector.detect(handlerA, handlerB).size());
+    }
+    
+    @Test
+    void ambiguousGroupIsPairedByContent() throws IOException {
+        RenameDetector detector = new RenameDetector(false);
+        offerDeletedOnA(detector, "old1.txt", "first");
+        offerDeletedOnA(detector, "old2.txt", "other");
+        offerNewOnA(detector, "new2.txt", "other");
+        offerNewOnA(detector, "new1.txt", "first");
+        
+        List<RenameDetector.Move> moves = detector.detect(handlerA, handlerB);
+        
+        assertEquals(2, moves.size());
+        assertEquals("old2.txt", moves.get(0).getFromPath());
+        assertEquals("new2.txt", moves.get(0).getToPath());
+        assertEquals("old1.txt", moves.get(1).getFromPath());
+        assertEquals("new1.txt", moves.get(1).getToPath());
+    }
+    
+    /**
+     * A file renamed away on A is gone there; its copy on B is what the registry recorded.
+     */
+    private void offerDeletedOnA(RenameDetector detector, String path, String content) throws IOException {
+        FileSystemNode node = write(b, path, content);
+        detector.offer(path, SyncEngine.SyncStatus.A_DELETED, null, node,
+                new Registry.Entry(path, TIME, node.getSize(), null));
+    }
+    
+    private void offerNewOnA(RenameDetector detector, String path, String content) throws IOException {
+        detector.offer(path, SyncEngine.SyncStatus.A_NEW, write(a, path, content), null, null);
+    }
+    
+    private static FileSystemNode write(Path side, String path, String content) throws IOException {
+        Path file = side.resolve(path);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(TIME));
+        return new FileSystemNode(path, false, TIME, Files.size(file));
+    }
+}
@@ -0,0 +1,148 @@
+package com.filesync.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Synchronizes three local replicas end to end.
+ */
+class ReplicaSyncTest {
+    private static final long TIME = 1_600_000_000_000L;
+    
+    @TempDir
+    Path folder;
+    private final List<Path> replicas = new ArrayList<>();
+    private Profile profile;
+    private Registry registry;
+    
+    @BeforeEach
+    void createReplicas() throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (String name : new String[] {"a", "b", "c"}) {
+            Path replica = Files.createDirectory(folder.resolve(name));
+            replicas.add(replica);
+            paths.add(replica.toString());
+        }
+        profile = new Profile(folder.resolve("p").toString(), paths);
+        profile.setOption("conflict.policy", "newest-wins");
+        registry = new Registry();
+    }
+    
+    @Test
+    void newFileReachesEveryReplica() throws IOException {
+        write(1, "dir/file", "new", TIME);
+        sync();
+        for (Path replica : replicas) {
+            assertEquals("new", Files.readString(replica.resolve("dir/file")));
+        }
+        assertEquals(TIME, registry.getEntry("dir/file").getLastModified());
+    }
+    
+    @Test
+    void changeOnOneReplicaIsPropagated() throws IOException {
+        write(0, "file", "v1", TIME);
+        sync();
+        write(2, "file", "v2", TIME + 1000L);
+        sync();
+        for (Path replica : replicas) {
+            assertEquals("v2", Files.readString(replica.resolve("file")));
+        }
+    }
+    
+    @Test
+    void deletionOnOneReplicaIsPropagated() throws IOException {
+        write(0, "file", "v1", TIME);
+        write(0, "kept", "v1", TIME);
+        sync();
+        Files.delete(replicas.get(1).resolve("file"));
+        sync();
+        for (Path replica : replicas) {
+            assertFalse(Files.exists(replica.resolve("file")));
+            assertTrue(Files.exists(replica.resolve("kept")));
+        }
+        assertNull(registry.getEntry("file"));
+    }
+    
+    @Test
+    void conflictingChangesFollowPolicy() throws IOException {
+        write(0, "file", "v1", TIME);
+        sync();
+        write(0, "file", "older", TIME + 1000L);
+        write(2, "file", "newer", TIME + 2000L);
+        sync();
+        for (Path replica : replicas) {
+            assertEquals("newer", Files.readString(replica.resolve("file")));
+        }
+    }
+    
+    @Test
+    void addedReplicaIsSeeded() throws IOException {
+        write(0, "file", "v1", TIME);
+        Profile pair = new Profile(profile.getName(), replicas.get(0).toString(), replicas.get(1).toString());
+        new SyncEngine(pair, registry, "json").synchronize();
+        
+        // The third folder joins with files of its own and none of the pair's
+        write(2, "other", "v1", TIME);
+        sync();
+        for (Path replica : replicas) {
+            assertEquals("v1", Files.readString(replica.resolve("file")));
+            assertEquals("v1", Files.readString(replica.resolve("other")));
+        }
+        
+        // From now on the third folder is known: a deletion there is propagated
+        Files.delete(replicas.get(2).resolve("file"));
+        sync();
+        assertFalse(Files.exists(replicas.get(0).resolve("file")));
+    }
+    
+    @Test
+    void emptiedReplicaIsSeededAgain() throws IOException {
+        write(0, "dir/file", "v1", TIME);
+        write(1, "kept", "v1", TIME);
+        sync();
+        Files.delete(replicas.get(2).resolve("dir/file"));
+        Files.delete(replicas.get(2).resolve("dir"));
+        Files.delete(replicas.get(2).resolve("kept"));
+        sync();
+        for (Path replica : replicas) {
+            assertTrue(Files.exists(replica.resolve("dir/file")));
+            assertTrue(Files.exists(replica.resolve("kept")));
+        }
+    }
+    
+    @Test
+    void missingReplicaStopsRun() throws IOException {
+        write(0, "file", "v1", TIME);
+        sync();
+        Files.delete(replicas.get(2).resolve("file"));
+        Files.delete(replicas.get(2));
+        assertThrows(IOException.class, this::sync);
+        assertTrue(Files.exists(replicas.get(0).resolve("file")));
+        assertTrue(Files.exists(replicas.get(1).resolve("file")));
+    }
+    
+    private void sync() throws IOException {
+        new SyncEngine(profile, registry, "json").synchronize();
+    }
+    
+    private void write(int replica, String path, String content, long lastModified) throws IOException {
+        Path file = replicas.get(replica).resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+}
@@ -0,0 +1,86 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.filesystem.TreeSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ScanCacheTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void sharesScanBetweenExpectingRuns() throws IOException {
+        CountingHandler handler = new CountingHandler(folder);
+        ScanCache cache = new ScanCache();
+        String root = folder.toString();
+        long due = System.currentTimeMillis();
+        cache.expect(root);
+        cache.expect(folder.resolve("x/..").toString());
+        
+        TreeSnapshot first = cache.snapshot(root, handler::snapshot, due);
+        TreeSnapshot second = cache.snapshot(root, handler::snapshot, due);
+        assertSame(first, second);
+        assertEquals(1, handler.scans.get());
+    }
+    
+    @Test
+    void scansAgainWithoutExpectation() throws IOException {
+        CountingHandler handler = new CountingHandler(folder);
+        ScanCache cache = new ScanCache();
+        String root = folder.toString();
+        cache.snapshot(root, handler::snapshot, 0L);
+        cache.snapshot(root, handler::snapshot, 0L);
+        assertEquals(2, handler.scans.get());
+        
+        // Released announcements drop the snapshot
+        cache.expect(root);
+        cache.snapshot(root, handler::snapshot, 0L);
+        cache.release(root);
+        cache.expect(root);
+        cache.snapshot(root, handler::snapshot, 0L);
+        assertEquals(4, handler.scans.get());
+    }
+    
+    @Test
+    void invalidatedOrOlderScanIsNotShared() throws IOException {
+        CountingHandler handler = new CountingHandler(folder);
+        ScanCache cache = new ScanCache();
+        String root = folder.toString();
+        cache.expect(root);
+        cache.expect(root);
+        cache.expect(root);
+        
+        TreeSnapshot first = cache.snapshot(root, handler::snapshot, 0L);
+        cache.invalidate(root);
+        TreeSnapshot second = cache.snapshot(root, handler::snapshot, 0L);
+        assertNotSame(first, second);
+        
+        // A run that became due after the scan ended needs a newer one
+        TreeSnapshot third = cache.snapshot(root, handler::snapshot, System.currentTimeMillis() + 1000L);
+        assertNotSame(second, third);
+        assertEquals(3, handler.scans.get());
+    }
+    
+    private static class CountingHandler extends LocalFileSystemHandler {
+        final AtomicInteger scans = new AtomicInteger();
+        
+        CountingHandler(Path root) {
+            super(root.toString());
+        }
+        
+        @Override
+        public TreeSnapshot snapshot() throws IOException {
+            scans.incrementAndGet();
+            return super.snapshot();
+        }
+    }
+}
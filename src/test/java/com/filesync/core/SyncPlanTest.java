@@ -0,0 +1,91 @@
+package com.filesync.core;
+
+import com.filesync.filesystem.FileSystemNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncPlanTest {
+    
+    @Test
+    void ordersConflictsThenSmallThenLargeThenDeletions() {
+        SyncPlan plan = new SyncPlan(100L);
+        plan.add("gone", SyncEngine.SyncStatus.A_DELETED, null, file("gone", 10L), null);
+        plan.add("big", SyncEngine.SyncStatus.A_NEW, file("big", 1000L), null, null);
+        plan.add("both", SyncEngine.SyncStatus.CONFLICT, file("both", 1L), file("both", 2L), null);
+        plan.add("small", SyncEngine.SyncStatus.B_NEWER, file("small", 1L), file("small", 1L), null);
+        
+        assertEquals(List.of("both", "small", "big", "gone"), paths(plan.getOperations()));
+    }
+    
+    @Test
+    void groupsWritesBySideAndDirectory() {
+        SyncPlan plan = new SyncPlan(100L);
+        plan.add("x/2", SyncEngine.SyncStatus.A_NEW, file("2", 1L), null, null);
+        plan.add("y/1", SyncEngine.SyncStatus.B_NEW, null, file("1", 1L), null);
+        plan.add("y/3", SyncEngine.SyncStatus.A_NEW, file("3", 1L), null, null);
+        plan.add("x/1", SyncEngine.SyncStatus.A_NEWER, file("1", 1L), file("1", 1L), null);
+        plan.add("x/sub/1", SyncEngine.SyncStatus.B_NEW, null, file("1", 1L), null);
+        
+        assertEquals(List.of("x/1", "x/2", "y/3", "x/sub/1", "y/1"), paths(plan.getOperations()));
+    }
+    
+    @Test
+    void deletesDeepestPathsFirst() {
+        SyncPlan plan = new SyncPlan(100L);
+        plan.add("a", SyncEngine.SyncStatus.B_DELETED, file("a", 1L), null, null);
+        plan.add("a/b/c", SyncEngine.SyncStatus.B_DELETED, file("c", 1L), null, null);
+        plan.add("a/b", SyncEngine.SyncStatus.B_DELETED, file("b", 1L), null, null);
+        plan.add("d/e", SyncEngine.SyncStatus.A_DELETED, null, file("e", 1L), null);
+        
+        assertEquals(List.of("a/b/c", "a/b", "d/e", "a"), paths(plan.getOperations()));
+    }
+    
+    @Test
+    void keepsOnlyWorkAndCountsIt() {
+        SyncPlan plan = new SyncPlan(100L);
+        plan.add("same", SyncEngine.SyncStatus.NO_CHANGE, file("same", 1L), file("same", 1L), null);
+        assertTrue(plan.isEmpty());
+        
+        plan.add("new/dir/file", SyncEngine.SyncStatus.A_NEW, file("file", 300L), null, null);
+        plan.add("updated", SyncEngine.SyncStatus.B_NEWER, file("updated", 5L), file("updated", 20L), null);
+        plan.add("gone", SyncEngine.SyncStatus.A_DELETED, null, file("gone", 7L), null);
+        
+        assertEquals(320L, plan.getTotalBytes());
+        assertEquals(1, plan.countOperations(SyncPlan.Action.DELETE));
+        assertEquals(List.of("new/dir"), plan.getTargetDirectories(true));
+        assertEquals(List.of(), plan.getTargetDirectories(false));
+    }
+    
+    @Test
+    void deletionsWaitForEverythingElse() {
+        SyncPlan plan = new SyncPlan(100L);
+        plan.add("old/gone", SyncEngine.SyncStatus.A_DELETED, null, file("gone", 10L), null);
+        plan.add("big", SyncEngine.SyncStatus.A_NEW, file("big", 1000L), null, null);
+        plan.add("both", SyncEngine.SyncStatus.CONFLICT, file("both", 1L), file("both", 2L), null);
+        plan.add("small", SyncEngine.SyncStatus.B_NEWER, file("small", 1L), file("small", 1L), null);
+        plan.add("same", SyncEngine.SyncStatus.NO_CHANGE, file("same", 1L), file("same", 1L), null);
+        
+        List<List<SyncPlan.Operation>> stages = plan.getStages();
+        assertEquals(2, stages.size());
+        assertEquals(List.of("both", "small", "big"), paths(stages.get(0)));
+        assertEquals(List.of("old/gone"), paths(stages.get(1)));
+    }
+    
+    @Test
+    void emptyPlanHasNoStages() {
+        assertEquals(0, new SyncPlan().getStages().size());
+    }
+    
+    private static FileSystemNode file(String name, long size) {
+        return new FileSystemNode(name, false, 1000L, size);
+    }
+    
+    private static List<String> paths(List<SyncPlan.Operation> operations) {
+        return operations.stream().map(SyncPlan.Operation::getPath).collect(Collectors.toList());
+    }
+}
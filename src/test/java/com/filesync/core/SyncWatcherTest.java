@@ -0,0 +1,127 @@
+package com.filesync.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncWatcherTest {
+    private static final long TIMEOUT_MILLIS = 10_000L;
+    
+    @TempDir
+    Path folder;
+    private Path a;
+    private Path b;
+    private Profile profile;
+    
+    @BeforeEach
+    void createSides() throws IOException {
+        a = Files.createDirectory(folder.resolve("a"));
+        b = Files.createDirectory(folder.resolve("b"));
+        profile = new Profile(folder.resolve("p").toString(), a.toString(), b.toString());
+        profile.setOption("watch.debounceMillis", "20");
+        profile.setOption("watch.maxDelayMillis", "200");
+        profile.setOption("watch.retryMillis", "100");
+        Files.writeString(a.resolve("initial"), "initial");
+    }
+    
+    @Test
+    void synchronizesChangedPaths() throws Exception {
+        AtomicInteger pathSyncs = new AtomicInteger();
+        SyncEngine engine = new SyncEngine(profile, new Registry(), "json") {
+            @Override
+            public void synchronizePaths(Collection<String> paths) throws IOException {
+                pathSyncs.incrementAndGet();
+                super.synchronizePaths(paths);
+            }
+        };
+        
+        runWatching(engine, () -> {
+            awaitFile(b.resolve("initial"));
+            Files.createDirectories(a.resolve("dir"));
+            Files.writeString(a.resolve("dir/file"), "content");
+            awaitFile(b.resolve("dir/file"));
+            assertEquals("content", Files.readString(b.resolve("dir/file")));
+            assertTrue(pathSyncs.get() > 0, "changes are synchronized by path");
+        });
+    }
+    
+    @Test
+    void retriesFailedCycleWithoutNewChanges() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        SyncEngine engine = new SyncEngine(profile, new Registry(), "json") {
+            @Override
+            public void synchronizePaths(Collection<String> paths) throws IOException {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IOException("target unavailable");
+                }
+                super.synchronizePaths(paths);
+            }
+        };
+        
+        runWatching(engine, () -> {
+            awaitFile(b.resolve("initial"));
+            Files.writeString(a.resolve("file"), "content");
+            // Nothing changes after the failure: the retry delay brings the file over
+            awaitFile(b.resolve("file"));
+            assertTrue(attempts.get() >= 2);
+        });
+    }
+    
+    @Test
+    void rejectsRemoteFolders() {
+        Profile remote = new Profile(folder.resolve("r").toString(), a.toString(), "http://localhost:1/dav");
+        SyncWatcher watcher = new SyncWatcher(remote, new SyncEngine(remote, new Registry(), "json"));
+        assertThrows(IllegalArgumentException.class, watcher::run);
+        assertFalse(Files.exists(b.resolve("initial")), "nothing is synchronized");
+    }
+    
+    private interface Check {
+        void run() throws Exception;
+    }
+    
+    /**
+     * Runs the watcher on a thread of its own during the check, then interrupts it.
+     */
+    private void runWatching(SyncEngine engine, Check check) throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                new SyncWatcher(profile, engine).run();
+            } catch (InterruptedException e) {
+                // Stopped by the test
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "sync-watcher-test");
+        thread.start();
+        try {
+            check.run();
+        } finally {
+            thread.interrupt();
+            thread.join(TIMEOUT_MILLIS);
+        }
+        assertFalse(thread.isAlive());
+        assertNull(failure.get());
+    }
+    
+    private static void awaitFile(Path file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!Files.exists(file) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+        }
+        assertTrue(Files.exists(file), file + " was synchronized");
+    }
+}
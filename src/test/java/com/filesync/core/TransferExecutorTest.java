@@ -0,0 +1,162 @@
+package com.filesync.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferExecutorTest {
+    
+    @Test
+    void appliesUpdatesOfSuccessfulStrategiesOnSubmittingThread() throws IOException {
+        List<Thread> updateThreads = new ArrayList<>();
+        try (TransferExecutor executor = new TransferExecutor(4)) {
+            for (int i = 0; i < 100; i++) {
+                executor.submit(() -> { }, () -> updateThreads.add(Thread.currentThread()));
+            }
+            executor.awaitCompletion();
+        }
+        assertEquals(100, updateThreads.size());
+        for (Thread thread : updateThreads) {
+            assertSame(Thread.currentThread(), thread);
+        }
+    }
+    
+    @Test
+    void reportsIOExceptionAndSkipsItsUpdate() {
+        AtomicInteger updates = new AtomicInteger();
+        IOException failure = new IOException("disk full");
+        try (TransferExecutor executor = new TransferExecutor(2)) {
+            executor.submit(() -> {
+                throw failure;
+            }, updates::incrementAndGet);
+            executor.submit(() -> { }, updates::incrementAndGet);
+            
+            IOException thrown = assertThrows(IOException.class, executor::awaitCompletion);
+            assertSame(failure, thrown);
+        }
+        assertEquals(1, updates.get());
+    }
+    
+    @Test
+    void wrapsRuntimeException() {
+        IllegalStateException bug = new IllegalStateException("bug");
+        try (TransferExecutor executor = new TransferExecutor(2)) {
+            executor.submit(() -> {
+                throw bug;
+            }, () -> { });
+            
+            IOException thrown = assertThrows(IOException.class, executor::awaitCompletion);
+            assertSame(bug, thrown.getCause());
+        }
+    }
+    
+    @Test
+    void suppressesFurtherFailures() {
+        try (TransferExecutor executor = new TransferExecutor(3)) {
+            for (int i = 0; i < 3; i++) {
+                int index = i;
+                executor.submit(() -> {
+                    throw new IOException("failure " + index);
+                }, () -> { });
+            }
+            
+            IOException thrown = assertThrows(IOException.class, executor::awaitCompletion);
+            assertEquals(2, thrown.getSuppressed().length);
+            assertInstanceOf(IOException.class, thrown.getSuppressed()[0]);
+        }
+    }
+    
+    @Test
+    void awaitSubmittedWaitsAndAcceptsMore() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger updates = new AtomicInteger();
+        try (TransferExecutor executor = new TransferExecutor(2)) {
+            executor.submit(() -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, updates::incrementAndGet);
+            Thread releaser = new Thread(() -> {
+                sleep(200L);
+                release.countDown();
+            });
+            releaser.start();
+            
+            executor.awaitSubmitted();
+            assertEquals(0L, release.getCount());
+            assertEquals(1, updates.get());
+            
+            executor.submit(() -> { }, updates::incrementAndGet);
+            executor.awaitCompletion();
+            releaser.join();
+        }
+        assertEquals(2, updates.get());
+    }
+    
+    @Test
+    void awaitSubmittedReportsFailures() {
+        try (TransferExecutor executor = new TransferExecutor(2)) {
+            executor.submit(() -> {
+                throw new IOException("move failed");
+            }, () -> { });
+            IOException thrown = assertThrows(IOException.class, executor::awaitSubmitted);
+            assertEquals("move failed", thrown.getMessage());
+        }
+    }
+    
+    @Test
+    void checkpointsEveryFewUpdates() throws IOException {
+        AtomicInteger checkpoints = new AtomicInteger();
+        try (TransferExecutor executor = new TransferExecutor(1)) {
+            executor.setCheckpoint(checkpoints::incrementAndGet, 10, 0L);
+            for (int i = 0; i < 50; i++) {
+                executor.submit(() -> { }, () -> { });
+                executor.awaitSubmitted();
+            }
+            executor.awaitCompletion();
+        }
+        assertTrue(checkpoints.get() >= 4, "checkpoints: " + checkpoints.get());
+    }
+    
+    @Test
+    void failedCheckpointFailsRun() throws IOException {
+        AtomicInteger checkpoints = new AtomicInteger();
+        AtomicInteger executed = new AtomicInteger();
+        try (TransferExecutor executor = new TransferExecutor(1)) {
+            executor.setCheckpoint(() -> {
+                checkpoints.incrementAndGet();
+                throw new IOException("disk full");
+            }, 1, 0L);
+            executor.submit(executed::incrementAndGet, () -> { });
+            executor.awaitSubmitted();
+            for (int i = 0; i < 5; i++) {
+                executor.submit(executed::incrementAndGet, () -> { });
+            }
+            IOException failure = assertThrows(IOException.class, executor::awaitCompletion);
+            assertTrue(failure.getMessage().contains("disk full"), failure.getMessage());
+        }
+        assertEquals(1, checkpoints.get());
+        assertEquals(1, executed.get(), "nothing runs after a failed checkpoint");
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
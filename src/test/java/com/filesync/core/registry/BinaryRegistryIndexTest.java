@@ -0,0 +1,121 @@
+package com.filesync.core.registry;
+
+import com.filesync.core.Registry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryRegistryIndexTest {
+    private static final String DIGEST = "00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff";
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void findsEveryEntry() throws IOException {
+        Registry registry = new Registry();
+        for (int i = 0; i < 500; i++) {
+            registry.addEntry("dir" + (i % 7) + "/file" + i, 1000L + i, i, i % 2 == 0 ? DIGEST : null);
+        }
+        BinaryRegistryIndex index = save(registry);
+        
+        assertEquals(500, index.size());
+        for (int i = 0; i < 500; i++) {
+            Registry.Entry entry = index.find("dir" + (i % 7) + "/file" + i);
+            assertEquals(1000L + i, entry.getLastModified());
+            assertEquals(i, entry.getSize());
+            assertEquals(i % 2 == 0 ? DIGEST : null, entry.getDigest());
+        }
+    }
+    
+    @Test
+    void missesAbsentPaths() throws IOException {
+        Registry registry = new Registry();
+        registry.addEntry("b", 1L, 1L, null);
+        registry.addEntry("d", 2L, 1L, null);
+        BinaryRegistryIndex index = save(registry);
+        
+        assertNull(index.find("a"));
+        assertNull(index.find("c"));
+        assertNull(index.find("e"));
+        assertNull(index.find("b/"));
+        assertNull(index.find(""));
+    }
+    
+    @Test
+    void dropsMalformedDigest() throws IOException {
+        Registry registry = new Registry();
+        registry.addEntry("short", 1L, 1L, "abc");
+        registry.addEntry("nothex", 1L, 1L, DIGEST.replace('a', 'x'));
+        BinaryRegistryIndex index = save(registry);
+        
+        assertNull(index.find("short").getDigest());
+        assertNull(index.find("nothex").getDigest());
+    }
+    
+    @Test
+    void sortsByUtf8Bytes() throws IOException {
+        // U+E000 sorts after the surrogates of U+1F600 in UTF-16, but before them in UTF-8
+        List<String> paths = List.of("z", "\u00E9t\u00E9", "\uE000", "\uD83D\uDE00", "Z", "a/b");
+        Registry registry = new Registry();
+        for (String path : paths) {
+            registry.addEntry(path, 1L, 1L, null);
+        }
+        BinaryRegistryIndex index = save(registry);
+        
+        for (String path : paths) {
+            assertEquals(path, index.find(path).getPath());
+        }
+        List<String> iterated = new ArrayList<>();
+        index.iterator().forEachRemaining(entry -> iterated.add(entry.getPath()));
+        assertEquals(List.of("Z", "a/b", "z", "\u00E9t\u00E9", "\uE000", "\uD83D\uDE00"), iterated);
+    }
+    
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path file = folder.resolve("p.bin");
+        Files.write(file, new byte[BinaryRegistryIndex.HEADER_SIZE]);
+        assertThrows(IOException.class, () -> BinaryRegistryIndex.open(file));
+        
+        Files.write(file, new byte[4]);
+        assertThrows(IOException.class, () -> BinaryRegistryIndex.open(file));
+    }
+    
+    @Test
+    void rejectsCorruptCounts() throws IOException {
+        // A negative count matching its own offset, and one whose record table size overflows to 0
+        assertThrows(IOException.class, () -> BinaryRegistryIndex.open(header(-1L, -32L)));
+        assertThrows(IOException.class, () -> BinaryRegistryIndex.open(header(1L << 58, 32L)));
+        assertThrows(IOException.class, () -> BinaryRegistryIndex.open(header(1L, 16L)));
+        assertThrows(IOException.class, () -> BinaryRegistryIndex.open(header(1000L, 64_032L)));
+        assertEquals(0, BinaryRegistryIndex.open(header(0L, 32L)).size());
+    }
+    
+    /**
+     * @return File holding only a header with the given record count and string table offset
+     */
+    private Path header(long count, long stringTableOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(BinaryRegistryIndex.HEADER_SIZE);
+        header.putLong(BinaryRegistryIndex.MAGIC).putInt(BinaryRegistryIndex.VERSION).putInt(0)
+                .putLong(count).putLong(stringTableOffset);
+        Path file = folder.resolve("corrupt.bin");
+        Files.write(file, header.array());
+        return file;
+    }
+    
+    private BinaryRegistryIndex save(Registry registry) throws IOException {
+        Path file = folder.resolve("p.bin");
+        new BinaryRegistryBuilder().saveRegistry(registry, file.toString(), null);
+        return BinaryRegistryIndex.open(file);
+    }
+}
@@ -0,0 +1,158 @@
+package com.filesync.core.registry;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonReaderTest {
+    private static final String ESCAPES = "quote \" backslash \\ slash / newline \n return \r tab \t"
+            + " controls \u0000\u0001\b\f\u001f separators \u2028\u2029 unicode \u00e9\u20ac\ud83d\ude00";
+    
+    @Test
+    void readsWhatWriterWrites() throws IOException {
+        String json = write(ESCAPES);
+        assertRoundTrip(new StringReader(json), ESCAPES);
+    }
+    
+    @Test
+    void readsAcrossBufferRefills() throws IOException {
+        // One character per read puts a refill inside every string, escape and number
+        String json = write(ESCAPES);
+        assertRoundTrip(new TrickleReader(json), ESCAPES);
+        
+        // A string longer than the buffer
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("a\"\\\n\u00e9");
+        }
+        assertRoundTrip(new StringReader(write(text.toString())), text.toString());
+    }
+    
+    @Test
+    void readsHandWrittenEscapes() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[\"\\u0041\\u00E9\\/\\b\\f\", \"\\ud83d\\ude00\"]"));
+        reader.expect(JsonReader.Token.BEGIN_ARRAY);
+        reader.expect(JsonReader.Token.STRING);
+        assertEquals("A\u00e9/\b\f", reader.getString());
+        reader.expect(JsonReader.Token.STRING);
+        assertEquals("\ud83d\ude00", reader.getString());
+        reader.expect(JsonReader.Token.END_ARRAY);
+        reader.expect(JsonReader.Token.END_DOCUMENT);
+    }
+    
+    @Test
+    void readsNumbers() throws IOException {
+        JsonReader reader = new JsonReader(
+                new StringReader("[0, -17, 9223372036854775807, -9223372036854775808, 2.5e3]"));
+        reader.expect(JsonReader.Token.BEGIN_ARRAY);
+        long[] expected = {0L, -17L, Long.MAX_VALUE, Long.MIN_VALUE, 2500L};
+        for (long value : expected) {
+            reader.expect(JsonReader.Token.NUMBER);
+            assertEquals(value, reader.getLong());
+        }
+        reader.expect(JsonReader.Token.END_ARRAY);
+    }
+    
+    @Test
+    void skipsNestedValues() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(
+                "{\"skip\": {\"a\": [1, {\"b\": \"]}\"}], \"c\": null}, \"keep\": true}"));
+        reader.expect(JsonReader.Token.BEGIN_OBJECT);
+        reader.expect(JsonReader.Token.NAME);
+        reader.skipValue(reader.next());
+        reader.expect(JsonReader.Token.NAME);
+        assertEquals("keep", reader.getString());
+        reader.expect(JsonReader.Token.TRUE);
+        reader.expect(JsonReader.Token.END_OBJECT);
+    }
+    
+    @Test
+    void rejectsMalformedInput() {
+        assertThrows(IOException.class, () -> readAll("[\"open"));
+        assertThrows(IOException.class, () -> readAll("[\"\\x\"]"));
+        assertThrows(IOException.class, () -> readAll("[\"\\u12g4\"]"));
+        assertThrows(IOException.class, () -> readAll("[tru]"));
+        assertThrows(IOException.class, () -> readAll("[-]"));
+        assertThrows(IOException.class, () -> readAll("[@]"));
+    }
+    
+    /**
+     * @return Object with the text as a member name and as values of all kinds around it
+     */
+    private static String write(String text) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name(text).value(text);
+            writer.name("list").beginArray().value(text).value(-42L).value(true).value((String) null).endArray();
+            writer.name("empty").beginObject().endObject();
+            writer.endObject();
+        }
+        return out.toString();
+    }
+    
+    private static void assertRoundTrip(Reader in, String text) throws IOException {
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.expect(JsonReader.Token.BEGIN_OBJECT);
+            reader.expect(JsonReader.Token.NAME);
+            assertEquals(text, reader.getString());
+            reader.expect(JsonReader.Token.STRING);
+            assertEquals(text, reader.getString());
+            
+            reader.expect(JsonReader.Token.NAME);
+            assertEquals("list", reader.getString());
+            reader.expect(JsonReader.Token.BEGIN_ARRAY);
+            reader.expect(JsonReader.Token.STRING);
+            assertEquals(text, reader.getString());
+            reader.expect(JsonReader.Token.NUMBER);
+            assertEquals(-42L, reader.getLong());
+            reader.expect(JsonReader.Token.TRUE);
+            reader.expect(JsonReader.Token.NULL);
+            reader.expect(JsonReader.Token.END_ARRAY);
+            
+            reader.expect(JsonReader.Token.NAME);
+            reader.expect(JsonReader.Token.BEGIN_OBJECT);
+            reader.expect(JsonReader.Token.END_OBJECT);
+            reader.expect(JsonReader.Token.END_OBJECT);
+            reader.expect(JsonReader.Token.END_DOCUMENT);
+        }
+    }
+    
+    private static void readAll(String json) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        while (reader.next() != JsonReader.Token.END_DOCUMENT) {
+            // Tokens are only checked for errors
+        }
+    }
+    
+    /**
+     * Hands out one character per read.
+     */
+    private static class TrickleReader extends Reader {
+        private final String text;
+        private int position;
+        
+        TrickleReader(String text) {
+            this.text = text;
+        }
+        
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            buffer[offset] = text.charAt(position++);
+            return 1;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
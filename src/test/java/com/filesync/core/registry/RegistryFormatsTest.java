@@ -0,0 +1,64 @@
+package com.filesync.core.registry;
+
+import com.filesync.core.Profile;
+import com.filesync.core.Registry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Saves and loads the same registry in every format.
+ */
+class RegistryFormatsTest {
+    private static final String DIGEST = "00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff";
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void xmlKeepsEntriesAndSummaries() throws IOException {
+        assertRoundTrip(new XMLRegistryBuilder(), "xml");
+    }
+    
+    @Test
+    void jsonKeepsEntriesAndSummaries() throws IOException {
+        assertRoundTrip(new JSONRegistryBuilder(), "json");
+    }
+    
+    @Test
+    void propertiesKeepEntriesAndSummaries() throws IOException {
+        assertRoundTrip(new PropertiesRegistryBuilder(), "properties");
+    }
+    
+    @Test
+    void binaryKeepsEntriesAndSummaries() throws IOException {
+        assertRoundTrip(new BinaryRegistryBuilder(), "bin");
+    }
+    
+    private void assertRoundTrip(RegistryBuilder builder, String format) throws IOException {
+        Registry registry = new Registry();
+        registry.addEntry("dir/file", 1000L, 10L, DIGEST);
+        registry.addEntry("dir/sub/other", 2000L, 20L, null);
+        registry.addEntry("top", 3000L, 30L, null);
+        registry.setDirectorySummary("dir", 0x1234_5678_9ABC_DEF0L);
+        registry.setDirectorySummary("dir/sub", -7L);
+        
+        Profile profile = new Profile(folder.resolve("p").toString(), "a", "b");
+        String file = folder.resolve("p." + format).toString();
+        builder.saveRegistry(registry, file, profile);
+        Registry loaded = builder.buildRegistry(file, profile);
+        
+        assertEquals(3, loaded.getEntries().size());
+        assertEquals(DIGEST, loaded.getEntry("dir/file").getDigest());
+        assertEquals(20L, loaded.getEntry("dir/sub/other").getSize());
+        assertEquals(3000L, loaded.getEntry("top").getLastModified());
+        assertNull(loaded.getEntry("dir/"));
+        assertEquals(Map.of("dir", 0x1234_5678_9ABC_DEF0L, "dir/sub", -7L), loaded.getDirectorySummaries());
+    }
+}
@@ -0,0 +1,168 @@
+package com.filesync.core.registry;
+
+import com.filesync.core.Registry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegistryJournalTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void replaysAddsAndRemoves() throws IOException {
+        Path log = folder.resolve("p.xml.journal");
+        write(log, 3);
+        
+        Registry replayed = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            assertEquals(4, journal.replay(replayed));
+        }
+        assertEquals(1000L, replayed.getEntry("file0").getLastModified());
+        assertEquals("abc", replayed.getEntry("file0").getDigest());
+        assertNull(replayed.getEntry("file1"));
+        assertEquals(12L, replayed.getEntry("file2").getSize());
+    }
+    
+    @Test
+    void cutsOffTornRecord() throws IOException {
+        Path log = folder.resolve("p.xml.journal");
+        write(log, 3);
+        long valid = Files.size(log);
+        Registry registry = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            journal.replay(new Registry());
+            registry.setListener(journal);
+            registry.addEntry("torn", 1L, 1L, null);
+            journal.sync();
+        }
+        // Crash in the middle of the last record
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(log) - 3);
+        }
+        
+        Registry replayed = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            assertEquals(4, journal.replay(replayed));
+        }
+        assertNull(replayed.getEntry("torn"));
+        assertEquals(3000L, replayed.getEntry("file2").getLastModified());
+        assertEquals(valid, Files.size(log));
+    }
+    
+    @Test
+    void cutsOffCorruptTail() throws IOException {
+        Path log = folder.resolve("p.xml.journal");
+        write(log, 3);
+        long valid = Files.size(log);
+        Files.write(log, new byte[] {0, 0, 0, 5, 'A', 'x', 'y', 'z', 'w', 0, 0, 0, 0}, StandardOpenOption.APPEND);
+        
+        Registry replayed = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            assertEquals(4, journal.replay(replayed));
+        }
+        assertEquals(valid, Files.size(log));
+        
+        // New records go after the valid ones and survive the next replay
+        Registry registry = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            journal.replay(registry);
+            registry.setListener(journal);
+            registry.addEntry("later", 5L, 1L, null);
+            journal.sync();
+        }
+        Registry again = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            assertEquals(5, journal.replay(again));
+        }
+        assertEquals(5L, again.getEntry("later").getLastModified());
+    }
+    
+    @Test
+    void replaysRotatedLogFirst() throws IOException {
+        Path log = folder.resolve("p.xml.journal");
+        Registry registry = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            journal.replay(registry);
+            registry.setListener(journal);
+            registry.addEntry("file", 1L, 1L, null);
+            journal.rotate();
+            registry.addEntry("file", 2L, 1L, null);
+            journal.sync();
+        }
+        
+        Registry replayed = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            assertEquals(2, journal.replay(replayed));
+            assertTrue(journal.hasRotatedLog());
+        }
+        assertEquals(2L, replayed.getEntry("file").getLastModified());
+    }
+    
+    @Test
+    void logsOnlySyncedRecords() throws IOException {
+        Path log = folder.resolve("p.xml.journal");
+        Registry registry = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            journal.replay(registry);
+            registry.setListener(journal);
+            registry.addEntry("saved", 1L, 1L, null);
+            journal.sync();
+            registry.addEntry("unsaved", 2L, 1L, null);
+            assertTrue(journal.size() > Files.size(log));
+        }
+        
+        Registry replayed = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            assertEquals(1, journal.replay(replayed));
+        }
+        assertNull(replayed.getEntry("unsaved"));
+    }
+    
+    /**
+     * Appends file0..file(count-1), then removes file1: count + 1 records.
+     */
+    @Test
+    void replaysDirectorySummaries() throws IOException {
+        Path log = folder.resolve("p.xml.journal");
+        Registry registry = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            journal.replay(registry);
+            registry.setListener(journal);
+            registry.setDirectorySummary("kept", 1L);
+            registry.setDirectorySummary("dropped", 2L);
+            registry.removeDirectorySummary("dropped");
+            journal.sync();
+        }
+        
+        Registry replayed = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            assertEquals(3, journal.replay(replayed));
+        }
+        assertEquals(1L, replayed.getDirectorySummary("kept"));
+        assertEquals(0L, replayed.getDirectorySummary("dropped"));
+        assertTrue(replayed.getEntries().isEmpty());
+    }
+    
+    private static void write(Path log, int count) throws IOException {
+        Registry registry = new Registry();
+        try (RegistryJournal journal = new RegistryJournal(log)) {
+            journal.replay(new Registry());
+            registry.setListener(journal);
+            for (int i = 0; i < count; i++) {
+                registry.addEntry("file" + i, 1000L * (i + 1), 6L * i, i == 0 ? "abc" : null);
+            }
+            registry.removeEntry("file1");
+            journal.sync();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.filesync.daemon;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IoSchedulerTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void limitsJobsPerDevice() throws Exception {
+        IoScheduler scheduler = new IoScheduler(1);
+        IoScheduler.Lease first = scheduler.acquire(List.of("disk"));
+        CompletableFuture<IoScheduler.Lease> second = acquireLater(scheduler, List.of("disk"));
+        
+        assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.getQueueDepth());
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+    
+    @Test
+    void otherDevicesDoNotWait() throws Exception {
+        IoScheduler scheduler = new IoScheduler(1);
+        try (IoScheduler.Lease first = scheduler.acquire(List.of("disk"))) {
+            assertEquals(Set.of("disk"), first.getDevices());
+            acquireLater(scheduler, List.of("server")).get(5, TimeUnit.SECONDS).close();
+        }
+    }
+    
+    @Test
+    void waitingJobIsNotOvertaken() throws Exception {
+        IoScheduler scheduler = new IoScheduler(1);
+        IoScheduler.Lease holdsB = scheduler.acquire(List.of("b"));
+        // Needs a and b: waits for b, but reserves a meanwhile
+        CompletableFuture<IoScheduler.Lease> both = acquireLater(scheduler, List.of("a", "b"));
+        waitForQueueDepth(scheduler, 1);
+        CompletableFuture<IoScheduler.Lease> onlyA = acquireLater(scheduler, List.of("a"));
+        waitForQueueDepth(scheduler, 2);
+        
+        assertThrows(TimeoutException.class, () -> onlyA.get(200, TimeUnit.MILLISECONDS));
+        holdsB.close();
+        IoScheduler.Lease bothLease = both.get(5, TimeUnit.SECONDS);
+        assertFalse(onlyA.isDone());
+        bothLease.close();
+        onlyA.get(5, TimeUnit.SECONDS).close();
+    }
+    
+    @Test
+    void closingTwiceReleasesOnce() throws Exception {
+        IoScheduler scheduler = new IoScheduler(2);
+        IoScheduler.Lease first = scheduler.acquire(List.of("disk"));
+        IoScheduler.Lease second = scheduler.acquire(List.of("disk"));
+        first.close();
+        first.close();
+        CompletableFuture<IoScheduler.Lease> third = acquireLater(scheduler, List.of("disk"));
+        third.get(5, TimeUnit.SECONDS);
+        // second and third hold both slots
+        assertThrows(TimeoutException.class,
+                () -> acquireLater(scheduler, List.of("disk")).get(200, TimeUnit.MILLISECONDS));
+        second.close();
+    }
+    
+    @Test
+    void identifiesDevices() {
+        assertEquals("https://example.org:443", IoScheduler.deviceOf("https://Example.org/dav/a"));
+        assertEquals("http://example.org:8080", IoScheduler.deviceOf("http://example.org:8080/b"));
+        // Folders that do not exist yet belong to their closest existing parent
+        assertEquals(IoScheduler.deviceOf(folder.toString()),
+                IoScheduler.deviceOf(folder.resolve("missing/deeper").toString()));
+    }
+    
+    private static CompletableFuture<IoScheduler.Lease> acquireLater(IoScheduler scheduler, List<String> devices) {
+        CompletableFuture<IoScheduler.Lease> lease = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                lease.complete(scheduler.acquire(devices));
+            } catch (InterruptedException e) {
+                lease.completeExceptionally(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return lease;
+    }
+    
+    private static void waitForQueueDepth(IoScheduler scheduler, int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (scheduler.getQueueDepth() < depth && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(depth, scheduler.getQueueDepth());
+    }
+}
@@ -0,0 +1,71 @@
+package com.filesync.daemon;
+
+import com.filesync.core.Profile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncDaemonTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void runsEveryProfile() throws Exception {
+        Path shared = Files.createDirectories(folder.resolve("shared"));
+        Files.writeString(shared.resolve("file"), "content");
+        Path statusFile = folder.resolve("daemon.status");
+        
+        SyncDaemon daemon = new SyncDaemon(List.of(profile("p1", shared, "b1"), profile("p2", shared, "b2")),
+                "json", new IoScheduler(1), statusFile);
+        try {
+            daemon.start();
+            waitFor(folder.resolve("b1/file"));
+            waitFor(folder.resolve("b2/file"));
+            assertTrue(Files.exists(statusFile));
+        } finally {
+            daemon.close();
+        }
+        
+        assertEquals("content", Files.readString(folder.resolve("b1/file")));
+        assertEquals("content", Files.readString(folder.resolve("b2/file")));
+        assertTrue(Files.exists(folder.resolve("p1.json")));
+        assertTrue(Files.exists(folder.resolve("p2.json")));
+        assertFalse(Files.exists(statusFile));
+    }
+    
+    @Test
+    void rejectsNonPositiveInterval() throws IOException {
+        Profile profile = profile("p", Files.createDirectories(folder.resolve("a")), "b");
+        profile.setOption("daemon.intervalSeconds", "0");
+        assertThrows(IllegalArgumentException.class,
+                () -> new SyncDaemon(List.of(profile), "json", new IoScheduler(1), folder.resolve("status")));
+    }
+    
+    private Profile profile(String name, Path pathA, String pathB) {
+        Profile profile = new Profile(folder.resolve(name).toString(), pathA.toString(),
+                folder.resolve(pathB).toString());
+        profile.setOption("daemon.intervalSeconds", "3600");
+        profile.setOption("conflict.policy", "defer");
+        return profile;
+    }
+    
+    /**
+     * Waits until a run has written the file.
+     */
+    private static void waitFor(Path file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000L;
+        while (!Files.exists(file) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+        }
+        assertTrue(Files.exists(file), "not synchronized: " + file);
+    }
+}
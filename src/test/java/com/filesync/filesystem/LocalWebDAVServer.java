@@ -0,0 +1,393 @@
+package com.filesync.filesystem;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Minimal WebDAV server over a local folder, for the tests and benchmarks of the WebDAV
+ * handler and for trying it without a real share. It answers PROPFIND (depth 0 and 1), GET with
+ * ranges, PUT, MKCOL, DELETE, MOVE and PROPPATCH; dead properties are kept in memory
+ * only. An optional delay per request stands in for the round trip to a remote server.
+ * <p>
+ * The benchmarks reach it through the project's test jar. Run it on its own with
+ * {@code java -cp benchmarks.jar com.filesync.filesystem.LocalWebDAVServer <folder> [port]}.
+ */
+public final class LocalWebDAVServer implements AutoCloseable {
+    private static final String CONTEXT = "/dav";
+    private static final Pattern MTIME = Pattern.compile("mtime>\\s*(-?\\d+)\\s*<");
+    private static final Pattern SIZE = Pattern.compile("size>\\s*(-?\\d+)\\s*<");
+    private static final Pattern MODIFIED = Pattern.compile("modified>\\s*(-?\\d+)\\s*<");
+    
+    static {
+        // Real servers disable Nagle's algorithm; the JDK server only does when asked before
+        // its classes load, and otherwise stalls about 40 ms per request on delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    
+    private final Path root;
+    private final long latencyMillis;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, long[]> deadProperties = new ConcurrentHashMap<>();
+    
+    private LocalWebDAVServer(Path root, int port, int threads, long latencyMillis) throws IOException {
+        this.root = root;
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "webdav-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext(CONTEXT, this::handle);
+        server.setExecutor(executor);
+    }
+    
+    /**
+     * @param root Folder served as the root collection
+     * @param threads Number of requests handled at the same time
+     * @param latencyMillis Delay added to every request
+     * @return Running server on a free loopback port
+     */
+    public static LocalWebDAVServer start(Path root, int threads, long latencyMillis) throws IOException {
+        return start(root, 0, threads, latencyMillis);
+    }
+    
+    private static LocalWebDAVServer start(Path root, int port, int threads, long latencyMillis) throws IOException {
+        LocalWebDAVServer server = new LocalWebDAVServer(root, port, threads, latencyMillis);
+        server.server.start();
+        return server;
+    }
+    
+    /**
+     * @return URL of the root collection, to be used as a profile path
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + CONTEXT;
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: LocalWebDAVServer <folder> [port]");
+            System.exit(1);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        LocalWebDAVServer server = start(Paths.get(args[0]), port, 16, 0L);
+        System.out.println("Serving " + args[0] + " at " + server.url());
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            String path = relative(exchange.getRequestURI().getPath());
+            if (path == null) {
+                respond(exchange, 403);
+                return;
+            }
+            
+            switch (exchange.getRequestMethod()) {
+                case "PROPFIND":
+                    propfind(exchange, path);
+                    break;
+                case "PROPPATCH":
+                    proppatch(exchange, path);
+                    break;
+                case "GET":
+                    get(exchange, path);
+                    break;
+                case "PUT":
+                    put(exchange, path);
+                    break;
+                case "MKCOL":
+                    mkcol(exchange, path);
+                    break;
+                case "DELETE":
+                    delete(exchange, path);
+                    break;
+                case "MOVE":
+                    move(exchange, path);
+                    break;
+                default:
+                    respond(exchange, 405);
+                    break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            respond(exchange, 500);
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void propfind(HttpExchange exchange, String path) throws IOException {
+        drain(exchange);
+        Path file = root.resolve(path);
+        if (!Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+            respond(exchange, 404);
+            return;
+        }
+        
+        List<String> members = new ArrayList<>();
+        members.add(path);
+        if (!"0".equals(exchange.getRequestHeaders().getFirst("Depth")) && Files.isDirectory(file)) {
+            try (Stream<Path> children = Files.list(file)) {
+                children.map(child -> child(path, child.getFileName().toString()))
+                        .sorted(Comparator.naturalOrder())
+                        .forEach(members::add);
+            }
+        }
+        
+        exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+        exchange.sendResponseHeaders(207, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                StandardCharsets.UTF_8), 64 * 1024)) {
+            out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                    + "<D:multistatus xmlns:D=\"DAV:\" xmlns:J=\"urn:x-jsync:\">\n");
+            for (String member : members) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(root.resolve(member), BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    continue; // Deleted while listing
+                }
+                writeResponse(out, member, attributes);
+            }
+            out.write("</D:multistatus>\n");
+        }
+    }
+    
+    private void writeResponse(Writer out, String path, BasicFileAttributes attributes) throws IOException {
+        String modified = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                attributes.lastModifiedTime().toInstant().atZone(ZoneOffset.UTC));
+        out.write("<D:response><D:href>" + CONTEXT + "/" + encode(path) + (attributes.isDirectory() ? "/" : "")
+                + "</D:href><D:propstat><D:prop>");
+        if (attributes.isDirectory()) {
+            out.write("<D:resourcetype><D:collection/></D:resourcetype>");
+        } else {
+            out.write("<D:resourcetype/><D:getcontentlength>" + attributes.size() + "</D:getcontentlength>");
+        }
+        out.write("<D:getlastmodified>" + modified + "</D:getlastmodified>");
+        
+        long[] properties = deadProperties.get(path);
+        if (properties != null) {
+            out.write("<J:mtime>" + properties[0] + "</J:mtime><J:size>" + properties[1] + "</J:size>"
+                    + "<J:modified>" + properties[2] + "</J:modified>");
+        }
+        out.write("</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat>");
+        if (properties == null) {
+            out.write("<D:propstat><D:prop><J:mtime/><J:size/><J:modified/></D:prop>"
+                    + "<D:status>HTTP/1.1 404 Not Found</D:status></D:propstat>");
+        }
+        out.write("</D:response>\n");
+    }
+    
+    private void proppatch(HttpExchange exchange, String path) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (!Files.exists(root.resolve(path), LinkOption.NOFOLLOW_LINKS)) {
+            respond(exchange, 404);
+            return;
+        }
+        
+        Matcher mtime = MTIME.matcher(body);
+        Matcher size = SIZE.matcher(body);
+        Matcher modified = MODIFIED.matcher(body);
+        if (mtime.find() && size.find() && modified.find()) {
+            deadProperties.put(path, new long[] {Long.parseLong(mtime.group(1)), Long.parseLong(size.group(1)),
+                    Long.parseLong(modified.group(1))});
+        }
+        
+        byte[] response = ("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<D:multistatus xmlns:D=\"DAV:\">"
+                + "<D:response><D:href>" + CONTEXT + "/" + encode(path) + "</D:href><D:propstat><D:prop/>"
+                + "<D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response></D:multistatus>\n")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(207, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+    
+    private void get(HttpExchange exchange, String path) throws IOException {
+        drain(exchange);
+        Path file = root.resolve(path);
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+            respond(exchange, 404);
+            return;
+        }
+        
+        long size = Files.size(file);
+        long offset = 0L;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+            offset = Math.min(Long.parseLong(range.substring(6, range.length() - 1)), size);
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + offset + "-" + (size - 1) + "/" + size);
+        }
+        
+        long length = size - offset;
+        exchange.sendResponseHeaders(range != null ? 206 : 200, length > 0 ? length : -1);
+        try (InputStream in = Files.newInputStream(file); OutputStream out = exchange.getResponseBody()) {
+            in.skip(offset);
+            in.transferTo(out);
+        }
+    }
+    
+    private void put(HttpExchange exchange, String path) throws IOException {
+        Path file = root.resolve(path);
+        if (path.isEmpty() || !Files.isDirectory(file.getParent())) {
+            drain(exchange);
+            respond(exchange, 409);
+            return;
+        }
+        
+        boolean existed = Files.exists(file, LinkOption.NOFOLLOW_LINKS);
+        try (InputStream in = exchange.getRequestBody()) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        respond(exchange, existed ? 204 : 201);
+    }
+    
+    private void mkcol(HttpExchange exchange, String path) throws IOException {
+        drain(exchange);
+        Path directory = root.resolve(path);
+        if (Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            respond(exchange, 405);
+        } else if (!Files.isDirectory(directory.getParent())) {
+            respond(exchange, 409);
+        } else {
+            Files.createDirectory(directory);
+            respond(exchange, 201);
+        }
+    }
+    
+    private void delete(HttpExchange exchange, String path) throws IOException {
+        drain(exchange);
+        Path file = root.resolve(path);
+        if (path.isEmpty() || !Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+            respond(exchange, path.isEmpty() ? 403 : 404);
+            return;
+        }
+        
+        try (Stream<Path> tree = Files.walk(file)) {
+            for (Path member : (Iterable<Path>) tree.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(member);
+            }
+        }
+        deadProperties.keySet().removeIf(key -> key.equals(path) || key.startsWith(path + "/"));
+        respond(exchange, 204);
+    }
+    
+    private void move(HttpExchange exchange, String path) throws IOException {
+        drain(exchange);
+        String destination = exchange.getRequestHeaders().getFirst("Destination");
+        String target = destination != null ? relative(URI.create(destination).getPath()) : null;
+        Path source = root.resolve(path);
+        if (target == null || target.isEmpty() || path.isEmpty()) {
+            respond(exchange, 403);
+        } else if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+            respond(exchange, 404);
+        } else if (Files.exists(root.resolve(target), LinkOption.NOFOLLOW_LINKS)) {
+            // Overwrite: T is not needed by the handler
+            respond(exchange, 412);
+        } else if (!Files.isDirectory(root.resolve(target).getParent())) {
+            respond(exchange, 409);
+        } else {
+            Files.move(source, root.resolve(target));
+            long[] properties = deadProperties.remove(path);
+            if (properties != null) {
+                deadProperties.put(target, properties);
+            }
+            respond(exchange, 201);
+        }
+    }
+    
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+    
+    private static void drain(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+    
+    /**
+     * @return Path relative to the served folder, or null if it leaves it
+     */
+    private static String relative(String requestPath) {
+        if (requestPath == null || !requestPath.startsWith(CONTEXT)) {
+            return null;
+        }
+        String path = requestPath.substring(CONTEXT.length());
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        for (String segment : path.split("/")) {
+            if (segment.equals("..") || segment.equals(".")) {
+                return null;
+            }
+        }
+        return path;
+    }
+    
+    private static String child(String path, String name) {
+        return path.isEmpty() ? name : path + "/" + name;
+    }
+    
+    private static String encode(String path) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~' || c == '/') {
+                encoded.append(c);
+            } else {
+                encoded.append(String.format("%%%02X", b & 0xFF));
+            }
+        }
+        return encoded.toString();
+    }
+}
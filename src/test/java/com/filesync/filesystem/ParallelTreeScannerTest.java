@@ -0,0 +1,97 @@
+package com.filesync.filesystem;
+
+import com.filesync.transfer.PartialFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelTreeScannerTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void walksInPathOrderAtAnyParallelism() throws IOException, InterruptedException {
+        Path root = folder.resolve("root");
+        for (String directory : new String[] {"a/b", "a/c/d", "a-e", "a.f", "z"}) {
+            Files.createDirectories(root.resolve(directory));
+        }
+        for (String file : new String[] {"a/b/1", "a/c/d/2", "a/c/3", "a-e/4", "a.f/5", "a0", "z/6"}) {
+            Files.write(root.resolve(file), new byte[file.length()]);
+        }
+        List<String> expected = List.of("a", "a/b", "a/b/1", "a/c", "a/c/3", "a/c/d", "a/c/d/2", "a-e", "a-e/4",
+                "a.f", "a.f/5", "a0", "z", "z/6");
+        
+        for (int parallelism : new int[] {1, 4}) {
+            List<ScanEntry> entries = walk(new ParallelTreeScanner(parallelism), root, "");
+            List<String> paths = new ArrayList<>();
+            for (ScanEntry entry : entries) {
+                paths.add(entry.getPath());
+            }
+            assertEquals(expected, paths, "parallelism " + parallelism);
+            assertTrue(entries.get(0).getNode().isDirectory());
+            assertFalse(entries.get(2).getNode().isDirectory());
+            assertEquals(5L, entries.get(2).getNode().getSize());
+        }
+    }
+    
+    @Test
+    void readsAttributesOfEveryEntry() throws IOException, InterruptedException {
+        Path file = Files.write(folder.resolve("file"), new byte[42]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_600_000_000_000L));
+        
+        List<ScanEntry> entries = walk(new ParallelTreeScanner(2), folder, "base");
+        assertEquals(1, entries.size());
+        assertEquals("base/file", entries.get(0).getPath());
+        assertEquals("file", entries.get(0).getNode().getName());
+        assertEquals(42L, entries.get(0).getNode().getSize());
+        assertEquals(1_600_000_000_000L, entries.get(0).getNode().getLastModified());
+    }
+    
+    @Test
+    void skipsLinksAndPartialCopies() throws IOException, InterruptedException {
+        Path target = Files.createDirectories(folder.resolve("target"));
+        Files.write(target.resolve("file"), new byte[1]);
+        Path root = Files.createDirectories(folder.resolve("root"));
+        Files.write(root.resolve("kept"), new byte[1]);
+        Files.write(PartialFile.temporary(root.resolve("kept")), new byte[1]);
+        Files.createSymbolicLink(root.resolve("linked"), target);
+        Files.createSymbolicLink(folder.resolve("root-link"), root);
+        
+        List<ScanEntry> entries = walk(new ParallelTreeScanner(2), folder.resolve("root-link"), "");
+        assertEquals(1, entries.size(), "the root may be a link, but links below it are skipped");
+        assertEquals("kept", entries.get(0).getPath());
+    }
+    
+    @Test
+    void missingRootIsEmpty() throws IOException, InterruptedException {
+        assertTrue(walk(new ParallelTreeScanner(1), folder.resolve("missing"), "").isEmpty());
+        Path file = Files.write(folder.resolve("file"), new byte[1]);
+        assertTrue(walk(new ParallelTreeScanner(1), file, "").isEmpty());
+        assertEquals(0, new ParallelTreeScanner(1).snapshot(folder.resolve("missing"), null)
+                .getSnapshot().getEntryCount());
+    }
+    
+    @Test
+    void checksParallelism() {
+        assertEquals(Runtime.getRuntime().availableProcessors(), new ParallelTreeScanner(0).getParallelism());
+        assertThrows(IllegalArgumentException.class, () -> new ParallelTreeScanner(-1));
+    }
+    
+    private static List<ScanEntry> walk(ParallelTreeScanner scanner, Path root, String prefix)
+            throws IOException, InterruptedException {
+        List<ScanEntry> entries = new ArrayList<>();
+        scanner.walk(root, prefix, entries::add);
+        return entries;
+    }
+}
@@ -0,0 +1,104 @@
+package com.filesync.filesystem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScanHintsTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void trustsOnlyUnchangedTimesOlderThanScan() {
+        TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+        builder.add(new ScanEntry("old", new FileSystemNode("old", true, 1000L)));
+        builder.add(new ScanEntry("recent", new FileSystemNode("recent", true, 9000L)));
+        ScanHints hints = new ScanHints(builder.build(), 5000L, 10000L, 10000L, 2, 0);
+        
+        assertTrue(hints.isListingValid(-1, 5000L));
+        assertFalse(hints.isListingValid(-1, 5001L));
+        assertTrue(hints.isListingValid(0, 1000L));
+        assertFalse(hints.isListingValid(0, 999L));
+        // Within the slack of the scan, a change may not have moved the time
+        assertFalse(hints.isListingValid(1, 9000L));
+    }
+    
+    @Test
+    void loadsWhatItSaves() throws IOException {
+        TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+        builder.add(new ScanEntry("dir", new FileSystemNode("dir", true, 1000L)));
+        builder.add(new ScanEntry("dir/file", new FileSystemNode("file", false, 2000L, 3L)));
+        Path file = folder.resolve("hints");
+        new ScanHints(builder.build(), 5000L, 10000L, 7000L, 1, 0).save(file);
+        
+        ScanHints loaded = ScanHints.load(file);
+        assertEquals(7000L, loaded.getLastFullScan());
+        assertEquals(2, loaded.getSnapshot().getEntryCount());
+        assertTrue(loaded.isListingValid(-1, 5000L));
+        assertTrue(loaded.isListingValid(0, 1000L));
+    }
+    
+    @Test
+    void ignoresUnusableFiles() throws IOException {
+        Path file = folder.resolve("hints");
+        assertNull(ScanHints.load(file));
+        
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertNull(ScanHints.load(file));
+        
+        TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+        builder.add(new ScanEntry("file", new FileSystemNode("file", false, 2000L, 3L)));
+        new ScanHints(builder.build(), 5000L, 10000L, 7000L, 1, 0).save(file);
+        byte[] saved = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(saved, saved.length - 4));
+        assertNull(ScanHints.load(file));
+    }
+    
+    @Test
+    void rescanReusesUnchangedListings() throws IOException, InterruptedException {
+        Path root = folder.resolve("root");
+        Files.createDirectories(root.resolve("a/b"));
+        Files.createDirectories(root.resolve("c"));
+        Files.write(root.resolve("a/b/file"), new byte[1]);
+        Files.write(root.resolve("c/file"), new byte[2]);
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 3600_000L);
+        for (String directory : new String[] {"", "a", "a/b", "c"}) {
+            Files.setLastModifiedTime(root.resolve(directory), old);
+        }
+        
+        ParallelTreeScanner scanner = new ParallelTreeScanner(2);
+        ScanHints first = scanner.snapshot(root, null);
+        assertEquals(0, first.getReusedListings());
+        
+        ScanHints second = scanner.snapshot(root, first);
+        assertEquals(0, second.getListedDirectories());
+        assertEquals(4, second.getReusedListings());
+        assertEquals(paths(first), paths(second));
+        
+        // Adding a file moves the time of its directory, which is listed again
+        Files.write(root.resolve("c/added"), new byte[3]);
+        ScanHints third = scanner.snapshot(root, second);
+        assertEquals(1, third.getListedDirectories());
+        assertEquals(List.of("a", "a/b", "a/b/file", "c", "c/added", "c/file"), paths(third));
+    }
+    
+    private static List<String> paths(ScanHints hints) {
+        List<String> paths = new ArrayList<>();
+        for (ScanEntry entry : hints.getSnapshot()) {
+            paths.add(entry.getPath());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,157 @@
+package com.filesync.filesystem;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreeSnapshotTest {
+    
+    @Test
+    void rebuildsPathsInWalkOrder() {
+        TreeSnapshot snapshot = tree(10L);
+        assertEquals(List.of("a", "a/b", "a/b/c", "a/b/d", "a/e", "a-f", "g", "g/h"), paths(snapshot.iterator()));
+        assertEquals(8, snapshot.getEntryCount());
+    }
+    
+    @Test
+    void keepsAttributes() {
+        Iterator<ScanEntry> entries = tree(10L).iterator();
+        FileSystemNode directory = entries.next().getNode();
+        assertTrue(directory.isDirectory());
+        assertEquals("a", directory.getName());
+        entries.next();
+        FileSystemNode file = entries.next().getNode();
+        assertFalse(file.isDirectory());
+        assertEquals("c", file.getName());
+        assertEquals(10L, file.getLastModified());
+        assertEquals(3L, file.getSize());
+    }
+    
+    @Test
+    void storesMultiByteNames() {
+        TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+        builder.add(directory("\u00E9t\u00E9"));
+        builder.add(file("\u00E9t\u00E9/\u65E5\u672C"));
+        assertEquals(List.of("\u00E9t\u00E9", "\u00E9t\u00E9/\u65E5\u672C"), paths(builder.build().iterator()));
+    }
+    
+    @Test
+    void skipsSubtreeOfDirectory() {
+        TreeSnapshot snapshot = tree(10L);
+        assertEquals(List.of("a", "a-f", "g", "g/h"), paths(snapshot.iterator(), "a"));
+        assertEquals(List.of("a", "a/b", "a/e", "a-f", "g", "g/h"), paths(snapshot.iterator(), "a/b"));
+        assertEquals(List.of("a", "a/b", "a/b/c", "a/b/d", "a/e", "a-f", "g"), paths(snapshot.iterator(), "g"));
+    }
+    
+    @Test
+    void skipSubtreeOfFileDoesNothing() {
+        TreeSnapshot snapshot = tree(10L);
+        assertEquals(paths(snapshot.iterator()), paths(snapshot.iterator(), "a-f"));
+        assertEquals(paths(snapshot.iterator()), paths(snapshot.iterator(), "a/b/d"));
+    }
+    
+    @Test
+    void summariesFollowContent() {
+        TreeSnapshot snapshot = tree(10L);
+        assertEquals(summaries(snapshot), summaries(tree(10L)));
+        
+        List<Long> changed = summaries(tree(11L));
+        List<Long> original = summaries(snapshot);
+        assertNotEquals(original.get(0), changed.get(0)); // a holds the changed file a/b/c
+        assertNotEquals(original.get(1), changed.get(1)); // a/b
+        assertEquals(original.get(6), changed.get(6)); // g
+    }
+    
+    @Test
+    void readsWhatItWrites() throws IOException {
+        TreeSnapshot snapshot = tree(10L);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.write(new DataOutputStream(bytes));
+        
+        TreeSnapshot read = TreeSnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(paths(snapshot.iterator()), paths(read.iterator()));
+        assertEquals(paths(snapshot.iterator(), "a/b"), paths(read.iterator(), "a/b"));
+        assertEquals(summaries(snapshot), summaries(read));
+    }
+    
+    @Test
+    void rejectsDamagedInput() {
+        byte[] bytes = {0, 0, 0, 1, 0, 0, 0, 5};
+        assertThrows(IOException.class,
+                () -> TreeSnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes))));
+    }
+    
+    @Test
+    void rejectsEntryBeforeItsDirectory() {
+        TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+        builder.add(new ScanEntry("a", new FileSystemNode("a", true, 0L)));
+        assertThrows(IllegalArgumentException.class,
+                () -> builder.add(new ScanEntry("b/c", new FileSystemNode("c", false, 0L, 1L))));
+    }
+    
+    /**
+     * @param cTime Timestamp of the file a/b/c
+     */
+    private static TreeSnapshot tree(long cTime) {
+        List<ScanEntry> entries = new ArrayList<>();
+        entries.add(directory("a"));
+        entries.add(directory("a/b"));
+        entries.add(new ScanEntry("a/b/c", new FileSystemNode("c", false, cTime, 3L)));
+        entries.add(file("a/b/d"));
+        entries.add(file("a/e"));
+        entries.add(file("a-f"));
+        entries.add(directory("g"));
+        entries.add(file("g/h"));
+        return TreeSnapshot.capture(entries.iterator());
+    }
+    
+    private static ScanEntry directory(String path) {
+        return new ScanEntry(path, new FileSystemNode(path.substring(path.lastIndexOf('/') + 1), true, 5L));
+    }
+    
+    private static ScanEntry file(String path) {
+        return new ScanEntry(path, new FileSystemNode(path.substring(path.lastIndexOf('/') + 1), false, 7L, 1L));
+    }
+    
+    private static List<String> paths(Iterator<ScanEntry> entries) {
+        List<String> paths = new ArrayList<>();
+        entries.forEachRemaining(entry -> paths.add(entry.getPath()));
+        return paths;
+    }
+    
+    /**
+     * @param skip Path whose subtree is skipped once it is returned
+     */
+    private static List<String> paths(TreeSnapshot.Cursor cursor, String skip) {
+        List<String> paths = new ArrayList<>();
+        while (cursor.hasNext()) {
+            String path = cursor.next().getPath();
+            paths.add(path);
+            if (path.equals(skip)) {
+                cursor.skipSubtree();
+            }
+        }
+        return paths;
+    }
+    
+    private static List<Long> summaries(TreeSnapshot snapshot) {
+        List<Long> summaries = new ArrayList<>();
+        for (ScanEntry entry : snapshot) {
+            summaries.add(entry.getNode().getSummary());
+        }
+        return summaries;
+    }
+}
@@ -0,0 +1,86 @@
+package com.filesync.filesystem;
+
+import com.filesync.transfer.PartialFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreeWatcherTest {
+    private static final long TIMEOUT_MILLIS = 10_000L;
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void reportsChangesRelativeToTheirRoot() throws IOException, InterruptedException {
+        Path a = Files.createDirectories(folder.resolve("a/sub"));
+        Path b = Files.createDirectories(folder.resolve("b"));
+        try (TreeWatcher watcher = new TreeWatcher()) {
+            watcher.watch(folder.resolve("a"));
+            watcher.watch(b);
+            
+            Files.writeString(a.resolve("file"), "a");
+            Files.writeString(b.resolve("file"), "b");
+            awaitPaths(watcher, "sub/file", "file");
+        }
+    }
+    
+    @Test
+    void watchesDirectoriesCreatedLater() throws IOException, InterruptedException {
+        try (TreeWatcher watcher = new TreeWatcher()) {
+            watcher.watch(folder);
+            Path created = Files.createDirectory(folder.resolve("new"));
+            awaitPaths(watcher, "new");
+            
+            Files.writeString(created.resolve("file"), "content");
+            awaitPaths(watcher, "new/file");
+        }
+    }
+    
+    @Test
+    void ignoresPartialCopies() throws IOException, InterruptedException {
+        try (TreeWatcher watcher = new TreeWatcher()) {
+            watcher.watch(folder);
+            Path target = folder.resolve("file");
+            Files.writeString(PartialFile.temporary(target), "content");
+            Files.move(PartialFile.temporary(target), target);
+            Set<String> paths = awaitPaths(watcher, "file");
+            assertTrue(paths.stream().noneMatch(PartialFile::isPartialName), paths.toString());
+        }
+    }
+    
+    @Test
+    void pollGivesUpAfterTimeout() throws IOException, InterruptedException {
+        try (TreeWatcher watcher = new TreeWatcher()) {
+            watcher.watch(folder);
+            TreeWatcher.ChangeSet changes = watcher.poll(10L, 100L, 50L);
+            assertTrue(changes.getPaths().isEmpty());
+            assertFalse(changes.isOverflow());
+        }
+    }
+    
+    /**
+     * Polls until all the expected paths were reported.
+     * 
+     * @return Every path reported meanwhile
+     */
+    private static Set<String> awaitPaths(TreeWatcher watcher, String... expected) throws InterruptedException {
+        Set<String> paths = new HashSet<>();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!paths.containsAll(Set.of(expected)) && System.currentTimeMillis() < deadline) {
+            TreeWatcher.ChangeSet changes = watcher.poll(50L, 500L, 1000L);
+            assertFalse(changes.isOverflow());
+            paths.addAll(changes.getPaths());
+        }
+        assertTrue(paths.containsAll(Set.of(expected)), "reported: " + paths);
+        return paths;
+    }
+}
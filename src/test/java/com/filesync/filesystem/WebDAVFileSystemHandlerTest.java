@@ -0,0 +1,133 @@
+package com.filesync.filesystem;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebDAVFileSystemHandlerTest {
+    private static final long TIME = 1_600_000_000_123L;
+    
+    @TempDir
+    Path share;
+    private LocalWebDAVServer server;
+    private WebDAVFileSystemHandler handler;
+    
+    @BeforeEach
+    void startServer() throws IOException {
+        server = LocalWebDAVServer.start(share, 4, 0L);
+        handler = new WebDAVFileSystemHandler(server.url());
+    }
+    
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+    
+    @Test
+    void walksTreeInPathOrder() throws IOException {
+        Files.createDirectories(share.resolve("a/b"));
+        Files.createDirectories(share.resolve("g"));
+        Files.writeString(share.resolve("a/b/c"), "abc");
+        Files.writeString(share.resolve("a/e"), "e");
+        Files.writeString(share.resolve("a-f"), "f");
+        Files.writeString(share.resolve("g/h i"), "h");
+        
+        List<String> paths = new ArrayList<>();
+        List<ScanEntry> entries = new ArrayList<>();
+        for (ScanEntry entry : handler.snapshot()) {
+            paths.add(entry.getPath());
+            entries.add(entry);
+        }
+        
+        assertEquals(List.of("a", "a/b", "a/b/c", "a/e", "a-f", "g", "g/h i"), paths);
+        assertTrue(entries.get(0).getNode().isDirectory());
+        assertFalse(entries.get(2).getNode().isDirectory());
+        assertEquals(3L, entries.get(2).getNode().getSize());
+    }
+    
+    @Test
+    void streamsContentBothWays() throws IOException {
+        // Several times the copy buffer, so neither direction fits in one read or write
+        byte[] content = new byte[1024 * 1024 + 17];
+        new Random(1).nextBytes(content);
+        
+        try (WritableByteChannel out = handler.openWrite("dir/sub/file", content.length)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                buffer.limit(Math.min(buffer.position() + 1000, content.length));
+                out.write(buffer);
+                buffer.limit(content.length);
+            }
+        }
+        assertArrayEquals(content, Files.readAllBytes(share.resolve("dir/sub/file")));
+        
+        assertArrayEquals(content, read(handler.openRead("dir/sub/file")));
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, content.length),
+                read(handler.openRead("dir/sub/file", 1000)));
+        assertEquals(content.length, handler.getSize("dir/sub/file"));
+    }
+    
+    @Test
+    void timestampRoundTripsThroughProperties() throws IOException {
+        try (WritableByteChannel out = handler.openWrite("file", 4)) {
+            out.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}));
+        }
+        
+        handler.setLastModified("file", TIME);
+        
+        // Milliseconds survive, unlike in getlastmodified
+        assertEquals(TIME, handler.stat("file").getLastModified());
+        assertEquals(TIME, handler.getLastModified("file"));
+    }
+    
+    @Test
+    void fileChangedByAnotherClientFallsBackToServerTimestamp() throws IOException {
+        try (WritableByteChannel out = handler.openWrite("file", 4)) {
+            out.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}));
+        }
+        handler.setLastModified("file", TIME);
+        
+        long changed = 1_700_000_000_000L;
+        Files.writeString(share.resolve("file"), "changed");
+        Files.setLastModifiedTime(share.resolve("file"), FileTime.fromMillis(changed));
+        
+        FileSystemNode node = handler.stat("file");
+        assertEquals(changed, node.getLastModified());
+        assertEquals(7L, node.getSize());
+    }
+    
+    @Test
+    void missingFileHasNoNode() throws IOException {
+        assertNull(handler.stat("missing"));
+        assertFalse(handler.exists("missing"));
+    }
+    
+    private static byte[] read(ReadableByteChannel channel) throws IOException {
+        try (ReadableByteChannel in = channel) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Channels.newInputStream(in).transferTo(out);
+            return out.toByteArray();
+        }
+    }
+}
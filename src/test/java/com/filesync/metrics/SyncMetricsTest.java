@@ -0,0 +1,92 @@
+package com.filesync.metrics;
+
+import com.filesync.observer.SyncEvent;
+import com.filesync.transfer.TransferStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncMetricsTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void timesEachPhaseUntilTheNextStarts() throws InterruptedException {
+        SyncMetrics metrics = new SyncMetrics("p", new TransferStats());
+        assertNull(metrics.getCurrentPhase());
+        metrics.startPhase(SyncMetrics.Phase.SCAN);
+        Thread.sleep(20L);
+        metrics.startPhase(SyncMetrics.Phase.EXECUTE);
+        assertEquals(SyncMetrics.Phase.EXECUTE, metrics.getCurrentPhase());
+        assertTrue(metrics.isRunning());
+        metrics.finish(true);
+        
+        assertNull(metrics.getCurrentPhase());
+        assertFalse(metrics.isRunning());
+        assertTrue(metrics.isSucceeded());
+        assertTrue(metrics.getPhaseNanos(SyncMetrics.Phase.SCAN) >= TimeUnit.MILLISECONDS.toNanos(20L));
+        assertEquals(0L, metrics.getPhaseNanos(SyncMetrics.Phase.DIFF));
+        assertTrue(metrics.getPhaseMillis().get("scan") >= 20L);
+        assertTrue(metrics.getDurationMillis() >= metrics.getPhaseMillis().get("scan"));
+    }
+    
+    @Test
+    void countsOperationsAndErrorsPerKind() {
+        TransferStats stats = new TransferStats();
+        stats.recordCopy(1000L);
+        stats.recordCopy(500L);
+        SyncMetrics metrics = new SyncMetrics("p", stats);
+        metrics.recordOperation(SyncEvent.Kind.COPY, TimeUnit.MILLISECONDS.toNanos(2L));
+        metrics.recordOperation(SyncEvent.Kind.COPY, TimeUnit.MILLISECONDS.toNanos(4L));
+        metrics.recordError(SyncEvent.Kind.DELETE);
+        metrics.recordScannedEntries(7L);
+        metrics.recordDirectoryListings(3L, 2L);
+        
+        assertEquals(Map.of("copy", 2L), metrics.getOperationCounts());
+        assertEquals(Map.of("delete", 1L), metrics.getOperationErrors());
+        assertEquals(1L, metrics.getErrors());
+        assertEquals(2L, metrics.getFiles());
+        assertEquals(1500L, metrics.getBytes());
+        assertEquals(7L, metrics.getScannedEntries());
+        assertEquals(3L, metrics.getListedDirectories());
+        assertEquals(2L, metrics.getReusedListings());
+        assertTrue(metrics.getLatencyMicros().get("copy.max") >= 4000L);
+    }
+    
+    @Test
+    void historyKeepsTheLastRuns() throws IOException {
+        String profile = folder.resolve("p").toString();
+        for (int run = 1; run <= 3; run++) {
+            TransferStats stats = new TransferStats();
+            stats.recordCopy(run * 100L);
+            SyncMetrics metrics = new SyncMetrics(profile, stats);
+            metrics.startPhase(SyncMetrics.Phase.EXECUTE);
+            metrics.recordOperation(SyncEvent.Kind.COPY, 1000L);
+            metrics.finish(run != 2);
+            MetricsManager.getInstance().record(metrics, 2);
+        }
+        
+        List<Map<String, Long>> history = MetricsManager.getInstance().loadHistory(profile, 10);
+        assertEquals(2, history.size());
+        assertEquals(200L, history.get(0).get("bytes"));
+        assertEquals(0L, history.get(0).get("succeeded"));
+        assertEquals(300L, history.get(1).get("bytes"));
+        assertEquals(1L, history.get(1).get("succeeded"));
+        assertEquals(1L, history.get(1).get("copy.count"));
+        assertEquals(1, MetricsManager.getInstance().loadHistory(profile, 1).size());
+        assertEquals(List.of("p.metrics.jsonl"), List.of(folder.toFile().list()), "no temp file is left");
+        assertTrue(MetricsManager.getInstance().loadHistory(folder.resolve("q").toString(), 10).isEmpty());
+        assertTrue(Files.exists(folder.resolve("p.metrics.jsonl")));
+    }
+}
@@ -0,0 +1,66 @@
+package com.filesync.observer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncEventBusTest {
+    
+    @Test
+    void failingObserverDoesNotStopDelivery() {
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        SyncObserver failing = new SyncObserver() {
+            @Override
+            public void onSyncEvent(SyncEvent event) {
+                throw new IllegalStateException("observer broken");
+            }
+            
+            @Override
+            public void onBatchEnd() {
+                throw new IllegalStateException("observer broken");
+            }
+        };
+        SyncObserver recording = event -> delivered.add(event.getPath());
+        
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream stderr = System.err;
+        System.setErr(new PrintStream(errors, true, StandardCharsets.UTF_8));
+        SyncEventBus[] bus = new SyncEventBus[1];
+        try {
+            // A queue of one makes every publish wait for the dispatcher
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                try (SyncEventBus opened = new SyncEventBus(List.of(failing, recording), 1,
+                        SyncEventBus.OverflowPolicy.BLOCK)) {
+                    bus[0] = opened;
+                    for (int i = 0; i < 100; i++) {
+                        opened.publish(new SyncEvent(SyncEvent.Kind.COPY, SyncEvent.Direction.A_TO_B, "f" + i, null,
+                                0L, 0L));
+                    }
+                }
+            });
+        } finally {
+            System.setErr(stderr);
+        }
+        
+        assertEquals(100, delivered.size());
+        assertEquals("f99", delivered.get(99));
+        long failures = bus[0].getObserverFailures();
+        assertTrue(failures > 100, "every event and every batch end failed");
+        
+        // One line for the first failure, one with the total on close
+        String[] lines = errors.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals(2, lines.length, errors.toString(StandardCharsets.UTF_8));
+        assertTrue(lines[0].contains("observer broken"), lines[0]);
+        assertTrue(lines[1].endsWith("failed " + failures + " times"), lines[1]);
+    }
+}
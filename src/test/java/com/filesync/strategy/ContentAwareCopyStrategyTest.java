@@ -0,0 +1,95 @@
+package com.filesync.strategy;
+
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.transfer.TransferContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentAwareCopyStrategyTest {
+    private static final long SOURCE_TIME = 1_600_000_000_000L;
+    
+    @TempDir
+    Path folder;
+    private Path a;
+    private Path b;
+    private LocalFileSystemHandler source;
+    private LocalFileSystemHandler target;
+    
+    @BeforeEach
+    void createSides() throws IOException {
+        a = Files.createDirectory(folder.resolve("a"));
+        b = Files.createDirectory(folder.resolve("b"));
+        source = new LocalFileSystemHandler(a.toString());
+        target = new LocalFileSystemHandler(b.toString());
+    }
+    
+    @Test
+    void identicalContentOnlyFixesTimestamp() throws IOException {
+        write(a, "file", "same", SOURCE_TIME);
+        write(b, "file", "same", SOURCE_TIME - 60_000L);
+        
+        ContentAwareCopyStrategy strategy = strategy(null, null);
+        strategy.execute();
+        // Copies out of a local folder are installed by its own group commit
+        source.sync();
+        target.sync();
+        
+        assertTrue(strategy.isContentUnchanged());
+        assertEquals(SOURCE_TIME, Files.getLastModifiedTime(b.resolve("file")).toMillis());
+        assertEquals(strategy.getSourceDigest(), new LocalFileSystemHandler(b.toString()).computeDigest("file"));
+    }
+    
+    @Test
+    void differentContentOfSameSizeIsCopied() throws IOException {
+        write(a, "file", "new!", SOURCE_TIME);
+        write(b, "file", "old!", SOURCE_TIME - 60_000L);
+        
+        ContentAwareCopyStrategy strategy = strategy(null, null);
+        strategy.execute();
+        // Copies out of a local folder are installed by its own group commit
+        source.sync();
+        target.sync();
+        
+        assertFalse(strategy.isContentUnchanged());
+        assertEquals("new!", Files.readString(b.resolve("file")));
+        assertEquals(SOURCE_TIME, Files.getLastModifiedTime(b.resolve("file")).toMillis());
+    }
+    
+    @Test
+    void trustsKnownDigests() throws IOException {
+        write(a, "file", "new!", SOURCE_TIME);
+        write(b, "file", "old!", SOURCE_TIME - 60_000L);
+        
+        // Digests recorded for unchanged metadata are not computed again
+        ContentAwareCopyStrategy strategy = strategy("cached", "cached");
+        strategy.execute();
+        // Copies out of a local folder are installed by its own group commit
+        source.sync();
+        target.sync();
+        
+        assertTrue(strategy.isContentUnchanged());
+        assertEquals("old!", Files.readString(b.resolve("file")));
+    }
+    
+    private ContentAwareCopyStrategy strategy(String sourceDigest, String targetDigest) {
+        return new ContentAwareCopyStrategy(source, target, "file", SOURCE_TIME, sourceDigest, targetDigest, true,
+                TransferContext.defaults());
+    }
+    
+    private static void write(Path side, String path, String content, long lastModified) throws IOException {
+        Path file = side.resolve(path);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+}
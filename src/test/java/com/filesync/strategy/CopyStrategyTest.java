@@ -0,0 +1,157 @@
+package com.filesync.strategy;
+
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.transfer.PartialFile;
+import com.filesync.transfer.TransferContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CopyStrategyTest {
+    private static final long SOURCE_TIME = 1_600_000_000_000L;
+    private static final long TARGET_TIME = SOURCE_TIME - 60_000L;
+    private static final int SIZE = 64 * 1024;
+    
+    @TempDir
+    Path folder;
+    private Path a;
+    private Path b;
+    private byte[] original;
+    private byte[] changed;
+    
+    @BeforeEach
+    void createSides() throws IOException {
+        a = Files.createDirectory(folder.resolve("a"));
+        b = Files.createDirectory(folder.resolve("b"));
+        original = new byte[SIZE];
+        new Random(1).nextBytes(original);
+        changed = Arrays.copyOf(original, SIZE);
+        Arrays.fill(changed, SIZE / 2, SIZE / 2 + 1000, (byte) 7);
+        write(a.resolve("file"), changed, SOURCE_TIME);
+        write(b.resolve("file"), original, TARGET_TIME);
+    }
+    
+    @Test
+    void deltaUpdateReplacesTargetWhenCommitted() throws IOException {
+        LocalFileSystemHandler source = new LocalFileSystemHandler(a.toString());
+        LocalFileSystemHandler target = new LocalFileSystemHandler(b.toString());
+        TransferContext context = deltaContext();
+        
+        new CopyStrategy(source, target, "file", true, true, context).execute();
+        // Until the group commit installs it, the update is only a hidden copy
+        assertArrayEquals(original, Files.readAllBytes(b.resolve("file")));
+        target.sync();
+        
+        assertEquals(1, context.getStats().getDeltaFiles());
+        assertArrayEquals(changed, Files.readAllBytes(b.resolve("file")));
+        assertEquals(SOURCE_TIME, Files.getLastModifiedTime(b.resolve("file")).toMillis());
+        assertEquals(1, fileCount(b));
+    }
+    
+    @Test
+    void failedDeltaUpdateLeavesTargetUntouched() throws IOException {
+        LocalFileSystemHandler source = new FailingSource(a.toString(), SIZE / 2);
+        LocalFileSystemHandler target = new LocalFileSystemHandler(b.toString());
+        
+        CopyStrategy strategy = new CopyStrategy(source, target, "file", true, true, deltaContext());
+        assertThrows(IOException.class, strategy::execute);
+        target.sync();
+        
+        assertArrayEquals(original, Files.readAllBytes(b.resolve("file")));
+        assertEquals(TARGET_TIME, Files.getLastModifiedTime(b.resolve("file")).toMillis());
+        // No working copy is left behind
+        assertEquals(1, fileCount(b));
+    }
+    
+    private static TransferContext deltaContext() {
+        return new TransferContext(1, 1024, PartialFile.DEFAULT_RESUME_MIN_BYTES);
+    }
+    
+    private static void write(Path file, byte[] content, long time) throws IOException {
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+    }
+    
+    private static long fileCount(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+    
+    /**
+     * Folder whose files fail to read past a given offset, like a source on a failing disk.
+     */
+    private static class FailingSource extends LocalFileSystemHandler {
+        private final long failAt;
+        
+        FailingSource(String basePath, long failAt) {
+            super(basePath);
+            this.failAt = failAt;
+        }
+        
+        @Override
+        public SeekableByteChannel openRandomAccess(String path, boolean writable) throws IOException {
+            SeekableByteChannel channel = super.openRandomAccess(path, writable);
+            return new SeekableByteChannel() {
+                @Override
+                public int read(ByteBuffer destination) throws IOException {
+                    if (channel.position() + destination.remaining() > failAt) {
+                        throw new IOException("Read error at " + channel.position());
+                    }
+                    return channel.read(destination);
+                }
+                
+                @Override
+                public int write(ByteBuffer source) throws IOException {
+                    return channel.write(source);
+                }
+                
+                @Override
+                public long position() throws IOException {
+                    return channel.position();
+                }
+                
+                @Override
+                public SeekableByteChannel position(long position) throws IOException {
+                    channel.position(position);
+                    return this;
+                }
+                
+                @Override
+                public long size() throws IOException {
+                    return channel.size();
+                }
+                
+                @Override
+                public SeekableByteChannel truncate(long size) throws IOException {
+                    channel.truncate(size);
+                    return this;
+                }
+                
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.filesync.strategy;
+
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.transfer.TransferContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeepBothStrategyTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void bothVersionsEndUpOnBothSides() throws IOException {
+        Path a = Files.createDirectories(folder.resolve("a/dir"));
+        Path b = Files.createDirectories(folder.resolve("b/dir"));
+        Files.writeString(a.resolve("file.txt"), "winner");
+        Files.writeString(b.resolve("file.txt"), "loser");
+        
+        LocalFileSystemHandler winner = new LocalFileSystemHandler(folder.resolve("a").toString());
+        LocalFileSystemHandler loser = new LocalFileSystemHandler(folder.resolve("b").toString());
+        new KeepBothStrategy(winner, loser, "dir/file.txt", "dir/file.conflict-b-1.txt", true,
+                TransferContext.defaults()).execute();
+        winner.sync();
+        loser.sync();
+        
+        for (Path side : new Path[] {a, b}) {
+            assertEquals("winner", Files.readString(side.resolve("file.txt")));
+            assertEquals("loser", Files.readString(side.resolve("file.conflict-b-1.txt")));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.filesync.strategy;
+
+import com.filesync.filesystem.LocalFileSystemHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoveStrategyTest {
+    @TempDir
+    Path folder;
+    
+    @Test
+    void movesFileIntoNewDirectory() throws IOException {
+        Files.writeString(folder.resolve("old.txt"), "content");
+        
+        new MoveStrategy(new LocalFileSystemHandler(folder.toString()), "old.txt", "dir/new.txt").execute();
+        
+        assertFalse(Files.exists(folder.resolve("old.txt")));
+        assertEquals("content", Files.readString(folder.resolve("dir/new.txt")));
+    }
+    
+    @Test
+    void existingTargetIsNotReplaced() throws IOException {
+        Files.writeString(folder.resolve("old.txt"), "content");
+        Files.writeString(folder.resolve("new.txt"), "unrelated");
+        
+        MoveStrategy strategy = new MoveStrategy(new LocalFileSystemHandler(folder.toString()), "old.txt", "new.txt");
+        assertThrows(FileAlreadyExistsException.class, strategy::execute);
+        
+        assertEquals("content", Files.readString(folder.resolve("old.txt")));
+        assertEquals("unrelated", Files.readString(folder.resolve("new.txt")));
+    }
+}
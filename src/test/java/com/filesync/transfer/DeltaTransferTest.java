@@ -0,0 +1,118 @@
+package com.filesync.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeltaTransferTest {
+    private static final int BLOCK = 1024;
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void identicalFileIsNotWritten() throws IOException {
+        byte[] data = random(1, 20 * BLOCK + 100);
+        DeltaTransfer.Result result = transfer(data, data);
+        assertEquals(20L * BLOCK, result.getMatchedBytes());
+        assertEquals(100L, result.getLiteralBytes());
+        assertEquals(0L, result.getMovedBytes());
+    }
+    
+    @Test
+    void rewritesModifiedBlockOnly() throws IOException {
+        byte[] target = random(2, 20 * BLOCK);
+        byte[] source = target.clone();
+        source[5 * BLOCK + 17] ^= 1;
+        DeltaTransfer.Result result = transfer(source, target);
+        assertEquals(19L * BLOCK, result.getMatchedBytes());
+        assertEquals(BLOCK, result.getLiteralBytes());
+    }
+    
+    @Test
+    void movesBlocksForward() throws IOException {
+        byte[] target = random(3, 20 * BLOCK);
+        // Removing the head moves every later block to a lower offset
+        byte[] source = Arrays.copyOfRange(target, 3 * BLOCK + 10, target.length);
+        DeltaTransfer.Result result = transfer(source, target);
+        assertTrue(result.getMovedBytes() >= 15L * BLOCK, "moved: " + result.getMovedBytes());
+    }
+    
+    @Test
+    void reconstructsInsertion() throws IOException {
+        byte[] target = random(4, 20 * BLOCK);
+        byte[] inserted = random(5, 300);
+        byte[] source = new byte[target.length + inserted.length];
+        System.arraycopy(target, 0, source, 0, 7 * BLOCK);
+        System.arraycopy(inserted, 0, source, 7 * BLOCK, inserted.length);
+        System.arraycopy(target, 7 * BLOCK, source, 7 * BLOCK + inserted.length, target.length - 7 * BLOCK);
+        DeltaTransfer.Result result = transfer(source, target);
+        assertEquals(7L * BLOCK, result.getMatchedBytes());
+    }
+    
+    @Test
+    void growsAndShrinksTarget() throws IOException {
+        byte[] data = random(6, 10 * BLOCK + 1);
+        transfer(data, Arrays.copyOf(data, 4 * BLOCK));
+        transfer(Arrays.copyOf(data, 4 * BLOCK - 1), data);
+        transfer(data, new byte[0]);
+        DeltaTransfer.Result result = transfer(new byte[0], data);
+        assertEquals(0L, result.getLiteralBytes() + result.getMovedBytes() + result.getMatchedBytes());
+    }
+    
+    @Test
+    void reconstructsRepeatedBlocks() throws IOException {
+        byte[] block = random(7, BLOCK);
+        byte[] target = new byte[8 * BLOCK];
+        byte[] source = new byte[9 * BLOCK];
+        for (int i = 0; i < 8; i++) {
+            System.arraycopy(block, 0, target, i * BLOCK, BLOCK);
+        }
+        System.arraycopy(target, 0, source, 0, target.length);
+        System.arraycopy(random(8, BLOCK), 0, source, 2 * BLOCK, BLOCK);
+        transfer(source, target);
+    }
+    
+    @Test
+    void rejectsSmallBlocks() {
+        assertThrows(IllegalArgumentException.class, () -> new DeltaTransfer(511));
+    }
+    
+    /**
+     * Applies the source to a file holding the target and checks the file ends up equal to the source.
+     */
+    private DeltaTransfer.Result transfer(byte[] source, byte[] target) throws IOException {
+        Path sourceFile = folder.resolve("source");
+        Path targetFile = folder.resolve("target");
+        Files.write(sourceFile, source);
+        Files.write(targetFile, target);
+        
+        DeltaTransfer.Result result;
+        try (FileChannel in = FileChannel.open(sourceFile, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(targetFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            result = new DeltaTransfer(BLOCK).apply(in, out);
+        }
+        
+        assertArrayEquals(source, Files.readAllBytes(targetFile));
+        assertEquals(source.length, result.getLiteralBytes() + result.getMovedBytes() + result.getMatchedBytes());
+        return result;
+    }
+    
+    private static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,174 @@
+package com.filesync.transfer;
+
+import com.filesync.filesystem.LocalFileSystemHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupCommitTest {
+    private static final byte[] OLD = "old".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEW = "new content".getBytes(StandardCharsets.US_ASCII);
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void installReplacesTarget() throws IOException {
+        for (Durability durability : Durability.values()) {
+            Path target = folder.resolve("file-" + durability);
+            Files.write(target, OLD);
+            Path temp = PartialFile.temporary(target);
+            Files.write(temp, NEW);
+            
+            GroupCommit commit = new GroupCommit(durability, 10);
+            commit.install(temp, target);
+            commit.flush();
+            assertArrayEquals(NEW, Files.readAllBytes(target), durability.toString());
+        }
+        assertEquals(Durability.values().length, list().length, "no temp file is left: " + Arrays.toString(list()));
+    }
+    
+    @Test
+    void openWriteInstallsCompleteCopy() throws IOException {
+        Path target = folder.resolve("file");
+        Files.write(target, OLD);
+        try (WritableByteChannel channel = new GroupCommit(Durability.PER_FILE, 1).openWrite(target, NEW.length)) {
+            channel.write(ByteBuffer.wrap(NEW));
+            assertArrayEquals(OLD, Files.readAllBytes(target));
+        }
+        assertArrayEquals(NEW, Files.readAllBytes(target));
+        assertEquals(1, list().length, "no temp file is left: " + Arrays.toString(list()));
+    }
+    
+    @Test
+    void incompleteCopyLeavesTarget() throws IOException {
+        Path target = folder.resolve("file");
+        Files.write(target, OLD);
+        WritableByteChannel channel = new GroupCommit(Durability.NONE, 1).openWrite(target, NEW.length + 1);
+        channel.write(ByteBuffer.wrap(NEW));
+        assertThrows(IOException.class, channel::close);
+        
+        assertArrayEquals(OLD, Files.readAllBytes(target));
+        assertEquals(1, list().length, "no temp file is left: " + Arrays.toString(list()));
+    }
+    
+    @Test
+    void batchedInstallWaitsForFlush() throws IOException {
+        Path target = folder.resolve("file");
+        Files.write(target, OLD);
+        Path temp = PartialFile.temporary(target);
+        Files.write(temp, NEW);
+        
+        GroupCommit commit = new GroupCommit(Durability.BATCHED, 10);
+        commit.install(temp, target);
+        commit.setLastModified(target, 1_600_000_000_000L);
+        assertArrayEquals(OLD, Files.readAllBytes(target));
+        
+        commit.flush();
+        assertArrayEquals(NEW, Files.readAllBytes(target));
+        assertEquals(1_600_000_000_000L, Files.getLastModifiedTime(target).toMillis());
+        assertFalse(Files.exists(temp));
+    }
+    
+    @Test
+    void fullBatchIsInstalledWithoutFlush() throws IOException {
+        GroupCommit commit = new GroupCommit(Durability.BATCHED, 2);
+        Path first = folder.resolve("first");
+        Files.write(PartialFile.temporary(first), NEW);
+        commit.install(PartialFile.temporary(first), first);
+        assertFalse(Files.exists(first));
+        
+        Path second = folder.resolve("second");
+        Files.write(PartialFile.temporary(second), NEW);
+        commit.install(PartialFile.temporary(second), second);
+        assertArrayEquals(NEW, Files.readAllBytes(first));
+        assertArrayEquals(NEW, Files.readAllBytes(second));
+    }
+    
+    @Test
+    void failedBatchStaysPending() throws IOException {
+        // A non-empty directory cannot be replaced, so the first rename of the batch fails
+        Path blocked = folder.resolve("blocked");
+        Files.createDirectories(blocked.resolve("child"));
+        Path second = folder.resolve("second");
+        GroupCommit commit = new GroupCommit(Durability.BATCHED, 10);
+        Files.write(PartialFile.temporary(blocked), NEW);
+        commit.install(PartialFile.temporary(blocked), blocked);
+        Files.write(PartialFile.temporary(second), NEW);
+        commit.install(PartialFile.temporary(second), second);
+        
+        assertThrows(IOException.class, commit::flush);
+        assertThrows(IOException.class, commit::flush, "a later flush fails as well");
+        assertFalse(Files.exists(second));
+        assertTrue(Files.exists(PartialFile.temporary(second)));
+        
+        Files.delete(blocked.resolve("child"));
+        Files.delete(blocked);
+        commit.flush();
+        assertArrayEquals(NEW, Files.readAllBytes(blocked));
+        assertArrayEquals(NEW, Files.readAllBytes(second));
+        assertEquals(2, list().length, "no temp file is left: " + Arrays.toString(list()));
+    }
+    
+    @Test
+    void movesAndDeletesWaitForFlush() throws IOException {
+        Path from = Files.createDirectories(folder.resolve("from"));
+        Path to = folder.resolve("to");
+        Files.write(from.resolve("moved"), OLD);
+        Files.write(from.resolve("deleted"), OLD);
+        GroupCommit commit = new GroupCommit(Durability.BATCHED, 10);
+        LocalFileSystemHandler handler = new LocalFileSystemHandler(folder.toString(), 1,
+                new LocalCopyEngine(true, 0L, 0L, commit));
+        
+        handler.moveFile("from/moved", "to/moved");
+        assertEquals(Set.of(from, to), commit.getPendingDirectories());
+        handler.deleteFile("from/deleted");
+        assertEquals(Set.of(from, to), commit.getPendingDirectories());
+        
+        handler.sync();
+        assertTrue(commit.getPendingDirectories().isEmpty());
+        assertArrayEquals(OLD, Files.readAllBytes(to.resolve("moved")));
+        assertEquals(0, from.toFile().list().length);
+        
+        GroupCommit perFile = new GroupCommit(Durability.PER_FILE, 10);
+        perFile.directoryChanged(from);
+        assertTrue(perFile.getPendingDirectories().isEmpty(), "forced right away");
+    }
+    
+    @Test
+    void flushToleratesReplacedFiles() throws IOException {
+        Path target = folder.resolve("file");
+        Files.write(target, OLD);
+        GroupCommit commit = new GroupCommit(Durability.BATCHED, 10);
+        commit.changed(target);
+        Files.delete(target);
+        commit.flush();
+    }
+    
+    @Test
+    void parsesLevels() {
+        assertEquals(Durability.NONE, Durability.parse("none"));
+        assertEquals(Durability.BATCHED, Durability.parse("Batched"));
+        assertEquals(Durability.PER_FILE, Durability.parse("per-file"));
+        assertThrows(IllegalArgumentException.class, () -> Durability.parse("fsync"));
+        assertThrows(IllegalArgumentException.class, () -> new GroupCommit(Durability.BATCHED, 0));
+    }
+    
+    private String[] list() {
+        return folder.toFile().list();
+    }
+}
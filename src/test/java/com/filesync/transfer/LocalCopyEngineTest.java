@@ -0,0 +1,81 @@
+package com.filesync.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalCopyEngineTest {
+    /** Above the size copied natively, so clones and channel transfers are used. */
+    private static final int LARGE = 3 * 1024 * 1024 + 17;
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void copiesWhereClonesFail() throws IOException {
+        byte[] data = randomBytes(LARGE);
+        Path source = folder.resolve("source");
+        Files.write(source, data);
+        LocalCopyEngine engine = new LocalCopyEngine(true, 0L, 0L, new GroupCommit(Durability.NONE, 1));
+        
+        // Whether or not this file system clones, each copy ends up complete
+        for (int i = 0; i < 2; i++) {
+            Path target = folder.resolve("sub").resolve("target" + i);
+            assertEquals(LARGE, engine.copy(source, target, true));
+            assertArrayEquals(data, Files.readAllBytes(target));
+            assertEquals(Files.getLastModifiedTime(source), Files.getLastModifiedTime(target));
+        }
+        assertThrows(IOException.class, () -> engine.copy(folder.resolve("missing"), folder.resolve("t"), true));
+        Path target = folder.resolve("target2");
+        engine.copy(source, target, false);
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertFalse(Arrays.stream(folder.resolve("sub").toFile().list()).anyMatch(PartialFile::isPartialName));
+    }
+    
+    @Test
+    void onlyRefusalsDisableClones() {
+        assertTrue(LocalCopyEngine.isRefusal("cp: failed to clone 'b' from 'a': Operation not supported\n"));
+        assertTrue(LocalCopyEngine.isRefusal("cp: failed to clone 'b' from 'a': Invalid cross-device link\n"));
+        assertFalse(LocalCopyEngine.isRefusal("cp: cannot stat 'a': No such file or directory\n"));
+        assertFalse(LocalCopyEngine.isRefusal("cp: cannot open 'a' for reading: Permission denied\n"));
+        assertFalse(LocalCopyEngine.isRefusal(""));
+    }
+    
+    @Test
+    void rejectsCopiesOfChangedSize() throws IOException {
+        Path temp = folder.resolve("temp");
+        Files.write(temp, new byte[10]);
+        LocalCopyEngine.checkComplete(temp, folder.resolve("target"), 10L);
+        assertThrows(IOException.class, () -> LocalCopyEngine.checkComplete(temp, folder.resolve("target"), 11L));
+    }
+    
+    @Test
+    void workingCopyMatchesFile() throws IOException {
+        byte[] data = randomBytes(LARGE);
+        Path file = folder.resolve("file");
+        Files.write(file, data);
+        LocalCopyEngine engine = new LocalCopyEngine(true, 0L, 0L, new GroupCommit(Durability.NONE, 1));
+        
+        WorkingCopy copy = engine.openWorkingCopy(file);
+        assertArrayEquals(data, Files.readAllBytes(PartialFile.temporary(file)));
+        copy.close();
+        assertFalse(Files.exists(PartialFile.temporary(file)));
+    }
+    
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
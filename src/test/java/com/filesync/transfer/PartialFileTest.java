@@ -0,0 +1,118 @@
+package com.filesync.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartialFileTest {
+    private static final byte[] DATA = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void resumesFromVerifiedBytes() throws IOException {
+        Path target = folder.resolve("file");
+        try (PartialFile partial = PartialFile.open(target, DATA.length, 1000L)) {
+            assertEquals(0L, partial.getResumeOffset());
+            partial.getChannel().write(ByteBuffer.wrap(DATA, 0, 8));
+            partial.checkpoint();
+            // Written after the last checkpoint, so not trusted
+            partial.getChannel().write(ByteBuffer.wrap(DATA, 8, 4));
+        }
+        
+        try (PartialFile partial = PartialFile.open(target, DATA.length, 1000L)) {
+            assertEquals(8L, partial.getResumeOffset());
+            assertEquals(8L, partial.getChannel().size());
+            partial.getChannel().write(ByteBuffer.wrap(DATA, 8, DATA.length - 8));
+            partial.complete(new GroupCommit(Durability.PER_FILE, 1));
+        }
+        assertArrayEquals(DATA, Files.readAllBytes(target));
+        assertEquals(1, list().length, "only the target is left: " + Arrays.toString(list()));
+    }
+    
+    @Test
+    void restartsForAnotherSourceVersion() throws IOException {
+        Path target = folder.resolve("file");
+        try (PartialFile partial = PartialFile.open(target, DATA.length, 1000L)) {
+            partial.getChannel().write(ByteBuffer.wrap(DATA, 0, 8));
+            partial.checkpoint();
+        }
+        try (PartialFile partial = PartialFile.open(target, DATA.length, 2000L)) {
+            assertEquals(0L, partial.getResumeOffset());
+            assertEquals(0L, partial.getChannel().size());
+        }
+        try (PartialFile partial = PartialFile.open(target, DATA.length + 1, 1000L)) {
+            assertEquals(0L, partial.getResumeOffset());
+        }
+    }
+    
+    @Test
+    void restartsWhenDataIsShorterThanState() throws IOException {
+        Path target = folder.resolve("file");
+        Path data;
+        try (PartialFile partial = PartialFile.open(target, DATA.length, 1000L)) {
+            partial.getChannel().write(ByteBuffer.wrap(DATA, 0, 8));
+            partial.checkpoint();
+            data = partial.getPath();
+        }
+        Files.write(data, new byte[4]);
+        try (PartialFile partial = PartialFile.open(target, DATA.length, 1000L)) {
+            assertEquals(0L, partial.getResumeOffset());
+        }
+    }
+    
+    @Test
+    void discardsCopyOfChangedSource() throws IOException {
+        Path target = folder.resolve("file");
+        Files.write(target, new byte[] {42});
+        try (PartialFile partial = PartialFile.open(target, DATA.length, 1000L)) {
+            partial.getChannel().write(ByteBuffer.wrap(DATA, 0, 8));
+            partial.checkpoint();
+            assertThrows(IOException.class, () -> partial.complete(new GroupCommit(Durability.NONE, 1)));
+        }
+        assertArrayEquals(new byte[] {42}, Files.readAllBytes(target));
+        assertEquals(1, list().length, "partial data and state are gone: " + Arrays.toString(list()));
+    }
+    
+    @Test
+    void batchedCompletionWaitsForFlush() throws IOException {
+        Path target = folder.resolve("file");
+        Files.write(target, new byte[] {42});
+        GroupCommit commit = new GroupCommit(Durability.BATCHED, 10);
+        try (PartialFile partial = PartialFile.open(target, DATA.length, 1000L)) {
+            partial.getChannel().write(ByteBuffer.wrap(DATA));
+            partial.complete(commit);
+        }
+        assertArrayEquals(new byte[] {42}, Files.readAllBytes(target));
+        commit.flush();
+        assertArrayEquals(DATA, Files.readAllBytes(target));
+    }
+    
+    @Test
+    void recognizesPartialNames() {
+        assertTrue(PartialFile.isPartialName(".file.jsync-part"));
+        assertTrue(PartialFile.isPartialName(".file.jsync-part.state"));
+        assertTrue(PartialFile.isPartialName(".file.jsync-part.state.tmp"));
+        assertTrue(PartialFile.isPartialName(PartialFile.temporary(folder.resolve("file")).getFileName().toString()));
+        assertFalse(PartialFile.isPartialName("file.jsync-part"));
+        assertFalse(PartialFile.isPartialName(".file"));
+        assertFalse(PartialFile.isPartialName(".file.jsync-part.bak"));
+    }
+    
+    private String[] list() {
+        return folder.toFile().list();
+    }
+}
@@ -0,0 +1,212 @@
+package com.filesync.transfer;
+
+import com.filesync.filesystem.ContentDigest;
+import com.filesync.filesystem.FileSystemHandler;
+import com.filesync.filesystem.FileSystemNode;
+import com.filesync.filesystem.LocalFileSystemHandler;
+import com.filesync.filesystem.LocalWebDAVServer;
+import com.filesync.filesystem.WebDAVFileSystemHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferPipelineTest {
+    /** Small buffers, so that every file below spans many of them and goes through the reader thread. */
+    private static final int BUFFER_SIZE = 1024;
+    private static final byte[] OLD = "old".getBytes();
+    
+    @TempDir
+    Path folder;
+    private Path share;
+    private Path local;
+    private LocalWebDAVServer server;
+    private WebDAVFileSystemHandler remote;
+    private LocalFileSystemHandler localHandler;
+    private BufferPool pool;
+    
+    @BeforeEach
+    void startServer() throws IOException {
+        share = Files.createDirectories(folder.resolve("share"));
+        local = Files.createDirectories(folder.resolve("local"));
+        server = LocalWebDAVServer.start(share, 4, 0L);
+        remote = new WebDAVFileSystemHandler(server.url());
+        localHandler = new LocalFileSystemHandler(local.toString());
+        pool = new BufferPool(BUFFER_SIZE, 4);
+    }
+    
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+    
+    @Test
+    void copiesSmallAndDoubleBufferedFilesBothWays() throws IOException {
+        TransferPipeline pipeline = new TransferPipeline(pool, 0L);
+        for (int size : new int[] {0, 100, BUFFER_SIZE, 50 * BUFFER_SIZE + 7}) {
+            byte[] data = randomBytes(size);
+            Files.write(local.resolve("up" + size), data);
+            ContentDigest.Sink digest = new ContentDigest.Sink();
+            assertEquals(size, pipeline.transfer(localHandler, remote, "up" + size, true, digest));
+            assertArrayEquals(data, Files.readAllBytes(share.resolve("up" + size)));
+            assertEquals(digest(data), digest.getDigest());
+            assertEquals(Files.getLastModifiedTime(local.resolve("up" + size)).toMillis(),
+                    remote.getLastModified("up" + size));
+            
+            Files.createDirectories(share.resolve("dir"));
+            Files.write(share.resolve("dir/down" + size), data);
+            assertEquals(size, pipeline.transfer(remote, localHandler, "dir/down" + size, false));
+            localHandler.sync();
+            assertArrayEquals(data, Files.readAllBytes(local.resolve("dir/down" + size)));
+        }
+        assertTrue(pool.getAllocated() > 1, "the reader thread filled buffers of its own");
+    }
+    
+    @Test
+    void copyReadsChannelOnceForAllTargets() throws IOException {
+        byte[] data = randomBytes(20 * BUFFER_SIZE + 3);
+        ContentDigest.Sink first = new ContentDigest.Sink();
+        ContentDigest.Sink second = new ContentDigest.Sink();
+        long copied = new TransferPipeline(pool).copy(Channels.newChannel(new ByteArrayInputStream(data)),
+                first, second);
+        first.close();
+        second.close();
+        assertEquals(data.length, copied);
+        assertEquals(digest(data), first.getDigest());
+        assertEquals(digest(data), second.getDigest());
+    }
+    
+    @Test
+    void copiesToSeveralTargets() throws IOException {
+        byte[] data = randomBytes(30 * BUFFER_SIZE + 11);
+        Files.write(share.resolve("file"), data);
+        Path other = Files.createDirectories(folder.resolve("other"));
+        List<FileSystemHandler> targets = List.of(localHandler, new LocalFileSystemHandler(other.toString()));
+        
+        ContentDigest.Sink digest = new ContentDigest.Sink();
+        assertEquals(data.length, new TransferPipeline(pool, 0L).transfer(remote, targets, "file", true, digest));
+        for (FileSystemHandler target : targets) {
+            target.sync(); // Installed with the batch of each folder
+        }
+        assertArrayEquals(data, Files.readAllBytes(local.resolve("file")));
+        assertArrayEquals(data, Files.readAllBytes(other.resolve("file")));
+        assertEquals(digest(data), digest.getDigest());
+    }
+    
+    @Test
+    void resumesFromVerifiedBytes() throws IOException {
+        byte[] data = randomBytes(40 * BUFFER_SIZE);
+        Files.write(share.resolve("file"), data);
+        FileSystemNode node = remote.stat("file");
+        try (PartialFile partial = PartialFile.open(local.resolve("file"), data.length, node.getLastModified())) {
+            partial.getChannel().write(ByteBuffer.wrap(data, 0, 10 * BUFFER_SIZE));
+            partial.checkpoint();
+        }
+        
+        ContentDigest.Sink digest = new ContentDigest.Sink();
+        long copied = new TransferPipeline(pool, 1L).transfer(remote, localHandler, "file", false, digest);
+        assertEquals(30 * BUFFER_SIZE, copied, "only the bytes after the checkpoint are read");
+        localHandler.sync();
+        assertArrayEquals(data, Files.readAllBytes(local.resolve("file")));
+        assertNull(digest.getDigest(), "a resumed copy is not digested");
+        assertEquals(List.of("file"), Arrays.asList(local.toFile().list()));
+    }
+    
+    @Test
+    void failedCopyOfUnknownSizeKeepsTargets() throws IOException {
+        Files.write(share.resolve("file"), randomBytes(20 * BUFFER_SIZE));
+        Files.write(local.resolve("file"), OLD);
+        Path other = Files.createDirectories(folder.resolve("other"));
+        Files.write(other.resolve("file"), OLD);
+        FileSystemHandler source = new BrokenSource(server.url(), 5 * BUFFER_SIZE);
+        TransferPipeline pipeline = new TransferPipeline(pool, 0L);
+        
+        ContentDigest.Sink digest = new ContentDigest.Sink();
+        assertThrows(IOException.class, () -> pipeline.transfer(source, localHandler, "file", true, digest));
+        assertNull(digest.getDigest());
+        List<FileSystemHandler> targets = List.of(localHandler, new LocalFileSystemHandler(other.toString()));
+        assertThrows(IOException.class, () -> pipeline.transfer(source, targets, "file", true, digest));
+        assertNull(digest.getDigest());
+        for (FileSystemHandler target : targets) {
+            target.sync();
+        }
+        
+        assertArrayEquals(OLD, Files.readAllBytes(local.resolve("file")));
+        assertArrayEquals(OLD, Files.readAllBytes(other.resolve("file")));
+        assertEquals(List.of("file"), Arrays.asList(local.toFile().list()));
+        assertEquals(List.of("file"), Arrays.asList(other.toFile().list()));
+    }
+    
+    /**
+     * Server without content lengths whose downloads break off after some bytes.
+     */
+    private static class BrokenSource extends WebDAVFileSystemHandler {
+        private final int failAfter;
+        
+        BrokenSource(String url, int failAfter) {
+            super(url);
+            this.failAfter = failAfter;
+        }
+        
+        @Override
+        public FileSystemNode stat(String path) throws IOException {
+            FileSystemNode node = super.stat(path);
+            return new FileSystemNode(node.getName(), false, node.getLastModified(), -1L);
+        }
+        
+        @Override
+        public ReadableByteChannel openRead(String path) throws IOException {
+            ReadableByteChannel in = super.openRead(path);
+            return new ReadableByteChannel() {
+                private int read;
+                
+                @Override
+                public int read(ByteBuffer destination) throws IOException {
+                    if (read >= failAfter) {
+                        throw new IOException("Connection reset");
+                    }
+                    int count = in.read(destination);
+                    read += Math.max(count, 0);
+                    return count;
+                }
+                
+                @Override
+                public boolean isOpen() {
+                    return in.isOpen();
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    in.close();
+                }
+            };
+        }
+    }
+    
+    private static String digest(byte[] data) throws IOException {
+        return ContentDigest.compute(Channels.newChannel(new ByteArrayInputStream(data)));
+    }
+    
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}